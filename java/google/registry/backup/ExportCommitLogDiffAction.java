@@ -18,7 +18,6 @@ import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verifyNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
-import static com.google.common.collect.Iterables.concat;
 import static com.google.common.collect.Lists.partition;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.LOWER_BOUND_CHECKPOINT;
 import static google.registry.backup.BackupUtils.GcsMetadataKeys.NUM_TRANSACTIONS;
@@ -29,7 +28,6 @@ import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static google.registry.util.DateTimeUtils.isAtOrAfter;
 import static java.nio.channels.Channels.newOutputStream;
-import static java.util.Arrays.asList;
 import static java.util.Comparator.comparingLong;
 
 import com.google.appengine.tools.cloudstorage.GcsFileOptions;
@@ -37,11 +35,11 @@ import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import google.registry.config.RegistryConfig.Config;
-import google.registry.model.ImmutableObject;
 import google.registry.model.ofy.CommitLogBucket;
 import google.registry.model.ofy.CommitLogCheckpoint;
 import google.registry.model.ofy.CommitLogManifest;
@@ -49,16 +47,28 @@ import google.registry.model.ofy.CommitLogMutation;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
+import google.registry.util.Clock;
+import google.registry.util.Concurrent;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 
-/** Action that exports the diff between two commit log checkpoints to GCS. */
+/**
+ * Action that exports the diff between two commit log checkpoints to GCS.
+ *
+ * <p>The export is pipelined: the manifest keys of all buckets are scanned concurrently and merged
+ * into a single ordered stream, the manifests of the next batch are loaded while the current one is
+ * exported, and the mutations of the manifests in a batch are loaded and serialized concurrently
+ * before being written to GCS in order. With a parallelism of 1, every stage runs serially.
+ */
 @Action(
   path = ExportCommitLogDiffAction.PATH,
   method = Action.Method.POST,
@@ -75,9 +85,15 @@ public final class ExportCommitLogDiffAction implements Runnable {
 
   public static final String DIFF_FILE_PREFIX = "commit_diff_until_";
 
+  /** Order of manifests within a diff: by commit time, breaking ties by bucket. */
+  private static final Comparator<Key<CommitLogManifest>> MANIFEST_ORDER =
+      comparingLong(Key<CommitLogManifest>::getId).thenComparingLong(a -> a.getParent().getId());
+
   @Inject GcsService gcsService;
   @Inject @Config("commitLogGcsBucket") String gcsBucket;
   @Inject @Config("commitLogDiffExportBatchSize") int batchSize;
+  @Inject @Config("commitLogDiffExportParallelism") int parallelism;
+  @Inject Clock clock;
   @Inject @Parameter(LOWER_CHECKPOINT_TIME_PARAM) DateTime lowerCheckpointTime;
   @Inject @Parameter(UPPER_CHECKPOINT_TIME_PARAM) DateTime upperCheckpointTime;
   @Inject ExportCommitLogDiffAction() {}
@@ -97,7 +113,13 @@ public final class ExportCommitLogDiffAction implements Runnable {
         verifyNotNull(ofy().load().key(CommitLogCheckpoint.createKey(upperCheckpointTime)).now());
 
     // Load the keys of all the manifests to include in this diff.
+    StageMetrics scanMetrics = new StageMetrics("bucket scan", "manifest keys");
+    StageMetrics manifestMetrics = new StageMetrics("manifest load", "manifests");
+    StageMetrics mutationMetrics = new StageMetrics("mutation load", "entities");
+    StageMetrics writeMetrics = new StageMetrics("GCS write", "bytes");
+    DateTime stageStart = clock.nowUtc();
     List<Key<CommitLogManifest>> sortedKeys = loadAllDiffKeys(lowerCheckpoint, upperCheckpoint);
+    scanMetrics.record(stageStart, sortedKeys.size());
     logger.atInfo().log("Found %d manifests to export", sortedKeys.size());
     // Open an output channel to GCS, wrapped in a stream for convenience.
     try (OutputStream gcsStream = newOutputStream(gcsService.createOrReplace(
@@ -121,7 +143,9 @@ public final class ExportCommitLogDiffAction implements Runnable {
       Map<?, CommitLogManifest> nextChunkToExport = ofy().load().keys(keyChunks.get(0));
       for (int i = 0; i < keyChunks.size(); i++) {
         // Force the async load to finish.
+        stageStart = clock.nowUtc();
         Collection<CommitLogManifest> chunkValues = nextChunkToExport.values();
+        manifestMetrics.record(stageStart, chunkValues.size());
         logger.atInfo().log("Loaded %d manifests", chunkValues.size());
         // Since there is no hard bound on how much data this might be, take care not to let the
         // Objectify session cache fill up and potentially run out of memory. This is the only safe
@@ -131,13 +155,15 @@ public final class ExportCommitLogDiffAction implements Runnable {
         if (i + 1 < keyChunks.size()) {
           nextChunkToExport = ofy().load().keys(keyChunks.get(i + 1));
         }
-        exportChunk(gcsStream, chunkValues);
+        exportChunk(gcsStream, chunkValues, mutationMetrics, writeMetrics);
         logger.atInfo().log("Exported %d manifests", chunkValues.size());
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-    logger.atInfo().log("Exported %d manifests in total", sortedKeys.size());
+    logger.atInfo().log(
+        "Exported %d manifests in total\n%s\n%s\n%s\n%s",
+        sortedKeys.size(), scanMetrics, manifestMetrics, mutationMetrics, writeMetrics);
   }
 
   /**
@@ -152,18 +178,20 @@ public final class ExportCommitLogDiffAction implements Runnable {
     // Fetch the keys (no data) between these checkpoints, and sort by timestamp. This ordering is
     // transaction-consistent by virtue of our checkpoint strategy and our customized Ofy; see
     // CommitLogCheckpointStrategy for the proof. We break ties by sorting on bucket ID to ensure
-    // a deterministic order.
-    return upperCheckpoint
-        .getBucketTimestamps()
-        .keySet()
-        .stream()
-        .flatMap(
+    // a deterministic order. The buckets are scanned concurrently, and since the keys of each
+    // bucket are sorted, they only need to be merged.
+    ImmutableList<ImmutableList<Key<CommitLogManifest>>> keysByBucket =
+        Concurrent.transform(
+            upperCheckpoint.getBucketTimestamps().keySet(),
+            parallelism,
             bucketNum ->
-                Streams.stream(loadDiffKeysFromBucket(lowerCheckpoint, upperCheckpoint, bucketNum)))
-        .sorted(
-            comparingLong(Key<CommitLogManifest>::getId)
-                .thenComparingLong(a -> a.getParent().getId()))
-        .collect(toImmutableList());
+                Streams.stream(loadDiffKeysFromBucket(lowerCheckpoint, upperCheckpoint, bucketNum))
+                    .sorted(MANIFEST_ORDER)
+                    .collect(toImmutableList()));
+    return ImmutableList.copyOf(
+        Iterators.mergeSorted(
+            keysByBucket.stream().map(ImmutableList::iterator).collect(toImmutableList()),
+            MANIFEST_ORDER));
   }
 
   /**
@@ -201,18 +229,82 @@ public final class ExportCommitLogDiffAction implements Runnable {
         .keys();
   }
 
-  /** Writes a chunks-worth of manifests and associated mutations to GCS. */
-  private void exportChunk(OutputStream gcsStream, Collection<CommitLogManifest> chunk)
+  /**
+   * Writes a chunks-worth of manifests and associated mutations to GCS.
+   *
+   * <p>The mutations of each manifest are loaded and serialized concurrently, and then written in
+   * the order of the manifests.
+   */
+  private void exportChunk(
+      OutputStream gcsStream,
+      Collection<CommitLogManifest> chunk,
+      StageMetrics mutationMetrics,
+      StageMetrics writeMetrics)
       throws IOException {
-    // Kickoff async loads for all the manifests in the chunk.
-    ImmutableList.Builder<Iterable<? extends ImmutableObject>> entities =
-        new ImmutableList.Builder<>();
-    for (CommitLogManifest manifest : chunk) {
-      entities.add(asList(manifest));
-      entities.add(ofy().load().type(CommitLogMutation.class).ancestor(manifest));
+    DateTime stageStart = clock.nowUtc();
+    ImmutableList<SerializedManifest> serializedManifests =
+        Concurrent.transform(chunk, parallelism, ExportCommitLogDiffAction::serializeManifest);
+    mutationMetrics.record(
+        stageStart, serializedManifests.stream().mapToLong(m -> m.numEntities).sum());
+    stageStart = clock.nowUtc();
+    long bytes = 0;
+    for (SerializedManifest serializedManifest : serializedManifests) {
+      serializedManifest.bytes.writeTo(gcsStream);
+      bytes += serializedManifest.bytes.size();
     }
-    for (ImmutableObject entity : concat(entities.build())) {
-      serializeEntity(entity, gcsStream);
+    writeMetrics.record(stageStart, bytes);
+  }
+
+  /** Loads the mutations of a manifest and serializes them, preceded by the manifest itself. */
+  private static SerializedManifest serializeManifest(CommitLogManifest manifest) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    List<CommitLogMutation> mutations =
+        ofy().load().type(CommitLogMutation.class).ancestor(manifest).list();
+    try {
+      serializeEntity(manifest, bytes);
+      for (CommitLogMutation mutation : mutations) {
+        serializeEntity(mutation, bytes);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new SerializedManifest(bytes, mutations.size() + 1);
+  }
+
+  /** The serialized form of a manifest and its mutations. */
+  private static class SerializedManifest {
+    final ByteArrayOutputStream bytes;
+    final int numEntities;
+
+    SerializedManifest(ByteArrayOutputStream bytes, int numEntities) {
+      this.bytes = bytes;
+      this.numEntities = numEntities;
+    }
+  }
+
+  /** Time spent in a stage of the export, and the number of items it processed. */
+  private class StageMetrics {
+    private final String stageName;
+    private final String itemName;
+    private long millis;
+    private long items;
+
+    StageMetrics(String stageName, String itemName) {
+      this.stageName = stageName;
+      this.itemName = itemName;
+    }
+
+    /** Records a run of the stage that started at the given time and just ended. */
+    void record(DateTime stageStart, long processedItems) {
+      millis += clock.nowUtc().getMillis() - stageStart.getMillis();
+      items += processedItems;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          "%s: %d %s in %dms (%.1f/s)",
+          stageName, items, itemName, millis, items * 1000.0 / Math.max(1, millis));
     }
   }
 }
@@ -17,6 +17,7 @@ package google.registry.backup;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Iterators.peekingIterator;
+import static com.google.common.util.concurrent.Futures.getUnchecked;
 import static google.registry.backup.BackupUtils.createDeserializingIterator;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static java.util.Arrays.asList;
@@ -26,13 +27,17 @@ import com.google.appengine.api.datastore.Entity;
 import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
 import com.google.appengine.tools.cloudstorage.GcsService;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.PeekingIterator;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
 import com.googlecode.objectify.Key;
-import com.googlecode.objectify.Result;
-import com.googlecode.objectify.util.ResultNow;
+import google.registry.backup.BackupModule.Backups;
 import google.registry.config.RegistryEnvironment;
 import google.registry.model.ImmutableObject;
 import google.registry.model.ofy.CommitLogBucket;
@@ -43,11 +48,14 @@ import google.registry.model.ofy.CommitLogMutation;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
+import google.registry.util.Clock;
 import google.registry.util.Retrier;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.channels.Channels;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -55,7 +63,16 @@ import java.util.stream.Stream;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 
-/** Restore Registry 2 commit logs from GCS to Datastore. */
+/**
+ * Restore Registry 2 commit logs from GCS to Datastore.
+ *
+ * <p>Diff files are restored in order, but the next file is read and parsed while the current one
+ * is applied. The transactions of a file are applied in waves: consecutive transactions are added
+ * to a wave as long as they don't touch any key that another transaction of the wave touches, and
+ * then all the writes of the wave are applied concurrently, in batches. Since transactions that
+ * touch the same key are always in different waves, and waves are applied one after the other,
+ * the writes to each key are applied in commit order.
+ */
 @Action(
   path = RestoreCommitLogsAction.PATH,
   method = Action.Method.POST,
@@ -68,6 +85,12 @@ public class RestoreCommitLogsAction implements Runnable {
 
   static final int BLOCK_SIZE = 1024 * 1024;  // Buffer 1mb at a time, for no particular reason.
 
+  /** Maximum number of entities written by a single batch put or delete. */
+  @VisibleForTesting static final int MAX_BATCH_SIZE = 500;
+
+  /** Maximum number of entities written by a wave of transactions. */
+  private static final int MAX_WAVE_SIZE = 10 * MAX_BATCH_SIZE;
+
   public static final String PATH = "/_dr/task/restoreCommitLogs";
   static final String DRY_RUN_PARAM = "dryRun";
   static final String FROM_TIME_PARAM = "fromTime";
@@ -80,6 +103,8 @@ public class RestoreCommitLogsAction implements Runnable {
   @Inject DatastoreService datastoreService;
   @Inject GcsDiffFileLister diffLister;
   @Inject Retrier retrier;
+  @Inject @Backups ListeningExecutorService executor;
+  @Inject Clock clock;
   @Inject RestoreCommitLogsAction() {}
 
   @Override
@@ -99,21 +124,35 @@ public class RestoreCommitLogsAction implements Runnable {
     }
     Map<Integer, DateTime> bucketTimestamps = new HashMap<>();
     CommitLogCheckpoint lastCheckpoint = null;
-    for (GcsFileMetadata metadata : diffFiles) {
-      logger.atInfo().log("Restoring: %s", metadata.getFilename().getObjectName());
-      try (InputStream input = Channels.newInputStream(
-          gcsService.openPrefetchingReadChannel(metadata.getFilename(), 0, BLOCK_SIZE))) {
-        PeekingIterator<ImmutableObject> commitLogs =
-            peekingIterator(createDeserializingIterator(input));
-        lastCheckpoint = (CommitLogCheckpoint) commitLogs.next();
-        saveOfy(asList(lastCheckpoint));  // Save the checkpoint itself.
-        while (commitLogs.hasNext()) {
-          CommitLogManifest manifest = restoreOneTransaction(commitLogs);
-          bucketTimestamps.put(manifest.getBucketId(), manifest.getCommitTime());
-        }
-      } catch (IOException e) {
-        throw new RuntimeException(e);
+    DateTime startTime = clock.nowUtc();
+    long numTransactions = 0;
+    long numWrites = 0;
+    ListenableFuture<DiffFile> nextDiffFile = executor.submit(() -> readDiffFile(diffFiles.get(0)));
+    for (int i = 0; i < diffFiles.size(); i++) {
+      DiffFile diffFile = getUnchecked(nextDiffFile);
+      // Prefetch the next file while this one is applied.
+      if (i + 1 < diffFiles.size()) {
+        GcsFileMetadata nextMetadata = diffFiles.get(i + 1);
+        nextDiffFile = executor.submit(() -> readDiffFile(nextMetadata));
+      }
+      logger.atInfo().log("Restoring: %s", diffFile.name);
+      lastCheckpoint = diffFile.checkpoint;
+      saveOfy(asList(lastCheckpoint));  // Save the checkpoint itself.
+      numWrites += applyTransactions(diffFile.transactions);
+      for (Transaction transaction : diffFile.transactions) {
+        bucketTimestamps.put(
+            transaction.manifest.getBucketId(), transaction.manifest.getCommitTime());
       }
+      numTransactions += diffFile.transactions.size();
+      long elapsedMillis = Math.max(1, clock.nowUtc().getMillis() - startTime.getMillis());
+      logger.atInfo().log(
+          "Restored %d/%d diff files: %d transactions (%.1f/s), %d entity writes (%.1f/s)",
+          i + 1,
+          diffFiles.size(),
+          numTransactions,
+          numTransactions * 1000.0 / elapsedMillis,
+          numWrites,
+          numWrites * 1000.0 / elapsedMillis);
     }
     // Restore the CommitLogCheckpointRoot and CommitLogBuckets.
     saveOfy(
@@ -132,34 +171,93 @@ public class RestoreCommitLogsAction implements Runnable {
     logger.atInfo().log("Restore complete");
   }
 
+  /** Reads the checkpoint and the transactions of a diff file. */
+  private DiffFile readDiffFile(GcsFileMetadata metadata) throws IOException {
+    try (InputStream input = Channels.newInputStream(
+        gcsService.openPrefetchingReadChannel(metadata.getFilename(), 0, BLOCK_SIZE))) {
+      PeekingIterator<ImmutableObject> commitLogs =
+          peekingIterator(createDeserializingIterator(input));
+      CommitLogCheckpoint checkpoint = (CommitLogCheckpoint) commitLogs.next();
+      ImmutableList.Builder<Transaction> transactions = new ImmutableList.Builder<>();
+      while (commitLogs.hasNext()) {
+        transactions.add(readTransaction(commitLogs));
+      }
+      return new DiffFile(metadata.getFilename().getObjectName(), checkpoint, transactions.build());
+    }
+  }
+
   /**
-   * Restore the contents of one transaction to Datastore.
+   * Reads the contents of one transaction.
    *
    * <p>The objects to delete are listed in the {@link CommitLogManifest}, which will be the first
    * object in the iterable. The objects to save follow, each as a {@link CommitLogMutation}. We
    * restore by deleting the deletes and recreating the saves from their proto form. We also save
    * the commit logs themselves back to Datastore, so that the commit log system itself is
    * transparently restored alongside the data.
-   *
-   * @return the manifest, for use in restoring the {@link CommitLogBucket}.
    */
-  private CommitLogManifest restoreOneTransaction(PeekingIterator<ImmutableObject> commitLogs) {
-    final CommitLogManifest manifest = (CommitLogManifest) commitLogs.next();
-    Result<?> deleteResult = deleteAsync(manifest.getDeletions());
+  private static Transaction readTransaction(PeekingIterator<ImmutableObject> commitLogs) {
+    CommitLogManifest manifest = (CommitLogManifest) commitLogs.next();
     List<Entity> entitiesToSave = Lists.newArrayList(ofy().save().toEntity(manifest));
     while (commitLogs.hasNext() && commitLogs.peek() instanceof CommitLogMutation) {
       CommitLogMutation mutation = (CommitLogMutation) commitLogs.next();
       entitiesToSave.add(ofy().save().toEntity(mutation));
       entitiesToSave.add(EntityTranslator.createFromPbBytes(mutation.getEntityProtoBytes()));
     }
-    saveRaw(entitiesToSave);
-    try {
-      deleteResult.now();
-    } catch (Exception e) {
-      retrier.callWithRetry(
-          () -> deleteAsync(manifest.getDeletions()).now(), RuntimeException.class);
+    return new Transaction(
+        manifest,
+        ImmutableList.copyOf(entitiesToSave),
+        manifest.getDeletions().stream().map(Key::getRaw).collect(toImmutableList()));
+  }
+
+  /**
+   * Applies transactions in waves of transactions that touch disjoint keys.
+   *
+   * @return the number of entities written
+   */
+  private long applyTransactions(List<Transaction> transactions) {
+    long numWrites = 0;
+    List<Transaction> wave = new ArrayList<>();
+    Set<com.google.appengine.api.datastore.Key> waveKeys = new HashSet<>();
+    for (Transaction transaction : transactions) {
+      if (waveKeys.size() + transaction.size() > MAX_WAVE_SIZE
+          || transaction.keys().anyMatch(waveKeys::contains)) {
+        numWrites += applyWave(wave);
+        wave.clear();
+        waveKeys.clear();
+      }
+      wave.add(transaction);
+      transaction.keys().forEach(waveKeys::add);
     }
-    return manifest;
+    return numWrites + applyWave(wave);
+  }
+
+  /**
+   * Applies the writes of transactions that touch disjoint keys concurrently.
+   *
+   * <p>The entities are sorted by key before being split into batches, so that the entities of an
+   * entity group are written by as few batches as possible and the batches don't contend for it.
+   *
+   * @return the number of entities written
+   */
+  private long applyWave(List<Transaction> wave) {
+    List<Entity> entitiesToSave = new ArrayList<>();
+    List<com.google.appengine.api.datastore.Key> keysToDelete = new ArrayList<>();
+    for (Transaction transaction : wave) {
+      entitiesToSave.addAll(transaction.entitiesToSave);
+      keysToDelete.addAll(transaction.keysToDelete);
+    }
+    entitiesToSave.sort((a, b) -> a.getKey().compareTo(b.getKey()));
+    keysToDelete.sort(null);
+    List<ListenableFuture<?>> batches = new ArrayList<>();
+    for (List<Entity> batch : Lists.partition(entitiesToSave, MAX_BATCH_SIZE)) {
+      batches.add(executor.submit(() -> saveRaw(batch)));
+    }
+    for (List<com.google.appengine.api.datastore.Key> batch :
+        Lists.partition(keysToDelete, MAX_BATCH_SIZE)) {
+      batches.add(executor.submit(() -> deleteRaw(batch)));
+    }
+    getUnchecked(Futures.allAsList(batches));
+    return entitiesToSave.size() + keysToDelete.size();
   }
 
   private void saveRaw(List<Entity> entitiesToSave) {
@@ -179,13 +277,49 @@ public class RestoreCommitLogsAction implements Runnable {
         () -> ofy().saveWithoutBackup().entities(objectsToSave).now(), RuntimeException.class);
   }
 
-  private Result<?> deleteAsync(Set<Key<?>> keysToDelete) {
+  private void deleteRaw(List<com.google.appengine.api.datastore.Key> keysToDelete) {
     if (dryRun) {
       logger.atInfo().log("Would have deleted entities: %s", keysToDelete);
+      return;
     }
-    return dryRun || keysToDelete.isEmpty()
-        ? new ResultNow<Void>(null)
-        : ofy().deleteWithoutBackup().keys(keysToDelete);
+    retrier.callWithRetry(() -> datastoreService.delete(keysToDelete), RuntimeException.class);
   }
 
+  /** The contents of a diff file. */
+  private static class DiffFile {
+    final String name;
+    final CommitLogCheckpoint checkpoint;
+    final ImmutableList<Transaction> transactions;
+
+    DiffFile(String name, CommitLogCheckpoint checkpoint, ImmutableList<Transaction> transactions) {
+      this.name = name;
+      this.checkpoint = checkpoint;
+      this.transactions = transactions;
+    }
+  }
+
+  /** The writes of a transaction to restore. */
+  private static class Transaction {
+    final CommitLogManifest manifest;
+    final ImmutableList<Entity> entitiesToSave;
+    final ImmutableList<com.google.appengine.api.datastore.Key> keysToDelete;
+
+    Transaction(
+        CommitLogManifest manifest,
+        ImmutableList<Entity> entitiesToSave,
+        ImmutableList<com.google.appengine.api.datastore.Key> keysToDelete) {
+      this.manifest = manifest;
+      this.entitiesToSave = entitiesToSave;
+      this.keysToDelete = keysToDelete;
+    }
+
+    /** Returns the keys written by the transaction. */
+    Stream<com.google.appengine.api.datastore.Key> keys() {
+      return Stream.concat(entitiesToSave.stream().map(Entity::getKey), keysToDelete.stream());
+    }
+
+    int size() {
+      return entitiesToSave.size() + keysToDelete.size();
+    }
+  }
 }
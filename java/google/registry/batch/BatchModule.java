@@ -17,6 +17,7 @@ package google.registry.batch;
 import static google.registry.flows.async.AsyncFlowEnqueuer.PARAM_REQUESTED_TIME;
 import static google.registry.flows.async.AsyncFlowEnqueuer.PARAM_RESAVE_TIMES;
 import static google.registry.flows.async.AsyncFlowEnqueuer.PARAM_RESOURCE_KEY;
+import static google.registry.request.RequestParameters.extractBooleanParameter;
 import static google.registry.request.RequestParameters.extractOptionalBooleanParameter;
 import static google.registry.request.RequestParameters.extractOptionalIntParameter;
 import static google.registry.request.RequestParameters.extractOptionalParameter;
@@ -70,6 +71,16 @@ public class BatchModule {
     return extractOptionalBooleanParameter(req, "force");
   }
 
+  /**
+   * Whether async contact/host actions should map over every domain rather than only the domains
+   * found through the index on the referenced resource.
+   */
+  @Provides
+  @Parameter("fullScan")
+  static boolean provideFullScan(HttpServletRequest req) {
+    return extractBooleanParameter(req, "fullScan");
+  }
+
   @Provides
   @Parameter(PARAM_RESOURCE_KEY)
   static Key<ImmutableObject> provideResourceKey(HttpServletRequest req) {
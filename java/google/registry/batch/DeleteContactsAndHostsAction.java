@@ -19,6 +19,7 @@ import static com.google.appengine.api.taskqueue.QueueFactory.getQueue;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.math.IntMath.divide;
 import static com.googlecode.objectify.Key.getKind;
 import static google.registry.flows.ResourceFlowUtils.denyPendingTransfer;
@@ -40,6 +41,7 @@ import static google.registry.model.reporting.HistoryEntry.Type.CONTACT_DELETE_F
 import static google.registry.model.reporting.HistoryEntry.Type.HOST_DELETE;
 import static google.registry.model.reporting.HistoryEntry.Type.HOST_DELETE_FAILURE;
 import static google.registry.model.transfer.TransferStatus.SERVER_CANCELLED;
+import static google.registry.util.DateTimeUtils.earliestOf;
 import static google.registry.util.PipelineUtils.createJobPath;
 import static java.math.RoundingMode.CEILING;
 import static java.util.concurrent.TimeUnit.DAYS;
@@ -52,6 +54,7 @@ import com.google.appengine.api.taskqueue.LeaseOptions;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TransientFailureException;
+import com.google.appengine.tools.mapreduce.Input;
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
@@ -85,8 +88,10 @@ import google.registry.model.poll.PendingActionNotificationResponse.ContactPendi
 import google.registry.model.poll.PendingActionNotificationResponse.HostPendingActionNotificationResponse;
 import google.registry.model.poll.PollMessage;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.server.Lock;
 import google.registry.request.Action;
+import google.registry.request.Parameter;
 import google.registry.request.Response;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
@@ -107,8 +112,12 @@ import org.joda.time.Duration;
 
 /**
  * A mapreduce that processes batch asynchronous deletions of contact and host resources by mapping
- * over all domains and domain applications and checking for any references to the contacts/hosts in
+ * over domains and domain applications and checking for any references to the contacts/hosts in
  * pending deletion.
+ *
+ * <p>By default only the domains found through the Datastore index on the referenced contacts and
+ * hosts are mapped over. Passing the {@code fullScan} parameter instead maps over all domains and
+ * domain applications, which is slower but doesn't depend on the (eventually consistent) index.
  */
 @Action(
   path = "/_dr/task/deleteContactsAndHosts",
@@ -126,6 +135,7 @@ public class DeleteContactsAndHostsAction implements Runnable {
 
   @Inject AsyncFlowMetrics asyncFlowMetrics;
   @Inject Clock clock;
+  @Inject @Parameter("fullScan") boolean fullScan;
   @Inject MapreduceRunner mrRunner;
   @Inject @Named(QUEUE_ASYNC_DELETE) Queue queue;
   @Inject RequestStatusChecker requestStatusChecker;
@@ -232,13 +242,34 @@ public class DeleteContactsAndHostsAction implements Runnable {
                       ImmutableList.of(
                           // Add an extra shard that maps over a null domain. See the mapper code
                           // for why.
-                          new NullInput<>(), EppResourceInputs.createEntityInput(DomainBase.class)),
+                          new NullInput<>(), createDomainInput(deletionRequests)),
                       new UnlockerOutput<Void>(lock.get()))));
     } catch (Throwable t) {
       logRespondAndUnlock(SEVERE, "Error starting mapreduce to delete contacts/hosts.", lock);
     }
   }
 
+  /**
+   * Returns the input over the domains that might reference the resources being deleted.
+   *
+   * <p>The mapper re-checks every domain it receives, so it is safe for this to return extra
+   * domains. A referent that appears in several requests is looked up from the earliest of their
+   * last update times, which covers all of the requests.
+   */
+  private Input<DomainBase> createDomainInput(ImmutableList<DeletionRequest> deletionRequests) {
+    if (fullScan) {
+      return EppResourceInputs.createEntityInput(DomainBase.class);
+    }
+    ImmutableMap<Key<? extends EppResource>, DateTime> resourceKeys =
+        deletionRequests.stream()
+            .collect(
+                toImmutableMap(
+                    DeletionRequest::key,
+                    DeletionRequest::lastUpdateTime,
+                    (first, second) -> earliestOf(first, second)));
+    return EppResourceInputs.createLinkedDomainInput(resourceKeys, DomainBase.class);
+  }
+
   private void logRespondAndUnlock(Level level, String message, Optional<Lock> lock) {
     logger.at(level).log(message);
     response.setPayload(message);
@@ -246,7 +277,7 @@ public class DeleteContactsAndHostsAction implements Runnable {
   }
 
   /**
-   * A mapper that iterates over all {@link DomainBase} entities.
+   * A mapper that iterates over {@link DomainBase} entities.
    *
    * <p>It emits the target key and {@code true} for domains referencing the target resource. For
    * the special input of {@code null} it emits the target key and {@code false}.
@@ -410,6 +441,9 @@ public class DeleteContactsAndHostsAction implements Runnable {
         resourceToSave = resource.asBuilder().removeStatusValue(PENDING_DELETE).build();
       }
       ofy().save().<ImmutableObject>entities(resourceToSave, historyEntry, pollMessage);
+      if (HistoryEventSummary.isSummarized(historyEntry.getType())) {
+        ofy().save().entity(HistoryEventSummary.updatedWith(historyEntry));
+      }
       return DeletionResult.create(
           deleteAllowed ? Type.DELETED : Type.NOT_DELETED, pollMessageText);
     }
@@ -49,6 +49,7 @@ import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldType;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.Response;
@@ -270,7 +271,8 @@ public class DeleteProberDataAction implements Runnable {
           // Note that we don't bother handling grace periods, billing events, pending transfers,
           // poll messages, or auto-renews because these will all be hard-deleted the next time the
           // mapreduce runs anyway.
-          ofy().save().entities(deletedDomain, historyEntry);
+          ofy().save().entities(
+              deletedDomain, historyEntry, HistoryEventSummary.updatedWith(historyEntry));
           updateForeignKeyIndexDeletionTime(deletedDomain);
           dnsQueue.addDomainRefreshTask(deletedDomain.getFullyQualifiedDomainName());
         }
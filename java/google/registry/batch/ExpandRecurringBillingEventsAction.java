@@ -54,6 +54,7 @@ import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.Response;
@@ -221,12 +222,15 @@ public class ExpandRecurringBillingEventsAction implements Runnable {
           Set<HistoryEntry> historyEntries = historyEntriesBuilder.build();
           Set<OneTime> syntheticOneTimes = syntheticOneTimesBuilder.build();
           if (!isDryRun) {
-            ImmutableSet<ImmutableObject> entitiesToSave =
+            ImmutableSet.Builder<ImmutableObject> entitiesToSave =
                 new ImmutableSet.Builder<ImmutableObject>()
                     .addAll(historyEntries)
-                    .addAll(syntheticOneTimes)
-                    .build();
-            ofy().save().entities(entitiesToSave).now();
+                    .addAll(syntheticOneTimes);
+            if (!historyEntries.isEmpty()) {
+              entitiesToSave.add(
+                  HistoryEventSummary.updatedWith(ImmutableList.copyOf(historyEntries)));
+            }
+            ofy().save().entities(entitiesToSave.build()).now();
           }
           return syntheticOneTimes.size();
         });
@@ -0,0 +1,83 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.batch;
+
+import static google.registry.model.ofy.ObjectifyService.ofy;
+
+import com.google.common.flogger.FluentLogger;
+import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
+import google.registry.model.registrar.Registrar;
+import google.registry.request.Action;
+import google.registry.request.Response;
+import google.registry.request.auth.Auth;
+import google.registry.util.Clock;
+import javax.inject.Inject;
+import org.joda.time.DateTime;
+
+/**
+ * An action that recounts the pending {@link PollMessage}s of every registrar and overwrites its
+ * {@link PollMessageCounter} shards with the result.
+ *
+ * <p>The counters are kept up to date by the poll ack flow, but poll messages that are deleted by
+ * other means (e.g. prober data deletion or nomulus tool commands) make them drift. Recounting also
+ * moves the time of the last count forward, which keeps the number of messages that the poll flows
+ * have to query small. Messages are only counted through {@link PollMessageCounter#RECOUNT_LAG}
+ * before the recount, so that messages committed by flows that are still running are left to the
+ * poll flows' query.
+ */
+@Action(
+  path = "/_dr/task/recountPollMessages",
+  auth = Auth.AUTH_INTERNAL_ONLY
+)
+public class RecountPollMessagesAction implements Runnable {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  @Inject Clock clock;
+  @Inject Response response;
+  @Inject RecountPollMessagesAction() {}
+
+  @Override
+  public void run() {
+    int registrars = 0;
+    for (Registrar registrar : Registrar.loadAll()) {
+      recount(registrar.getClientId());
+      registrars++;
+    }
+    String message = String.format("Recounted the poll messages of %d registrars.", registrars);
+    logger.atInfo().log(message);
+    response.setPayload(message);
+  }
+
+  private void recount(String clientId) {
+    DateTime countedThrough = clock.nowUtc().minus(PollMessageCounter.RECOUNT_LAG);
+    int count =
+        ofy().load()
+            .type(PollMessage.class)
+            .filter("clientId", clientId)
+            .filter("eventTime <=", countedThrough.toDate())
+            .count();
+    // Messages that are acked between the query and the transaction are still included in the
+    // count, which is off by that many until the next recount.
+    ofy().transact(
+        () ->
+            ofy()
+                .saveWithoutBackup()
+                .entities(PollMessageCounter.create(clientId, count, countedThrough)));
+    logger.atInfo().log(
+        "Registrar %s has %d poll messages through %s.", clientId, count, countedThrough);
+  }
+}
@@ -18,14 +18,17 @@ import static com.google.appengine.api.taskqueue.QueueConstants.maxLeaseCount;
 import static com.google.appengine.api.taskqueue.QueueFactory.getQueue;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.flows.async.AsyncFlowEnqueuer.PARAM_HOST_KEY;
 import static google.registry.flows.async.AsyncFlowEnqueuer.PARAM_REQUESTED_TIME;
 import static google.registry.flows.async.AsyncFlowEnqueuer.QUEUE_ASYNC_HOST_RENAME;
 import static google.registry.flows.async.AsyncFlowMetrics.OperationType.DNS_REFRESH;
 import static google.registry.mapreduce.inputs.EppResourceInputs.createEntityInput;
+import static google.registry.mapreduce.inputs.EppResourceInputs.createLinkedDomainInput;
 import static google.registry.model.EppResourceUtils.isActive;
 import static google.registry.model.EppResourceUtils.isDeleted;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.DateTimeUtils.earliestOf;
 import static google.registry.util.DateTimeUtils.latestOf;
 import static google.registry.util.PipelineUtils.createJobPath;
 import static java.util.concurrent.TimeUnit.DAYS;
@@ -38,6 +41,7 @@ import com.google.appengine.api.taskqueue.LeaseOptions;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.TaskHandle;
 import com.google.appengine.api.taskqueue.TransientFailureException;
+import com.google.appengine.tools.mapreduce.Input;
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
@@ -51,10 +55,12 @@ import google.registry.flows.async.AsyncFlowMetrics;
 import google.registry.flows.async.AsyncFlowMetrics.OperationResult;
 import google.registry.mapreduce.MapreduceRunner;
 import google.registry.mapreduce.inputs.NullInput;
+import google.registry.model.EppResource;
 import google.registry.model.domain.DomainResource;
 import google.registry.model.host.HostResource;
 import google.registry.model.server.Lock;
 import google.registry.request.Action;
+import google.registry.request.Parameter;
 import google.registry.request.Response;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
@@ -73,7 +79,12 @@ import javax.inject.Named;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 
-/** Performs batched DNS refreshes for applicable domains following a host rename. */
+/**
+ * Performs batched DNS refreshes for applicable domains following a host rename.
+ *
+ * <p>By default only the domains found through the Datastore index on the renamed hosts are mapped
+ * over. Passing the {@code fullScan} parameter instead maps over all domains.
+ */
 @Action(
   path = "/_dr/task/refreshDnsOnHostRename",
   auth = Auth.AUTH_INTERNAL_ONLY
@@ -85,6 +96,7 @@ public class RefreshDnsOnHostRenameAction implements Runnable {
 
   @Inject AsyncFlowMetrics asyncFlowMetrics;
   @Inject Clock clock;
+  @Inject @Parameter("fullScan") boolean fullScan;
   @Inject MapreduceRunner mrRunner;
   @Inject @Named(QUEUE_ASYNC_HOST_RENAME) Queue pullQueue;
   @Inject RequestStatusChecker requestStatusChecker;
@@ -170,21 +182,41 @@ public class RefreshDnsOnHostRenameAction implements Runnable {
                       new RefreshDnsOnHostRenameMapper(refreshRequests, retrier),
                       new RefreshDnsOnHostRenameReducer(refreshRequests, lock.get(), retrier),
                       // Add an extra NullInput so that the reducer always fires exactly once.
-                      ImmutableList.of(
-                          new NullInput<>(), createEntityInput(DomainResource.class)))));
+                      ImmutableList.of(new NullInput<>(), createDomainInput(refreshRequests)))));
     } catch (Throwable t) {
       logRespondAndUnlock(
           SEVERE, "Error starting mapreduce to refresh DNS for renamed hosts.", lock);
     }
   }
 
+  /** Returns the input over the domains that might reference the renamed hosts. */
+  private Input<DomainResource> createDomainInput(
+      ImmutableList<DnsRefreshRequest> refreshRequests) {
+    if (fullScan) {
+      return createEntityInput(DomainResource.class);
+    }
+    ImmutableMap<Key<? extends EppResource>, DateTime> hostKeys =
+        refreshRequests.stream()
+            .collect(
+                toImmutableMap(
+                    DnsRefreshRequest::hostKey,
+                    DnsRefreshRequest::lastUpdateTime,
+                    (first, second) -> earliestOf(first, second)));
+    return createLinkedDomainInput(hostKeys, DomainResource.class);
+  }
+
   private void logRespondAndUnlock(Level level, String message, Optional<Lock> lock) {
     logger.at(level).log(message);
     response.setPayload(message);
     lock.ifPresent(Lock::release);
   }
 
-  /** Map over domains and refresh the DNS of those that reference the renamed hosts. */
+  /**
+   * Map over domains and refresh the DNS of those that reference the renamed hosts.
+   *
+   * <p>The domains passed in may not reference any of the renamed hosts (e.g. when mapping over all
+   * domains, or when the index is stale), so each one is checked before it is refreshed.
+   */
   public static class RefreshDnsOnHostRenameMapper
       extends Mapper<DomainResource, Boolean, Boolean> {
 
@@ -251,6 +251,18 @@ public final class RegistryConfig {
       return 100;
     }
 
+    /**
+     * Number of threads used to scan commit log buckets and to load the mutations of a batch of
+     * transactions concurrently when exporting a commit log diff. One means no concurrency.
+     *
+     * @see google.registry.backup.ExportCommitLogDiffAction
+     */
+    @Provides
+    @Config("commitLogDiffExportParallelism")
+    public static int provideCommitLogDiffExportParallelism() {
+      return 10;
+    }
+
     /**
      * Returns the Google Cloud Storage bucket for staging BRDA escrow deposits.
      *
@@ -586,6 +598,17 @@ public final class RegistryConfig {
       return config.registryPolicy.requireSslCertificates;
     }
 
+    /**
+     * Returns whether EPP responses sent over the TLS endpoint are marshalled without indentation.
+     *
+     * @see google.registry.flows.EppRequestHandler
+     */
+    @Provides
+    @Config("compactEppResponses")
+    public static boolean provideCompactEppResponses(RegistryConfigSettings config) {
+      return config.registryPolicy.compactEppResponses;
+    }
+
     /**
      * Returns the default job zone to run Apache Beam (Cloud Dataflow) jobs in.
      *
@@ -837,6 +860,30 @@ public final class RegistryConfig {
       return URI.create(config.rde.uploadUrl);
     }
 
+    /**
+     * Whether RDE uploads encode the deposit in a pipeline of threads, one each for compression,
+     * encryption and signing.
+     *
+     * @see google.registry.rde.RydeEncoder.Builder#setPipelineThreadFactory
+     */
+    @Provides
+    @Config("rdePipelinedUpload")
+    public static boolean provideRdePipelinedUpload(RegistryConfigSettings config) {
+      return config.rde.pipelinedUpload;
+    }
+
+    /**
+     * Number of parts each escrow deposit is split into, each of which is staged by a reducer of
+     * its own.
+     *
+     * @see google.registry.rde.RdeStagingAction
+     */
+    @Provides
+    @Config("rdeDepositParts")
+    public static int provideRdeDepositParts(RegistryConfigSettings config) {
+      return config.rde.depositParts;
+    }
+
     /**
      * Whether or not the registrar console is enabled.
      *
@@ -959,6 +1006,31 @@ public final class RegistryConfig {
       return Duration.standardDays(1);
     }
 
+    /**
+     * Amount of time responses to WHOIS and RDAP domain lookups are cached in memory, so that
+     * bursts of identical queries are answered with a single lookup. Zero disables the cache.
+     *
+     * @see google.registry.whois.WhoisResponseCache
+     * @see google.registry.rdap.RdapResponseCache
+     */
+    @Provides
+    @Config("lookupResponseCachingDuration")
+    public static Duration provideLookupResponseCachingDuration(RegistryConfigSettings config) {
+      return Duration.standardSeconds(config.caching.lookupResponseCachingSeconds);
+    }
+
+    /**
+     * Maximum number of responses to WHOIS and RDAP domain lookups cached in memory, per cache.
+     *
+     * @see google.registry.whois.WhoisResponseCache
+     * @see google.registry.rdap.RdapResponseCache
+     */
+    @Provides
+    @Config("lookupResponseMaxCachedEntries")
+    public static int provideLookupResponseMaxCachedEntries(RegistryConfigSettings config) {
+      return config.caching.lookupResponseMaxCachedEntries;
+    }
+
     /**
      * Maximum number of results to return for an RDAP search query
      *
@@ -1119,6 +1191,18 @@ public final class RegistryConfig {
       return config.keyring.kms.projectId;
     }
 
+    /**
+     * Amount of time that secrets decrypted by Cloud KMS are cached in memory. Zero disables the
+     * cache.
+     *
+     * @see google.registry.keyring.kms.KmsKeyring
+     */
+    @Provides
+    @Config("kmsSecretCachingDuration")
+    public static Duration provideKmsSecretCachingDuration(RegistryConfigSettings config) {
+      return Duration.standardSeconds(config.keyring.kms.secretCachingSeconds);
+    }
+
     @Provides
     @Config("customLogicFactoryClass")
     public static String provideCustomLogicFactoryClass(RegistryConfigSettings config) {
@@ -94,6 +94,7 @@ public class RegistryConfigSettings {
     public String rdapTosStaticUrl;
     public String spec11EmailBodyTemplate;
     public boolean requireSslCertificates;
+    public boolean compactEppResponses;
   }
 
   /** Configuration for Cloud Datastore. */
@@ -123,6 +124,8 @@ public class RegistryConfigSettings {
     public boolean eppResourceCachingEnabled;
     public int eppResourceCachingSeconds;
     public int eppResourceMaxCachedEntries;
+    public int lookupResponseCachingSeconds;
+    public int lookupResponseMaxCachedEntries;
   }
 
   /** Configuration for ICANN monthly reporting. */
@@ -142,6 +145,8 @@ public class RegistryConfigSettings {
     public String reportUrlPrefix;
     public String uploadUrl;
     public String sshIdentityEmailAddress;
+    public boolean pipelinedUpload;
+    public int depositParts;
   }
 
   /** Configuration for the web-based registrar console. */
@@ -179,6 +184,7 @@ public class RegistryConfigSettings {
   public static class Kms {
     public String keyringName;
     public String projectId;
+    public int secretCachingSeconds;
   }
 
   /** Configuration options for the registry tool. */
@@ -0,0 +1,142 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import google.registry.util.Clock;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * Idle TCP connections to DNS servers, kept open across requests so that each batch of UPDATE
+ * messages doesn't pay for a new connection (and a new name resolution of the server).
+ *
+ * <p>App Engine closes sockets that have been idle for two minutes, and the server may close them
+ * sooner, so connections that have been idle for longer than {@link #MAX_IDLE_TIME} are discarded
+ * and a connection taken from the pool may still turn out to be dead. {@link DnsMessageTransport}
+ * retries on a new connection in that case.
+ */
+@Singleton
+public class DnsConnectionPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** How long a connection is kept in the pool before it is closed. */
+  @VisibleForTesting static final Duration MAX_IDLE_TIME = Duration.standardMinutes(1);
+
+  /** How long the resolved address of a DNS server is used before it is resolved again. */
+  @VisibleForTesting static final Duration MAX_ADDRESS_AGE = Duration.standardMinutes(5);
+
+  /** Maximum number of idle connections kept per server. */
+  private static final int MAX_IDLE_CONNECTIONS_PER_ADDRESS = 8;
+
+  private final Clock clock;
+  private final Map<String, TimestampedAddress> addresses = new HashMap<>();
+  private final Map<InetAddress, Deque<IdleConnection>> idleConnections = new HashMap<>();
+
+  @Inject
+  public DnsConnectionPool(Clock clock) {
+    this.clock = clock;
+  }
+
+  /** Returns the address of the given host, resolving it only if the cached one is too old. */
+  synchronized InetAddress resolve(String host) throws UnknownHostException {
+    DateTime now = clock.nowUtc();
+    TimestampedAddress address = addresses.get(host);
+    if (address == null || now.isAfter(address.resolutionTime.plus(MAX_ADDRESS_AGE))) {
+      address = new TimestampedAddress(InetAddress.getByName(host), now);
+      addresses.put(host, address);
+    }
+    return address.address;
+  }
+
+  /** Forgets the resolved address of the given host, e.g. because it can't be connected to. */
+  synchronized void invalidate(String host) {
+    addresses.remove(host);
+  }
+
+  /**
+   * Takes the most recently used idle connection to the given address out of the pool.
+   *
+   * @return the connection, or null if there is no usable idle connection
+   */
+  @Nullable
+  synchronized Socket poll(InetAddress address) {
+    Deque<IdleConnection> connections = idleConnections.get(address);
+    if (connections == null) {
+      return null;
+    }
+    DateTime now = clock.nowUtc();
+    IdleConnection connection;
+    while ((connection = connections.pollFirst()) != null) {
+      if (!connection.socket.isClosed()
+          && !now.isAfter(connection.idleSince.plus(MAX_IDLE_TIME))) {
+        return connection.socket;
+      }
+      close(connection.socket);
+    }
+    return null;
+  }
+
+  /** Returns a connection that is done with its exchange to the pool. */
+  synchronized void release(InetAddress address, Socket socket) {
+    Deque<IdleConnection> connections =
+        idleConnections.computeIfAbsent(address, unused -> new ArrayDeque<>());
+    connections.addFirst(new IdleConnection(socket, clock.nowUtc()));
+    while (connections.size() > MAX_IDLE_CONNECTIONS_PER_ADDRESS) {
+      close(connections.pollLast().socket);
+    }
+  }
+
+  static void close(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      logger.atWarning().withCause(e).log("Failed to close DNS connection %s", socket);
+    }
+  }
+
+  private static class TimestampedAddress {
+    final InetAddress address;
+    final DateTime resolutionTime;
+
+    TimestampedAddress(InetAddress address, DateTime resolutionTime) {
+      this.address = address;
+      this.resolutionTime = resolutionTime;
+    }
+  }
+
+  private static class IdleConnection {
+    final Socket socket;
+    final DateTime idleSince;
+
+    IdleConnection(Socket socket, DateTime idleSince) {
+      this.socket = socket;
+      this.idleSince = idleSince;
+    }
+  }
+}
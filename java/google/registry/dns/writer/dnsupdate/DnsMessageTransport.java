@@ -18,15 +18,21 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Verify.verify;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.flogger.FluentLogger;
 import com.google.common.primitives.Ints;
 import google.registry.config.RegistryConfig.Config;
+import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.inject.Inject;
 import javax.net.SocketFactory;
 import org.joda.time.Duration;
@@ -38,16 +44,32 @@ import org.xbill.DNS.Opcode;
  * s and the message framing defined in <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>.
  * We would like use the dnsjava library's {@link org.xbill.DNS.SimpleResolver} class for this, but
  * it requires {@link java.nio.channels.SocketChannel} which is not supported on AppEngine.
+ *
+ * <p>Connections are taken from, and returned to, a {@link DnsConnectionPool} shared by all
+ * transports, so they stay open across requests. Several messages can be sent at once with {@link
+ * #sendAll}, in which case they are pipelined over a single connection and the responses (which
+ * the server may send in any order) are matched to their queries by message ID.
  */
 public class DnsMessageTransport {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /**
    * Size of message length field for DNS TCP transport.
    *
    * @see <a href="https://tools.ietf.org/html/rfc1035">RFC 1035</a>
    */
   static final int MESSAGE_LENGTH_FIELD_BYTES = 2;
-  private static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
+  static final int MESSAGE_MAXIMUM_LENGTH = (1 << (MESSAGE_LENGTH_FIELD_BYTES * 8)) - 1;
+
+  /**
+   * Maximum number of messages sent without having received their responses.
+   *
+   * <p>We only write while the server isn't blocked writing responses to us, since we don't read
+   * at the same time. Responses to UPDATE messages are small, so this is well within the socket
+   * buffers.
+   */
+  @VisibleForTesting static final int MAX_MESSAGES_IN_FLIGHT = 16;
 
   /**
    * The standard DNS port number.
@@ -57,6 +79,7 @@ public class DnsMessageTransport {
   @VisibleForTesting static final int DNS_PORT = 53;
 
   private final SocketFactory factory;
+  private final DnsConnectionPool connectionPool;
   private final String updateHost;
   private final int updateTimeout;
 
@@ -64,15 +87,18 @@ public class DnsMessageTransport {
    * Class constructor.
    *
    * @param factory a factory for TCP sockets
+   * @param connectionPool the pool of idle connections
    * @param updateHost host name of the DNS server
    * @param updateTimeout update I/O timeout
    */
   @Inject
   public DnsMessageTransport(
       SocketFactory factory,
+      DnsConnectionPool connectionPool,
       @Config("dnsUpdateHost") String updateHost,
       @Config("dnsUpdateTimeout") Duration updateTimeout) {
     this.factory = factory;
+    this.connectionPool = connectionPool;
     this.updateHost = updateHost;
     this.updateTimeout = Ints.checkedCast(updateTimeout.getMillis());
   }
@@ -87,21 +113,99 @@ public class DnsMessageTransport {
    * @throws IllegalArgumentException if the query is too large to be sent (> 65535 bytes)
    */
   public Message send(Message query) throws IOException {
-    try (Socket socket = factory.createSocket(InetAddress.getByName(updateHost), DNS_PORT)) {
+    return sendAll(ImmutableList.of(query)).get(0);
+  }
+
+  /**
+   * Sends several DNS "query" messages over the same connection, without waiting for the response
+   * to each one before sending the next, and returns the responses in the order of the queries.
+   * The responses are checked for matching ID and opcode.
+   *
+   * @param queries the messages to send, which must have distinct IDs
+   * @return the responses received from the server
+   * @throws IOException if the Socket input/output streams throws one
+   * @throws IllegalArgumentException if a query is too large to be sent (> 65535 bytes), or if two
+   *     queries have the same ID
+   */
+  public ImmutableList<Message> sendAll(List<? extends Message> queries) throws IOException {
+    Map<Integer, Message> queriesById = new LinkedHashMap<>();
+    ImmutableList.Builder<byte[]> framedQueries = new ImmutableList.Builder<>();
+    for (Message query : queries) {
+      int id = query.getHeader().getID();
+      checkArgument(queriesById.put(id, query) == null, "Duplicate DNS message ID %s", id);
+      framedQueries.add(frameMessage(query));
+    }
+    InetAddress address = connectionPool.resolve(updateHost);
+    Socket socket = connectionPool.poll(address);
+    if (socket != null) {
+      try {
+        return exchange(address, socket, queriesById, framedQueries.build());
+      } catch (IOException e) {
+        // The server (or App Engine) may have closed the connection while it was idle. Since the
+        // updates are idempotent, it's safe to send them all again.
+        logger.atInfo().withCause(e).log(
+            "Pooled connection to %s failed, retrying on a new connection", address);
+      }
+    }
+    try {
+      socket = factory.createSocket(address, DNS_PORT);
+    } catch (IOException e) {
+      connectionPool.invalidate(updateHost);
+      throw e;
+    }
+    return exchange(address, socket, queriesById, framedQueries.build());
+  }
+
+  /**
+   * Sends the queries over the given socket and reads their responses.
+   *
+   * <p>The socket is returned to the pool if the exchange completes, and closed otherwise.
+   */
+  private ImmutableList<Message> exchange(
+      InetAddress address,
+      Socket socket,
+      Map<Integer, Message> queriesById,
+      ImmutableList<byte[]> framedQueries)
+      throws IOException {
+    boolean completed = false;
+    try {
       socket.setSoTimeout(updateTimeout);
-      writeMessage(socket.getOutputStream(), query);
-      Message response = readMessage(socket.getInputStream());
-      checkValidResponse(query, response);
-      return response;
+      OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream());
+      DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+      Map<Integer, Message> pendingQueries = new LinkedHashMap<>(queriesById);
+      Map<Integer, Message> responsesById = new LinkedHashMap<>();
+      int sent = 0;
+      while (responsesById.size() < framedQueries.size()) {
+        while (sent < framedQueries.size()
+            && sent - responsesById.size() < MAX_MESSAGES_IN_FLIGHT) {
+          outputStream.write(framedQueries.get(sent++));
+        }
+        outputStream.flush();
+        Message response = readMessage(inputStream);
+        int id = response.getHeader().getID();
+        Message query = pendingQueries.remove(id);
+        verify(
+            query != null,
+            "response ID %s does not match query ID %s",
+            id,
+            Joiner.on(", ").join(pendingQueries.keySet()));
+        checkValidResponse(query, response);
+        responsesById.put(id, response);
+      }
+      completed = true;
+      ImmutableList.Builder<Message> responses = new ImmutableList.Builder<>();
+      queriesById.keySet().forEach(id -> responses.add(responsesById.get(id)));
+      return responses.build();
+    } finally {
+      if (completed) {
+        connectionPool.release(address, socket);
+      } else {
+        DnsConnectionPool.close(socket);
+      }
     }
   }
 
   private void checkValidResponse(Message query, Message response) {
-    verify(
-        response.getHeader().getID() == query.getHeader().getID(),
-        "response ID %s does not match query ID %s",
-        response.getHeader().getID(),
-        query.getHeader().getID());
     verify(
         response.getHeader().getOpcode() == query.getHeader().getOpcode(),
         "response opcode '%s' does not match query opcode '%s'",
@@ -109,7 +213,7 @@ public class DnsMessageTransport {
         Opcode.string(query.getHeader().getOpcode()));
   }
 
-  private void writeMessage(OutputStream outputStream, Message message) throws IOException {
+  private byte[] frameMessage(Message message) {
     byte[] messageData = message.toWire();
     checkArgument(
         messageData.length <= MESSAGE_MAXIMUM_LENGTH,
@@ -119,11 +223,10 @@ public class DnsMessageTransport {
     ByteBuffer buffer = ByteBuffer.allocate(messageData.length + MESSAGE_LENGTH_FIELD_BYTES);
     buffer.putShort((short) messageData.length);
     buffer.put(messageData);
-    outputStream.write(buffer.array());
+    return buffer.array();
   }
 
-  private Message readMessage(InputStream inputStream) throws IOException {
-    DataInputStream stream = new DataInputStream(inputStream);
+  private Message readMessage(DataInputStream stream) throws IOException {
     int length = stream.readUnsignedShort();
     byte[] messageData = new byte[length];
     stream.readFully(messageData);
@@ -20,6 +20,7 @@ import static com.google.common.collect.Sets.intersection;
 import static com.google.common.collect.Sets.union;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
@@ -36,6 +37,8 @@ import java.io.IOException;
 import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.time.Duration;
@@ -48,6 +51,8 @@ import org.xbill.DNS.NSRecord;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.RRset;
 import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
 import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.Type;
 import org.xbill.DNS.Update;
@@ -58,9 +63,11 @@ import org.xbill.DNS.Update;
  * domain-registry to a (capable) external DNS server, sometimes called a "hidden master". DNS
  * UPDATE messages are sent via a supplied "transport" class.
  *
- * On call to {@link #commit()}, a single UPDATE message is created containing the records required
- * to "synchronize" the DNS with the current (at the time of processing) state of the registry, for
- * the supplied domain/host.
+ * On call to {@link #commit()}, UPDATE messages are sent containing the records required to
+ * "synchronize" the DNS with the current (at the time of processing) state of the registry, for
+ * the supplied domains/hosts. This is a single UPDATE message unless it would be larger than the
+ * maximum DNS message size, in which case the records are split into several messages (without
+ * ever splitting the records of one name) that are pipelined over the same connection.
  *
  * <p>The general strategy of the publish methods is to delete <em>all</em> resource records of any
  * <em>type</em> that match the exact domain/host name supplied. And then for create/update cases,
@@ -71,10 +78,11 @@ import org.xbill.DNS.Update;
  * <p>Only NS, DS, A, and AAAA records are published, and in particular no DNSSEC signing is done
  * assuming that this will be done by a third party DNS provider.
  *
- * <p>Each commit call is treated as an atomic update to the DNS. If a commit fails an exception
- * is thrown. The SOA record serial number is implicitly incremented by the server on each UPDATE
- * message, as required by RFC 2136. Care must be taken to make sure the SOA serial number does not
- * go backwards if the entire TLD (zone) is "reset" to empty and republished.
+ * <p>Each UPDATE message is an atomic update to the DNS, so the records of each domain are always
+ * updated atomically. If a commit fails an exception is thrown. The SOA record serial number is
+ * implicitly incremented by the server on each UPDATE message, as required by RFC 2136. Care must
+ * be taken to make sure the SOA serial number does not go backwards if the entire TLD (zone) is
+ * "reset" to empty and republished.
  */
 public class DnsUpdateWriter extends BaseDnsWriter {
 
@@ -89,9 +97,23 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private final Duration dnsDefaultDsTtl;
   private final DnsMessageTransport transport;
   private final Clock clock;
-  private final Update update;
   private final String zoneName;
 
+  /** Wire length of an UPDATE message for the zone with no records. */
+  private final int emptyUpdateLength;
+
+  /** UPDATE messages that are already full. */
+  private final List<Update> fullUpdates = new ArrayList<>();
+
+  /** The UPDATE message that records are currently added to. */
+  private Update update;
+
+  /** Upper bound of the wire length of {@link #update}. */
+  private int updateLength;
+
+  /** Maximum wire length of an UPDATE message. */
+  @VisibleForTesting int maxUpdateLength = DnsMessageTransport.MESSAGE_MAXIMUM_LENGTH;
+
   /**
    * Class constructor.
    *
@@ -111,6 +133,8 @@ public class DnsUpdateWriter extends BaseDnsWriter {
       Clock clock) {
     this.zoneName = zoneName;
     this.update = new Update(toAbsoluteName(zoneName));
+    this.emptyUpdateLength = update.toWire().length;
+    this.updateLength = emptyUpdateLength;
     this.dnsDefaultATtl = dnsDefaultATtl;
     this.dnsDefaultNsTtl = dnsDefaultNsTtl;
     this.dnsDefaultDsTtl = dnsDefaultDsTtl;
@@ -129,18 +153,41 @@ public class DnsUpdateWriter extends BaseDnsWriter {
   private void publishDomain(String domainName, String requestingHostName) {
     Optional<DomainResource> domainOptional =
         loadByForeignKey(DomainResource.class, domainName, clock.nowUtc());
-    update.delete(toAbsoluteName(domainName), Type.ANY);
+    Update domainUpdate = new Update(toAbsoluteName(zoneName));
+    domainUpdate.delete(toAbsoluteName(domainName), Type.ANY);
     // If the domain is now deleted, then don't update DNS for it.
     if (domainOptional.isPresent()) {
       DomainResource domain = domainOptional.get();
       // As long as the domain exists, orphan glues should be cleaned.
-      deleteSubordinateHostAddressSet(domain, requestingHostName, update);
+      deleteSubordinateHostAddressSet(domain, requestingHostName, domainUpdate);
       if (domain.shouldPublishToDns()) {
-        addInBailiwickNameServerSet(domain, update);
-        update.add(makeNameServerSet(domain));
-        update.add(makeDelegationSignerSet(domain));
+        addInBailiwickNameServerSet(domain, domainUpdate);
+        domainUpdate.add(makeNameServerSet(domain));
+        domainUpdate.add(makeDelegationSignerSet(domain));
       }
     }
+    addToBatch(domainUpdate);
+  }
+
+  /**
+   * Adds the records of an UPDATE message for a single domain to the batch, starting a new UPDATE
+   * message if they don't fit in the current one.
+   *
+   * <p>The wire length of the records is estimated as the length they add to an empty UPDATE
+   * message. Since name compression can only make them shorter in a message with more records, the
+   * estimate is an upper bound.
+   */
+  private void addToBatch(Update domainUpdate) {
+    int recordsLength = domainUpdate.toWire().length - emptyUpdateLength;
+    if (updateLength + recordsLength > maxUpdateLength && updateLength > emptyUpdateLength) {
+      fullUpdates.add(update);
+      update = new Update(toAbsoluteName(zoneName));
+      updateLength = emptyUpdateLength;
+    }
+    for (Record record : domainUpdate.getSectionArray(Section.UPDATE)) {
+      update.addRecord(record, Section.UPDATE);
+    }
+    updateLength += recordsLength;
   }
 
   @Override
@@ -172,13 +219,27 @@ public class DnsUpdateWriter extends BaseDnsWriter {
 
   @Override
   protected void commitUnchecked() {
+    ImmutableList<Update> updates =
+        new ImmutableList.Builder<Update>().addAll(fullUpdates).add(update).build();
     try {
-      Message response = transport.send(update);
-      verify(
-          response.getRcode() == Rcode.NOERROR,
-          "DNS server failed domain update for '%s' rcode: %s",
-          zoneName,
-          Rcode.string(response.getRcode()));
+      ImmutableList<Message> responses;
+      if (updates.size() == 1) {
+        responses = ImmutableList.of(transport.send(update));
+      } else {
+        // Messages pipelined over the same connection need distinct IDs to match the responses.
+        int firstId = update.getHeader().getID();
+        for (int i = 0; i < updates.size(); i++) {
+          updates.get(i).getHeader().setID((firstId + i) & 0xFFFF);
+        }
+        responses = transport.sendAll(updates);
+      }
+      for (Message response : responses) {
+        verify(
+            response.getRcode() == Rcode.NOERROR,
+            "DNS server failed domain update for '%s' rcode: %s",
+            zoneName,
+            Rcode.string(response.getRcode()));
+      }
     } catch (IOException e) {
       throw new RuntimeException("publishDomain failed for zone: " + zoneName, e);
     }
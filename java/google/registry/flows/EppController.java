@@ -25,6 +25,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.flogger.FluentLogger;
+import google.registry.flows.EppXmlSanitizer.SanitizedXmlCapture;
 import google.registry.flows.FlowModule.EppExceptionInProviderException;
 import google.registry.model.eppcommon.Trid;
 import google.registry.model.eppinput.EppInput;
@@ -64,8 +65,10 @@ public final class EppController {
     eppMetricBuilder.setClientId(Optional.ofNullable(sessionMetadata.getClientId()));
     try {
       EppInput eppInput;
+      // Capture the sanitized XML for the flow's log line while parsing, so it's only parsed once.
+      SanitizedXmlCapture sanitizedXmlCapture = new SanitizedXmlCapture(inputXmlBytes);
       try {
-        eppInput = unmarshalEpp(EppInput.class, inputXmlBytes);
+        eppInput = unmarshalEpp(EppInput.class, inputXmlBytes, sanitizedXmlCapture);
       } catch (EppException e) {
         // Log the unmarshalling error, with the raw bytes (in base64) to help with debugging.
         logger.atInfo().withCause(e).log(
@@ -107,6 +110,7 @@ public final class EppController {
               .setIsDryRun(isDryRun)
               .setIsSuperuser(isSuperuser)
               .setInputXmlBytes(inputXmlBytes)
+              .setSanitizedInputXml(sanitizedXmlCapture::getSanitizedXml)
               .setEppInput(eppInput)
               .build())
           .build());
@@ -14,6 +14,7 @@
 
 package google.registry.flows;
 
+import static com.google.common.flogger.LazyArgs.lazy;
 import static google.registry.flows.FlowUtils.marshalWithLenientRetry;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_AND_CLOSE;
 import static google.registry.xml.XmlTransformer.prettyPrint;
@@ -23,8 +24,10 @@ import static javax.servlet.http.HttpServletResponse.SC_OK;
 
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.MediaType;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.model.eppoutput.EppOutput;
 import google.registry.request.Response;
+import google.registry.xml.OutputFormat;
 import javax.inject.Inject;
 
 /** Handle an EPP request and response. */
@@ -37,6 +40,7 @@ public class EppRequestHandler {
 
   @Inject EppController eppController;
   @Inject Response response;
+  @Inject @Config("compactEppResponses") boolean compactEppResponses;
 
   @Inject
   EppRequestHandler() {}
@@ -54,10 +58,18 @@ public class EppRequestHandler {
           eppController.handleEppCommand(
               sessionMetadata, credentials, eppRequestSource, isDryRun, isSuperuser, inputXmlBytes);
       response.setContentType(APPLICATION_EPP_XML);
-      byte[] eppResponseXmlBytes = marshalWithLenientRetry(eppOutput);
+      // Responses to registrars' EPP clients are only read by machines, so the indentation can be
+      // skipped if so configured. The response is pretty printed for the logs below either way.
+      byte[] eppResponseXmlBytes =
+          marshalWithLenientRetry(
+              eppOutput,
+              compactEppResponses && eppRequestSource == EppRequestSource.TLS
+                  ? OutputFormat.COMPACT
+                  : OutputFormat.FORMATTED);
       response.setPayload(new String(eppResponseXmlBytes, UTF_8));
       logger.atInfo().log(
-          "EPP response: %s", prettyPrint(EppXmlSanitizer.sanitizeEppXml(eppResponseXmlBytes)));
+          "EPP response: %s",
+          lazy(() -> prettyPrint(EppXmlSanitizer.sanitizeEppXml(eppResponseXmlBytes))));
       // Note that we always return 200 (OK) even if the EppController returns an error response.
       // This is because returning a non-OK HTTP status code will cause the proxy server to
       // silently close the connection without returning any data. The only time we will ever return
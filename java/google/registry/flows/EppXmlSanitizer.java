@@ -15,6 +15,8 @@
 package google.registry.flows;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static com.google.common.base.Strings.nullToEmpty;
 
 import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableSet;
@@ -23,21 +25,24 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventReader;
 import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Characters;
-import javax.xml.stream.events.StartDocument;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.util.StreamReaderDelegate;
 
 /**
  * Sanitizes sensitive data in incoming/outgoing EPP XML messages.
@@ -86,60 +91,252 @@ public class EppXmlSanitizer {
    * <p>Also, an empty element will be formatted as {@code <tag></tag>} instead of {@code <tag/>}.
    */
   public static String sanitizeEppXml(byte[] inputXmlBytes) {
+    if (inputXmlBytes.length == 0) {
+      return "";
+    }
     try {
-      // Keep exactly one newline at end of sanitized string.
-      return CharMatcher.whitespace().trimTrailingFrom(sanitizeAndEncode(inputXmlBytes)) + "\n";
+      SanitizingXmlStreamReader reader =
+          new SanitizingXmlStreamReader(
+              XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(inputXmlBytes)));
+      while (reader.hasNext()) {
+        reader.next();
+      }
+      return reader.getSanitizedXml();
     } catch (XMLStreamException | UnsupportedEncodingException e) {
       logger.atWarning().withCause(e).log("Failed to sanitize EPP XML message.");
       return Base64.getMimeEncoder().encodeToString(inputXmlBytes);
     }
   }
 
-  private static String sanitizeAndEncode(byte[] inputXmlBytes)
-      throws XMLStreamException, UnsupportedEncodingException {
-    XMLEventReader xmlEventReader =
-        XML_INPUT_FACTORY.createXMLEventReader(new ByteArrayInputStream(inputXmlBytes));
+  /**
+   * Captures a sanitized copy of an EPP XML message while it is parsed for some other purpose.
+   *
+   * <p>This is meant to be passed to {@link
+   * google.registry.model.eppcommon.EppXmlTransformer#unmarshal(Class, byte[], UnaryOperator)}, so
+   * that the message is only parsed once to both unmarshal it and produce its sanitized form for
+   * logging. Each instance can only be used for a single message.
+   */
+  public static class SanitizedXmlCapture implements UnaryOperator<XMLStreamReader> {
 
-    if (!xmlEventReader.hasNext()) {
-      return "";
+    private final byte[] inputXmlBytes;
+    private SanitizingXmlStreamReader reader;
+
+    public SanitizedXmlCapture(byte[] inputXmlBytes) {
+      this.inputXmlBytes = inputXmlBytes;
+    }
+
+    @Override
+    public XMLStreamReader apply(XMLStreamReader xmlStreamReader) {
+      checkState(reader == null, "Already used to capture a message");
+      try {
+        reader = new SanitizingXmlStreamReader(xmlStreamReader);
+      } catch (XMLStreamException e) {
+        // Parsing still has to go ahead; the message will be sanitized separately if needed.
+        logger.atWarning().withCause(e).log("Failed to capture sanitized EPP XML message.");
+        return xmlStreamReader;
+      }
+      return reader;
+    }
+
+    /**
+     * Returns the sanitized message, as {@link #sanitizeEppXml} would.
+     *
+     * <p>If the message couldn't be captured in full while it was being parsed (e.g. because it is
+     * malformed), it is sanitized from scratch instead.
+     */
+    public String getSanitizedXml() {
+      if (reader != null && reader.isRootElementClosed()) {
+        try {
+          return reader.getSanitizedXml();
+        } catch (XMLStreamException | UnsupportedEncodingException e) {
+          logger.atWarning().withCause(e).log("Failed to capture sanitized EPP XML message.");
+        }
+      }
+      return sanitizeEppXml(inputXmlBytes);
+    }
+  }
+
+  /**
+   * An {@link XMLStreamReader} that writes a sanitized copy of every event read through it.
+   *
+   * <p>Only events that the consumer actually advances past are copied. {@link #nextTag} and {@link
+   * #getElementText} are reimplemented in terms of {@link #next} so that they don't skip any.
+   */
+  private static class SanitizingXmlStreamReader extends StreamReaderDelegate {
+
+    private final ByteArrayOutputStream outputXmlBytes = new ByteArrayOutputStream();
+    private final XMLEventWriter xmlEventWriter;
+    private final String outputEncoding;
+    private XMLStreamException writeFailure;
+    private QName sensitiveElementName;
+    private int depth;
+    private boolean rootElementClosed;
+
+    SanitizingXmlStreamReader(XMLStreamReader reader) throws XMLStreamException {
+      super(reader);
+      checkState(reader.getEventType() == START_DOCUMENT, "Missing StartDocument");
+      // Get input encoding for use in XMLEventWriter creation, so that sanitized XML preserves
+      // the encoding declaration. According to XML spec, UTF-8 is to be used unless input declares
+      // otherwise. Epp officially allows UTF-8 and UTF-16.
+      outputEncoding =
+          Optional.ofNullable(reader.getCharacterEncodingScheme())
+              .orElse(StandardCharsets.UTF_8.name());
+      xmlEventWriter = XML_OUTPUT_FACTORY.createXMLEventWriter(outputXmlBytes, outputEncoding);
+      copyCurrentEvent();
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+      int eventType = super.next();
+      copyCurrentEvent();
+      return eventType;
     }
 
-    XMLEvent firstEvent = xmlEventReader.nextEvent();
-    checkState(firstEvent.isStartDocument(), "Missing StartDocument");
-    // Get input encoding for use in XMLEventWriter creation, so that sanitized XML preserves the
-    // encoding declaration. According to XML spec, UTF-8 is to be used unless input declares
-    // otherwise. Epp officially allows UTF-8 and UTF-16.
-    String inputEncoding =
-        Optional.ofNullable(((StartDocument) firstEvent).getCharacterEncodingScheme())
-            .orElse(StandardCharsets.UTF_8.name());
-
-    ByteArrayOutputStream outputXmlBytes = new ByteArrayOutputStream();
-    XMLEventWriter xmlEventWriter =
-        XML_OUTPUT_FACTORY.createXMLEventWriter(outputXmlBytes, inputEncoding);
-    xmlEventWriter.add(firstEvent);
-
-    while (xmlEventReader.hasNext()) {
-      XMLEvent xmlEvent = xmlEventReader.nextEvent();
-      xmlEventWriter.add(xmlEvent);
-      if (isStartEventForSensitiveData(xmlEvent)) {
-        QName startEventName = xmlEvent.asStartElement().getName();
-        while (xmlEventReader.hasNext()) {
-          XMLEvent event = xmlEventReader.nextEvent();
-          if (event.isCharacters()) {
-            Characters characters = event.asCharacters();
-            event = XML_EVENT_FACTORY.createCharacters(maskSensitiveData(characters.getData()));
+    @Override
+    public int nextTag() throws XMLStreamException {
+      int eventType = next();
+      while ((eventType == CHARACTERS && isWhiteSpace())
+          || (eventType == CDATA && isWhiteSpace())
+          || eventType == SPACE
+          || eventType == PROCESSING_INSTRUCTION
+          || eventType == COMMENT) {
+        eventType = next();
+      }
+      if (eventType != START_ELEMENT && eventType != END_ELEMENT) {
+        throw new XMLStreamException("Expected start or end tag", getLocation());
+      }
+      return eventType;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+      if (getEventType() != START_ELEMENT) {
+        throw new XMLStreamException("Current event is not a start element", getLocation());
+      }
+      StringBuilder text = new StringBuilder();
+      int eventType = next();
+      while (eventType != END_ELEMENT) {
+        if (eventType == CHARACTERS
+            || eventType == CDATA
+            || eventType == SPACE
+            || eventType == ENTITY_REFERENCE) {
+          text.append(getText());
+        } else if (eventType != PROCESSING_INSTRUCTION && eventType != COMMENT) {
+          throw new XMLStreamException("Unexpected event in element text", getLocation());
+        }
+        eventType = next();
+      }
+      return text.toString();
+    }
+
+    /** Returns whether the whole root element has been read. */
+    boolean isRootElementClosed() {
+      return rootElementClosed;
+    }
+
+    /** Returns the sanitized copy of everything read so far. */
+    String getSanitizedXml() throws XMLStreamException, UnsupportedEncodingException {
+      if (writeFailure != null) {
+        throw writeFailure;
+      }
+      xmlEventWriter.flush();
+      // Keep exactly one newline at end of sanitized string.
+      return CharMatcher.whitespace().trimTrailingFrom(outputXmlBytes.toString(outputEncoding))
+          + "\n";
+    }
+
+    private void copyCurrentEvent() {
+      if (writeFailure != null) {
+        return;
+      }
+      try {
+        writeCurrentEvent();
+      } catch (XMLStreamException e) {
+        // Don't interfere with the consumer of this reader, but remember that the copy is broken.
+        writeFailure = e;
+      }
+    }
+
+    private void writeCurrentEvent() throws XMLStreamException {
+      switch (getEventType()) {
+        case START_DOCUMENT:
+          String version = Optional.ofNullable(getVersion()).orElse("1.0");
+          String encoding = Optional.ofNullable(getEncoding()).orElse(outputEncoding);
+          xmlEventWriter.add(
+              standaloneSet()
+                  ? XML_EVENT_FACTORY.createStartDocument(encoding, version, isStandalone())
+                  : XML_EVENT_FACTORY.createStartDocument(encoding, version));
+          break;
+        case START_ELEMENT:
+          List<Attribute> attributes = new ArrayList<>(getAttributeCount());
+          for (int i = 0; i < getAttributeCount(); i++) {
+            attributes.add(
+                XML_EVENT_FACTORY.createAttribute(
+                    nullToEmpty(getAttributePrefix(i)),
+                    nullToEmpty(getAttributeNamespace(i)),
+                    getAttributeLocalName(i),
+                    getAttributeValue(i)));
           }
-          xmlEventWriter.add(event);
-          if (isMatchingEndEvent(event, startEventName)) {
-            // The inner while-loop is guaranteed to break here for any valid XML.
-            // If matching event is missing, xmlEventReader will throw XMLStreamException.
-            break;
+          List<Namespace> namespaces = new ArrayList<>(getNamespaceCount());
+          for (int i = 0; i < getNamespaceCount(); i++) {
+            namespaces.add(
+                isNullOrEmpty(getNamespacePrefix(i))
+                    ? XML_EVENT_FACTORY.createNamespace(nullToEmpty(getNamespaceURI(i)))
+                    : XML_EVENT_FACTORY.createNamespace(
+                        getNamespacePrefix(i), nullToEmpty(getNamespaceURI(i))));
           }
-        }
+          xmlEventWriter.add(
+              XML_EVENT_FACTORY.createStartElement(
+                  nullToEmpty(getPrefix()),
+                  nullToEmpty(getNamespaceURI()),
+                  getLocalName(),
+                  attributes.iterator(),
+                  namespaces.iterator()));
+          if (sensitiveElementName == null && isSensitiveElement(getName())) {
+            sensitiveElementName = getName();
+          }
+          depth++;
+          break;
+        case END_ELEMENT:
+          xmlEventWriter.add(
+              XML_EVENT_FACTORY.createEndElement(
+                  nullToEmpty(getPrefix()), nullToEmpty(getNamespaceURI()), getLocalName()));
+          if (getName().equals(sensitiveElementName)) {
+            sensitiveElementName = null;
+          }
+          depth--;
+          rootElementClosed = (depth == 0);
+          break;
+        case CHARACTERS:
+        case SPACE:
+        case CDATA:
+          if (sensitiveElementName != null) {
+            xmlEventWriter.add(XML_EVENT_FACTORY.createCharacters(maskSensitiveData(getText())));
+          } else if (getEventType() == CDATA) {
+            xmlEventWriter.add(XML_EVENT_FACTORY.createCData(getText()));
+          } else {
+            xmlEventWriter.add(XML_EVENT_FACTORY.createCharacters(getText()));
+          }
+          break;
+        case COMMENT:
+          xmlEventWriter.add(XML_EVENT_FACTORY.createComment(getText()));
+          break;
+        case PROCESSING_INSTRUCTION:
+          xmlEventWriter.add(
+              XML_EVENT_FACTORY.createProcessingInstruction(getPITarget(), getPIData()));
+          break;
+        case DTD:
+          xmlEventWriter.add(XML_EVENT_FACTORY.createDTD(getText()));
+          break;
+        case END_DOCUMENT:
+          xmlEventWriter.add(XML_EVENT_FACTORY.createEndDocument());
+          break;
+        default:
+          // Attributes and namespaces are written with their element. Entity references are
+          // replaced by the parser, so there shouldn't be anything else.
+          break;
       }
     }
-    xmlEventWriter.flush();
-    return outputXmlBytes.toString(inputEncoding);
   }
 
   private static String maskSensitiveData(String original) {
@@ -149,14 +346,8 @@ public class EppXmlSanitizer {
         .collect(Collectors.joining());
   }
 
-  private static boolean isStartEventForSensitiveData(XMLEvent xmlEvent) {
-    return xmlEvent.isStartElement()
-        && EPP_TAGS_IN_LOWER_CASE.contains(
-            xmlEvent.asStartElement().getName().getLocalPart().toLowerCase(Locale.ROOT));
-  }
-
-  private static boolean isMatchingEndEvent(XMLEvent xmlEvent, QName startEventName) {
-    return xmlEvent.isEndElement() && xmlEvent.asEndElement().getName().equals(startEventName);
+  private static boolean isSensitiveElement(QName elementName) {
+    return EPP_TAGS_IN_LOWER_CASE.contains(elementName.getLocalPart().toLowerCase(Locale.ROOT));
   }
 
   private static XMLInputFactory createXmlInputFactory() {
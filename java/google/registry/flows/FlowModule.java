@@ -35,6 +35,7 @@ import google.registry.model.eppoutput.Result;
 import google.registry.model.reporting.HistoryEntry;
 import java.lang.annotation.Documented;
 import java.util.Optional;
+import java.util.function.Supplier;
 import javax.inject.Qualifier;
 
 /** Module to choose and instantiate an EPP flow. */
@@ -43,6 +44,7 @@ public class FlowModule {
 
   private EppInput eppInput;
   private byte[] inputXmlBytes;
+  private Supplier<String> sanitizedInputXml;
   private SessionMetadata sessionMetadata;
   private TransportCredentials credentials;
   private boolean isDryRun;
@@ -65,6 +67,16 @@ public class FlowModule {
       return this;
     }
 
+    /**
+     * Sets where to get the sanitized input XML from, if it was already produced while parsing.
+     *
+     * <p>If this isn't set, the input XML will be sanitized separately when it is needed.
+     */
+    Builder setSanitizedInputXml(Supplier<String> sanitizedInputXml) {
+      module.sanitizedInputXml = sanitizedInputXml;
+      return this;
+    }
+
     Builder setSessionMetadata(SessionMetadata sessionMetadata) {
       module.sessionMetadata = sessionMetadata;
       return this;
@@ -107,6 +119,15 @@ public class FlowModule {
     return inputXmlBytes;
   }
 
+  @Provides
+  @FlowScope
+  @SanitizedInputXml
+  String provideSanitizedInputXml() {
+    return (sanitizedInputXml == null)
+        ? EppXmlSanitizer.sanitizeEppXml(inputXmlBytes)
+        : sanitizedInputXml.get();
+  }
+
   @Provides
   @FlowScope
   EppInput provideEppInput() {
@@ -284,6 +305,11 @@ public class FlowModule {
   @Documented
   public @interface InputXml {}
 
+  /** Dagger qualifier for inputXml with sensitive data masked, for logging. */
+  @Qualifier
+  @Documented
+  public @interface SanitizedInputXml {}
+
   /** Dagger qualifier for registrar client id. */
   @Qualifier
   @Documented
@@ -14,6 +14,7 @@
 
 package google.registry.flows;
 
+import static com.google.common.flogger.LazyArgs.lazy;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.xml.XmlTransformer.prettyPrint;
 
@@ -21,7 +22,7 @@ import com.google.common.base.Strings;
 import com.google.common.flogger.FluentLogger;
 import google.registry.flows.FlowModule.ClientId;
 import google.registry.flows.FlowModule.DryRun;
-import google.registry.flows.FlowModule.InputXml;
+import google.registry.flows.FlowModule.SanitizedInputXml;
 import google.registry.flows.FlowModule.Superuser;
 import google.registry.flows.FlowModule.Transactional;
 import google.registry.flows.session.LoginFlow;
@@ -43,7 +44,7 @@ public class FlowRunner {
   @Inject EppRequestSource eppRequestSource;
   @Inject Provider<Flow> flowProvider;
   @Inject Class<? extends Flow> flowClass;
-  @Inject @InputXml byte[] inputXmlBytes;
+  @Inject @SanitizedInputXml Provider<String> sanitizedInputXml;
   @Inject @DryRun boolean isDryRun;
   @Inject @Superuser boolean isSuperuser;
   @Inject @Transactional boolean isTransactional;
@@ -54,14 +55,13 @@ public class FlowRunner {
 
   /** Runs the EPP flow, and records metrics on the given builder. */
   public EppOutput run(final EppMetric.Builder eppMetricBuilder) throws EppException {
-    String prettyXml = prettyPrint(EppXmlSanitizer.sanitizeEppXml(inputXmlBytes));
-
+    // Pretty printing is expensive, so only do it if the log line is actually going to be written.
     logger.atInfo().log(
         COMMAND_LOG_FORMAT,
         trid.getServerTransactionId(),
         clientId,
         sessionMetadata,
-        prettyXml.replace("\n", "\n\t"),
+        lazy(() -> prettyPrint(sanitizedInputXml.get()).replace("\n", "\n\t")),
         credentials,
         eppRequestSource,
         isDryRun ? "DRY_RUN" : "LIVE",
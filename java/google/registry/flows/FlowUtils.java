@@ -32,8 +32,11 @@ import google.registry.model.eppinput.EppInput.WrongProtocolVersionException;
 import google.registry.model.eppoutput.EppOutput;
 import google.registry.model.host.InetAddressAdapter.IpVersionMismatchException;
 import google.registry.model.translators.CurrencyUnitAdapter.UnknownCurrencyException;
+import google.registry.xml.OutputFormat;
 import google.registry.xml.XmlException;
 import java.util.List;
+import java.util.function.UnaryOperator;
+import javax.xml.stream.XMLStreamReader;
 
 /** Static utility functions for flows. */
 public final class FlowUtils {
@@ -60,8 +63,18 @@ public final class FlowUtils {
    * byte[])} but with exception-handling logic to throw {@link EppException} instead.
    */
   public static <T> T unmarshalEpp(Class<T> clazz, byte[] bytes) throws EppException {
+    return unmarshalEpp(clazz, bytes, UnaryOperator.identity());
+  }
+
+  /**
+   * Unmarshal bytes into Epp classes like {@link #unmarshalEpp(Class, byte[])}, passing the parser
+   * through {@code readerWrapper} first.
+   */
+  public static <T> T unmarshalEpp(
+      Class<T> clazz, byte[] bytes, UnaryOperator<XMLStreamReader> readerWrapper)
+      throws EppException {
     try {
-      return EppXmlTransformer.unmarshal(clazz, bytes);
+      return EppXmlTransformer.unmarshal(clazz, bytes, readerWrapper);
     } catch (XmlException e) {
       // If this XmlException is wrapping a known type find it. If not, it's a syntax error.
       List<Throwable> causalChain = Throwables.getCausalChain(e);
@@ -79,16 +92,24 @@ public final class FlowUtils {
   }
 
   public static byte[] marshalWithLenientRetry(EppOutput eppOutput) {
+    return marshalWithLenientRetry(eppOutput, OutputFormat.FORMATTED);
+  }
+
+  /**
+   * Marshals an {@link EppOutput} in the given format, retrying without validation if the output
+   * doesn't validate against the schema.
+   */
+  public static byte[] marshalWithLenientRetry(EppOutput eppOutput, OutputFormat format) {
     checkState(eppOutput != null);
     // We need to marshal to a string instead of writing the response directly to the servlet's
     // response writer, so that partial results don't get written on failure.
     try {
-      return EppXmlTransformer.marshal(eppOutput, STRICT);
+      return EppXmlTransformer.marshal(eppOutput, STRICT, format);
     } catch (XmlException e) {
       // We failed to marshal with validation. This is very bad, but we can potentially still send
       // back slightly invalid xml, so try again without validation.
       try {
-        byte[] lenient = EppXmlTransformer.marshal(eppOutput, LENIENT);
+        byte[] lenient = EppXmlTransformer.marshal(eppOutput, LENIENT, format);
         // Marshaling worked even though the results didn't validate against the schema.
         logger.atSevere().withCause(e).log(
             "Result marshaled but did not validate: %s", new String(lenient, UTF_8));
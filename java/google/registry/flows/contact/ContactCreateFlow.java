@@ -40,6 +40,7 @@ import google.registry.model.index.EppResourceIndex;
 import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.ofy.ObjectifyService;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
@@ -86,14 +87,16 @@ public final class ContactCreateFlow implements TransactionalFlow {
         .build();
     validateAsciiPostalInfo(newContact.getInternationalizedPostalInfo());
     validateContactAgainstPolicy(newContact);
-    historyBuilder
+    HistoryEntry historyEntry = historyBuilder
         .setType(HistoryEntry.Type.CONTACT_CREATE)
         .setModificationTime(now)
         .setXmlBytes(null)  // We don't want to store contact details in the history entry.
-        .setParent(Key.create(newContact));
+        .setParent(Key.create(newContact))
+        .build();
     ofy().save().entities(
         newContact,
-        historyBuilder.build(),
+        historyEntry,
+        HistoryEventSummary.updatedWith(historyEntry),
         ForeignKeyIndex.create(newContact, newContact.getDeletionTime()),
         EppResourceIndex.create(Key.create(newContact)));
     return responseBuilder
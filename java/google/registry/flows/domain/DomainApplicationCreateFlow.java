@@ -91,6 +91,7 @@ import google.registry.model.ofy.ObjectifyService;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldState;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.smd.EncodedSignedMark;
 import java.util.Optional;
@@ -274,6 +275,7 @@ public final class DomainApplicationCreateFlow implements TransactionalFlow {
     entitiesToSave.add(
         newApplication,
         historyEntry,
+        HistoryEventSummary.updatedWith(historyEntry),
         DomainApplicationIndex.createUpdatedInstance(newApplication),
         EppResourceIndex.create(Key.create(newApplication)));
 
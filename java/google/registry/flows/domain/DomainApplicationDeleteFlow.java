@@ -46,6 +46,7 @@ import google.registry.model.eppoutput.EppResponse;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.Registry.TldState;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -111,7 +112,8 @@ public final class DomainApplicationDeleteFlow implements TransactionalFlow {
         .setParent(Key.create(existingApplication))
         .build();
     updateForeignKeyIndexDeletionTime(newApplication);
-    ofy().save().<Object>entities(newApplication, historyEntry);
+    ofy().save().<Object>entities(
+        newApplication, historyEntry, HistoryEventSummary.updatedWith(historyEntry));
     return responseBuilder.build();
   }
 
@@ -15,10 +15,11 @@
 package google.registry.flows.domain;
 
 import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
 import static google.registry.flows.ResourceFlowUtils.verifyTargetIdCount;
 import static google.registry.flows.domain.DomainFlowUtils.checkAllowedAccessToTld;
-import static google.registry.flows.domain.DomainFlowUtils.getReservationTypes;
 import static google.registry.flows.domain.DomainFlowUtils.handleFeeRequest;
 import static google.registry.flows.domain.DomainFlowUtils.validateDomainName;
 import static google.registry.flows.domain.DomainFlowUtils.validateDomainNameWithIdnTables;
@@ -26,11 +27,16 @@ import static google.registry.flows.domain.DomainFlowUtils.verifyNotInPredelegat
 import static google.registry.model.EppResourceUtils.checkResourcesExist;
 import static google.registry.model.index.DomainApplicationIndex.loadActiveApplicationsByDomainName;
 import static google.registry.model.registry.label.ReservationType.getTypeOfHighestSeverity;
+import static google.registry.model.registry.label.ReservedList.getReservationTypes;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.collect.Streams;
 import com.google.common.net.InternetDomainName;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.flows.EppException;
@@ -153,6 +159,10 @@ public final class DomainCheckFlow implements Flow {
             .setAsOfDate(now)
             .build());
     Set<String> existingIds = checkResourcesExist(DomainResource.class, targetIds, now);
+    // Look up the reservation types of all of the domain names up front, since they are needed
+    // both for the availability checks and for any fee checks.
+    ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes =
+        getReservationTypesByDomainName(domainNames.values());
     Optional<AllocationTokenExtension> allocationTokenExtension =
         eppInput.getSingleExtension(AllocationTokenExtension.class);
     ImmutableMap<InternetDomainName, String> tokenCheckResults =
@@ -166,14 +176,15 @@ public final class DomainCheckFlow implements Flow {
     ImmutableList.Builder<DomainCheck> checks = new ImmutableList.Builder<>();
     for (String targetId : targetIds) {
       Optional<String> message =
-          getMessageForCheck(domainNames.get(targetId), existingIds, tokenCheckResults, now);
+          getMessageForCheck(
+              domainNames.get(targetId), existingIds, reservationTypes, tokenCheckResults, now);
       checks.add(DomainCheck.create(!message.isPresent(), targetId, message.orElse(null)));
     }
     BeforeResponseReturnData responseData =
         flowCustomLogic.beforeResponse(
             BeforeResponseParameters.newBuilder()
                 .setDomainChecks(checks.build())
-                .setResponseExtensions(getResponseExtensions(domainNames, now))
+                .setResponseExtensions(getResponseExtensions(domainNames, reservationTypes, now))
                 .setAsOfDate(now)
                 .build());
     return responseBuilder
@@ -182,9 +193,39 @@ public final class DomainCheckFlow implements Flow {
         .build();
   }
 
+  /**
+   * Returns the reservation types of each of the given domain names, looking up all of the labels
+   * on each TLD together.
+   */
+  private static ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>>
+      getReservationTypesByDomainName(Iterable<InternetDomainName> domainNames) {
+    ImmutableSetMultimap<String, InternetDomainName> domainNamesByTld =
+        Streams.stream(domainNames)
+            .collect(
+                toImmutableSetMultimap(
+                    domainName -> domainName.parent().toString(), domainName -> domainName));
+    ImmutableMap.Builder<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes =
+        new ImmutableMap.Builder<>();
+    for (String tld : domainNamesByTld.keySet()) {
+      ImmutableSet<InternetDomainName> tldDomainNames = domainNamesByTld.get(tld);
+      ImmutableMap<String, ImmutableSet<ReservationType>> labelReservationTypes =
+          getReservationTypes(
+              tldDomainNames
+                  .stream()
+                  .map(domainName -> domainName.parts().get(0))
+                  .collect(toImmutableList()),
+              tld);
+      for (InternetDomainName domainName : tldDomainNames) {
+        reservationTypes.put(domainName, labelReservationTypes.get(domainName.parts().get(0)));
+      }
+    }
+    return reservationTypes.build();
+  }
+
   private Optional<String> getMessageForCheck(
       InternetDomainName domainName,
       Set<String> existingIds,
+      ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes,
       ImmutableMap<InternetDomainName, String> tokenCheckResults,
       DateTime now) {
     if (existingIds.contains(domainName.toString())) {
@@ -197,34 +238,50 @@ public final class DomainCheckFlow implements Flow {
             .anyMatch(input -> !input.getApplicationStatus().isFinalStatus())) {
       return Optional.of("Pending allocation");
     }
-    ImmutableSet<ReservationType> reservationTypes = getReservationTypes(domainName);
-    if (!reservationTypes.isEmpty()) {
-      return Optional.of(getTypeOfHighestSeverity(reservationTypes).getMessageForCheck());
+    ImmutableSet<ReservationType> domainReservationTypes = reservationTypes.get(domainName);
+    if (!domainReservationTypes.isEmpty()) {
+      return Optional.of(getTypeOfHighestSeverity(domainReservationTypes).getMessageForCheck());
     }
     return Optional.ofNullable(emptyToNull(tokenCheckResults.get(domainName)));
   }
 
   /** Handle the fee check extension. */
   private ImmutableList<? extends ResponseExtension> getResponseExtensions(
-      ImmutableMap<String, InternetDomainName> domainNames, DateTime now) throws EppException {
+      ImmutableMap<String, InternetDomainName> domainNames,
+      ImmutableMap<InternetDomainName, ImmutableSet<ReservationType>> reservationTypes,
+      DateTime now)
+      throws EppException {
     Optional<FeeCheckCommandExtension> feeCheckOpt =
         eppInput.getSingleExtension(FeeCheckCommandExtension.class);
     if (!feeCheckOpt.isPresent()) {
       return ImmutableList.of();  // No fee checks were requested.
     }
     FeeCheckCommandExtension<?, ?> feeCheck = feeCheckOpt.get();
+    // Price all of the domain names together (per effective date) before handling the individual
+    // fee check items, rather than looking up each one's premium price separately.
+    SetMultimap<DateTime, String> domainNamesToPrice = LinkedHashMultimap.create();
+    for (FeeCheckCommandExtensionItem feeCheckItem : feeCheck.getItems()) {
+      domainNamesToPrice.putAll(
+          feeCheckItem.getEffectiveDate().orElse(now),
+          getDomainNamesToCheckForFee(feeCheckItem, domainNames.keySet()));
+    }
+    for (DateTime priceTime : domainNamesToPrice.keySet()) {
+      pricingLogic.prefetchDomainPrices(domainNamesToPrice.get(priceTime), priceTime);
+    }
     ImmutableList.Builder<FeeCheckResponseExtensionItem> responseItems =
         new ImmutableList.Builder<>();
     for (FeeCheckCommandExtensionItem feeCheckItem : feeCheck.getItems()) {
       for (String domainName : getDomainNamesToCheckForFee(feeCheckItem, domainNames.keySet())) {
         FeeCheckResponseExtensionItem.Builder<?> builder = feeCheckItem.createResponseBuilder();
+        InternetDomainName internetDomainName = domainNames.get(domainName);
         handleFeeRequest(
             feeCheckItem,
             builder,
-            domainNames.get(domainName),
+            internetDomainName,
             feeCheck.getCurrency(),
             now,
-            pricingLogic);
+            pricingLogic,
+            () -> reservationTypes.get(internetDomainName));
         responseItems.add(builder.setDomainNameIfSupported(domainName).build());
       }
     }
@@ -113,6 +113,7 @@ import google.registry.model.registry.Registry.TldType;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.tmch.LordnTaskUtils;
 import java.util.Optional;
@@ -337,6 +338,7 @@ public class DomainCreateFlow implements TransactionalFlow {
     ImmutableSet.Builder<ImmutableObject> entitiesToSave = new ImmutableSet.Builder<>();
     entitiesToSave.add(
         historyEntry,
+        HistoryEventSummary.updatedWith(historyEntry),
         createBillingEvent,
         autorenewBillingEvent,
         autorenewPollMessage);
@@ -88,6 +88,7 @@ import google.registry.model.registry.Registry.TldType;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.transfer.TransferStatus;
 import java.util.Collections;
@@ -221,7 +222,7 @@ public final class DomainDeleteFlow implements TransactionalFlow {
             BillingEvent.Cancellation.forGracePeriod(gracePeriod, historyEntry, targetId));
       }
     }
-    entitiesToSave.add(newDomain, historyEntry);
+    entitiesToSave.add(newDomain, historyEntry, HistoryEventSummary.updatedWith(historyEntry));
     EntityChanges entityChanges = flowCustomLogic.beforeSave(
         BeforeSaveParameters.newBuilder()
             .setExistingDomain(existingDomain)
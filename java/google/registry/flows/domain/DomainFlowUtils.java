@@ -121,6 +121,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.joda.money.CurrencyUnit;
@@ -459,7 +460,11 @@ public class DomainFlowUtils {
       ImmutableSet.of(RESERVED_FOR_SPECIFIC_USE, RESERVED_FOR_ANCHOR_TENANT, FULLY_BLOCKED);
 
   static boolean isReserved(InternetDomainName domainName, boolean isSunrise) {
-    ImmutableSet<ReservationType> types = getReservationTypes(domainName);
+    return isReserved(getReservationTypes(domainName), isSunrise);
+  }
+
+  /** Returns whether a domain with the given reservation types is reserved. */
+  static boolean isReserved(ImmutableSet<ReservationType> types, boolean isSunrise) {
     return !Sets.intersection(types, RESERVED_TYPES).isEmpty()
         || !(isSunrise || intersection(TYPES_ALLOWED_FOR_CREATE_ONLY_IN_SUNRISE, types).isEmpty());
   }
@@ -592,6 +597,30 @@ public class DomainFlowUtils {
       DateTime currentDate,
       DomainPricingLogic pricingLogic)
       throws EppException {
+    handleFeeRequest(
+        feeRequest,
+        builder,
+        domain,
+        topLevelCurrency,
+        currentDate,
+        pricingLogic,
+        () -> getReservationTypes(domain));
+  }
+
+  /**
+   * Validates a {@link FeeQueryCommandExtensionItem} and sets the appropriate fields on a {@link
+   * FeeQueryResponseExtensionItem} builder, getting the domain's reservation types (if they are
+   * needed) from the given supplier rather than looking them up again.
+   */
+  static void handleFeeRequest(
+      FeeQueryCommandExtensionItem feeRequest,
+      FeeQueryResponseExtensionItem.Builder<?, ?> builder,
+      InternetDomainName domain,
+      @Nullable CurrencyUnit topLevelCurrency,
+      DateTime currentDate,
+      DomainPricingLogic pricingLogic,
+      Supplier<ImmutableSet<ReservationType>> reservationTypes)
+      throws EppException {
     DateTime now = currentDate;
     // Use the custom effective date specified in the fee check request, if there is one.
     if (feeRequest.getEffectiveDate().isPresent()) {
@@ -622,7 +651,8 @@ public class DomainFlowUtils {
     ImmutableList<Fee> fees = ImmutableList.of();
     switch (feeRequest.getCommandName()) {
       case CREATE:
-        if (isReserved(domain, isSunrise)) { // Don't return a create price for reserved names.
+        // Don't return a create price for reserved names.
+        if (isReserved(reservationTypes.get(), isSunrise)) {
           builder.setClass("reserved"); // Override whatever class we've set above.
           builder.setAvailIfSupported(false);
           builder.setReasonIfSupported("reserved");
@@ -999,7 +1029,7 @@ public class DomainFlowUtils {
       InternetDomainName domainName, boolean hasSignedMarks, boolean hasClaimsNotice)
       throws EppException {
     boolean isInClaimsList =
-        ClaimsListShard.get().getClaimKey(domainName.parts().get(0)).isPresent();
+        ClaimsListShard.get().isClaimed(domainName.parts().get(0));
     if (hasClaimsNotice && !isInClaimsList) {
       throw new UnexpectedClaimsNoticeException(domainName.toString());
     }
@@ -14,10 +14,13 @@
 
 package google.registry.flows.domain;
 
-import static google.registry.pricing.PricingEngineProxy.getDomainCreateCost;
-import static google.registry.pricing.PricingEngineProxy.getDomainFeeClass;
-import static google.registry.pricing.PricingEngineProxy.getDomainRenewCost;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainName;
+import static google.registry.pricing.PricingEngineProxy.getPricesForDomainNames;
 
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Streams;
 import com.google.common.net.InternetDomainName;
 import google.registry.flows.EppException;
 import google.registry.flows.FlowScope;
@@ -32,7 +35,10 @@ import google.registry.model.domain.DomainApplication;
 import google.registry.model.domain.fee.BaseFee;
 import google.registry.model.domain.fee.BaseFee.FeeType;
 import google.registry.model.domain.fee.Fee;
+import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.money.CurrencyUnit;
@@ -43,12 +49,19 @@ import org.joda.time.DateTime;
  * Provides pricing for create, renew, etc, operations, with call-outs that can be customized by
  * providing a {@link DomainPricingCustomLogic} implementation that operates on cross-TLD or per-TLD
  * logic.
+ *
+ * <p>The underlying premium prices of each domain name are only looked up once per flow, and flows
+ * that price many domain names (e.g. large domain checks) can look them all up together by calling
+ * {@link #prefetchDomainPrices} first.
  */
 @FlowScope
 public final class DomainPricingLogic {
 
   @Inject DomainPricingCustomLogic customLogic;
 
+  /** The prices looked up so far during this flow, keyed by price time and then domain name. */
+  private final Map<DateTime, Map<String, DomainPrices>> domainPricesCache = new HashMap<>();
+
   @Inject
   DomainPricingLogic() {}
 
@@ -60,7 +73,7 @@ public final class DomainPricingLogic {
 
     // Get the vanilla create cost.
     BaseFee createFeeOrCredit =
-        Fee.create(getDomainCreateCost(domainName, date, years).getAmount(), FeeType.CREATE);
+        Fee.create(getCreateCost(domainName, date, years).getAmount(), FeeType.CREATE);
 
     // Create fees for the cost and the EAP fee, if any.
     Fee eapFee = registry.getEapFeeFor(date);
@@ -91,7 +104,7 @@ public final class DomainPricingLogic {
       DateTime date,
       int years)
       throws EppException {
-    Money renewCost = getDomainRenewCost(domainName, date, years);
+    Money renewCost = getRenewCost(domainName, date, years);
     return customLogic.customizeRenewPrice(
         RenewPriceParameters.newBuilder()
             .setFeesAndCredits(
@@ -113,7 +126,7 @@ public final class DomainPricingLogic {
         new FeesAndCredits.Builder()
             .setCurrency(registry.getCurrency())
             .addFeeOrCredit(
-                Fee.create(getDomainRenewCost(domainName, date, 1).getAmount(), FeeType.RENEW))
+                Fee.create(getRenewCost(domainName, date, 1).getAmount(), FeeType.RENEW))
             .addFeeOrCredit(
                 Fee.create(registry.getStandardRestoreCost().getAmount(), FeeType.RESTORE))
             .build();
@@ -129,7 +142,7 @@ public final class DomainPricingLogic {
   /** Returns a new transfer price for the pricer. */
   public FeesAndCredits getTransferPrice(Registry registry, String domainName, DateTime date)
       throws EppException {
-    Money renewCost = getDomainRenewCost(domainName, date, 1);
+    Money renewCost = getRenewCost(domainName, date, 1);
     return customLogic.customizeTransferPrice(
         TransferPriceParameters.newBuilder()
             .setFeesAndCredits(
@@ -183,6 +196,38 @@ public final class DomainPricingLogic {
 
   /** Returns the fee class for a given domain and date. */
   public Optional<String> getFeeClass(String domainName, DateTime date) {
-    return getDomainFeeClass(domainName, date);
+    return getDomainPrices(domainName, date).getFeeClass();
+  }
+
+  /**
+   * Looks up the prices of all of the given domain names at the given time together, so that
+   * subsequent pricing calls for them during this flow don't have to look them up one at a time.
+   */
+  public void prefetchDomainPrices(Iterable<String> domainNames, DateTime date) {
+    Map<String, DomainPrices> cachedPrices =
+        domainPricesCache.computeIfAbsent(date, unused -> new HashMap<>());
+    ImmutableSet<String> uncachedDomainNames =
+        Streams.stream(domainNames)
+            .filter(domainName -> !cachedPrices.containsKey(domainName))
+            .collect(toImmutableSet());
+    if (!uncachedDomainNames.isEmpty()) {
+      cachedPrices.putAll(getPricesForDomainNames(uncachedDomainNames, date));
+    }
+  }
+
+  private Money getCreateCost(String domainName, DateTime date, int years) {
+    checkArgument(years > 0, "Number of years must be positive");
+    return getDomainPrices(domainName, date).getCreateCost().multipliedBy(years);
+  }
+
+  private Money getRenewCost(String domainName, DateTime date, int years) {
+    checkArgument(years > 0, "Number of years must be positive");
+    return getDomainPrices(domainName, date).getRenewCost().multipliedBy(years);
+  }
+
+  private DomainPrices getDomainPrices(String domainName, DateTime date) {
+    return domainPricesCache
+        .computeIfAbsent(date, unused -> new HashMap<>())
+        .computeIfAbsent(domainName, unused -> getPricesForDomainName(domainName, date));
   }
 }
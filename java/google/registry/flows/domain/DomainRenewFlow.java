@@ -72,6 +72,7 @@ import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.DomainTransactionRecord.TransactionReportField;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -200,6 +201,7 @@ public final class DomainRenewFlow implements TransactionalFlow {
                             ImmutableSet.of(
                                 newDomain,
                                 historyEntry,
+                                HistoryEventSummary.updatedWith(historyEntry),
                                 explicitRenewEvent,
                                 newAutorenewEvent,
                                 newAutorenewPollMessage))
@@ -56,6 +56,7 @@ import google.registry.model.poll.PollMessage;
 import google.registry.model.registry.Registry;
 import google.registry.model.reporting.DomainTransactionRecord;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import google.registry.model.transfer.TransferData;
 import google.registry.model.transfer.TransferStatus;
@@ -208,6 +209,7 @@ public final class DomainTransferApproveFlow implements TransactionalFlow {
     entitiesToSave.add(
         newDomain,
         historyEntry,
+        HistoryEventSummary.updatedWith(historyEntry),
         autorenewEvent,
         gainingClientPollMessage,
         gainingClientAutorenewPollMessage);
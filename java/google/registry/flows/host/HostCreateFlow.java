@@ -50,6 +50,7 @@ import google.registry.model.index.EppResourceIndex;
 import google.registry.model.index.ForeignKeyIndex;
 import google.registry.model.ofy.ObjectifyService;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.reporting.IcannReportingTypes.ActivityReportField;
 import java.util.Optional;
 import javax.inject.Inject;
@@ -127,14 +128,16 @@ public final class HostCreateFlow implements TransactionalFlow {
             .setRepoId(createRepoId(ObjectifyService.allocateId(), roidSuffix))
             .setSuperordinateDomain(superordinateDomain.map(Key::create).orElse(null))
             .build();
-    historyBuilder
+    HistoryEntry historyEntry = historyBuilder
         .setType(HistoryEntry.Type.HOST_CREATE)
         .setModificationTime(now)
-        .setParent(Key.create(newHost));
+        .setParent(Key.create(newHost))
+        .build();
     ImmutableSet<ImmutableObject> entitiesToSave =
         ImmutableSet.of(
             newHost,
-            historyBuilder.build(),
+            historyEntry,
+            HistoryEventSummary.updatedWith(historyEntry),
             ForeignKeyIndex.create(newHost, newHost.getDeletionTime()),
             EppResourceIndex.create(Key.create(newHost)));
     if (superordinateDomain.isPresent()) {
@@ -16,7 +16,8 @@ package google.registry.flows.poll;
 
 import static com.google.common.base.Preconditions.checkState;
 import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
-import static google.registry.flows.poll.PollFlowUtils.getPollMessagesQuery;
+import static google.registry.flows.poll.PollFlowUtils.countPollMessages;
+import static google.registry.flows.poll.PollFlowUtils.updatePollMessageCounter;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_WITH_NO_MESSAGES;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.poll.PollMessageExternalKeyConverter.makePollMessageExternalId;
@@ -103,6 +104,7 @@ public class PollAckFlow implements TransactionalFlow {
     if (pollMessage instanceof PollMessage.OneTime) {
       // One-time poll messages are deleted once acked.
       ofy().delete().entity(pollMessage);
+      updatePollMessageCounter(pollMessage, null);
     } else {
       checkState(pollMessage instanceof PollMessage.Autorenew, "Unknown poll message type");
       PollMessage.Autorenew autorenewPollMessage = (PollMessage.Autorenew) pollMessage;
@@ -115,16 +117,18 @@ public class PollAckFlow implements TransactionalFlow {
       // autorenew poll message has no more events to deliver and should be deleted.
       if (nextEventTime.isBefore(autorenewPollMessage.getAutorenewEndTime())) {
         ofy().save().entity(autorenewPollMessage.asBuilder().setEventTime(nextEventTime).build());
+        updatePollMessageCounter(autorenewPollMessage, nextEventTime);
         includeAckedMessageInCount = isBeforeOrAt(nextEventTime, now);
       } else {
         ofy().delete().entity(autorenewPollMessage);
+        updatePollMessageCounter(autorenewPollMessage, null);
       }
     }
     // We need to return the new queue length. If this was the last message in the queue being
-    // acked, then we return a special status code indicating that. Note that the query will
-    // include the message being acked.
+    // acked, then we return a special status code indicating that. Note that the count will
+    // include the message being acked, since it is taken outside of this transaction.
 
-    int messageCount = ofy().doTransactionless(() -> getPollMessagesQuery(clientId, now).count());
+    int messageCount = ofy().doTransactionless(() -> countPollMessages(clientId, now));
     if (!includeAckedMessageInCount) {
       messageCount--;
     }
@@ -14,10 +14,16 @@
 
 package google.registry.flows.poll;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.DateTimeUtils.isBeforeOrAt;
 
+import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.cmd.Query;
 import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
+import java.util.Collection;
+import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 
 /** Static utility functions for poll flows. */
@@ -33,4 +39,58 @@ public final class PollFlowUtils {
         .filter("eventTime <=", now.toDate())
         .order("eventTime");
   }
+
+  /**
+   * Returns the number of poll messages for the logged in registrar which are not in the future.
+   *
+   * <p>The messages up to the time of the last count are taken from the registrar's {@link
+   * PollMessageCounter} shards, so only the messages that became due since then are queried. That
+   * time lags behind the recount by {@link PollMessageCounter#RECOUNT_LAG}, so messages written by
+   * flows that overlapped the recount are found by the query. If the registrar hasn't been counted
+   * yet, all of its messages are queried.
+   */
+  static int countPollMessages(String clientId, DateTime now) {
+    Collection<PollMessageCounter> shards =
+        ofy().load().keys(PollMessageCounter.createKeys(clientId)).values();
+    ImmutableSet<DateTime> countedThrough =
+        shards.stream().map(PollMessageCounter::getCountedThrough).collect(toImmutableSet());
+    if (shards.size() < PollMessageCounter.NUM_SHARDS
+        || countedThrough.size() != 1
+        || countedThrough.iterator().next().isAfter(now)) {
+      return getPollMessagesQuery(clientId, now).count();
+    }
+    long count =
+        shards.stream().mapToLong(PollMessageCounter::getCount).sum()
+            + ofy().load()
+                .type(PollMessage.class)
+                .filter("clientId", clientId)
+                .filter("eventTime >", countedThrough.iterator().next().toDate())
+                .filter("eventTime <=", now.toDate())
+                .count();
+    // The counters can drift below the actual number of messages until they are next recounted.
+    return (int) Math.max(count, 0);
+  }
+
+  /**
+   * Updates the poll message counters of a registrar for a message that is being acked.
+   *
+   * <p>This must be called in the transaction that acks the message. If the message was counted,
+   * i.e. its event time is at or before the time of the last count, a random shard is decremented,
+   * unless the message is rescheduled to an event time that is still counted.
+   *
+   * @param newEventTime the new event time of the message, or null if it is being deleted
+   */
+  static void updatePollMessageCounter(PollMessage pollMessage, @Nullable DateTime newEventTime) {
+    PollMessageCounter shard =
+        ofy().load().key(PollMessageCounter.createRandomShardKey(pollMessage.getClientId())).now();
+    if (shard == null) {
+      return;
+    }
+    DateTime countedThrough = shard.getCountedThrough();
+    boolean wasCounted = isBeforeOrAt(pollMessage.getEventTime(), countedThrough);
+    boolean isCounted = newEventTime != null && isBeforeOrAt(newEventTime, countedThrough);
+    if (wasCounted != isCounted) {
+      ofy().saveWithoutBackup().entity(shard.withCountAdjustedBy(isCounted ? 1 : -1));
+    }
+  }
 }
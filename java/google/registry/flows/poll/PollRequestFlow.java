@@ -15,6 +15,7 @@
 package google.registry.flows.poll;
 
 import static google.registry.flows.FlowUtils.validateClientIsLoggedIn;
+import static google.registry.flows.poll.PollFlowUtils.countPollMessages;
 import static google.registry.flows.poll.PollFlowUtils.getPollMessagesQuery;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_WITH_ACK_MESSAGE;
 import static google.registry.model.eppoutput.Result.Code.SUCCESS_WITH_NO_MESSAGES;
@@ -38,7 +39,8 @@ import org.joda.time.DateTime;
  * An EPP flow for requesting {@link PollMessage}s.
  *
  * <p>This flow uses an eventually consistent Datastore query to return the oldest poll message for
- * the registrar, as well as the total number of pending messages. Note that poll messages whose
+ * the registrar, as well as the total number of pending messages, which is mostly taken from the
+ * registrar's {@link google.registry.model.poll.PollMessageCounter}. Note that poll messages whose
  * event time is in the future (i.e. they are speculative and could still be changed or rescinded)
  * are ignored. The externally visible id for the poll message that the registrar sees is generated
  * by {@link PollMessageExternalKeyConverter}.
@@ -72,7 +74,7 @@ public class PollRequestFlow implements Flow {
         .setMessageQueueInfo(new MessageQueueInfo.Builder()
             .setQueueDate(pollMessage.getEventTime())
             .setMsg(pollMessage.getMsg())
-            .setQueueLength(getPollMessagesQuery(clientId, now).count())
+            .setQueueLength(countPollMessages(clientId, now))
             .setMessageId(makePollMessageExternalId(pollMessage))
             .build())
         .setMultipleResData(pollMessage.getResponseData())
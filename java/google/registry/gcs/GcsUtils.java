@@ -34,6 +34,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.util.Map;
 import javax.annotation.CheckReturnValue;
 import javax.inject.Inject;
 
@@ -67,12 +68,29 @@ public class GcsUtils {
   /** Opens a GCS file for writing as an {@link OutputStream}, overwriting existing files. */
   @CheckReturnValue
   public OutputStream openOutputStream(GcsFilename filename) throws IOException {
-    return Channels.newOutputStream(gcsService.createOrReplace(filename, getOptions(filename)));
+    return openOutputStream(filename, ImmutableMap.of());
+  }
+
+  /**
+   * Opens a GCS file for writing as an {@link OutputStream}, overwriting existing files, and sets
+   * its user metadata.
+   */
+  @CheckReturnValue
+  public OutputStream openOutputStream(
+      GcsFilename filename, ImmutableMap<String, String> userMetadata) throws IOException {
+    return Channels.newOutputStream(
+        gcsService.createOrReplace(filename, getOptions(filename, userMetadata)));
   }
 
   /** Creates a GCS file with the given byte contents, overwriting existing files. */
   public void createFromBytes(GcsFilename filename, byte[] bytes) throws IOException {
-    gcsService.createOrReplace(filename, getOptions(filename), ByteBuffer.wrap(bytes));
+    gcsService.createOrReplace(
+        filename, getOptions(filename, ImmutableMap.of()), ByteBuffer.wrap(bytes));
+  }
+
+  /** Deletes a GCS file, returning {@code false} if it didn't exist. */
+  public boolean delete(GcsFilename filename) throws IOException {
+    return gcsService.delete(filename);
   }
 
   /**
@@ -111,9 +129,24 @@ public class GcsUtils {
     return metadata != null && metadata.getLength() > 0;
   }
 
-  /** Determines most appropriate {@link GcsFileOptions} based on filename extension. */
-  private static GcsFileOptions getOptions(GcsFilename filename) {
+  /** Returns the user metadata of a GCS file, which is empty if the file doesn't exist. */
+  public ImmutableMap<String, String> getUserMetadata(GcsFilename file) throws IOException {
+    GcsFileMetadata metadata = gcsService.getMetadata(file);
+    return (metadata == null)
+        ? ImmutableMap.of()
+        : ImmutableMap.copyOf(metadata.getOptions().getUserMetadata());
+  }
+
+  /**
+   * Determines most appropriate {@link GcsFileOptions} based on filename extension, with the given
+   * user metadata.
+   */
+  private static GcsFileOptions getOptions(
+      GcsFilename filename, ImmutableMap<String, String> userMetadata) {
     Builder builder = new GcsFileOptions.Builder().cacheControl("no-cache");
+    for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+      builder = builder.addUserMetadata(entry.getKey(), entry.getValue());
+    }
     MediaType mediaType = EXTENSIONS.get(getLast(Splitter.on('.').split(filename.getObjectName())));
     if (mediaType != null) {
       builder = builder.mimeType(mediaType.type());
@@ -19,23 +19,39 @@ import static com.google.common.base.CaseFormat.UPPER_UNDERSCORE;
 import static com.google.common.base.Preconditions.checkState;
 import static google.registry.model.common.EntityGroupRoot.getCrossTldKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.googlecode.objectify.Key;
+import google.registry.config.RegistryConfig.Config;
 import google.registry.keyring.api.KeySerializer;
 import google.registry.keyring.api.Keyring;
 import google.registry.keyring.api.KeyringException;
 import google.registry.model.server.KmsSecret;
+import google.registry.model.server.KmsSecretRevision;
+import google.registry.util.Clock;
 import java.io.IOException;
+import java.util.Arrays;
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.Duration;
 
 /**
  * A {@link Keyring} implementation which stores encrypted secrets in Datastore and decrypts them
  * using encryption keys stored in Cloud KMS.
  *
+ * <p>Decrypting a secret takes a round trip to Cloud KMS, so decrypted secrets are cached in memory
+ * for a configurable amount of time. A cached secret is only used while it is still the latest
+ * revision of the secret in Datastore, so secrets updated by {@link KmsUpdater} take effect
+ * immediately. Cached secrets are overwritten with zeros once they are evicted, and the copies
+ * handed to the deserializers are overwritten as soon as they are parsed.
+ *
  * @see <a href="https://cloud.google.com/kms/docs/">Google Cloud Key Management Service
  *     Documentation</a>
  */
@@ -81,11 +97,34 @@ public class KmsKeyring implements Keyring {
     }
   }
 
+  private static final KmsMetrics kmsMetrics = new KmsMetrics();
+
   private final KmsConnection kmsConnection;
 
+  /** Decrypted secrets by name, or null if caching is disabled. */
+  @Nullable private final Cache<String, DecryptedSecret> decryptedSecrets;
+
   @Inject
-  KmsKeyring(KmsConnection kmsConnection) {
+  KmsKeyring(
+      KmsConnection kmsConnection,
+      @Config("kmsSecretCachingDuration") Duration cachingDuration,
+      Clock clock) {
     this.kmsConnection = kmsConnection;
+    this.decryptedSecrets =
+        cachingDuration.equals(Duration.ZERO)
+            ? null
+            : CacheBuilder.newBuilder()
+                .expireAfterWrite(cachingDuration.getMillis(), MILLISECONDS)
+                .ticker(
+                    new Ticker() {
+                      @Override
+                      public long read() {
+                        return MILLISECONDS.toNanos(clock.nowUtc().getMillis());
+                      }
+                    })
+                .<String, DecryptedSecret>removalListener(
+                    notification -> notification.getValue().destroy())
+                .build();
   }
 
   @Override
@@ -163,23 +202,34 @@ public class KmsKeyring implements Keyring {
   public void close() {}
 
   private String getString(StringKeyLabel keyLabel) {
-    return KeySerializer.deserializeString(getDecryptedData(keyLabel.getLabel()));
+    byte[] data = getDecryptedData(keyLabel.getLabel());
+    try {
+      return KeySerializer.deserializeString(data);
+    } finally {
+      Arrays.fill(data, (byte) 0);
+    }
   }
 
   private PGPKeyPair getKeyPair(PrivateKeyLabel keyLabel) {
+    byte[] data = getDecryptedData(keyLabel.getLabel());
     try {
-      return KeySerializer.deserializeKeyPair(getDecryptedData(keyLabel.getLabel()));
+      return KeySerializer.deserializeKeyPair(data);
     } catch (IOException | PGPException e) {
       throw new KeyringException(
           String.format("Could not parse private keyLabel %s", keyLabel), e);
+    } finally {
+      Arrays.fill(data, (byte) 0);
     }
   }
 
   private PGPPublicKey getPublicKey(PublicKeyLabel keyLabel) {
+    byte[] data = getDecryptedData(keyLabel.getLabel());
     try {
-      return KeySerializer.deserializePublicKey(getDecryptedData(keyLabel.getLabel()));
+      return KeySerializer.deserializePublicKey(data);
     } catch (IOException e) {
       throw new KeyringException(String.format("Could not parse public keyLabel %s", keyLabel), e);
+    } finally {
+      Arrays.fill(data, (byte) 0);
     }
   }
 
@@ -187,17 +237,60 @@ public class KmsKeyring implements Keyring {
     return getKeyPair(keyLabel).getPrivateKey();
   }
 
+  /** Returns a copy of the decrypted data of a secret, which the caller may overwrite. */
   private byte[] getDecryptedData(String keyName) {
     KmsSecret secret =
         ofy().load().key(Key.create(getCrossTldKey(), KmsSecret.class, keyName)).now();
     checkState(secret != null, "Requested secret '%s' does not exist.", keyName);
-    String encryptedData = ofy().load().key(secret.getLatestRevision()).now().getEncryptedValue();
+    Key<KmsSecretRevision> revision = secret.getLatestRevision();
+    if (decryptedSecrets != null) {
+      DecryptedSecret cached = decryptedSecrets.getIfPresent(keyName);
+      byte[] data = (cached != null) ? cached.copyData(revision) : null;
+      if (data != null) {
+        kmsMetrics.recordSecretLookup(keyName, true);
+        return data;
+      }
+    }
+    String encryptedData = ofy().load().key(revision).now().getEncryptedValue();
 
+    byte[] data;
     try {
-      return kmsConnection.decrypt(secret.getName(), encryptedData);
+      data = kmsConnection.decrypt(secret.getName(), encryptedData);
     } catch (Exception e) {
       throw new KeyringException(
           String.format("CloudKMS decrypt operation failed for secret %s", keyName), e);
     }
+    kmsMetrics.recordSecretLookup(keyName, false);
+    if (decryptedSecrets != null) {
+      decryptedSecrets.put(keyName, new DecryptedSecret(revision, data.clone()));
+    }
+    return data;
+  }
+
+  /** The decrypted data of one revision of a secret, which can be overwritten once evicted. */
+  private static class DecryptedSecret {
+
+    private final Key<KmsSecretRevision> revision;
+    private final byte[] data;
+    private boolean destroyed;
+
+    DecryptedSecret(Key<KmsSecretRevision> revision, byte[] data) {
+      this.revision = revision;
+      this.data = data;
+    }
+
+    /**
+     * Returns a copy of the data if it is of the given revision, or null if it isn't, or if it has
+     * already been overwritten.
+     */
+    @Nullable
+    synchronized byte[] copyData(Key<KmsSecretRevision> latestRevision) {
+      return (destroyed || !revision.equals(latestRevision)) ? null : data.clone();
+    }
+
+    synchronized void destroy() {
+      Arrays.fill(data, (byte) 0);
+      destroyed = true;
+    }
   }
 }
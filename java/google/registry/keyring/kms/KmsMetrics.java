@@ -0,0 +1,42 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.keyring.kms;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.monitoring.metrics.IncrementableMetric;
+import com.google.monitoring.metrics.LabelDescriptor;
+import com.google.monitoring.metrics.MetricRegistryImpl;
+
+/** Metrics for secrets decrypted by {@link KmsKeyring}. */
+class KmsMetrics {
+
+  private static final ImmutableSet<LabelDescriptor> LABEL_DESCRIPTORS =
+      ImmutableSet.of(
+          LabelDescriptor.create("secret", "The name of the secret."),
+          LabelDescriptor.create(
+              "cached", "Whether the decrypted secret was cached, saving a KMS decrypt call."));
+
+  private static final IncrementableMetric secretLookupsMetric =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/keyring/kms/secret_lookups",
+              "Count of secret lookups",
+              "count",
+              LABEL_DESCRIPTORS);
+
+  void recordSecretLookup(String secretName, boolean cached) {
+    secretLookupsMetric.increment(secretName, String.valueOf(cached));
+  }
+}
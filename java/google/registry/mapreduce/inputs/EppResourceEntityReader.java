@@ -16,22 +16,40 @@ package google.registry.mapreduce.inputs;
 
 import static google.registry.model.ofy.ObjectifyService.ofy;
 
+import com.google.appengine.api.datastore.Cursor;
 import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import google.registry.model.EppResource;
 import google.registry.model.index.EppResourceIndex;
 import google.registry.model.index.EppResourceIndexBucket;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
 
-/** Reader that maps over {@link EppResourceIndex} and returns resources. */
+/**
+ * Reader that maps over {@link EppResourceIndex} and returns resources.
+ *
+ * <p>Rather than loading each resource as its index is read, the reader reads the index in pages
+ * and loads the resources of each page with a single batch load. The load of the next page is
+ * started as soon as the reader starts returning the resources of the current one, so that it
+ * happens while the mapper works on them.
+ */
 class EppResourceEntityReader<R extends EppResource> extends EppResourceBaseReader<R> {
 
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   private static final long serialVersionUID = -8042933349899971801L;
 
+  /** Default number of resources loaded per batch. */
+  static final int DEFAULT_PAGE_SIZE = 50;
+
   /**
    * The resource classes to postfilter for.
    *
@@ -41,14 +59,59 @@ class EppResourceEntityReader<R extends EppResource> extends EppResourceBaseRead
    */
   private final ImmutableSet<Class<? extends R>> resourceClasses;
 
+  /** Number of resources loaded per batch. */
+  private final int pageSize;
+
+  /**
+   * The resources of the current and next pages that haven't been returned yet, in index order.
+   *
+   * <p>These aren't serialized. Instead, {@link #endSlice} rewinds the query to the first of them.
+   */
+  private transient Deque<ReadAheadResource> readAhead;
+
+  /** Whether the index query has no more results in this slice. */
+  private transient boolean queryExhausted;
+
   public EppResourceEntityReader(
       Key<EppResourceIndexBucket> bucketKey,
       ImmutableSet<Class<? extends R>> resourceClasses) {
+    this(bucketKey, resourceClasses, DEFAULT_PAGE_SIZE);
+  }
+
+  @VisibleForTesting
+  EppResourceEntityReader(
+      Key<EppResourceIndexBucket> bucketKey,
+      ImmutableSet<Class<? extends R>> resourceClasses,
+      int pageSize) {
     super(
         bucketKey,
-        ONE_MB * 2,  // Estimate 2MB of memory for this reader, since it loads a (max 1MB) entity.
+        // Estimate 4MB of memory for this reader: it may load a (max 1MB) entity, and it holds two
+        // pages of resources, which are rarely larger than 20KB each.
+        ONE_MB * 4,
         varargsToKinds(resourceClasses));
     this.resourceClasses = resourceClasses;
+    this.pageSize = pageSize;
+  }
+
+  @Override
+  public void beginSlice() {
+    super.beginSlice();
+    readAhead = new ArrayDeque<>();
+    queryExhausted = false;
+  }
+
+  @Override
+  public void endSlice() {
+    super.endSlice();
+    if (!readAhead.isEmpty()) {
+      rewindTo(readAhead.peekFirst().cursorBefore, readAhead.size());
+      readAhead.clear();
+    }
+  }
+
+  @Override
+  protected int getReadAheadCount() {
+    return readAhead == null ? 0 : readAhead.size();
   }
 
   /**
@@ -59,12 +122,20 @@ class EppResourceEntityReader<R extends EppResource> extends EppResourceBaseRead
    */
   @Override
   public R next() throws NoSuchElementException {
-    // Loop until we find a value, or nextQueryResult() throws a NoSuchElementException.
+    // Loop until we find a value, or there are no more resources.
     while (true) {
-      Key<? extends EppResource> key = nextQueryResult().getKey();
-      EppResource resource = ofy().load().key(key).now();
+      // Keep the load of the next page in flight while the current one is being returned.
+      if (readAhead.size() <= pageSize && !queryExhausted) {
+        readPage();
+        continue;
+      }
+      ReadAheadResource next = readAhead.poll();
+      if (next == null) {
+        throw new NoSuchElementException();
+      }
+      EppResource resource = next.pageResources.get(next.key);
       if (resource == null) {
-        logger.atSevere().log("EppResourceIndex key %s points at a missing resource", key);
+        logger.atSevere().log("EppResourceIndex key %s points at a missing resource", next.key);
         continue;
       }
       // Postfilter to distinguish polymorphic types (e.g. DomainBase and DomainResource).
@@ -77,4 +148,44 @@ class EppResourceEntityReader<R extends EppResource> extends EppResourceBaseRead
       }
     }
   }
+
+  /** Reads the next page of the index and starts loading its resources asynchronously. */
+  private void readPage() {
+    List<Key<EppResource>> keys = new ArrayList<>(pageSize);
+    List<Cursor> cursors = new ArrayList<>(pageSize);
+    try {
+      while (keys.size() < pageSize) {
+        @SuppressWarnings("unchecked")
+        Key<EppResource> key = (Key<EppResource>) nextQueryResult().getKey();
+        keys.add(key);
+        cursors.add(getCursorBeforeLastResult());
+      }
+    } catch (NoSuchElementException e) {
+      queryExhausted = true;
+    }
+    if (keys.isEmpty()) {
+      return;
+    }
+    // Objectify only blocks on the batch load when the map is first accessed.
+    Map<Key<EppResource>, EppResource> pageResources = ofy().load().keys(keys);
+    for (int i = 0; i < keys.size(); i++) {
+      readAhead.add(new ReadAheadResource(keys.get(i), cursors.get(i), pageResources));
+    }
+  }
+
+  /** A resource that has been read ahead, along with the state needed to read it again. */
+  private static class ReadAheadResource {
+    final Key<EppResource> key;
+    @Nullable final Cursor cursorBefore;
+    final Map<Key<EppResource>, EppResource> pageResources;
+
+    ReadAheadResource(
+        Key<EppResource> key,
+        @Nullable Cursor cursorBefore,
+        Map<Key<EppResource>, EppResource> pageResources) {
+      this.key = key;
+      this.cursorBefore = cursorBefore;
+      this.pageResources = pageResources;
+    }
+  }
 }
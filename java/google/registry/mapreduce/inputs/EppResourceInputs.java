@@ -19,12 +19,15 @@ import static com.google.common.collect.Lists.asList;
 import static google.registry.util.TypeUtils.hasAnnotation;
 
 import com.google.appengine.tools.mapreduce.Input;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.EntitySubclass;
 import google.registry.model.EppResource;
 import google.registry.model.ImmutableObject;
+import google.registry.model.domain.DomainBase;
 import google.registry.model.index.EppResourceIndex;
+import org.joda.time.DateTime;
 
 /**
  * Mapreduce helpers for {@link EppResource} keys and objects.
@@ -57,6 +60,25 @@ public final class EppResourceInputs {
         ImmutableSet.copyOf(asList(resourceClass, moreResourceClasses)));
   }
 
+  /**
+   * Returns a MapReduce {@link Input} that loads the domains of a given type that reference any of
+   * the given contacts or hosts, using the Datastore index on the domain's references rather than
+   * mapping over every domain.
+   *
+   * <p>Each referent is mapped to the time after which a domain must not have been deleted in order
+   * to be returned. The index query is eventually consistent, so mappers must re-check the domains
+   * they receive, and the same domain may be returned once for each referent it links to.
+   */
+  @SafeVarargs
+  public static <R extends DomainBase> Input<R> createLinkedDomainInput(
+      ImmutableMap<Key<? extends EppResource>, DateTime> referents,
+      Class<? extends R> resourceClass,
+      Class<? extends R>... moreResourceClasses) {
+    checkArgument(!referents.isEmpty(), "Must provide at least one referent.");
+    return new LinkedDomainInput<>(
+        referents, ImmutableSet.copyOf(asList(resourceClass, moreResourceClasses)));
+  }
+
   /**
    * Returns a MapReduce {@link Input} that loads all {@link ImmutableObject} objects of a given
    * type, including deleted resources, that are child entities of all {@link EppResource} objects
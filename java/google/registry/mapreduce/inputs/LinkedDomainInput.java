@@ -0,0 +1,62 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.mapreduce.inputs;
+
+import static google.registry.util.TypeUtils.checkNoInheritanceRelationships;
+
+import com.google.appengine.tools.mapreduce.Input;
+import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.googlecode.objectify.Key;
+import google.registry.model.EppResource;
+import google.registry.model.domain.DomainBase;
+import java.util.List;
+import java.util.Map;
+import org.joda.time.DateTime;
+
+/**
+ * A MapReduce {@link Input} that loads the domains referencing a set of contacts or hosts.
+ *
+ * <p>There is one reader per referenced resource. Each reader walks the Datastore index on
+ * {@code nsHosts} or {@code allContacts.contact} (which is written in the same commit as the
+ * domain itself) instead of mapping over every domain in the
+ * {@link google.registry.model.index.EppResourceIndex}.
+ */
+class LinkedDomainInput<R extends DomainBase> extends Input<R> {
+
+  private static final long serialVersionUID = -2468137948475139263L;
+
+  private final ImmutableMap<Key<? extends EppResource>, DateTime> referents;
+  private final ImmutableSet<Class<? extends R>> resourceClasses;
+
+  LinkedDomainInput(
+      ImmutableMap<Key<? extends EppResource>, DateTime> referents,
+      ImmutableSet<Class<? extends R>> resourceClasses) {
+    this.referents = referents;
+    this.resourceClasses = resourceClasses;
+    checkNoInheritanceRelationships(ImmutableSet.copyOf(resourceClasses));
+  }
+
+  @Override
+  public List<InputReader<R>> createReaders() {
+    ImmutableList.Builder<InputReader<R>> readers = new ImmutableList.Builder<>();
+    for (Map.Entry<Key<? extends EppResource>, DateTime> entry : referents.entrySet()) {
+      readers.add(new LinkedDomainReader<>(entry.getKey(), entry.getValue(), resourceClasses));
+    }
+    return readers.build();
+  }
+}
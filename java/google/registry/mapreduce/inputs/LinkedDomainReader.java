@@ -0,0 +1,117 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.mapreduce.inputs;
+
+import static google.registry.mapreduce.inputs.EppResourceBaseReader.ONE_MB;
+import static google.registry.model.EppResourceUtils.queryForLinkedDomains;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.QueryResultIterator;
+import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.flogger.FluentLogger;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.cmd.Query;
+import google.registry.model.EppResource;
+import google.registry.model.domain.DomainBase;
+import java.util.NoSuchElementException;
+import javax.annotation.Nullable;
+import org.joda.time.DateTime;
+
+/**
+ * Reader that returns the domains referencing a single contact or host.
+ *
+ * <p>Unlike the readers over {@link google.registry.model.index.EppResourceIndex}, the underlying
+ * query has no ancestor and is therefore only eventually consistent. Callers must re-check the
+ * returned domains against the referent, and must tolerate index entries that lag slightly behind
+ * recent commits (see the {@code asyncDeleteFlowMapreduceDelay} config for how the async flows
+ * account for this).
+ */
+class LinkedDomainReader<R extends DomainBase> extends RetryingInputReader<Key<DomainBase>, R> {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final long serialVersionUID = 6316427916624283146L;
+
+  private final Key<? extends EppResource> referentKey;
+  private final DateTime activeAfter;
+
+  /**
+   * The resource classes to postfilter for.
+   *
+   * <p>The index query is over the {@link DomainBase} kind, so this is used to distinguish between
+   * {@link google.registry.model.domain.DomainResource} and its application counterpart.
+   */
+  private final ImmutableSet<Class<? extends R>> resourceClasses;
+
+  LinkedDomainReader(
+      Key<? extends EppResource> referentKey,
+      DateTime activeAfter,
+      ImmutableSet<Class<? extends R>> resourceClasses) {
+    this.referentKey = referentKey;
+    this.activeAfter = activeAfter;
+    this.resourceClasses = resourceClasses;
+  }
+
+  @Override
+  public QueryResultIterator<Key<DomainBase>> getQueryIterator(@Nullable Cursor cursor) {
+    return startQueryAt(query(), cursor).keys().iterator();
+  }
+
+  @Override
+  public int getTotal() {
+    return query().count();
+  }
+
+  /** Query for domains that reference the referent and were not deleted before the given time. */
+  private Query<DomainBase> query() {
+    return queryForLinkedDomains(referentKey, activeAfter);
+  }
+
+  /** Returns the estimated memory that will be used by this reader in bytes. */
+  @Override
+  public long estimateMemoryRequirement() {
+    // Estimate 2MB of memory for this reader, since it loads a (max 1MB) entity.
+    return ONE_MB * 2;
+  }
+
+  /**
+   * Called for each map invocation.
+   *
+   * @throws NoSuchElementException if there are no more elements, as specified in the
+   *         {@link InputReader#next} Javadoc.
+   */
+  @Override
+  public R next() throws NoSuchElementException {
+    // Loop until we find a value, or nextQueryResult() throws a NoSuchElementException.
+    while (true) {
+      Key<DomainBase> key = nextQueryResult();
+      DomainBase domain = ofy().load().key(key).now();
+      if (domain == null) {
+        logger.atWarning().log("Index on %s points at a missing domain %s", referentKey, key);
+        continue;
+      }
+      // Postfilter to distinguish polymorphic types (e.g. DomainBase and DomainResource).
+      for (Class<? extends R> resourceClass : resourceClasses) {
+        if (resourceClass.isAssignableFrom(domain.getClass())) {
+          @SuppressWarnings("unchecked")
+          R r = (R) domain;
+          return r;
+        }
+      }
+    }
+  }
+}
@@ -112,7 +112,15 @@ abstract class RetryingInputReader<I, T> extends InputReader<T> {
   public Double getProgress() {
     // Cap progress at 1.0, since the query's count() can increase during the run of the mapreduce
     // if more entities are written, but we've cached the value once in "total".
-    return Math.min(1.0, ((double) loaded) / Math.max(1, total));
+    return Math.min(1.0, ((double) (loaded - getReadAheadCount())) / Math.max(1, total));
+  }
+
+  /**
+   * Returns the number of query results that have been read with {@link #nextQueryResult} but not
+   * returned from {@link #next} yet, for readers that read ahead.
+   */
+  protected int getReadAheadCount() {
+    return 0;
   }
 
   /** Called before we are serialized. Save a serializable cursor for this query. */
@@ -121,6 +129,32 @@ abstract class RetryingInputReader<I, T> extends InputReader<T> {
     cursor = queryIterator.getCursor();
   }
 
+  /**
+   * Moves the saved cursor back to a query result that was read ahead, so that the next slice
+   * starts reading from it again.
+   *
+   * <p>Readers that read ahead call this from {@link #endSlice}, after the superclass
+   * implementation, since the results they haven't returned yet are not serialized.
+   *
+   * @param cursorBeforeResult the cursor that {@link #getCursorBeforeLastResult} returned just
+   *     after the result was read
+   * @param readAheadCount the number of results read ahead, starting with that one
+   */
+  protected final void rewindTo(@Nullable Cursor cursorBeforeResult, int readAheadCount) {
+    cursor = cursorBeforeResult;
+    loaded -= readAheadCount;
+  }
+
+  /**
+   * Returns the cursor pointing just before the result that {@link #nextQueryResult} last
+   * returned, or null if there is no such cursor (in which case the query restarts from the
+   * beginning).
+   */
+  @Nullable
+  protected final Cursor getCursorBeforeLastResult() {
+    return cursor;
+  }
+
   /**
    * Get the next item from the query results.
    *
@@ -144,6 +178,7 @@ abstract class RetryingInputReader<I, T> extends InputReader<T> {
           DatastoreTimeoutException.class);
     } catch (NoSuchElementException e) {
       // We expect NoSuchElementException to be thrown, and it isn't an error. Just rethrow.
+      loaded--;
       throw e;
     } catch (Throwable e) {
       throw new RuntimeException(
@@ -35,6 +35,7 @@ import google.registry.model.ofy.CommitLogCheckpointRoot;
 import google.registry.model.ofy.CommitLogManifest;
 import google.registry.model.ofy.CommitLogMutation;
 import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
 import google.registry.model.rde.RdeRevision;
 import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.RegistrarContact;
@@ -42,6 +43,7 @@ import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.PremiumList;
 import google.registry.model.registry.label.ReservedList;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.server.KmsSecret;
 import google.registry.model.server.KmsSecretRevision;
 import google.registry.model.server.Lock;
@@ -86,6 +88,7 @@ public final class EntityClasses {
           ForeignKeyIndex.ForeignKeyHostIndex.class,
           GaeUserIdConverter.class,
           HistoryEntry.class,
+          HistoryEventSummary.class,
           HostResource.class,
           KmsSecret.class,
           KmsSecretRevision.class,
@@ -93,6 +96,7 @@ public final class EntityClasses {
           PollMessage.class,
           PollMessage.Autorenew.class,
           PollMessage.OneTime.class,
+          PollMessageCounter.class,
           PremiumList.class,
           PremiumList.PremiumListEntry.class,
           PremiumList.PremiumListRevision.class,
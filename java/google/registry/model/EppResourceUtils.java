@@ -22,6 +22,7 @@ import static google.registry.util.DateTimeUtils.isBeforeOrAt;
 import static google.registry.util.DateTimeUtils.latestOf;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.Result;
@@ -42,7 +43,9 @@ import google.registry.model.ofy.CommitLogMutation;
 import google.registry.model.registry.Registry;
 import google.registry.model.transfer.TransferData;
 import google.registry.model.transfer.TransferStatus;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
@@ -348,6 +351,60 @@ public final class EppResourceUtils {
     };
   }
 
+  /**
+   * Rewinds several {@link EppResource} objects to a given point in time, loading all the
+   * revisions that are needed in a single batch.
+   *
+   * <p>The same warnings as for {@link #loadAtPointInTime(EppResource, DateTime)} apply.
+   *
+   * @return the resources at {@code timestamp}, keyed by their keys in the order they were given;
+   *     resources that are deleted or not yet created at that time are omitted
+   */
+  public static <T extends EppResource> ImmutableMap<Key<T>, T> loadAllAtPointInTime(
+      Iterable<T> resources, DateTime timestamp) {
+    Map<Key<T>, Key<CommitLogMutation>> mutationKeys = new LinkedHashMap<>();
+    for (T resource : resources) {
+      if (!timestamp.isBefore(resource.getCreationTime())
+          && !isAtOrAfter(timestamp, resource.getUpdateAutoTimestamp().getTimestamp())) {
+        Key<T> resourceKey = Key.create(resource);
+        Key<CommitLogManifest> revision = findMostRecentRevisionAtTime(resource, timestamp);
+        if (revision == null) {
+          logger.atSevere().log("No revision found for %s, falling back to resource.", resourceKey);
+        } else {
+          mutationKeys.put(resourceKey, CommitLogMutation.createKey(revision, resourceKey));
+        }
+      }
+    }
+    Map<Key<CommitLogMutation>, CommitLogMutation> mutations =
+        mutationKeys.isEmpty()
+            ? ImmutableMap.of()
+            : ofy().load().keys(mutationKeys.values());
+    Map<Key<T>, T> results = new LinkedHashMap<>();
+    for (T resource : resources) {
+      if (timestamp.isBefore(resource.getCreationTime())) {
+        continue;
+      }
+      Key<T> resourceKey = Key.create(resource);
+      T loadedResource = resource;
+      Key<CommitLogMutation> mutationKey = mutationKeys.get(resourceKey);
+      if (mutationKey != null) {
+        CommitLogMutation mutation = mutations.get(mutationKey);
+        if (mutation != null) {
+          loadedResource = ofy().load().fromEntity(mutation.getEntity());
+        } else {
+          logger.atSevere().log(
+              "Couldn't load mutation for revision at %s for %s, falling back to resource."
+                  + " Revision: %s",
+              timestamp, resourceKey, mutationKey.getParent());
+        }
+      }
+      if (isActive(loadedResource, timestamp)) {
+        results.put(resourceKey, cloneProjectedAtTime(loadedResource, timestamp));
+      }
+    }
+    return ImmutableMap.copyOf(results);
+  }
+
   @Nullable
   private static <T extends EppResource> Key<CommitLogManifest>
       findMostRecentRevisionAtTime(final T resource, final DateTime timestamp) {
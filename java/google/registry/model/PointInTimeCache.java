@@ -0,0 +1,122 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static google.registry.model.EppResourceUtils.loadAllAtPointInTime;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.googlecode.objectify.Key;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.joda.time.DateTime;
+
+/**
+ * A bounded cache of {@link EppResource} objects rewound to points in time.
+ *
+ * <p>Mapreduces that export the state of the registry at a given time, such as RDE and zone file
+ * generation, look up the same resources over and over again: a popular nameserver is shared by
+ * hundreds of thousands of domains, and each of them needs it loaded and projected at the export
+ * time. Since rewinding a resource to a time in the past always gives the same result, a worker
+ * can keep the results for the duration of its work.
+ *
+ * <p>This class isn't thread-safe and isn't meant to be serialized; mappers keep one in a transient
+ * field for the duration of a slice.
+ */
+public final class PointInTimeCache {
+
+  private final Cache<ResourceAtTime, Optional<EppResource>> cache;
+
+  private long hitCount = 0;
+  private long missCount = 0;
+
+  public PointInTimeCache(long maximumSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+  }
+
+  /**
+   * Returns the resource with the given key at {@code timestamp}, or null if it is deleted or not
+   * yet created at that time.
+   */
+  @Nullable
+  public <T extends EppResource> T load(Key<T> key, DateTime timestamp) {
+    return loadAll(ImmutableList.of(key), timestamp).get(key);
+  }
+
+  /**
+   * Returns the resources with the given keys at {@code timestamp}, in the order of the keys.
+   *
+   * <p>The resources that aren't cached are loaded, and then rewound, in two batches.
+   *
+   * @return the resources, omitting those that are deleted or not yet created at that time
+   */
+  public <T extends EppResource> ImmutableMap<Key<T>, T> loadAll(
+      Iterable<Key<T>> keys, DateTime timestamp) {
+    Map<Key<T>, Optional<T>> results = new LinkedHashMap<>();
+    List<Key<T>> missingKeys = new ArrayList<>();
+    for (Key<T> key : keys) {
+      @SuppressWarnings("unchecked")
+      Optional<T> result = (Optional<T>) cache.getIfPresent(ResourceAtTime.create(key, timestamp));
+      if (result == null) {
+        missCount++;
+        missingKeys.add(key);
+      } else {
+        hitCount++;
+      }
+      results.put(key, result);
+    }
+    if (!missingKeys.isEmpty()) {
+      ImmutableMap<Key<T>, T> loadedResults =
+          loadAllAtPointInTime(ofy().load().keys(missingKeys).values(), timestamp);
+      for (Key<T> key : missingKeys) {
+        Optional<T> result = Optional.ofNullable(loadedResults.get(key));
+        cache.put(ResourceAtTime.create(key, timestamp), result.map(EppResource.class::cast));
+        results.put(key, result);
+      }
+    }
+    ImmutableMap.Builder<Key<T>, T> builder = new ImmutableMap.Builder<>();
+    results.forEach((key, result) -> result.ifPresent(resource -> builder.put(key, resource)));
+    return builder.build();
+  }
+
+  /** Returns the number of lookups that were answered from the cache. */
+  public long getHitCount() {
+    return hitCount;
+  }
+
+  /** Returns the number of lookups that required loading from Datastore. */
+  public long getMissCount() {
+    return missCount;
+  }
+
+  /** Cache key for a resource at a point in time. */
+  @AutoValue
+  abstract static class ResourceAtTime {
+    abstract Key<?> key();
+    abstract DateTime timestamp();
+
+    static ResourceAtTime create(Key<?> key, DateTime timestamp) {
+      return new AutoValue_PointInTimeCache_ResourceAtTime(key, timestamp);
+    }
+  }
+}
@@ -21,17 +21,21 @@ import com.google.common.collect.ImmutableList;
 import google.registry.model.ImmutableObject;
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppoutput.EppOutput;
+import google.registry.xml.OutputFormat;
 import google.registry.xml.ValidationMode;
 import google.registry.xml.XmlException;
 import google.registry.xml.XmlTransformer;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.util.function.UnaryOperator;
+import javax.xml.stream.XMLStreamReader;
 
 /** {@link XmlTransformer} for marshalling to and from the Epp model classes.  */
 public class EppXmlTransformer  {
 
   // Hardcoded XML schemas, ordered with respect to dependency.
-  private static final ImmutableList<String> SCHEMAS = ImmutableList.of(
+  @VisibleForTesting
+  static final ImmutableList<String> SCHEMAS = ImmutableList.of(
       "eppcom.xsd",
       "epp.xsd",
       "contact.xsd",
@@ -70,22 +74,39 @@ public class EppXmlTransformer  {
     return INPUT_TRANSFORMER.unmarshal(clazz, new ByteArrayInputStream(bytes));
   }
 
+  /**
+   * Unmarshal bytes into Epp classes, passing the parser through {@code readerWrapper} first.
+   *
+   * @see XmlTransformer#unmarshal(Class, java.io.InputStream, UnaryOperator)
+   */
+  public static <T> T unmarshal(
+      Class<T> clazz, byte[] bytes, UnaryOperator<XMLStreamReader> readerWrapper)
+      throws XmlException {
+    return INPUT_TRANSFORMER.unmarshal(clazz, new ByteArrayInputStream(bytes), readerWrapper);
+  }
+
   private static byte[] marshal(
       XmlTransformer transformer,
       ImmutableObject root,
-      ValidationMode validation) throws XmlException {
+      ValidationMode validation,
+      OutputFormat format) throws XmlException {
     ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-    transformer.marshal(root, byteArrayOutputStream, UTF_8, validation);
+    transformer.marshal(root, byteArrayOutputStream, UTF_8, validation, format);
     return byteArrayOutputStream.toByteArray();
   }
 
   public static byte[] marshal(EppOutput root, ValidationMode validation) throws XmlException {
-    return marshal(OUTPUT_TRANSFORMER, root, validation);
+    return marshal(root, validation, OutputFormat.FORMATTED);
+  }
+
+  public static byte[] marshal(EppOutput root, ValidationMode validation, OutputFormat format)
+      throws XmlException {
+    return marshal(OUTPUT_TRANSFORMER, root, validation, format);
   }
 
   @VisibleForTesting
   public static byte[] marshalInput(EppInput root, ValidationMode validation) throws XmlException {
-    return marshal(INPUT_TRANSFORMER, root, validation);
+    return marshal(INPUT_TRANSFORMER, root, validation, OutputFormat.FORMATTED);
   }
 
   @VisibleForTesting
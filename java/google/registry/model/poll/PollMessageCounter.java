@@ -0,0 +1,134 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.poll;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Unindex;
+import google.registry.model.ImmutableObject;
+import google.registry.model.annotations.NotBackedUp;
+import google.registry.model.annotations.NotBackedUp.Reason;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+
+/**
+ * One shard of the count of the {@link PollMessage}s that are pending for a registrar.
+ *
+ * <p>EPP poll responses include the length of the registrar's message queue, which would otherwise
+ * take a count query over all of the registrar's pending messages on every poll. Instead, each
+ * registrar has {@link #NUM_SHARDS} counters, in separate entity groups so that concurrent acks
+ * rarely contend. Together they hold the number of the registrar's poll messages whose event time
+ * is at or before {@link #countedThrough}, which is the same for all shards. The queue length is
+ * their sum plus the number of messages whose event time lies between that time and now, which
+ * takes a query over just those few messages.
+ *
+ * <p>Creating a poll message doesn't change the counters. Recounts only count through {@link
+ * #RECOUNT_LAG} before the time they run, and poll messages are almost always created with an
+ * event time that is later than that, so they are found by the query instead. When a counted
+ * message is acked, a random shard is decremented in the same transaction. Poll messages that are
+ * deleted by other means, or recreated with an event time that was already counted (e.g. autorenew
+ * messages of restored domains), make the counters drift, so they are periodically recounted from
+ * scratch by {@code RecountPollMessagesAction}. Registrars that haven't been counted yet have no
+ * counters at all.
+ */
+@Entity
+@Unindex
+@NotBackedUp(reason = Reason.AUTO_GENERATED)
+public class PollMessageCounter extends ImmutableObject {
+
+  /** The number of counter shards per registrar. */
+  public static final int NUM_SHARDS = 10;
+
+  /**
+   * How long before the time of a recount the messages that it counts end.
+   *
+   * <p>Messages that are due right away get the time at which the flow creating them started, and
+   * the flow may commit after a recount that started later. The count query of a recount may also
+   * miss messages that were committed just before it. Leaving the most recent messages to the query
+   * of the poll flows covers both cases, as long as this is longer than a transaction can last.
+   */
+  public static final Duration RECOUNT_LAG = Duration.standardMinutes(5);
+
+  /** The id of the registrar and the index of the shard, separated by a colon. */
+  @Id String id;
+
+  /**
+   * The number of due poll messages attributed to this shard.
+   *
+   * <p>Only the sum over all shards is meaningful. The count of a single shard becomes negative
+   * when more messages are acked through it than it was created with.
+   */
+  long count;
+
+  /** The time through which the registrar's poll messages were counted. */
+  DateTime countedThrough;
+
+  public long getCount() {
+    return count;
+  }
+
+  public DateTime getCountedThrough() {
+    return countedThrough;
+  }
+
+  /** Returns the keys of all of the counter shards of the given registrar. */
+  public static ImmutableList<Key<PollMessageCounter>> createKeys(String clientId) {
+    return IntStream.range(0, NUM_SHARDS)
+        .mapToObj(shard -> createKey(clientId, shard))
+        .collect(toImmutableList());
+  }
+
+  /** Returns the key of a randomly chosen counter shard of the given registrar. */
+  public static Key<PollMessageCounter> createRandomShardKey(String clientId) {
+    return createKey(clientId, ThreadLocalRandom.current().nextInt(NUM_SHARDS));
+  }
+
+  private static Key<PollMessageCounter> createKey(String clientId, int shard) {
+    return Key.create(PollMessageCounter.class, String.format("%s:%d", clientId, shard));
+  }
+
+  /**
+   * Creates the counter shards of a registrar that has the given number of poll messages whose
+   * event time is at or before the given time.
+   */
+  public static ImmutableList<PollMessageCounter> create(
+      String clientId, long count, DateTime countedThrough) {
+    checkArgument(count >= 0, "Negative poll message count: %s", count);
+    return IntStream.range(0, NUM_SHARDS)
+        .mapToObj(
+            shard -> {
+              PollMessageCounter instance = new PollMessageCounter();
+              instance.id = createKey(clientId, shard).getName();
+              instance.count = (shard == 0) ? count : 0;
+              instance.countedThrough = countedThrough;
+              return instance;
+            })
+        .collect(toImmutableList());
+  }
+
+  /** Returns a copy of this shard with its count changed by the given amount. */
+  public PollMessageCounter withCountAdjustedBy(long delta) {
+    PollMessageCounter updated = clone(this);
+    updated.count += delta;
+    return updated;
+  }
+}
@@ -14,6 +14,9 @@
 
 package google.registry.model.pricing;
 
+import com.google.common.collect.ImmutableMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import org.joda.money.Money;
 import org.joda.time.DateTime;
@@ -34,6 +37,22 @@ public interface PremiumPricingEngine {
    */
   DomainPrices getDomainPrices(String fullyQualifiedDomainName, DateTime priceTime);
 
+  /**
+   * Returns the prices for each of the given fully qualified domain names at the given time.
+   *
+   * <p>Implementations that can price many domain names more cheaply than one at a time (e.g. by
+   * batching their lookups) should override this. The default implementation just calls {@link
+   * #getDomainPrices(String, DateTime)} for each domain name.
+   */
+  default ImmutableMap<String, DomainPrices> getDomainPrices(
+      Iterable<String> fullyQualifiedDomainNames, DateTime priceTime) {
+    Map<String, DomainPrices> prices = new LinkedHashMap<>();
+    for (String domainName : fullyQualifiedDomainNames) {
+      prices.computeIfAbsent(domainName, name -> getDomainPrices(name, priceTime));
+    }
+    return ImmutableMap.copyOf(prices);
+  }
+
   /**
    * A class containing information on premium prices for a specific domain name.
    *
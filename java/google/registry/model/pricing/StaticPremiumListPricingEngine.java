@@ -16,15 +16,25 @@ package google.registry.model.pricing;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.emptyToNull;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static google.registry.model.registry.Registry.TldState.SUNRISE;
 import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrice;
+import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrices;
 import static google.registry.model.registry.label.ReservationType.NAME_COLLISION;
 import static google.registry.model.registry.label.ReservedList.getReservationTypes;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Streams;
 import com.google.common.net.InternetDomainName;
 import google.registry.model.registry.Registry;
+import google.registry.model.registry.label.ReservationType;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.money.Money;
@@ -47,6 +57,62 @@ public final class StaticPremiumListPricingEngine implements PremiumPricingEngin
     boolean isNameCollisionInSunrise =
         registry.getTldState(priceTime).equals(SUNRISE)
             && getReservationTypes(label, tld).contains(NAME_COLLISION);
+    return createDomainPrices(registry, premiumPrice, isNameCollisionInSunrise, priceTime);
+  }
+
+  /**
+   * Returns the prices for each of the given domain names, looking up all of the labels on each
+   * TLD's premium list and reserved lists together.
+   */
+  @Override
+  public ImmutableMap<String, DomainPrices> getDomainPrices(
+      Iterable<String> fullyQualifiedDomainNames, DateTime priceTime) {
+    // Group the labels by TLD, since each TLD has its own premium and reserved lists.
+    ImmutableSetMultimap<String, String> domainNamesByTld =
+        Streams.stream(fullyQualifiedDomainNames)
+            .collect(
+                toImmutableSetMultimap(
+                    domainName -> checkNotNull(getTldFromDomainName(domainName), "tld"),
+                    domainName -> domainName));
+    Map<String, DomainPrices> prices = new HashMap<>();
+    for (String tld : domainNamesByTld.keySet()) {
+      Registry registry = Registry.get(tld);
+      ImmutableMap<String, String> labelsByDomainName =
+          domainNamesByTld
+              .get(tld)
+              .stream()
+              .collect(
+                  toImmutableMap(
+                      domainName -> domainName,
+                      domainName -> InternetDomainName.from(domainName).parts().get(0)));
+      ImmutableMap<String, Money> premiumPrices =
+          getPremiumPrices(labelsByDomainName.values(), registry);
+      ImmutableMap<String, ImmutableSet<ReservationType>> reservationTypes =
+          registry.getTldState(priceTime).equals(SUNRISE)
+              ? getReservationTypes(labelsByDomainName.values(), tld)
+              : ImmutableMap.of();
+      labelsByDomainName.forEach(
+          (domainName, label) ->
+              prices.put(
+                  domainName,
+                  createDomainPrices(
+                      registry,
+                      Optional.ofNullable(premiumPrices.get(label)),
+                      reservationTypes.getOrDefault(label, ImmutableSet.of())
+                          .contains(NAME_COLLISION),
+                      priceTime)));
+    }
+    // Return the prices in the same order that the domain names were passed in.
+    return Streams.stream(fullyQualifiedDomainNames)
+        .distinct()
+        .collect(toImmutableMap(domainName -> domainName, prices::get));
+  }
+
+  private static DomainPrices createDomainPrices(
+      Registry registry,
+      Optional<Money> premiumPrice,
+      boolean isNameCollisionInSunrise,
+      DateTime priceTime) {
     String feeClass = emptyToNull(Joiner.on('-').skipNulls().join(
             premiumPrice.isPresent() ? "premium" : null,
             isNameCollisionInSunrise ? "collision" : null));
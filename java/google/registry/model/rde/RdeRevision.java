@@ -47,6 +47,12 @@ public final class RdeRevision extends ImmutableObject {
    */
   int revision;
 
+  /**
+   * Number of parts the last revision was split into, or zero if it was staged before deposits
+   * could be split, i.e. has a single part.
+   */
+  int parts;
+
   /**
    * Returns next revision ID to use when staging a new deposit file for the given triplet.
    *
@@ -59,7 +65,27 @@ public final class RdeRevision extends ImmutableObject {
   }
 
   /**
-   * Sets the revision ID for a given triplet.
+   * Returns the number of parts of the last revision successfully staged for the given triplet.
+   *
+   * <p>The parts are numbered from {@code 1}, which is the sequence number in their filenames.
+   */
+  public static int getParts(String tld, DateTime date, RdeMode mode) {
+    RdeRevision object =
+        ofy().load().type(RdeRevision.class).id(makePartialName(tld, date, mode)).now();
+    return (object == null || object.parts == 0) ? 1 : object.parts;
+  }
+
+  /**
+   * Sets the revision ID for a given triplet, whose deposit has a single part.
+   *
+   * @see #saveRevision(String, DateTime, RdeMode, int, int)
+   */
+  public static void saveRevision(String tld, DateTime date, RdeMode mode, int revision) {
+    saveRevision(tld, date, mode, revision, 1);
+  }
+
+  /**
+   * Sets the revision ID and number of parts for a given triplet.
    *
    * <p>This method verifies that the current revision is {@code revision - 1}, or that the object
    * does not exist in Datastore if {@code revision == 0}.
@@ -67,8 +93,10 @@ public final class RdeRevision extends ImmutableObject {
    * @throws IllegalStateException if not in a transaction
    * @throws VerifyException if Datastore state doesn't meet the above criteria
    */
-  public static void saveRevision(String tld, DateTime date, RdeMode mode, int revision) {
+  public static void saveRevision(
+      String tld, DateTime date, RdeMode mode, int revision, int parts) {
     checkArgument(revision >= 0, "Negative revision: %s", revision);
+    checkArgument(parts >= 1, "Non-positive number of parts: %s", parts);
     String triplet = makePartialName(tld, date, mode);
     ofy().assertInTransaction();
     RdeRevision object = ofy().load().type(RdeRevision.class).id(triplet).now();
@@ -82,6 +110,7 @@ public final class RdeRevision extends ImmutableObject {
     object = new RdeRevision();
     object.id = triplet;
     object.revision = revision;
+    object.parts = parts;
     ofy().save().entity(object);
   }
 }
@@ -40,7 +40,9 @@ import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.DomainLabelMetrics.PremiumListCheckOutcome;
 import google.registry.model.registry.label.PremiumList.PremiumListEntry;
 import google.registry.model.registry.label.PremiumList.PremiumListRevision;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
@@ -75,6 +77,73 @@ public final class PremiumListUtils {
     }
     DateTime startTime = DateTime.now(UTC);
     String listName = registry.getPremiumList().getName();
+    PremiumListRevision revision = loadRevision(listName);
+    CheckResults checkResults = checkStatus(revision, label);
+    DomainLabelMetrics.recordPremiumListCheckOutcome(
+        registry.getTldStr(),
+        listName,
+        checkResults.checkOutcome(),
+        DateTime.now(UTC).getMillis() - startTime.getMillis());
+    return checkResults.premiumPrice();
+  }
+
+  /**
+   * Returns the premium prices for those of the specified labels that are premium on the given
+   * registry.
+   *
+   * <p>This gives the same results as calling {@link #getPremiumPrice} for each label, but checks
+   * all of the labels against the Bloom filter in one pass and then loads all of the uncached
+   * entries that might exist in a single batch, which is much faster for large domain checks.
+   */
+  public static ImmutableMap<String, Money> getPremiumPrices(
+      Iterable<String> labels, Registry registry) {
+    // If the registry has no configured premium list, then no labels are premium.
+    if (registry.getPremiumList() == null) {
+      return ImmutableMap.of();
+    }
+    DateTime startTime = DateTime.now(UTC);
+    String listName = registry.getPremiumList().getName();
+    PremiumListRevision revision = loadRevision(listName);
+    Map<String, PremiumListCheckOutcome> outcomes = new LinkedHashMap<>();
+    Map<String, Key<PremiumListEntry>> entryKeys = new LinkedHashMap<>();
+    for (String label : labels) {
+      if (revision.getProbablePremiumLabels().mightContain(label)) {
+        entryKeys.put(label, Key.create(Key.create(revision), PremiumListEntry.class, label));
+      } else {
+        outcomes.put(label, BLOOM_FILTER_NEGATIVE);
+      }
+    }
+    ImmutableMap<Key<PremiumListEntry>, Optional<PremiumListEntry>> cachedEntries =
+        cachePremiumListEntries.getAllPresent(entryKeys.values());
+    ImmutableMap<Key<PremiumListEntry>, Optional<PremiumListEntry>> entries;
+    try {
+      entries = cachePremiumListEntries.getAll(entryKeys.values());
+    } catch (InvalidCacheLoadException | ExecutionException e) {
+      throw new RuntimeException("Could not load premium list entries " + entryKeys.values(), e);
+    }
+    ImmutableMap.Builder<String, Money> premiumPrices = new ImmutableMap.Builder<>();
+    for (Map.Entry<String, Key<PremiumListEntry>> labelAndKey : entryKeys.entrySet()) {
+      Optional<PremiumListEntry> entry = entries.get(labelAndKey.getValue());
+      boolean wasCached = cachedEntries.containsKey(labelAndKey.getValue());
+      if (entry.isPresent()) {
+        premiumPrices.put(labelAndKey.getKey(), entry.get().getValue());
+        outcomes.put(labelAndKey.getKey(), wasCached ? CACHED_POSITIVE : UNCACHED_POSITIVE);
+      } else {
+        outcomes.put(labelAndKey.getKey(), wasCached ? CACHED_NEGATIVE : UNCACHED_NEGATIVE);
+      }
+    }
+    // The labels were all checked together, so attribute an equal share of the time to each one.
+    double elapsedMillis =
+        (DateTime.now(UTC).getMillis() - startTime.getMillis()) / (double) outcomes.size();
+    for (PremiumListCheckOutcome outcome : outcomes.values()) {
+      DomainLabelMetrics.recordPremiumListCheckOutcome(
+          registry.getTldStr(), listName, outcome, elapsedMillis);
+    }
+    return premiumPrices.build();
+  }
+
+  /** Loads the current revision of the named premium list, from cache. */
+  private static PremiumListRevision loadRevision(String listName) {
     Optional<PremiumList> optionalPremiumList = PremiumList.getCached(listName);
     checkState(optionalPremiumList.isPresent(), "Could not load premium list '%s'", listName);
     PremiumList premiumList = optionalPremiumList.get();
@@ -89,14 +158,7 @@ public final class PremiumListUtils {
         revision.getProbablePremiumLabels() != null,
         "Probable premium labels Bloom filter is null on revision '%s'",
         premiumList.getRevisionKey());
-
-    CheckResults checkResults = checkStatus(revision, label);
-    DomainLabelMetrics.recordPremiumListCheckOutcome(
-        registry.getTldStr(),
-        listName,
-        checkResults.checkOutcome(),
-        DateTime.now(UTC).getMillis() - startTime.getMillis());
-    return checkResults.premiumPrice();
+    return revision;
   }
 
   private static CheckResults checkStatus(PremiumListRevision premiumListRevision, String label) {
@@ -44,6 +44,7 @@ import com.googlecode.objectify.mapper.Mapper;
 import google.registry.model.Buildable;
 import google.registry.model.registry.Registry;
 import google.registry.model.registry.label.DomainLabelMetrics.MetricsReservedListMatch;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -225,6 +226,34 @@ public final class ReservedList
         .collect(toImmutableSet());
   }
 
+  /**
+   * Returns the reservation types of each of the given labels on the specified TLD.
+   *
+   * <p>This gives the same results as calling {@link #getReservationTypes(String, String)} for each
+   * label, but only looks up the TLD's reserved lists once. Labels that are in none of the lists
+   * map to an empty set.
+   */
+  public static ImmutableMap<String, ImmutableSet<ReservationType>> getReservationTypes(
+      Iterable<String> labels, String tld) {
+    Registry registry = Registry.get(checkNotNull(tld, "tld must not be null"));
+    ImmutableSet<ReservedList> reservedLists = loadReservedLists(registry.getReservedLists());
+    Map<String, ImmutableSet<ReservationType>> reservationTypes = new LinkedHashMap<>();
+    for (String label : labels) {
+      checkNotNull(label, "label");
+      if (label.length() == 0) {
+        reservationTypes.put(label, ImmutableSet.of(FULLY_BLOCKED));
+      } else if (!reservationTypes.containsKey(label)) {
+        reservationTypes.put(
+            label,
+            getReservedListEntries(label, tld, reservedLists)
+                .stream()
+                .map(ReservedListEntry::getValue)
+                .collect(toImmutableSet()));
+      }
+    }
+    return ImmutableMap.copyOf(reservationTypes);
+  }
+
   /**
    * Returns the set of nameservers that can be set on the given domain.
    *
@@ -246,14 +275,20 @@ public final class ReservedList
    * no such entry exists.
    */
   private static ImmutableSet<ReservedListEntry> getReservedListEntries(String label, String tld) {
-    DateTime startTime = DateTime.now(UTC);
     Registry registry = Registry.get(checkNotNull(tld, "tld must not be null"));
+    return getReservedListEntries(label, tld, loadReservedLists(registry.getReservedLists()));
+  }
+
+  /** Returns the entries associated with this label in any of the given reserved lists. */
+  private static ImmutableSet<ReservedListEntry> getReservedListEntries(
+      String label, String tld, ImmutableSet<ReservedList> reservedLists) {
+    DateTime startTime = DateTime.now(UTC);
     ImmutableSet.Builder<ReservedListEntry> entriesBuilder = new ImmutableSet.Builder<>();
     ImmutableSet.Builder<MetricsReservedListMatch> metricMatchesBuilder =
         new ImmutableSet.Builder<>();
 
     // Loop through all reservation lists and add each of them.
-    for (ReservedList rl : loadReservedLists(registry.getReservedLists())) {
+    for (ReservedList rl : reservedLists) {
       if (rl.getReservedListEntries().containsKey(label)) {
         ReservedListEntry entry = rl.getReservedListEntries().get(label);
         entriesBuilder.add(entry);
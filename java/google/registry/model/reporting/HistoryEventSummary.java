@@ -0,0 +1,208 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.reporting;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.CollectionUtils.nullToEmptyImmutableCopy;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.collect.Streams;
+import com.googlecode.objectify.Key;
+import com.googlecode.objectify.annotation.Embed;
+import com.googlecode.objectify.annotation.Entity;
+import com.googlecode.objectify.annotation.Id;
+import com.googlecode.objectify.annotation.Parent;
+import google.registry.model.EppResource;
+import google.registry.model.ImmutableObject;
+import google.registry.model.reporting.HistoryEntry.Type;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.joda.time.DateTime;
+
+/**
+ * A compact summary of the lifecycle events (creation, deletion, renewals, transfers and so on)
+ * of a resource, derived from its {@link HistoryEntry} records.
+ *
+ * <p>RDAP responses list these events for every domain, host and contact they return. Deriving
+ * them from the history entries takes a query over all of the resource's history, including the
+ * full EPP XML of every update, so the flows that write one of the {@link #SUMMARIZED_TYPES} also
+ * update this entity, which is then loaded by key.
+ *
+ * <p>There is at most one summary per resource, in the resource's entity group. Resources that
+ * predate this entity don't have one until they are next mutated by a summarized event, or until
+ * the {@code BackfillHistoryEventSummariesAction} mapreduce is run.
+ */
+@Entity
+public class HistoryEventSummary extends ImmutableObject {
+
+  /** The history entry types that are reported as events, and hence kept in summaries. */
+  public static final ImmutableSet<Type> SUMMARIZED_TYPES =
+      Sets.immutableEnumSet(
+          Type.CONTACT_CREATE,
+          Type.CONTACT_DELETE,
+          Type.CONTACT_TRANSFER_APPROVE,
+          Type.DOMAIN_APPLICATION_CREATE,
+          Type.DOMAIN_APPLICATION_DELETE,
+          Type.DOMAIN_AUTORENEW,
+          Type.DOMAIN_CREATE,
+          Type.DOMAIN_DELETE,
+          Type.DOMAIN_RENEW,
+          Type.DOMAIN_RESTORE,
+          Type.DOMAIN_TRANSFER_APPROVE,
+          Type.HOST_CREATE,
+          Type.HOST_DELETE);
+
+  /** Summarized types that create their resource, which therefore has no prior history. */
+  private static final ImmutableSet<Type> CREATION_TYPES =
+      Sets.immutableEnumSet(
+          Type.CONTACT_CREATE,
+          Type.DOMAIN_APPLICATION_CREATE,
+          Type.DOMAIN_CREATE,
+          Type.HOST_CREATE);
+
+  private static final long SINGLETON_ID = 1;
+
+  @Id long id = SINGLETON_ID;
+
+  /** The resource whose events are summarized. */
+  @Parent Key<? extends EppResource> parent;
+
+  /** The summarized events, in order of modification time. */
+  List<Event> events;
+
+  public Key<? extends EppResource> getParent() {
+    return parent;
+  }
+
+  public ImmutableList<Event> getEvents() {
+    return nullToEmptyImmutableCopy(events);
+  }
+
+  /** Returns whether history entries of the given type are kept in summaries. */
+  public static boolean isSummarized(Type type) {
+    return SUMMARIZED_TYPES.contains(type);
+  }
+
+  /** Returns the key of the summary of the given resource. */
+  public static Key<HistoryEventSummary> createKey(Key<? extends EppResource> resourceKey) {
+    return Key.create(resourceKey, HistoryEventSummary.class, SINGLETON_ID);
+  }
+
+  /**
+   * Creates the summary of a resource from its history entries.
+   *
+   * <p>Entries whose types aren't summarized are ignored.
+   */
+  public static HistoryEventSummary create(
+      Key<? extends EppResource> resourceKey, Iterable<HistoryEntry> historyEntries) {
+    HistoryEventSummary instance = new HistoryEventSummary();
+    instance.parent = resourceKey;
+    instance.events =
+        Streams.stream(historyEntries)
+            .filter(entry -> isSummarized(entry.getType()))
+            .map(Event::create)
+            .sorted(Comparator.comparing(Event::getModificationTime))
+            .collect(toImmutableList());
+    return instance;
+  }
+
+  /**
+   * Returns the summary of the parent resource of a history entry that is about to be saved,
+   * updated to include that entry.
+   *
+   * <p>This must be called in the transaction that saves the history entry, and the returned
+   * summary must be saved along with it. If an existing resource has no summary yet, one is
+   * created from the resource's existing history entries.
+   */
+  public static HistoryEventSummary updatedWith(HistoryEntry historyEntry) {
+    return updatedWith(ImmutableList.of(historyEntry));
+  }
+
+  /**
+   * Returns the summary of a resource updated to include several of its history entries that are
+   * about to be saved in the same transaction.
+   *
+   * @see #updatedWith(HistoryEntry)
+   */
+  public static HistoryEventSummary updatedWith(ImmutableList<HistoryEntry> historyEntries) {
+    checkArgument(!historyEntries.isEmpty(), "No history entries to summarize");
+    Key<? extends EppResource> resourceKey = historyEntries.get(0).getParent();
+    for (HistoryEntry historyEntry : historyEntries) {
+      checkArgument(
+          isSummarized(historyEntry.getType()),
+          "History entries of type %s are not summarized",
+          historyEntry.getType());
+      checkArgument(
+          resourceKey.equals(historyEntry.getParent()),
+          "History entries of different resources: %s, %s",
+          resourceKey,
+          historyEntry.getParent());
+    }
+    HistoryEventSummary summary =
+        CREATION_TYPES.contains(historyEntries.get(0).getType())
+            ? create(resourceKey, ImmutableList.of())
+            : ofy().load().key(createKey(resourceKey)).now();
+    if (summary == null) {
+      summary =
+          create(resourceKey, ofy().load().type(HistoryEntry.class).ancestor(resourceKey).list());
+    }
+    HistoryEventSummary updated = clone(summary);
+    updated.events =
+        Stream.concat(
+                summary.getEvents().stream(), historyEntries.stream().map(Event::create))
+            .sorted(Comparator.comparing(Event::getModificationTime))
+            .collect(toImmutableList());
+    return updated;
+  }
+
+  /** A single event in a {@link HistoryEventSummary}. */
+  @Embed
+  public static class Event extends ImmutableObject {
+
+    /** The type of the history entry that recorded the event. */
+    Type type;
+
+    /** The id of the registrar that caused the event. */
+    String clientId;
+
+    /** The time of the event. */
+    DateTime modificationTime;
+
+    public Type getType() {
+      return type;
+    }
+
+    public String getClientId() {
+      return clientId;
+    }
+
+    public DateTime getModificationTime() {
+      return modificationTime;
+    }
+
+    static Event create(HistoryEntry historyEntry) {
+      Event instance = new Event();
+      instance.type = historyEntry.getType();
+      instance.clientId = historyEntry.getClientId();
+      instance.modificationTime = historyEntry.getModificationTime();
+      return instance;
+    }
+  }
+}
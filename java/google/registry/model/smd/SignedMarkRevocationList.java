@@ -29,6 +29,7 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
+import com.google.common.flogger.FluentLogger;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.EmbedMap;
 import com.googlecode.objectify.annotation.Entity;
@@ -41,6 +42,8 @@ import google.registry.model.annotations.NotBackedUp;
 import google.registry.model.annotations.NotBackedUp.Reason;
 import google.registry.model.common.EntityGroupRoot;
 import google.registry.util.CollectionUtils;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import org.joda.time.DateTime;
 
@@ -63,6 +66,8 @@ import org.joda.time.DateTime;
 @NotBackedUp(reason = Reason.EXTERNALLY_SOURCED)
 public class SignedMarkRevocationList extends ImmutableObject {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   @VisibleForTesting
   static final int SHARD_SIZE = 10000;
 
@@ -148,19 +153,27 @@ public class SignedMarkRevocationList extends ImmutableObject {
     return revokes.size();
   }
 
-  /** Save this list to Datastore in sharded form. Returns {@code this}. */
+  /**
+   * Save this list to Datastore in sharded form. Returns {@code this}.
+   *
+   * <p>MarksDB republishes the same list until there are new revocations, so if the saved list
+   * already has the same creation time and revocations, nothing is written.
+   */
   public SignedMarkRevocationList save() {
     ofy()
         .transact(
             () -> {
-              ofy()
-                  .deleteWithoutBackup()
-                  .keys(
-                      ofy()
-                          .load()
-                          .type(SignedMarkRevocationList.class)
-                          .ancestor(getCrossTldKey())
-                          .keys());
+              List<SignedMarkRevocationList> oldShards =
+                  ofy()
+                      .load()
+                      .type(SignedMarkRevocationList.class)
+                      .ancestor(getCrossTldKey())
+                      .list();
+              if (isSavedAs(oldShards)) {
+                logger.atInfo().log("SMDRL created at %s is already saved.", creationTime);
+                return;
+              }
+              ofy().deleteWithoutBackup().entities(oldShards);
               ofy()
                   .saveWithoutBackup()
                   .entities(
@@ -179,6 +192,21 @@ public class SignedMarkRevocationList extends ImmutableObject {
     return this;
   }
 
+  /** Returns whether the given shards make up exactly this list. */
+  private boolean isSavedAs(List<SignedMarkRevocationList> shards) {
+    if (shards.isEmpty()) {
+      return false;
+    }
+    Map<String, DateTime> savedRevokes = new HashMap<>();
+    for (SignedMarkRevocationList shard : shards) {
+      if (!creationTime.equals(shard.creationTime)) {
+        return false;
+      }
+      savedRevokes.putAll(shard.revokes);
+    }
+    return revokes.equals(savedRevokes);
+  }
+
   /** As a safety mechanism, fail if someone tries to save this class directly. */
   @OnSave
   void disallowUnshardedSaves() {
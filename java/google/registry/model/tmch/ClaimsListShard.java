@@ -18,14 +18,25 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.base.Verify.verify;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.math.IntMath.divide;
 import static google.registry.model.CacheUtils.memoizeWithShortExpiration;
 import static google.registry.model.ofy.ObjectifyService.allocateId;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.CollectionUtils.nullToEmpty;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
+import static java.math.RoundingMode.CEILING;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Streams;
+import com.google.common.flogger.FluentLogger;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.googlecode.objectify.Key;
 import com.googlecode.objectify.annotation.EmbedMap;
@@ -39,13 +50,14 @@ import google.registry.model.annotations.NotBackedUp;
 import google.registry.model.annotations.NotBackedUp.Reason;
 import google.registry.model.annotations.VirtualEntity;
 import google.registry.model.common.CrossTldSingleton;
-import google.registry.util.CollectionUtils;
 import google.registry.util.Concurrent;
 import google.registry.util.Retrier;
 import google.registry.util.SystemSleeper;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import javax.annotation.Nullable;
@@ -63,6 +75,11 @@ import org.joda.time.DateTime;
  * revision object and updating the {@link ClaimsListSingleton} pointing to it. This bypasses the
  * 10MB per transaction limit.
  *
+ * <p>Labels are assigned to shards by a hash of the label, and the singleton records a fingerprint
+ * of the contents of each shard. When a new list is saved, only the shards whose contents changed
+ * are written; the new revision reuses the existing entities for the rest. Likewise, a cache reload
+ * only loads the shards it hasn't already seen.
+ *
  * <p>Therefore, it is never OK to save an instance of this class directly to Datastore. Instead you
  * must use the {@link #save} method to do it for you.
  */
@@ -70,6 +87,8 @@ import org.joda.time.DateTime;
 @NotBackedUp(reason = Reason.EXTERNALLY_SOURCED)
 public class ClaimsListShard extends ImmutableObject {
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /** The number of claims list entries to store per shard. */
   private static final int SHARD_SIZE = 10000;
 
@@ -79,7 +98,13 @@ public class ClaimsListShard extends ImmutableObject {
   @Parent
   Key<ClaimsListRevision> parent;
 
-  /** When the claims list was last updated. */
+  /**
+   * When the claims list was last updated.
+   *
+   * <p>For shards that are listed in {@link ClaimsListSingleton#shardKeys} this is the creation
+   * time of the list the shard was first written for, which can be older than that of the active
+   * list.
+   */
   DateTime creationTime;
 
   /** A map from labels to claims keys. */
@@ -90,60 +115,134 @@ public class ClaimsListShard extends ImmutableObject {
   @Ignore
   boolean isShard = false;
 
+  /**
+   * Compact, sorted copies of each shard of the full claims list, used for lookups on the list
+   * returned by {@link #get}.
+   *
+   * <p>Labels are found in the table at {@link #getShardIndex}, which is why lists that predate
+   * hash sharding are combined into a single table. When this is set {@link #labelsToKeys} is
+   * null, so that the combined list isn't held in memory twice. It is never set on individual
+   * shards.
+   */
+  @Ignore
+  @Nullable
+  ImmutableList<ClaimsListTable> tables;
+
   private static final Retrier LOADER_RETRIER = new Retrier(new SystemSleeper(), 2);
 
+  /**
+   * The tables built on the last load of the claims list, by the fingerprint of the shard they were
+   * built from.
+   *
+   * <p>Shard contents never change once written, so these can be reused by the next load for every
+   * shard whose fingerprint is still listed in the {@link ClaimsListSingleton}.
+   */
+  private static volatile ImmutableMap<Long, ClaimsListTable> loadedTables = ImmutableMap.of();
+
   private static final Callable<ClaimsListShard> LOADER_CALLABLE =
       () -> {
-        // Find the most recent revision.
-        Key<ClaimsListRevision> revisionKey = getCurrentRevision();
-
-        Map<String, String> combinedLabelsToKeys = new HashMap<>();
-        DateTime creationTime = START_OF_TIME;
-        if (revisionKey != null) {
-          // Grab all of the keys for the shards that belong to the current revision.
-          final List<Key<ClaimsListShard>> shardKeys =
-              ofy().load().type(ClaimsListShard.class).ancestor(revisionKey).keys().list();
-
-          List<ClaimsListShard> shards;
-          try {
-            // Load all of the shards concurrently, each in a separate transaction.
-            shards =
-                Concurrent.transform(
-                    shardKeys,
-                    key ->
-                        ofy()
-                            .transactNewReadOnly(
-                                () -> {
-                                  ClaimsListShard claimsListShard = ofy().load().key(key).now();
-                                  checkState(
-                                      claimsListShard != null,
-                                      "Key not found when loading claims list shards.");
-                                  return claimsListShard;
-                                }));
-          } catch (UncheckedExecutionException e) {
-            // We retry on IllegalStateException. However, there's a checkState inside the
-            // Concurrent.transform, so if it's thrown it'll be wrapped in an
-            // UncheckedExecutionException. We want to unwrap it so it's caught by the retrier.
-            if (e.getCause() != null) {
-              throwIfUnchecked(e.getCause());
-            }
-            throw e;
-          }
-
-          // Combine the shards together and return the concatenated ClaimsList.
-          if (!shards.isEmpty()) {
-            creationTime = shards.get(0).creationTime;
-            for (ClaimsListShard shard : shards) {
-              combinedLabelsToKeys.putAll(shard.labelsToKeys);
-              checkState(
-                  creationTime.equals(shard.creationTime),
-                  "Inconsistent claims list shard creation times.");
-            }
+        ClaimsListSingleton singleton = ofy().load().entity(new ClaimsListSingleton()).now();
+        if (singleton == null) {
+          return createCombined(START_OF_TIME, ImmutableList.of(ClaimsListTable.empty()));
+        }
+        if (singleton.shardKeys == null) {
+          return loadLegacyRevision(singleton.activeRevision);
+        }
+        ImmutableMap<Long, ClaimsListTable> previousTables = loadedTables;
+        List<Key<ClaimsListShard>> keysToLoad = new ArrayList<>();
+        List<Long> fingerprintsToLoad = new ArrayList<>();
+        for (int i = 0; i < singleton.shardKeys.size(); i++) {
+          if (!previousTables.containsKey(singleton.shardFingerprints.get(i))) {
+            keysToLoad.add(singleton.shardKeys.get(i));
+            fingerprintsToLoad.add(singleton.shardFingerprints.get(i));
           }
         }
-        return create(creationTime, ImmutableMap.copyOf(combinedLabelsToKeys));
+        List<ClaimsListShard> loadedShards = loadShards(keysToLoad);
+        Map<Long, ClaimsListTable> newTables = new HashMap<>();
+        for (int i = 0; i < loadedShards.size(); i++) {
+          newTables.put(
+              fingerprintsToLoad.get(i),
+              ClaimsListTable.copyOf(nullToEmpty(loadedShards.get(i).labelsToKeys)));
+        }
+        ImmutableList.Builder<ClaimsListTable> tables = new ImmutableList.Builder<>();
+        ImmutableMap.Builder<Long, ClaimsListTable> tablesByFingerprint =
+            new ImmutableMap.Builder<>();
+        for (Long fingerprint : ImmutableSet.copyOf(singleton.shardFingerprints)) {
+          ClaimsListTable table =
+              previousTables.containsKey(fingerprint)
+                  ? previousTables.get(fingerprint)
+                  : newTables.get(fingerprint);
+          tablesByFingerprint.put(fingerprint, checkNotNull(table));
+        }
+        ImmutableMap<Long, ClaimsListTable> currentTables = tablesByFingerprint.build();
+        for (Long fingerprint : singleton.shardFingerprints) {
+          tables.add(currentTables.get(fingerprint));
+        }
+        loadedTables = currentTables;
+        logger.atInfo().log(
+            "Loaded %d of %d claims list shards from Datastore.",
+            keysToLoad.size(), singleton.shardKeys.size());
+        return createCombined(singleton.creationTime, tables.build());
       };
 
+  /**
+   * Loads a revision saved before hash sharding, by querying for all of the shards under it and
+   * combining them into a single table.
+   */
+  private static ClaimsListShard loadLegacyRevision(Key<ClaimsListRevision> revisionKey) {
+    // Grab all of the keys for the shards that belong to the current revision.
+    List<ClaimsListShard> shards =
+        loadShards(ofy().load().type(ClaimsListShard.class).ancestor(revisionKey).keys().list());
+    List<Entry<String, String>> combinedEntries = new ArrayList<>();
+    DateTime creationTime = START_OF_TIME;
+    // Combine the shards together and return the concatenated ClaimsList.
+    if (!shards.isEmpty()) {
+      creationTime = shards.get(0).creationTime;
+      for (ClaimsListShard shard : shards) {
+        combinedEntries.addAll(shard.labelsToKeys.entrySet());
+        checkState(
+            creationTime.equals(shard.creationTime),
+            "Inconsistent claims list shard creation times.");
+      }
+    }
+    // Pack the entries straight into a sorted table rather than merging them into a map first.
+    return createCombined(creationTime, ImmutableList.of(ClaimsListTable.copyOf(combinedEntries)));
+  }
+
+  /** Loads the given shards concurrently, each in a separate transaction. */
+  private static List<ClaimsListShard> loadShards(List<Key<ClaimsListShard>> shardKeys) {
+    try {
+      return Concurrent.transform(
+          shardKeys,
+          key ->
+              ofy()
+                  .transactNewReadOnly(
+                      () -> {
+                        ClaimsListShard claimsListShard = ofy().load().key(key).now();
+                        checkState(
+                            claimsListShard != null,
+                            "Key not found when loading claims list shards.");
+                        return claimsListShard;
+                      }));
+    } catch (UncheckedExecutionException e) {
+      // We retry on IllegalStateException. However, there's a checkState inside the
+      // Concurrent.transform, so if it's thrown it'll be wrapped in an
+      // UncheckedExecutionException. We want to unwrap it so it's caught by the retrier.
+      if (e.getCause() != null) {
+        throwIfUnchecked(e.getCause());
+      }
+      throw e;
+    }
+  }
+
+  private static ClaimsListShard createCombined(
+      DateTime creationTime, ImmutableList<ClaimsListTable> tables) {
+    ClaimsListShard combined = new ClaimsListShard();
+    combined.creationTime = creationTime;
+    combined.tables = tables;
+    return combined;
+  }
+
   /**
    * A cached supplier that fetches the claims list shards from Datastore and recombines them into a
    * single {@link ClaimsListShard} object.
@@ -158,21 +257,44 @@ public class ClaimsListShard extends ImmutableObject {
 
   /** Returns the claim key for a given domain if there is one, empty otherwise. */
   public Optional<String> getClaimKey(String label) {
-    return Optional.ofNullable(labelsToKeys.get(label));
+    return tables != null
+        ? tables.get(getShardIndex(label, tables.size())).getClaimKey(label)
+        : Optional.ofNullable(labelsToKeys.get(label));
+  }
+
+  /**
+   * Returns whether the given label is on the claims list.
+   *
+   * <p>This is cheaper than {@link #getClaimKey} when the key itself isn't needed, since it doesn't
+   * allocate.
+   */
+  public boolean isClaimed(String label) {
+    return tables != null
+        ? tables.get(getShardIndex(label, tables.size())).containsLabel(label)
+        : labelsToKeys.containsKey(label);
   }
 
+  /** Returns all of the labels and their claims keys, ordered by label. */
   public ImmutableMap<String, String> getLabelsToKeys() {
-    return ImmutableMap.copyOf(labelsToKeys);
+    if (tables == null) {
+      return ImmutableSortedMap.copyOf(labelsToKeys);
+    }
+    ImmutableSortedMap.Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
+    tables.forEach(table -> builder.putAll(table.toMap()));
+    return builder.build();
   }
 
   /** Returns the number of claims. */
   public int size() {
-    return labelsToKeys.size();
+    return tables != null
+        ? tables.stream().mapToInt(ClaimsListTable::size).sum()
+        : labelsToKeys.size();
   }
 
   /**
-   * Save the Claims list to Datastore by writing the new shards in a series of transactions,
-   * switching over to using them atomically, then deleting the old ones.
+   * Save the Claims list to Datastore by writing the shards whose contents changed in a series of
+   * transactions, switching over to using them atomically, then deleting the old ones that are no
+   * longer used.
    */
   public void save() {
     save(SHARD_SIZE);
@@ -181,19 +303,49 @@ public class ClaimsListShard extends ImmutableObject {
   @VisibleForTesting
   void save(int shardSize) {
     // Figure out what the next versionId should be based on which ones already exist.
-    final Key<ClaimsListRevision> oldRevision = getCurrentRevision();
+    final ClaimsListSingleton oldSingleton = ofy().load().entity(new ClaimsListSingleton()).now();
+    final Key<ClaimsListRevision> oldRevision =
+        oldSingleton == null ? null : oldSingleton.activeRevision;
     final Key<ClaimsListRevision> parentKey = ClaimsListRevision.createKey();
 
-    // Save the ClaimsList shards in separate transactions.
+    ImmutableList<ImmutableMap<String, String>> newShards =
+        partitionByShardIndex(
+            tables != null ? getLabelsToKeys() : labelsToKeys,
+            Math.max(1, divide(size(), shardSize, CEILING)));
+    ImmutableList<Long> fingerprints =
+        newShards.stream().map(ClaimsListShard::fingerprint).collect(toImmutableList());
+    // Reuse the existing shard in each position whose contents haven't changed.
+    boolean canReuseShards =
+        oldSingleton != null
+            && oldSingleton.shardFingerprints != null
+            && oldSingleton.shardFingerprints.size() == fingerprints.size();
+    List<Key<ClaimsListShard>> shardKeys = new ArrayList<>();
+    List<ClaimsListShard> shardsToSave = new ArrayList<>();
+    for (int i = 0; i < newShards.size(); i++) {
+      if (canReuseShards && oldSingleton.shardFingerprints.get(i).equals(fingerprints.get(i))) {
+        shardKeys.add(oldSingleton.shardKeys.get(i));
+      } else {
+        ClaimsListShard shard = create(creationTime, newShards.get(i));
+        shard.isShard = true;
+        shard.parent = parentKey;
+        shardKeys.add(Key.create(shard));
+        shardsToSave.add(shard);
+      }
+    }
+    if (shardsToSave.isEmpty() && creationTime.equals(oldSingleton.creationTime)) {
+      logger.atInfo().log("Claims list created at %s is already saved.", creationTime);
+      return;
+    }
+    logger.atInfo().log(
+        "Writing %d of %d claims list shards.", shardsToSave.size(), newShards.size());
+
+    // Save the changed ClaimsList shards in separate transactions.
     Concurrent.transform(
-        CollectionUtils.partitionMap(labelsToKeys, shardSize),
-        (final ImmutableMap<String, String> labelsToKeysShard) ->
+        shardsToSave,
+        shard ->
             ofy()
                 .transactNew(
                     () -> {
-                      ClaimsListShard shard = create(creationTime, labelsToKeysShard);
-                      shard.isShard = true;
-                      shard.parent = parentKey;
                       ofy().saveWithoutBackup().entity(shard);
                       return shard;
                     }));
@@ -206,16 +358,63 @@ public class ClaimsListShard extends ImmutableObject {
                   (getCurrentRevision() == null && oldRevision == null)
                       || getCurrentRevision().equals(oldRevision),
                   "Registries' ClaimsList was updated by someone else while attempting to update.");
-              ofy().saveWithoutBackup().entity(ClaimsListSingleton.create(parentKey));
-              // Delete the old ClaimsListShard entities.
+              ofy()
+                  .saveWithoutBackup()
+                  .entity(
+                      ClaimsListSingleton.create(
+                          parentKey, creationTime, shardKeys, fingerprints));
+              // Delete the old ClaimsListShard entities that are no longer in use.
               if (oldRevision != null) {
+                Iterable<Key<ClaimsListShard>> oldShardKeys =
+                    oldSingleton.shardKeys != null
+                        ? oldSingleton.shardKeys
+                        : ofy().load().type(ClaimsListShard.class).ancestor(oldRevision).keys();
                 ofy()
                     .deleteWithoutBackup()
-                    .keys(ofy().load().type(ClaimsListShard.class).ancestor(oldRevision).keys());
+                    .keys(
+                        Streams.stream(oldShardKeys)
+                            .filter(key -> !shardKeys.contains(key))
+                            .collect(toImmutableList()));
               }
             });
   }
 
+  /**
+   * Returns the index of the shard that holds the given label, out of the given number of shards.
+   *
+   * <p>This must never change, since it determines where labels are stored in Datastore.
+   */
+  @VisibleForTesting
+  static int getShardIndex(String label, int numShards) {
+    return Hashing.consistentHash(label.hashCode(), numShards);
+  }
+
+  /** Splits the given claims into the given number of shards by {@link #getShardIndex}. */
+  private static ImmutableList<ImmutableMap<String, String>> partitionByShardIndex(
+      Map<String, String> labelsToKeys, int numShards) {
+    List<ImmutableMap.Builder<String, String>> builders = new ArrayList<>();
+    for (int i = 0; i < numShards; i++) {
+      builders.add(new ImmutableMap.Builder<>());
+    }
+    labelsToKeys.forEach(
+        (label, key) -> builders.get(getShardIndex(label, numShards)).put(label, key));
+    return builders.stream().map(ImmutableMap.Builder::build).collect(toImmutableList());
+  }
+
+  /** Returns a fingerprint of the contents of a shard, independent of iteration order. */
+  private static long fingerprint(Map<String, String> labelsToKeys) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    ImmutableSortedMap.copyOf(labelsToKeys)
+        .forEach(
+            (label, key) ->
+                hasher
+                    .putInt(label.length())
+                    .putUnencodedChars(label)
+                    .putInt(key.length())
+                    .putUnencodedChars(key));
+    return hasher.hash().asLong();
+  }
+
   public static ClaimsListShard create(
       DateTime creationTime, ImmutableMap<String, String> labelsToKeys) {
     ClaimsListShard instance = new ClaimsListShard();
@@ -272,9 +471,39 @@ public class ClaimsListShard extends ImmutableObject {
   public static class ClaimsListSingleton extends CrossTldSingleton {
     Key<ClaimsListRevision> activeRevision;
 
-    static ClaimsListSingleton create(Key<ClaimsListRevision> revision) {
+    /**
+     * When the live claims list was created.
+     *
+     * <p>This is null for revisions saved before hash sharding, whose shards all carry the
+     * creation time themselves.
+     */
+    @Nullable
+    DateTime creationTime;
+
+    /**
+     * The shards making up the live claims list, ordered by {@link #getShardIndex}.
+     *
+     * <p>Shards that were unchanged from an earlier revision keep that revision as their parent.
+     * This is null for revisions saved before hash sharding, whose shards are found by querying for
+     * the children of {@link #activeRevision}.
+     */
+    @Nullable
+    List<Key<ClaimsListShard>> shardKeys;
+
+    /** Fingerprints of the contents of each of the {@link #shardKeys}, in the same order. */
+    @Nullable
+    List<Long> shardFingerprints;
+
+    static ClaimsListSingleton create(
+        Key<ClaimsListRevision> revision,
+        DateTime creationTime,
+        List<Key<ClaimsListShard>> shardKeys,
+        List<Long> shardFingerprints) {
       ClaimsListSingleton instance = new ClaimsListSingleton();
       instance.activeRevision = revision;
+      instance.creationTime = creationTime;
+      instance.shardKeys = ImmutableList.copyOf(shardKeys);
+      instance.shardFingerprints = ImmutableList.copyOf(shardFingerprints);
       return instance;
     }
 
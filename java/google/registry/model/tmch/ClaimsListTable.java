@@ -0,0 +1,172 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+
+/**
+ * An immutable, compact lookup table from claims labels to claims keys.
+ *
+ * <p>The claims list can contain hundreds of thousands of labels, and every frontend instance keeps
+ * a copy of it in memory. Rather than holding a {@link String} object per label and per key plus a
+ * hash table entry for each pair, the labels are kept sorted and packed into a single {@code char}
+ * pool (and likewise for the keys), with an array of offsets into each pool. Lookups are a binary
+ * search that compares characters in place, so checking whether a label is claimed doesn't
+ * allocate.
+ */
+final class ClaimsListTable {
+
+  private static final ClaimsListTable EMPTY =
+      new ClaimsListTable(new char[0], new int[] {0}, new char[0], new int[] {0});
+
+  /** The labels, sorted in {@link String#compareTo} order and concatenated together. */
+  private final char[] labelPool;
+
+  /** Start offset of each label in {@link #labelPool}, with a trailing end offset. */
+  private final int[] labelOffsets;
+
+  /** The claims keys, concatenated in the same order as their labels. */
+  private final char[] keyPool;
+
+  /** Start offset of each key in {@link #keyPool}, with a trailing end offset. */
+  private final int[] keyOffsets;
+
+  private ClaimsListTable(char[] labelPool, int[] labelOffsets, char[] keyPool, int[] keyOffsets) {
+    this.labelPool = labelPool;
+    this.labelOffsets = labelOffsets;
+    this.keyPool = keyPool;
+    this.keyOffsets = keyOffsets;
+  }
+
+  /** Returns an empty table. */
+  static ClaimsListTable empty() {
+    return EMPTY;
+  }
+
+  /** Returns a table containing the given label to claims key mappings. */
+  static ClaimsListTable copyOf(Map<String, String> labelsToKeys) {
+    return copyOf(new ArrayList<>(labelsToKeys.entrySet()));
+  }
+
+  /**
+   * Returns a table containing the given label to claims key entries.
+   *
+   * <p>The list is sorted in place, which avoids copying the entries into an intermediate map when
+   * combining several sources (e.g. the shards of a claims list).
+   *
+   * @throws IllegalArgumentException if the same label appears more than once
+   */
+  static ClaimsListTable copyOf(List<Entry<String, String>> entries) {
+    if (entries.isEmpty()) {
+      return EMPTY;
+    }
+    entries.sort(Entry.comparingByKey());
+    int labelChars = 0;
+    int keyChars = 0;
+    for (Entry<String, String> entry : entries) {
+      labelChars += entry.getKey().length();
+      keyChars += entry.getValue().length();
+    }
+    char[] labelPool = new char[labelChars];
+    int[] labelOffsets = new int[entries.size() + 1];
+    char[] keyPool = new char[keyChars];
+    int[] keyOffsets = new int[entries.size() + 1];
+    String previousLabel = null;
+    for (int i = 0; i < entries.size(); i++) {
+      String label = entries.get(i).getKey();
+      String key = entries.get(i).getValue();
+      checkArgument(!label.equals(previousLabel), "Duplicate claims list label: %s", label);
+      label.getChars(0, label.length(), labelPool, labelOffsets[i]);
+      labelOffsets[i + 1] = labelOffsets[i] + label.length();
+      key.getChars(0, key.length(), keyPool, keyOffsets[i]);
+      keyOffsets[i + 1] = keyOffsets[i] + key.length();
+      previousLabel = label;
+    }
+    return new ClaimsListTable(labelPool, labelOffsets, keyPool, keyOffsets);
+  }
+
+  /** Returns the number of labels in the table. */
+  int size() {
+    return labelOffsets.length - 1;
+  }
+
+  /** Returns whether the given label is on the claims list, without allocating. */
+  boolean containsLabel(String label) {
+    return indexOf(label) >= 0;
+  }
+
+  /** Returns the claims key for the given label if there is one, empty otherwise. */
+  Optional<String> getClaimKey(String label) {
+    int index = indexOf(label);
+    return index < 0 ? Optional.empty() : Optional.of(keyAt(index));
+  }
+
+  /** Returns the contents of the table as a map, ordered by label. */
+  ImmutableMap<String, String> toMap() {
+    ImmutableMap.Builder<String, String> builder = new ImmutableMap.Builder<>();
+    for (int i = 0; i < size(); i++) {
+      builder.put(labelAt(i), keyAt(i));
+    }
+    return builder.build();
+  }
+
+  private String labelAt(int index) {
+    return new String(
+        labelPool, labelOffsets[index], labelOffsets[index + 1] - labelOffsets[index]);
+  }
+
+  private String keyAt(int index) {
+    return new String(keyPool, keyOffsets[index], keyOffsets[index + 1] - keyOffsets[index]);
+  }
+
+  /** Returns the index of the given label, or -1 if it isn't in the table. */
+  private int indexOf(String label) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int comparison = compareLabelAt(mid, label);
+      if (comparison < 0) {
+        low = mid + 1;
+      } else if (comparison > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  /** Compares the label at the given index to another label, as {@link String#compareTo} would. */
+  private int compareLabelAt(int index, String label) {
+    int start = labelOffsets[index];
+    int length = labelOffsets[index + 1] - start;
+    int commonLength = Math.min(length, label.length());
+    for (int i = 0; i < commonLength; i++) {
+      int difference = labelPool[start + i] - label.charAt(i);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return length - label.length();
+  }
+}
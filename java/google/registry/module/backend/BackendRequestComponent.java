@@ -25,6 +25,7 @@ import google.registry.batch.DeleteContactsAndHostsAction;
 import google.registry.batch.DeleteLoadTestDataAction;
 import google.registry.batch.DeleteProberDataAction;
 import google.registry.batch.ExpandRecurringBillingEventsAction;
+import google.registry.batch.RecountPollMessagesAction;
 import google.registry.batch.RefreshDnsOnHostRenameAction;
 import google.registry.batch.ResaveAllEppResourcesAction;
 import google.registry.batch.ResaveEntityAction;
@@ -155,6 +156,7 @@ interface BackendRequestComponent {
   RdeStagingAction rdeStagingAction();
   RdeUploadAction rdeUploadAction();
   RdeReporter rdeReporter();
+  RecountPollMessagesAction recountPollMessagesAction();
   RefreshDnsAction refreshDnsAction();
   RefreshDnsOnHostRenameAction refreshDnsOnHostRenameAction();
   ResaveAllEppResourcesAction resaveAllEppResourcesAction();
@@ -29,6 +29,7 @@ import google.registry.monitoring.whitebox.WhiteboxModule;
 import google.registry.request.RequestComponentBuilder;
 import google.registry.request.RequestModule;
 import google.registry.request.RequestScope;
+import google.registry.tools.server.BackfillHistoryEventSummariesAction;
 import google.registry.tools.server.CreateGroupsAction;
 import google.registry.tools.server.CreatePremiumListAction;
 import google.registry.tools.server.DeleteEntityAction;
@@ -62,6 +63,7 @@ import google.registry.tools.server.VerifyOteAction;
         WhiteboxModule.class,
     })
 interface ToolsRequestComponent {
+  BackfillHistoryEventSummariesAction backfillHistoryEventSummariesAction();
   CreateGroupsAction createGroupsAction();
   CreatePremiumListAction createPremiumListAction();
   DeleteEntityAction deleteEntityAction();
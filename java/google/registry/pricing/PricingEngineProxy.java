@@ -16,11 +16,17 @@ package google.registry.pricing;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.collect.ImmutableSetMultimap.toImmutableSetMultimap;
 import static google.registry.util.DomainNameUtils.getTldFromDomainName;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Streams;
 import google.registry.model.pricing.PremiumPricingEngine;
 import google.registry.model.pricing.PremiumPricingEngine.DomainPrices;
 import google.registry.model.registry.Registry;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import org.joda.money.Money;
@@ -70,5 +76,30 @@ public final class PricingEngineProxy {
     return engine.getDomainPrices(domainName, priceTime);
   }
 
+  /**
+   * Returns the full {@link DomainPrices} details for each of the given domain names, asking each
+   * TLD's {@link PremiumPricingEngine} to price all of that TLD's domain names together.
+   */
+  public static ImmutableMap<String, DomainPrices> getPricesForDomainNames(
+      Iterable<String> domainNames, DateTime priceTime) {
+    ImmutableSetMultimap<String, String> domainNamesByEngine =
+        Streams.stream(domainNames)
+            .collect(
+                toImmutableSetMultimap(
+                    domainName ->
+                        Registry.get(getTldFromDomainName(domainName))
+                            .getPremiumPricingEngineClassName(),
+                    domainName -> domainName));
+    Map<String, DomainPrices> prices = new HashMap<>();
+    for (String clazz : domainNamesByEngine.keySet()) {
+      PremiumPricingEngine engine = premiumPricingEngines.get(clazz);
+      checkState(engine != null, "Could not load pricing engine %s", clazz);
+      prices.putAll(engine.getDomainPrices(domainNamesByEngine.get(clazz), priceTime));
+    }
+    return Streams.stream(domainNames)
+        .distinct()
+        .collect(toImmutableMap(domainName -> domainName, prices::get));
+  }
+
   private PricingEngineProxy() {}
 }
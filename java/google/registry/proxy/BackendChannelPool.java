@@ -0,0 +1,309 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.handler.HttpsRelayServiceHandler;
+import google.registry.proxy.metric.BackendMetrics;
+import google.registry.util.Clock;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolMap;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * A bounded pool of persistent backend connections, shared by all the frontend connections that
+ * relay to the same {@link BackendProtocol}.
+ *
+ * <p>Without a pool, each frontend connection opens its own backend connection. The number of TLS
+ * sessions to the GAE app then grows with the number of connected clients, and they all reconnect
+ * at once when GAE drops them. With a pool, a frontend channel leases a backend channel only while
+ * one of its requests is in flight, and returns it as soon as the response is relayed back.
+ *
+ * <p>There is one {@link FixedChannelPool} per {@link EventLoop}, so a frontend channel is always
+ * relayed through backend channels that are handled by the same thread, just like its dedicated
+ * backend channel would be. The state shared by the two channels therefore needs no
+ * synchronization.
+ *
+ * <p>Requests from the same frontend channel are relayed one at a time, in the order they are
+ * received, because requests sent over different backend channels could be answered out of order.
+ * Session cookies are kept by the frontend channel's {@link HttpsRelayServiceHandler}, so the
+ * session is preserved no matter which backend channel a request is sent over.
+ */
+public class BackendChannelPool {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  /** Key used to retrieve the pool that a frontend channel relays through. */
+  public static final AttributeKey<BackendChannelPool> BACKEND_CHANNEL_POOL_KEY =
+      AttributeKey.valueOf("BACKEND_CHANNEL_POOL");
+
+  /** Key used to retrieve the requests of a frontend channel that are waiting to be relayed. */
+  private static final AttributeKey<Deque<Object>> PENDING_REQUESTS_KEY =
+      AttributeKey.valueOf("PENDING_REQUESTS");
+
+  /** Key used to retrieve whether a frontend channel has a request in flight. */
+  private static final AttributeKey<Boolean> REQUEST_IN_FLIGHT_KEY =
+      AttributeKey.valueOf("REQUEST_IN_FLIGHT");
+
+  private final BackendProtocol protocol;
+  private final BackendMetrics metrics;
+  private final Clock clock;
+  private final ChannelPoolMap<EventLoop, ? extends ChannelPool> pools;
+  private final AtomicInteger leasedChannels = new AtomicInteger();
+
+  private BackendChannelPool(
+      BackendProtocol protocol,
+      ProxyTransport transport,
+      int maxConnectionsPerThread,
+      int maxPendingAcquires,
+      BackendMetrics metrics,
+      Clock clock) {
+    this.protocol = protocol;
+    this.metrics = metrics;
+    this.clock = clock;
+    this.pools =
+        new AbstractChannelPoolMap<EventLoop, FixedChannelPool>() {
+          @Override
+          protected FixedChannelPool newPool(EventLoop eventLoop) {
+            Bootstrap bootstrap =
+                new Bootstrap()
+                    .group(eventLoop)
+                    .channel(transport.channelClass())
+                    .option(ChannelOption.SO_KEEPALIVE, true)
+                    .attr(PROTOCOL_KEY, protocol)
+                    .remoteAddress(protocol.host(), protocol.port());
+            return new FixedChannelPool(
+                bootstrap, new PoolHandler(), maxConnectionsPerThread, maxPendingAcquires);
+          }
+        };
+  }
+
+  /** Creates a pool that leases backend channels from the given per-thread pools. */
+  @VisibleForTesting
+  BackendChannelPool(
+      BackendProtocol protocol,
+      ChannelPoolMap<EventLoop, ? extends ChannelPool> pools,
+      BackendMetrics metrics,
+      Clock clock) {
+    this.protocol = protocol;
+    this.pools = pools;
+    this.metrics = metrics;
+    this.clock = clock;
+  }
+
+  /**
+   * Sets up a frontend channel to relay its requests through this pool.
+   *
+   * <p>Since no connection needs to be established first, the frontend channel starts reading
+   * right away.
+   */
+  public void addFrontendChannel(Channel frontendChannel) {
+    frontendChannel.attr(BACKEND_CHANNEL_POOL_KEY).set(this);
+    frontendChannel.attr(PENDING_REQUESTS_KEY).set(new ArrayDeque<>());
+    frontendChannel.attr(REQUEST_IN_FLIGHT_KEY).set(false);
+    ChannelFuture unusedChannelFuture =
+        frontendChannel
+            .closeFuture()
+            .addListener(
+                future -> {
+                  logger.atInfo().log(
+                      "Connection terminated: %s %s",
+                      frontendChannel.attr(PROTOCOL_KEY).get().name(), frontendChannel);
+                  // Release the messages that are never going to be relayed, if they are
+                  // reference counted.
+                  releaseAll(frontendChannel, frontendChannel.attr(RELAY_BUFFER_KEY).get());
+                  releaseAll(frontendChannel, frontendChannel.attr(PENDING_REQUESTS_KEY).get());
+                });
+    frontendChannel.config().setAutoRead(true);
+  }
+
+  /**
+   * Relays a request from a frontend channel to the backend.
+   *
+   * <p>The request is sent once all earlier requests from the same frontend channel have been
+   * answered.
+   */
+  public void relayRequest(Channel frontendChannel, Object msg) {
+    frontendChannel.attr(PENDING_REQUESTS_KEY).get().add(msg);
+    if (!frontendChannel.attr(REQUEST_IN_FLIGHT_KEY).get()) {
+      relayNextRequest(frontendChannel);
+    }
+  }
+
+  /**
+   * Returns a backend channel to the pool after its response is relayed to the frontend channel,
+   * and relays the next request from that frontend channel, if any.
+   */
+  public void releaseBackendChannel(Channel backendChannel) {
+    Channel frontendChannel = backendChannel.attr(RELAY_CHANNEL_KEY).getAndSet(null);
+    if (frontendChannel == null) {
+      // The channel is not leased, e. g. it is already released because it was closed.
+      return;
+    }
+    frontendChannel.attr(RELAY_CHANNEL_KEY).compareAndSet(backendChannel, null);
+    leasedChannels.decrementAndGet();
+    Future<Void> unusedFuture = pools.get(backendChannel.eventLoop()).release(backendChannel);
+    frontendChannel.attr(REQUEST_IN_FLIGHT_KEY).set(false);
+    relayNextRequest(frontendChannel);
+  }
+
+  /**
+   * Leases a backend channel and relays the next request of a frontend channel over it.
+   *
+   * <p>Requests that failed to be relayed are retried before new ones are sent.
+   */
+  private void relayNextRequest(Channel frontendChannel) {
+    Deque<Object> relayBuffer = frontendChannel.attr(RELAY_BUFFER_KEY).get();
+    boolean retry = !relayBuffer.isEmpty();
+    Object msg =
+        retry ? relayBuffer.poll() : frontendChannel.attr(PENDING_REQUESTS_KEY).get().poll();
+    if (msg == null || !frontendChannel.isActive()) {
+      // Nothing to relay. If the frontend channel is closed, its messages are released by the
+      // listener added in addFrontendChannel.
+      if (msg != null) {
+        ReferenceCountUtil.release(msg);
+      }
+      return;
+    }
+    frontendChannel.attr(REQUEST_IN_FLIGHT_KEY).set(true);
+    long acquireStartTime = clock.nowUtc().getMillis();
+    pools
+        .get(frontendChannel.eventLoop())
+        .acquire()
+        .addListener(
+            (Future<Channel> future) -> {
+              if (!future.isSuccess()) {
+                metrics.connectionAcquireFailed(protocol.host());
+                logger.atSevere().withCause(future.cause()).log(
+                    "Cannot acquire relay channel for %s channel: %s.",
+                    frontendChannel.attr(PROTOCOL_KEY).get().name(), frontendChannel);
+                ReferenceCountUtil.release(msg);
+                ChannelFuture unusedFuture = frontendChannel.close();
+                return;
+              }
+              Channel backendChannel = future.getNow();
+              metrics.connectionAcquired(
+                  protocol.host(),
+                  clock.nowUtc().getMillis() - acquireStartTime,
+                  leasedChannels.incrementAndGet());
+              backendChannel.attr(RELAY_CHANNEL_KEY).set(frontendChannel);
+              if (!frontendChannel.isActive()) {
+                ReferenceCountUtil.release(msg);
+                releaseBackendChannel(backendChannel);
+                return;
+              }
+              frontendChannel.attr(RELAY_CHANNEL_KEY).set(backendChannel);
+              writeToRelayChannel(frontendChannel, backendChannel, msg, retry);
+            });
+  }
+
+  /**
+   * Handles a backend channel that is closed.
+   *
+   * <p>If the channel is leased when it is closed, the request in flight is either buffered for
+   * retry (if it could not be written) or lost (if the response never arrived), like it would be
+   * if a dedicated backend channel were closed. Either way the channel is returned to the pool so
+   * that the frontend channel can carry on with a new one.
+   */
+  private void backendChannelClosed(Channel backendChannel) {
+    Channel frontendChannel = backendChannel.attr(RELAY_CHANNEL_KEY).get();
+    if (frontendChannel != null) {
+      logger.atInfo().log(
+          "Relay interrupted: %s <-> %s\nFRONTEND: %s\nBACKEND: %s",
+          frontendChannel.attr(PROTOCOL_KEY).get().name(),
+          protocol.name(),
+          frontendChannel,
+          backendChannel);
+      releaseBackendChannel(backendChannel);
+    }
+  }
+
+  private static void releaseAll(Channel frontendChannel, Deque<Object> messages) {
+    messages.forEach(
+        msg -> {
+          logger.atWarning().log(
+              "Unfinished relay for connection %s\nHASH: %s", frontendChannel, msg.hashCode());
+          ReferenceCountUtil.release(msg);
+        });
+    messages.clear();
+  }
+
+  /** Sets up the pipeline of newly created backend channels. */
+  private class PoolHandler extends AbstractChannelPoolHandler {
+    @Override
+    public void channelCreated(Channel backendChannel) {
+      for (Provider<? extends ChannelHandler> handlerProvider : protocol.handlerProviders()) {
+        backendChannel.pipeline().addLast(handlerProvider.get());
+      }
+      ChannelFuture unusedChannelFuture =
+          backendChannel.closeFuture().addListener(future -> backendChannelClosed(backendChannel));
+    }
+  }
+
+  /** Factory for {@link BackendChannelPool}s, as configured by {@link ProxyConfig.HttpsRelay}. */
+  public static class Factory {
+
+    private final ProxyConfig config;
+    private final ProxyTransport transport;
+    private final BackendMetrics metrics;
+    private final Clock clock;
+
+    @Inject
+    Factory(ProxyConfig config, ProxyTransport transport, BackendMetrics metrics, Clock clock) {
+      this.config = config;
+      this.transport = transport;
+      this.metrics = metrics;
+      this.clock = clock;
+    }
+
+    /** Whether frontend channels relay through pools instead of dedicated backend channels. */
+    boolean isPoolingEnabled() {
+      return config.httpsRelay.maxPooledConnectionsPerThread > 0;
+    }
+
+    BackendChannelPool create(BackendProtocol protocol) {
+      return new BackendChannelPool(
+          protocol,
+          transport,
+          config.httpsRelay.maxPooledConnectionsPerThread,
+          config.httpsRelay.maxPendingConnectionAcquires,
+          metrics,
+          clock);
+    }
+  }
+}
@@ -47,6 +47,7 @@ public class ProxyConfig {
   public WebWhois webWhois;
   public HttpsRelay httpsRelay;
   public Metrics metrics;
+  public Server server;
 
   /** Configuration options that apply to GCS. */
   public static class Gcs {
@@ -100,6 +101,8 @@ public class ProxyConfig {
   public static class HttpsRelay {
     public int port;
     public int maxMessageLengthBytes;
+    public int maxPooledConnectionsPerThread;
+    public int maxPendingConnectionAcquires;
   }
 
   /** Configuration options that apply to Stackdriver monitoring metrics. */
@@ -109,6 +112,14 @@ public class ProxyConfig {
     public int writeIntervalSeconds;
   }
 
+  /** Configuration options that apply to the event loops and transport of the proxy server. */
+  public static class Server {
+    public boolean preferNativeTransport;
+    public int bossThreads;
+    public int workerThreads;
+    public int acceptorsPerPort;
+  }
+
   /** Configuration options that apply to quota management. */
   public static class Quota {
 
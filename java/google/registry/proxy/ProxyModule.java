@@ -311,6 +311,13 @@ public class ProxyModule {
     return OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
   }
 
+  @Provides
+  @Singleton
+  static ProxyTransport provideProxyTransport(ProxyConfig config) {
+    // Only look for the native transport if configured to, since it may be unavailable.
+    return config.server.preferNativeTransport ? ProxyTransport.nativeOrNio() : ProxyTransport.NIO;
+  }
+
   @Provides
   @Singleton
   static Clock provideClock() {
@@ -351,5 +358,11 @@ public class ProxyModule {
     ImmutableMap<Integer, FrontendProtocol> portToProtocolMap();
 
     MetricReporter metricReporter();
+
+    BackendChannelPool.Factory backendChannelPoolFactory();
+
+    ProxyConfig proxyConfig();
+
+    ProxyTransport proxyTransport();
   }
 }
@@ -14,13 +14,17 @@
 
 package google.registry.proxy;
 
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
 import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
 import static google.registry.proxy.handler.RelayHandler.writeToRelayChannel;
+import static java.util.function.Function.identity;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.flogger.FluentLogger;
 import com.google.monitoring.metrics.MetricReporter;
 import google.registry.proxy.Protocol.BackendProtocol;
@@ -36,15 +40,12 @@ import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.socket.SocketChannel;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import io.netty.util.internal.logging.JdkLoggerFactory;
 import java.util.ArrayDeque;
-import java.util.HashMap;
 import java.util.Queue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -62,11 +63,25 @@ public class ProxyServer implements Runnable {
   private static final int MAX_SOCKET_BACKLOG = 128;
 
   private final ImmutableMap<Integer, FrontendProtocol> portToProtocolMap;
-  private final HashMap<Integer, Channel> portToChannelMap = new HashMap<>();
-  private final EventLoopGroup eventGroup = new NioEventLoopGroup();
+  private final ImmutableMap<BackendProtocol, BackendChannelPool> backendChannelPools;
+  private final ListMultimap<Integer, Channel> portToChannelMap = ArrayListMultimap.create();
+  private final ProxyTransport transport;
+  private final ProxyConfig.Server serverConfig;
 
   ProxyServer(ProxyComponent proxyComponent) {
     this.portToProtocolMap = proxyComponent.portToProtocolMap();
+    this.transport = proxyComponent.proxyTransport();
+    this.serverConfig = proxyComponent.proxyConfig().server;
+    BackendChannelPool.Factory backendChannelPoolFactory =
+        proxyComponent.backendChannelPoolFactory();
+    this.backendChannelPools =
+        backendChannelPoolFactory.isPoolingEnabled()
+            ? portToProtocolMap.values().stream()
+                .filter(FrontendProtocol::hasBackend)
+                .map(FrontendProtocol::relayProtocol)
+                .distinct()
+                .collect(toImmutableMap(identity(), backendChannelPoolFactory::create))
+            : ImmutableMap.of();
   }
 
   /**
@@ -83,10 +98,27 @@ public class ProxyServer implements Runnable {
    *   <li>After the outbound {@link Channel} connects successfully, enable {@link
    *       ChannelOption#AUTO_READ} on the inbound {@link Channel} to start reading.
    * </ol>
+   *
+   * <p>If there is a {@link BackendChannelPool} for the {@link FrontendProtocol#relayProtocol},
+   * no dedicated outbound {@link Channel} is established. The inbound {@link Channel} instead
+   * starts reading right away, and relays each message through an outbound {@link Channel} leased
+   * from the pool.
    */
-  private static class ServerChannelInitializer extends ChannelInitializer<NioSocketChannel> {
+  private static class ServerChannelInitializer extends ChannelInitializer<SocketChannel> {
+
+    private final ImmutableMap<BackendProtocol, BackendChannelPool> backendChannelPools;
+
+    private final ProxyTransport transport;
+
+    ServerChannelInitializer(
+        ImmutableMap<BackendProtocol, BackendChannelPool> backendChannelPools,
+        ProxyTransport transport) {
+      this.backendChannelPools = backendChannelPools;
+      this.transport = transport;
+    }
+
     @Override
-    protected void initChannel(NioSocketChannel inboundChannel) throws Exception {
+    protected void initChannel(SocketChannel inboundChannel) throws Exception {
       // Add inbound channel handlers.
       FrontendProtocol inboundProtocol =
           (FrontendProtocol) inboundChannel.parent().attr(PROTOCOL_KEY).get();
@@ -98,6 +130,10 @@ public class ProxyServer implements Runnable {
         // If the frontend has no backend to relay to (health check, web WHOIS redirect, etc), start
         // reading immediately.
         inboundChannel.config().setAutoRead(true);
+      } else if (backendChannelPools.containsKey(inboundProtocol.relayProtocol())) {
+        logger.atInfo().log(
+            "Connection established: %s %s", inboundProtocol.name(), inboundChannel);
+        backendChannelPools.get(inboundProtocol.relayProtocol()).addFrontendChannel(inboundChannel);
       } else {
         logger.atInfo().log(
             "Connection established: %s %s", inboundProtocol.name(), inboundChannel);
@@ -108,12 +144,11 @@ public class ProxyServer implements Runnable {
                 // Use the same thread to connect to the relay channel, therefore avoiding
                 // synchronization handling due to interactions between the two channels
                 .group(inboundChannel.eventLoop())
-                .channel(NioSocketChannel.class)
+                .channel(transport.channelClass())
                 .handler(
-                    new ChannelInitializer<NioSocketChannel>() {
+                    new ChannelInitializer<Channel>() {
                       @Override
-                      protected void initChannel(NioSocketChannel outboundChannel)
-                          throws Exception {
+                      protected void initChannel(Channel outboundChannel) throws Exception {
                         addHandlers(
                             outboundChannel.pipeline(), outboundProtocol.handlerProviders());
                       }
@@ -170,7 +205,7 @@ public class ProxyServer implements Runnable {
         Bootstrap bootstrap,
         FrontendProtocol inboundProtocol,
         BackendProtocol outboundProtocol,
-        NioSocketChannel inboundChannel) {
+        SocketChannel inboundChannel) {
       ChannelFuture outboundChannelFuture =
           bootstrap.connect(outboundProtocol.host(), outboundProtocol.port());
       outboundChannelFuture.addListener(
@@ -251,35 +286,54 @@ public class ProxyServer implements Runnable {
 
   @Override
   public void run() {
+    logger.atInfo().log("Using %s transport.", transport.name());
+    EventLoopGroup bossGroup = transport.newEventLoopGroup(serverConfig.bossThreads);
+    EventLoopGroup workerGroup = transport.newEventLoopGroup(serverConfig.workerThreads);
     try {
       ServerBootstrap serverBootstrap =
           new ServerBootstrap()
-              .group(eventGroup)
-              .channel(NioServerSocketChannel.class)
-              .childHandler(new ServerChannelInitializer())
+              .group(bossGroup, workerGroup)
+              .channel(transport.serverChannelClass())
+              .childHandler(new ServerChannelInitializer(backendChannelPools, transport))
               .option(ChannelOption.SO_BACKLOG, MAX_SOCKET_BACKLOG)
               .childOption(ChannelOption.SO_KEEPALIVE, true)
               // Do not read before relay channel is established.
               .childOption(ChannelOption.AUTO_READ, false);
 
+      // With SO_REUSEPORT, several server channels can bind to the same port, each accepting
+      // connections on its own boss thread, with the kernel balancing connections between them.
+      int acceptorsPerPort = 1;
+      if (serverConfig.acceptorsPerPort > 1) {
+        if (transport.reusePortOption().isPresent()) {
+          serverBootstrap.option(transport.reusePortOption().get(), true);
+          acceptorsPerPort = serverConfig.acceptorsPerPort;
+        } else {
+          logger.atWarning().log(
+              "%s transport does not support SO_REUSEPORT, using one acceptor per port.",
+              transport.name());
+        }
+      }
+
       // Bind to each port specified in portToHandlersMap.
-      portToProtocolMap.forEach(
-          (port, protocol) -> {
-            try {
-              // Wait for binding to be established for each listening port.
-              ChannelFuture serverChannelFuture = serverBootstrap.bind(port).sync();
-              if (serverChannelFuture.isSuccess()) {
-                logger.atInfo().log(
-                    "Start listening on port %s for %s protocol.", port, protocol.name());
-                Channel serverChannel = serverChannelFuture.channel();
-                serverChannel.attr(PROTOCOL_KEY).set(protocol);
-                portToChannelMap.put(port, serverChannel);
+      for (int i = 0; i < acceptorsPerPort; i++) {
+        portToProtocolMap.forEach(
+            (port, protocol) -> {
+              try {
+                // Wait for binding to be established for each listening port.
+                ChannelFuture serverChannelFuture = serverBootstrap.bind(port).sync();
+                if (serverChannelFuture.isSuccess()) {
+                  logger.atInfo().log(
+                      "Start listening on port %s for %s protocol.", port, protocol.name());
+                  Channel serverChannel = serverChannelFuture.channel();
+                  serverChannel.attr(PROTOCOL_KEY).set(protocol);
+                  portToChannelMap.put(port, serverChannel);
+                }
+              } catch (InterruptedException e) {
+                logger.atSevere().withCause(e).log(
+                    "Cannot listen on port %d for %s protocol.", port, protocol.name());
               }
-            } catch (InterruptedException e) {
-              logger.atSevere().withCause(e).log(
-                  "Cannot listen on port %d for %s protocol.", port, protocol.name());
-            }
-          });
+            });
+      }
 
       // Wait for all listening ports to close.
       portToChannelMap.forEach(
@@ -298,7 +352,8 @@ public class ProxyServer implements Runnable {
           });
     } finally {
       logger.atInfo().log("Shutting down server...");
-      Future<?> unusedFuture = eventGroup.shutdownGracefully();
+      Future<?> unusedFuture = bossGroup.shutdownGracefully();
+      Future<?> unusedFuture2 = workerGroup.shutdownGracefully();
     }
   }
 
@@ -0,0 +1,140 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import com.google.common.flogger.FluentLogger;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import java.lang.reflect.Constructor;
+import java.util.Optional;
+import java.util.function.IntFunction;
+import javax.annotation.Nullable;
+
+/**
+ * The Netty transport, i. e. the event loop and channel implementations, used by the proxy.
+ *
+ * <p>On Linux, the native epoll transport has lower syscall overhead than the JDK selector based
+ * NIO transport, and supports {@code SO_REUSEPORT}, which allows several server channels (each
+ * with its own acceptor thread) to listen on the same port. It is only available if its native
+ * library is on the classpath and can be loaded on the current platform, so it is looked up
+ * reflectively and the NIO transport is used instead when it is not available.
+ */
+final class ProxyTransport {
+
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
+  private static final String EPOLL_PACKAGE = "io.netty.channel.epoll.";
+
+  static final ProxyTransport NIO =
+      new ProxyTransport(
+          "NIO",
+          NioEventLoopGroup::new,
+          NioServerSocketChannel.class,
+          NioSocketChannel.class,
+          null);
+
+  private final String name;
+  private final IntFunction<EventLoopGroup> eventLoopGroupFactory;
+  private final Class<? extends ServerChannel> serverChannelClass;
+  private final Class<? extends Channel> channelClass;
+  @Nullable private final ChannelOption<Boolean> reusePortOption;
+
+  private ProxyTransport(
+      String name,
+      IntFunction<EventLoopGroup> eventLoopGroupFactory,
+      Class<? extends ServerChannel> serverChannelClass,
+      Class<? extends Channel> channelClass,
+      @Nullable ChannelOption<Boolean> reusePortOption) {
+    this.name = name;
+    this.eventLoopGroupFactory = eventLoopGroupFactory;
+    this.serverChannelClass = serverChannelClass;
+    this.channelClass = channelClass;
+    this.reusePortOption = reusePortOption;
+  }
+
+  /** Returns the native epoll transport if it is available, or the NIO transport otherwise. */
+  static ProxyTransport nativeOrNio() {
+    try {
+      Class<?> epoll = Class.forName(EPOLL_PACKAGE + "Epoll");
+      if (!(boolean) epoll.getMethod("isAvailable").invoke(null)) {
+        Throwable cause = (Throwable) epoll.getMethod("unavailabilityCause").invoke(null);
+        logger.atWarning().withCause(cause).log(
+            "Native epoll transport is unavailable, falling back to NIO.");
+        return NIO;
+      }
+      Constructor<? extends EventLoopGroup> eventLoopGroupConstructor =
+          Class.forName(EPOLL_PACKAGE + "EpollEventLoopGroup")
+              .asSubclass(EventLoopGroup.class)
+              .getConstructor(int.class);
+      @SuppressWarnings("unchecked")
+      ChannelOption<Boolean> reusePortOption =
+          (ChannelOption<Boolean>)
+              Class.forName(EPOLL_PACKAGE + "EpollChannelOption")
+                  .getField("SO_REUSEPORT")
+                  .get(null);
+      return new ProxyTransport(
+          "EPOLL",
+          threads -> {
+            try {
+              return eventLoopGroupConstructor.newInstance(threads);
+            } catch (ReflectiveOperationException e) {
+              throw new IllegalStateException("Cannot create epoll event loop group.", e);
+            }
+          },
+          Class.forName(EPOLL_PACKAGE + "EpollServerSocketChannel")
+              .asSubclass(ServerChannel.class),
+          Class.forName(EPOLL_PACKAGE + "EpollSocketChannel").asSubclass(Channel.class),
+          reusePortOption);
+    } catch (ReflectiveOperationException | ClassCastException e) {
+      logger.atWarning().withCause(e).log(
+          "Native epoll transport is not on the classpath, falling back to NIO.");
+      return NIO;
+    }
+  }
+
+  /** Name of the transport. */
+  String name() {
+    return name;
+  }
+
+  /**
+   * Creates an event loop group with the given number of threads.
+   *
+   * <p>Zero threads means Netty's default, i. e. twice the number of available processors.
+   */
+  EventLoopGroup newEventLoopGroup(int threads) {
+    return eventLoopGroupFactory.apply(threads);
+  }
+
+  /** Class of the channels that listen on local ports. */
+  Class<? extends ServerChannel> serverChannelClass() {
+    return serverChannelClass;
+  }
+
+  /** Class of the channels that connect to remote hosts. */
+  Class<? extends Channel> channelClass() {
+    return channelClass;
+  }
+
+  /** The {@code SO_REUSEPORT} channel option, if the transport supports it. */
+  Optional<ChannelOption<Boolean>> reusePortOption() {
+    return Optional.ofNullable(reusePortOption);
+  }
+}
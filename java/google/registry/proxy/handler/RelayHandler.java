@@ -14,9 +14,11 @@
 
 package google.registry.proxy.handler;
 
+import static google.registry.proxy.BackendChannelPool.BACKEND_CHANNEL_POOL_KEY;
 import static google.registry.proxy.Protocol.PROTOCOL_KEY;
 
 import com.google.common.flogger.FluentLogger;
+import google.registry.proxy.BackendChannelPool;
 import google.registry.proxy.handler.QuotaHandler.OverQuotaException;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
@@ -60,16 +62,32 @@ public class RelayHandler<I> extends SimpleChannelInboundHandler<I> {
     super(clazz, false);
   }
 
-  /** Read message of type {@code I}, write it as-is into the relay channel. */
+  /**
+   * Read message of type {@code I}, write it as-is into the relay channel.
+   *
+   * <p>If the channel is a frontend channel that relays through a {@link BackendChannelPool}, the
+   * pool picks the relay channel instead. If the relay channel is such a frontend channel, this
+   * channel is a pooled backend channel that is done with its current request, and is returned to
+   * the pool.
+   */
   @Override
   protected void channelRead0(ChannelHandlerContext ctx, I msg) throws Exception {
     Channel channel = ctx.channel();
+    BackendChannelPool backendChannelPool = channel.attr(BACKEND_CHANNEL_POOL_KEY).get();
+    if (backendChannelPool != null) {
+      backendChannelPool.relayRequest(channel, msg);
+      return;
+    }
     Channel relayChannel = channel.attr(RELAY_CHANNEL_KEY).get();
     if (relayChannel == null) {
       logger.atSevere().log("Relay channel not specified for channel: %s", channel);
       ChannelFuture unusedFuture = channel.close();
     } else {
       writeToRelayChannel(channel, relayChannel, msg, false);
+      BackendChannelPool relayChannelPool = relayChannel.attr(BACKEND_CHANNEL_POOL_KEY).get();
+      if (relayChannelPool != null) {
+        relayChannelPool.releaseBackendChannel(channel);
+      }
     }
   }
 
@@ -41,12 +41,18 @@ public class BackendMetrics {
   private static final ExponentialFitter DEFAULT_LATENCY_FITTER =
       ExponentialFitter.create(22, 2, 1.0);
 
+  // The pool size is bounded by the config file, this is just a generous upper bound.
+  private static final CustomFitter DEFAULT_CONNECTION_COUNT_FITTER = FibonacciFitter.create(4096);
+
   private static final ImmutableSet<LabelDescriptor> LABELS =
       ImmutableSet.of(
           LabelDescriptor.create("protocol", "Name of the protocol."),
           LabelDescriptor.create(
               "client_cert_hash", "SHA256 hash of the client certificate, if available."));
 
+  private static final ImmutableSet<LabelDescriptor> POOL_LABELS =
+      ImmutableSet.of(LabelDescriptor.create("host", "Hostname of the backend."));
+
   static final IncrementableMetric requestsCounter =
       MetricRegistryImpl.getDefault()
           .newIncrementableMetric(
@@ -93,6 +99,32 @@ public class BackendMetrics {
               LABELS,
               DEFAULT_LATENCY_FITTER);
 
+  static final EventMetric connectionAcquireLatencyMs =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/proxy/backend/pool/acquire_latency_ms",
+              "Time spent waiting for a pooled backend connection to become available.",
+              "Latency Milliseconds",
+              POOL_LABELS,
+              DEFAULT_LATENCY_FITTER);
+
+  static final EventMetric leasedConnections =
+      MetricRegistryImpl.getDefault()
+          .newEventMetric(
+              "/proxy/backend/pool/leased_connections",
+              "Number of pooled backend connections in use after one is acquired.",
+              "Connections",
+              POOL_LABELS,
+              DEFAULT_CONNECTION_COUNT_FITTER);
+
+  static final IncrementableMetric connectionAcquireFailuresCounter =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/proxy/backend/pool/acquire_failures",
+              "Total number of times a pooled backend connection could not be acquired.",
+              "Failures",
+              POOL_LABELS);
+
   @Inject
   BackendMetrics() {}
 
@@ -108,6 +140,9 @@ public class BackendMetrics {
     responseBytes.reset();
     responsesCounter.reset();
     latencyMs.reset();
+    connectionAcquireLatencyMs.reset();
+    leasedConnections.reset();
+    connectionAcquireFailuresCounter.reset();
   }
 
   @NonFinalForTesting
@@ -123,4 +158,15 @@ public class BackendMetrics {
     responseBytes.record(response.content().readableBytes(), protocol, certHash);
     responsesCounter.increment(protocol, certHash, response.status().toString());
   }
+
+  @NonFinalForTesting
+  public void connectionAcquired(String host, long latency, int leased) {
+    connectionAcquireLatencyMs.record(latency, host);
+    leasedConnections.record(leased, host);
+  }
+
+  @NonFinalForTesting
+  public void connectionAcquireFailed(String host) {
+    connectionAcquireFailuresCounter.increment(host);
+  }
 }
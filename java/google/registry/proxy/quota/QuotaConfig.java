@@ -14,6 +14,7 @@
 
 package google.registry.proxy.quota;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 
 import com.google.common.annotations.VisibleForTesting;
@@ -28,6 +29,9 @@ public class QuotaConfig {
   /** A special value of token amount that indicates unlimited tokens. */
   public static final int SENTINEL_UNLIMITED_TOKENS = -1;
 
+  /** The largest token amount that a {@link TokenStore} can hold for a user. */
+  public static final int MAX_TOKEN_AMOUNT = TokenStore.MAX_TOKEN_AMOUNT;
+
   private final String protocolName;
   private final int refreshSeconds;
   private final QuotaGroup defaultQuota;
@@ -38,17 +42,35 @@ public class QuotaConfig {
    *
    * <p>Each {@link QuotaGroup} is keyed to all the {@code userId}s it contains. This allows for
    * fast lookup with a {@code userId}.
+   *
+   * <p>The token amounts are validated here, when the proxy starts, so that an amount the {@link
+   * TokenStore} cannot hold doesn't fail every connection on the I/O thread later on.
    */
   public QuotaConfig(Quota quota, String protocolName) {
     this.protocolName = protocolName;
     refreshSeconds = quota.refreshSeconds;
     defaultQuota = quota.defaultQuota;
+    checkTokenAmount(defaultQuota);
     ImmutableMap.Builder<String, QuotaGroup> mapBuilder = new ImmutableMap.Builder<>();
     quota.customQuota.forEach(
-        quotaGroup -> quotaGroup.userId.forEach(userId -> mapBuilder.put(userId, quotaGroup)));
+        quotaGroup -> {
+          checkTokenAmount(quotaGroup);
+          quotaGroup.userId.forEach(userId -> mapBuilder.put(userId, quotaGroup));
+        });
     customQuotaMap = mapBuilder.build();
   }
 
+  private void checkTokenAmount(QuotaGroup quotaGroup) {
+    checkArgument(
+        quotaGroup.tokenAmount == SENTINEL_UNLIMITED_TOKENS
+            || (quotaGroup.tokenAmount >= 0 && quotaGroup.tokenAmount <= MAX_TOKEN_AMOUNT),
+        "Token amount %s for %s is out of range, must be between 0 and %s or %s for unlimited",
+        quotaGroup.tokenAmount,
+        protocolName,
+        MAX_TOKEN_AMOUNT,
+        SENTINEL_UNLIMITED_TOKENS);
+  }
+
   @VisibleForTesting
   QuotaGroup findQuotaGroup(String userId) {
     return customQuotaMap.getOrDefault(userId, defaultQuota);
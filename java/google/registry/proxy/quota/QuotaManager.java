@@ -14,8 +14,9 @@
 
 package google.registry.proxy.quota;
 
+import static org.joda.time.DateTimeZone.UTC;
+
 import com.google.auto.value.AutoValue;
-import google.registry.proxy.quota.TokenStore.TimestampedInteger;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import javax.annotation.concurrent.ThreadSafe;
@@ -90,13 +91,16 @@ public class QuotaManager {
 
   /** Attempts to acquire requested quota, synchronously. */
   public QuotaResponse acquireQuota(QuotaRequest request) {
-    TimestampedInteger tokens = tokenStore.take(request.userId());
-    return QuotaResponse.create(tokens.value() != 0, request.userId(), tokens.timestamp());
+    long grant = tokenStore.take(request.userId());
+    return QuotaResponse.create(
+        TokenStore.grantedTokenCount(grant) != 0,
+        request.userId(),
+        new DateTime(TokenStore.grantRefillTimeMillis(grant), UTC));
   }
 
   /** Returns granted quota to the token store, asynchronously. */
   public Future<?> releaseQuota(QuotaRebate rebate) {
     return backgroundExecutor.submit(
-        () -> tokenStore.put(rebate.userId(), rebate.grantedTokenRefillTime()));
+        () -> tokenStore.put(rebate.userId(), rebate.grantedTokenRefillTime().getMillis()));
   }
 }
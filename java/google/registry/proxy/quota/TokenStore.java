@@ -17,6 +17,7 @@ package google.registry.proxy.quota;
 import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
 import static java.lang.StrictMath.max;
 import static java.lang.StrictMath.min;
+import static org.joda.time.DateTimeZone.UTC;
 
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
@@ -26,6 +27,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.ThreadSafe;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -43,12 +45,18 @@ import org.joda.time.Duration;
  * #put} takes place. It also exposes a {@link #refresh} method that goes through each entry in the
  * store and purges stale entries, in order to prevent the token store from growing too large.
  *
+ * <p>{@link #take} is called on the I/O thread for every new connection (and every WHOIS query), so
+ * it is kept cheap under contention: each user's available tokens and last refill time are packed
+ * into a single {@code long}, which is updated with compare-and-set rather than under the lock of a
+ * {@link ConcurrentHashMap#compute} call. The grant it returns is packed the same way, so that it
+ * doesn't allocate any objects once the user has an entry.
+ *
  * <p>There should be one token store for each protocol.
  */
 @ThreadSafe
 public class TokenStore {
 
-  /** Value class representing a timestamped integer. */
+  /** Value class representing a timestamped integer, as read by {@link #getTokenForTests}. */
   @AutoValue
   abstract static class TimestampedInteger {
 
@@ -61,19 +69,34 @@ public class TokenStore {
     abstract DateTime timestamp();
   }
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /**
-   * A wrapper to get around Java lambda's closure limitation.
+   * Number of low bits of a packed entry that hold the token count.
    *
-   * <p>Use the class to modify the value of a local variable captured by an lambda.
+   * <p>The remaining high bits hold the refill time in milliseconds since the epoch, which leaves
+   * room for timestamps until the year 2109.
    */
-  private static class Wrapper<T> {
-    T value;
-  }
+  private static final int TOKEN_BITS = 22;
 
-  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+  private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+  /** Packed token count that stands for {@link QuotaConfig#SENTINEL_UNLIMITED_TOKENS}. */
+  private static final int PACKED_UNLIMITED_TOKENS = (int) TOKEN_MASK;
+
+  /**
+   * The largest token amount that can be packed, which {@link QuotaConfig} enforces at startup.
+   */
+  static final int MAX_TOKEN_AMOUNT = PACKED_UNLIMITED_TOKENS - 1;
+
+  /** Value of an entry that is created but has never been filled. */
+  private static final long UNFILLED = Long.MIN_VALUE;
+
+  /** Value of an entry that is purged by {@link #refresh} and must not be updated anymore. */
+  private static final long PURGED = Long.MIN_VALUE + 1;
 
-  /** A map of {@code userId} to available tokens, timestamped at last refill time. */
-  private final ConcurrentHashMap<String, TimestampedInteger> tokensMap = new ConcurrentHashMap<>();
+  /** A map of {@code userId} to packed available tokens, timestamped at last refill time. */
+  private final ConcurrentHashMap<String, AtomicLong> tokensMap = new ConcurrentHashMap<>();
 
   private final QuotaConfig config;
   private final ScheduledExecutorService refreshExecutor;
@@ -85,6 +108,51 @@ public class TokenStore {
     this.clock = clock;
   }
 
+  /**
+   * Packs a token amount and a refill time into a single {@code long}.
+   *
+   * <p>The amount isn't range-checked here, since {@link QuotaConfig} rejects configured amounts
+   * that don't fit when the proxy starts, and the store never goes beyond the configured amount.
+   */
+  private static long pack(int tokens, long refillTimeMillis) {
+    long packedTokens = tokens == SENTINEL_UNLIMITED_TOKENS ? PACKED_UNLIMITED_TOKENS : tokens;
+    return (refillTimeMillis << TOKEN_BITS) | packedTokens;
+  }
+
+  private static int unpackTokens(long entry) {
+    int packedTokens = (int) (entry & TOKEN_MASK);
+    return packedTokens == PACKED_UNLIMITED_TOKENS ? SENTINEL_UNLIMITED_TOKENS : packedTokens;
+  }
+
+  private static long unpackRefillTimeMillis(long entry) {
+    return entry >> TOKEN_BITS;
+  }
+
+  /** Returns the result of a {@link #take} that granted the given number of tokens. */
+  @VisibleForTesting
+  static long grant(int grantedTokenCount, long refillTimeMillis) {
+    return pack(grantedTokenCount, refillTimeMillis);
+  }
+
+  /** Returns the number of tokens granted by a {@link #take}, given its result. */
+  static int grantedTokenCount(long grant) {
+    return unpackTokens(grant);
+  }
+
+  /**
+   * Returns the refill time, in milliseconds since the epoch, of the pool of tokens that a {@link
+   * #take} took from, given its result.
+   */
+  static long grantRefillTimeMillis(long grant) {
+    return unpackRefillTimeMillis(grant);
+  }
+
+  /** Returns if the tokens last refilled at the given time need to be refilled for the user. */
+  private boolean needsRefill(String userId, long refillTimeMillis, long nowMillis) {
+    long refillPeriodMillis = config.getRefillPeriod(userId).getMillis();
+    return refillPeriodMillis != 0 && nowMillis - refillTimeMillis >= refillPeriodMillis;
+  }
+
   /**
    * Attempts to take one token from the token store.
    *
@@ -97,40 +165,50 @@ public class TokenStore {
    * {@code partialGrant} parameter.
    *
    * @param userId the identifier of the user requesting the token.
-   * @return the number of token granted, timestamped at refill time of the pool of tokens from
-   *     which the granted one is taken.
+   * @return the number of token granted and the refill time of the pool of tokens from which the
+   *     granted one is taken, packed together. Use {@link #grantedTokenCount} and {@link
+   *     #grantRefillTimeMillis} to read them.
    */
-  TimestampedInteger take(String userId) {
-    Wrapper<TimestampedInteger> grantedToken = new Wrapper<>();
-    tokensMap.compute(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount;
-          DateTime refillTime;
-          // Checks if the user is provisioned with unlimited tokens.
-          if (config.hasUnlimitedTokens(user)) {
-            grantedToken.value = TimestampedInteger.create(1, now);
-            return TimestampedInteger.create(SENTINEL_UNLIMITED_TOKENS, now);
-          }
-          // Checks if the entry exists.
-          if (availableTokens == null
-              // Or if refill is enabled and the entry needs to be refilled.
-              || (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                  && !new Duration(availableTokens.timestamp(), now)
-                      .isShorterThan(config.getRefillPeriod(user)))) {
-            currentTokenCount = config.getTokenAmount(user);
-            refillTime = now;
-          } else {
-            currentTokenCount = availableTokens.value();
-            refillTime = availableTokens.timestamp();
-          }
-          int newTokenCount = max(0, currentTokenCount - 1);
-          grantedToken.value =
-              TimestampedInteger.create(currentTokenCount - newTokenCount, refillTime);
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
-    return grantedToken.value;
+  long take(String userId) {
+    long now = clock.nowUtc().getMillis();
+    while (true) {
+      AtomicLong entry = tokensMap.get(userId);
+      if (entry == null) {
+        entry = tokensMap.computeIfAbsent(userId, user -> new AtomicLong(UNFILLED));
+      }
+      long availableTokens = entry.get();
+      if (availableTokens == PURGED) {
+        // The entry is being purged by a concurrent refresh. Help remove it and start over.
+        tokensMap.remove(userId, entry);
+        continue;
+      }
+      int grantedTokenCount;
+      long refillTime;
+      long newAvailableTokens;
+      // Checks if the user is provisioned with unlimited tokens.
+      if (config.hasUnlimitedTokens(userId)) {
+        grantedTokenCount = 1;
+        refillTime = now;
+        newAvailableTokens = pack(SENTINEL_UNLIMITED_TOKENS, now);
+      } else {
+        int currentTokenCount;
+        // Checks if the entry has been filled, and whether it needs to be refilled.
+        if (availableTokens == UNFILLED
+            || needsRefill(userId, unpackRefillTimeMillis(availableTokens), now)) {
+          currentTokenCount = config.getTokenAmount(userId);
+          refillTime = now;
+        } else {
+          currentTokenCount = unpackTokens(availableTokens);
+          refillTime = unpackRefillTimeMillis(availableTokens);
+        }
+        int newTokenCount = max(0, currentTokenCount - 1);
+        grantedTokenCount = currentTokenCount - newTokenCount;
+        newAvailableTokens = pack(newTokenCount, refillTime);
+      }
+      if (entry.compareAndSet(availableTokens, newAvailableTokens)) {
+        return grant(grantedTokenCount, refillTime);
+      }
+    }
   }
 
   /**
@@ -141,36 +219,43 @@ public class TokenStore {
    * pool), and returns the token, capped at the allotted amount for the {@code userId}.
    *
    * @param userId the identifier of the user returning the token.
-   * @param returnedTokenRefillTime The refill time of the pool of tokens from which the returned
-   *     one is taken from.
+   * @param returnedTokenRefillTimeMillis The refill time of the pool of tokens from which the
+   *     returned one is taken from, in milliseconds since the epoch.
    */
-  void put(String userId, DateTime returnedTokenRefillTime) {
-    tokensMap.computeIfPresent(
-        userId,
-        (user, availableTokens) -> {
-          DateTime now = clock.nowUtc();
-          int currentTokenCount = availableTokens.value();
-          DateTime refillTime = availableTokens.timestamp();
-          int newTokenCount;
-          // Check if quota is unlimited.
-          if (!config.hasUnlimitedTokens(userId)) {
-            // Check if refill is enabled and a refill is needed.
-            if (!config.getRefillPeriod(user).isEqual(Duration.ZERO)
-                && !new Duration(availableTokens.timestamp(), now)
-                    .isShorterThan(config.getRefillPeriod(user))) {
-              currentTokenCount = config.getTokenAmount(user);
-              refillTime = now;
-            }
-            // If the returned token comes from the current pool, add it back, otherwise discard it.
-            newTokenCount =
-                returnedTokenRefillTime.equals(refillTime)
-                    ? min(currentTokenCount + 1, config.getTokenAmount(userId))
-                    : currentTokenCount;
-          } else {
-            newTokenCount = SENTINEL_UNLIMITED_TOKENS;
-          }
-          return TimestampedInteger.create(newTokenCount, refillTime);
-        });
+  void put(String userId, long returnedTokenRefillTimeMillis) {
+    AtomicLong entry = tokensMap.get(userId);
+    if (entry == null) {
+      return;
+    }
+    long now = clock.nowUtc().getMillis();
+    while (true) {
+      long availableTokens = entry.get();
+      if (availableTokens == UNFILLED || availableTokens == PURGED) {
+        // There is no (longer a) pool of tokens to return the token to.
+        return;
+      }
+      int currentTokenCount = unpackTokens(availableTokens);
+      long refillTime = unpackRefillTimeMillis(availableTokens);
+      int newTokenCount;
+      // Check if quota is unlimited.
+      if (!config.hasUnlimitedTokens(userId)) {
+        // Check if refill is enabled and a refill is needed.
+        if (needsRefill(userId, refillTime, now)) {
+          currentTokenCount = config.getTokenAmount(userId);
+          refillTime = now;
+        }
+        // If the returned token comes from the current pool, add it back, otherwise discard it.
+        newTokenCount =
+            returnedTokenRefillTimeMillis == refillTime
+                ? min(currentTokenCount + 1, config.getTokenAmount(userId))
+                : currentTokenCount;
+      } else {
+        newTokenCount = SENTINEL_UNLIMITED_TOKENS;
+      }
+      if (entry.compareAndSet(availableTokens, pack(newTokenCount, refillTime))) {
+        return;
+      }
+    }
   }
 
   /**
@@ -182,13 +267,21 @@ public class TokenStore {
    * the refill period is much shorter than the refresh period, so the last refill time should serve
    * as a good proxy for last update time as the actual update time cannot be one refill period
    * later from the refill time, otherwise another refill would have been performed.
+   *
+   * <p>An entry is marked as purged before it is removed, so that a concurrent {@link #take} or
+   * {@link #put} that already holds it cannot update it after it is gone.
    */
   void refresh() {
+    long refreshPeriodMillis = config.getRefreshPeriod().getMillis();
     tokensMap.forEach(
-        (user, availableTokens) -> {
-          if (!new Duration(availableTokens.timestamp(), clock.nowUtc())
-              .isShorterThan(config.getRefreshPeriod())) {
-            tokensMap.remove(user);
+        (user, entry) -> {
+          long availableTokens = entry.get();
+          if (availableTokens != UNFILLED
+              && availableTokens != PURGED
+              && clock.nowUtc().getMillis() - unpackRefillTimeMillis(availableTokens)
+                  >= refreshPeriodMillis
+              && entry.compareAndSet(availableTokens, PURGED)) {
+            tokensMap.remove(user, entry);
           }
         });
   }
@@ -217,6 +310,13 @@ public class TokenStore {
    */
   @VisibleForTesting
   TimestampedInteger getTokenForTests(String userId) {
-    return tokensMap.get(userId);
+    AtomicLong entry = tokensMap.get(userId);
+    long availableTokens = entry == null ? UNFILLED : entry.get();
+    if (availableTokens == UNFILLED || availableTokens == PURGED) {
+      return null;
+    }
+    return TimestampedInteger.create(
+        unpackTokens(availableTokens),
+        new DateTime(unpackRefillTimeMillis(availableTokens), UTC));
   }
 }
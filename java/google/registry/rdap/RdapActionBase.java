@@ -24,7 +24,6 @@ import static javax.servlet.http.HttpServletResponse.SC_BAD_REQUEST;
 import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
 
-import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.flogger.FluentLogger;
@@ -51,6 +50,7 @@ import google.registry.request.auth.AuthenticatedRegistrarAccessor;
 import google.registry.request.auth.UserAuthInfo;
 import google.registry.util.Clock;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
@@ -59,7 +59,6 @@ import java.util.Optional;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
-import org.json.simple.JSONValue;
 
 /**
  * Base RDAP (new WHOIS) action for all requests.
@@ -180,16 +179,12 @@ public abstract class RdapActionBase implements Runnable {
     if (requestMethod == Action.Method.HEAD) {
       return;
     }
-    if (formatOutputParam.orElse(false)) {
-      try {
-        response.setPayload(new JacksonFactory().toPrettyString(rdapJson));
-        return;
-      } catch (IOException e) {
-        logger.atWarning().withCause(e).log(
-            "Unable to pretty-print RDAP JSON response; falling back to unformatted output.");
-      }
+    try {
+      RdapJsonWriter.write(
+          rdapJson, formatOutputParam.orElse(false), response.getPayloadWriter());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    response.setPayload(JSONValue.toJSONString(rdapJson));
   }
 
   RdapAuthorization getAuthorization() {
@@ -44,6 +44,8 @@ public class RdapDomainAction extends RdapActionBase {
 
   public static final String PATH = "/rdap/domain/";
 
+  @Inject RdapResponseCache responseCache;
+
   @Inject public RdapDomainAction() {}
 
   @Override
@@ -75,11 +77,25 @@ public class RdapDomainAction extends RdapActionBase {
               pathSearchString, getHumanReadableObjectTypeName(), e.getMessage()));
     }
     // The query string is not used; the RDAP syntax is /rdap/domain/mydomain.com.
+    String domainName = pathSearchString;
+    RdapAuthorization authorization = getAuthorization();
+    return responseCache.get(
+        RdapResponseCache.Query.create(
+            domainName,
+            fullServletPath,
+            authorization,
+            shouldIncludeDeleted(),
+            getDesiredRegistrar()),
+        () -> lookUpDomain(domainName, authorization, now));
+  }
+
+  private ImmutableMap<String, Object> lookUpDomain(
+      String domainName, RdapAuthorization authorization, DateTime now) {
     Optional<DomainResource> domainResource =
         loadByForeignKey(
-            DomainResource.class, pathSearchString, shouldIncludeDeleted() ? START_OF_TIME : now);
+            DomainResource.class, domainName, shouldIncludeDeleted() ? START_OF_TIME : now);
     if (!shouldBeVisible(domainResource, now)) {
-      throw new NotFoundException(pathSearchString + " not found");
+      throw new NotFoundException(domainName + " not found");
     }
     return rdapJsonFormatter.makeRdapJsonForDomain(
         domainResource.get(),
@@ -88,6 +104,6 @@ public class RdapDomainAction extends RdapActionBase {
         rdapWhoisServer,
         now,
         OutputDataType.FULL,
-        getAuthorization());
+        authorization);
   }
 }
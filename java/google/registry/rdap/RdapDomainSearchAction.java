@@ -14,6 +14,7 @@
 
 package google.registry.rdap;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.model.index.ForeignKeyIndex.loadAndGetKey;
 import static google.registry.model.ofy.ObjectifyService.ofy;
@@ -21,10 +22,12 @@ import static google.registry.request.Action.Method.GET;
 import static google.registry.request.Action.Method.HEAD;
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
 import com.google.common.collect.Streams;
 import com.google.common.flogger.FluentLogger;
 import com.google.common.net.InetAddresses;
@@ -45,14 +48,19 @@ import google.registry.request.HttpException.NotFoundException;
 import google.registry.request.HttpException.UnprocessableEntityException;
 import google.registry.request.Parameter;
 import google.registry.request.auth.Auth;
+import google.registry.util.Concurrent;
 import google.registry.util.Idn;
 import google.registry.util.NonFinalForTesting;
 import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 
@@ -80,6 +88,12 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
   @NonFinalForTesting
   static int maxNameserversInFirstStage = 300;
 
+  /** Maximum number of nameserver chunks whose domains are queried for at the same time. */
+  private static final int MAX_PARALLEL_NAMESERVER_CHUNK_QUERIES = 10;
+
+  private static final Comparator<DomainResource> DOMAIN_NAME_ORDER =
+      Comparator.comparing(DomainResource::getFullyQualifiedDomainName);
+
   private static final FluentLogger logger = FluentLogger.forEnclosingClass();
 
   @Inject @Parameter("name") Optional<String> nameParam;
@@ -157,7 +171,9 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       }
       results = searchByNameserverIp(inetAddress, now);
     }
-    if (results.jsonList().isEmpty()) {
+    // A nameserver search that reached its scan limit before finding any domain still returns a
+    // cursor, so that the client can carry on from the last domain scanned.
+    if (results.jsonList().isEmpty() && !results.nextCursor().isPresent()) {
       throw new NotFoundException("No domains found");
     }
     ImmutableMap.Builder<String, Object> builder = new ImmutableMap.Builder<>();
@@ -449,37 +465,50 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
   private RdapSearchResults searchByNameserverRefs(
       final Iterable<Key<HostResource>> hostKeys, final DateTime now) {
     // We must break the query up into chunks, because the in operator is limited to 30 subqueries.
+    // Each chunk yields its domains sorted by name, a page at a time, and the chunks are merged so
+    // that we can return the first domains in alphabetical order without fetching every domain
+    // that uses a popular nameserver. The first page of every chunk is fetched in parallel.
+    //
+    // Deleted domains can only be skipped in memory, so the number of domains fetched is capped.
+    // Once a chunk has used up the cap and would need another page, the merge stops, so that the
+    // domains found so far are still the first ones in alphabetical order, and the result is marked
+    // as truncated. The cursor is then the name of the last domain scanned, deleted or not, which
+    // lets the client carry on from there even if no domain was found.
+    int pageSize = getStandardQuerySizeLimit();
+    NameserverScanLimit scanLimit =
+        new NameserverScanLimit(RESULT_SET_SIZE_SCALING_FACTOR * pageSize);
+    ImmutableList<NameserverChunkDomains> chunks =
+        Streams.stream(Iterables.partition(hostKeys, 30))
+            .map(chunk -> new NameserverChunkDomains(chunk, pageSize, scanLimit))
+            .collect(toImmutableList());
+    int numHostKeysSearched = chunks.stream().mapToInt(chunk -> chunk.hostKeys.size()).sum();
+    Concurrent.transform(
+        chunks, MAX_PARALLEL_NAMESERVER_CHUNK_QUERIES, NameserverChunkDomains::prefetch);
     // Since it is possible for the same domain to show up more than once in our result list (if
     // we do a wildcard nameserver search that returns multiple nameservers used by the same
-    // domain), we must create a set of resulting {@link DomainResource} objects. Use a sorted set,
-    // and fetch all domains, to make sure that we can return the first domains in alphabetical
-    // order.
-    ImmutableSortedSet.Builder<DomainResource> domainSetBuilder =
-        ImmutableSortedSet.orderedBy(
-            Comparator.comparing(DomainResource::getFullyQualifiedDomainName));
-    int numHostKeysSearched = 0;
-    for (List<Key<HostResource>> chunk : Iterables.partition(hostKeys, 30)) {
-      numHostKeysSearched += chunk.size();
-      Query<DomainResource> query = ofy().load()
-          .type(DomainResource.class)
-          .filter("nsHosts in", chunk);
-      if (!shouldIncludeDeleted()) {
-        query = query.filter("deletionTime >", now);
-      // If we are not performing an inequality query, we can filter on the cursor in the query.
-      // Otherwise, we will need to filter the results afterward.
-      } else if (cursorString.isPresent()) {
-        query = query.filter("fullyQualifiedDomainName >", cursorString.get());
+    // domain), we skip domains with the same name as the previous one. We stop as soon as we have
+    // one more domain than will fit in the result, which tells us that the result is truncated.
+    // The scan limit is checked after every domain, because the merge only moves on to the next
+    // page of a chunk (and finds the limit reached) after taking the last domain of the current
+    // page, which still belongs in the result.
+    List<DomainResource> domains = new ArrayList<>();
+    Optional<String> lastScannedDomainName = Optional.empty();
+    Iterator<DomainResource> mergedDomains = Iterators.mergeSorted(chunks, DOMAIN_NAME_ORDER);
+    while (!scanLimit.reached
+        && mergedDomains.hasNext()
+        && domains.size() <= rdapResultSetMaxSize) {
+      DomainResource domain = mergedDomains.next();
+      lastScannedDomainName = Optional.of(domain.getFullyQualifiedDomainName());
+      if (!isAuthorized(domain, now)) {
+        continue;
       }
-      Stream<DomainResource> stream =
-          Streams.stream(query).filter(domain -> isAuthorized(domain, now));
-      if (cursorString.isPresent()) {
-        stream =
-            stream.filter(
-                domain -> (domain.getFullyQualifiedDomainName().compareTo(cursorString.get()) > 0));
+      if (domains.isEmpty()
+          || !Iterables.getLast(domains)
+              .getFullyQualifiedDomainName()
+              .equals(domain.getFullyQualifiedDomainName())) {
+        domains.add(domain);
       }
-      stream.forEach(domainSetBuilder::add);
     }
-    List<DomainResource> domains = domainSetBuilder.build().asList();
     metricInformationBuilder.setNumHostsRetrieved(numHostKeysSearched);
     if (domains.size() > rdapResultSetMaxSize) {
       return makeSearchResults(
@@ -487,6 +516,15 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
           IncompletenessWarningType.TRUNCATED,
           Optional.of((long) domains.size()),
           now);
+    } else if (scanLimit.reached) {
+      // There may be more domains after the last one we scanned, which is where the next page
+      // starts.
+      return makeSearchResults(
+          domains,
+          IncompletenessWarningType.TRUNCATED,
+          Optional.of((long) domains.size()),
+          lastScannedDomainName,
+          now);
     } else {
       // If everything that we found will fit in the result, check whether there might have been
       // more results that got dropped because the first stage limit on number of nameservers. If
@@ -501,6 +539,92 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
     }
   }
 
+  /** The number of domains that the chunks of a nameserver search may fetch between them. */
+  private static class NameserverScanLimit {
+
+    private final AtomicInteger remaining;
+    volatile boolean reached = false;
+
+    NameserverScanLimit(int maxDomains) {
+      remaining = new AtomicInteger(maxDomains);
+    }
+  }
+
+  /**
+   * The domains linked to a chunk of at most 30 hosts, in order of name, including deleted ones.
+   *
+   * <p>Domains are found by keys-only queries, a page at a time, and only the domains of the
+   * current page are loaded. Deleted domains can't be excluded by the query, because the inequality
+   * filter on deletion time would prevent sorting by name, so it is up to the caller to skip them.
+   *
+   * <p>The first page is always fetched. Further pages are only fetched while the {@link
+   * NameserverScanLimit} shared by all chunks allows it; otherwise the limit is marked as reached,
+   * and the chunk ends early.
+   */
+  private class NameserverChunkDomains extends AbstractIterator<DomainResource> {
+
+    final List<Key<HostResource>> hostKeys;
+    private final int pageSize;
+    private final NameserverScanLimit scanLimit;
+    private Optional<String> lastDomainName = cursorString;
+    private Iterator<DomainResource> page = Collections.emptyIterator();
+    private boolean firstPage = true;
+    private boolean exhausted = false;
+
+    NameserverChunkDomains(
+        List<Key<HostResource>> hostKeys, int pageSize, NameserverScanLimit scanLimit) {
+      this.hostKeys = hostKeys;
+      this.pageSize = pageSize;
+      this.scanLimit = scanLimit;
+    }
+
+    /**
+     * Fetches the first page, so that it can be done in parallel for all chunks.
+     *
+     * @return whether there are any domains
+     */
+    boolean prefetch() {
+      return hasNext();
+    }
+
+    @Override
+    protected DomainResource computeNext() {
+      while (!page.hasNext()) {
+        if (exhausted) {
+          return endOfData();
+        }
+        if (scanLimit.remaining.addAndGet(-pageSize) < 0 && !firstPage) {
+          scanLimit.reached = true;
+          return endOfData();
+        }
+        firstPage = false;
+        fetchNextPage();
+      }
+      DomainResource domain = page.next();
+      lastDomainName = Optional.of(domain.getFullyQualifiedDomainName());
+      return domain;
+    }
+
+    private void fetchNextPage() {
+      Query<DomainResource> query =
+          ofy().load().type(DomainResource.class).filter("nsHosts in", hostKeys);
+      if (lastDomainName.isPresent()) {
+        query = query.filter("fullyQualifiedDomainName >", lastDomainName.get());
+      }
+      ImmutableList<Key<DomainResource>> keys =
+          ImmutableList.copyOf(
+              query.order("fullyQualifiedDomainName").limit(pageSize).keys().list());
+      exhausted = keys.size() < pageSize;
+      Map<Key<DomainResource>, DomainResource> loadedDomains = ofy().load().keys(keys);
+      page =
+          keys.stream()
+              .map(loadedDomains::get)
+              .filter(Objects::nonNull)
+              .collect(toImmutableList())
+              .iterator();
+    }
+  }
+
   /** Output JSON for a list of domains, with no incompleteness warnings. */
   private RdapSearchResults makeSearchResults(List<DomainResource> domains, DateTime now) {
     return makeSearchResults(
@@ -529,6 +653,20 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
       IncompletenessWarningType incompletenessWarningType,
       Optional<Long> numDomainsRetrieved,
       DateTime now) {
+    return makeSearchResults(
+        domains, incompletenessWarningType, numDomainsRetrieved, Optional.empty(), now);
+  }
+
+  /**
+   * Output JSON for a list of domains, with the cursor of a truncated result set to the name of
+   * the last domain scanned, if there is one and all the domains fit in the result.
+   */
+  private RdapSearchResults makeSearchResults(
+      List<DomainResource> domains,
+      IncompletenessWarningType incompletenessWarningType,
+      Optional<Long> numDomainsRetrieved,
+      Optional<String> lastScannedDomainName,
+      DateTime now) {
     numDomainsRetrieved.ifPresent(metricInformationBuilder::setNumDomainsRetrieved);
     OutputDataType outputDataType =
         (domains.size() > 1) ? OutputDataType.SUMMARY : OutputDataType.FULL;
@@ -544,10 +682,15 @@ public class RdapDomainSearchAction extends RdapSearchActionBase {
         break;
       }
     }
-    IncompletenessWarningType finalIncompletenessWarningType =
-        (jsonList.size() < domains.size())
-            ? IncompletenessWarningType.TRUNCATED
-            : incompletenessWarningType;
+    IncompletenessWarningType finalIncompletenessWarningType;
+    if (jsonList.size() < domains.size()) {
+      finalIncompletenessWarningType = IncompletenessWarningType.TRUNCATED;
+    } else {
+      finalIncompletenessWarningType = incompletenessWarningType;
+      if (lastScannedDomainName.isPresent()) {
+        newCursor = lastScannedDomainName;
+      }
+    }
     metricInformationBuilder.setIncompletenessWarningType(finalIncompletenessWarningType);
     return RdapSearchResults.create(
         ImmutableList.copyOf(jsonList),
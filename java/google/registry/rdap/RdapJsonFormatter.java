@@ -47,6 +47,7 @@ import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.RegistrarAddress;
 import google.registry.model.registrar.RegistrarContact;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.request.HttpException.InternalServerErrorException;
 import google.registry.request.HttpException.NotFoundException;
 import google.registry.util.Idn;
@@ -1008,21 +1009,30 @@ public class RdapJsonFormatter {
 
   /**
    * Creates an event list for a domain, host or contact resource.
+   *
+   * <p>The events are read from the resource's {@link HistoryEventSummary} if it has one, which
+   * takes a single entity load. Resources that haven't been summarized yet fall back to a query
+   * over their history entries.
    */
   private static ImmutableList<Object> makeEvents(EppResource resource, DateTime now) {
     ImmutableList.Builder<Object> eventsBuilder = new ImmutableList.Builder<>();
-    for (HistoryEntry historyEntry : ofy().load()
-        .type(HistoryEntry.class)
-        .ancestor(resource)
-        .order("modificationTime")) {
-      // Only create an event if this is a type we care about.
-      if (!historyEntryTypeToRdapEventActionMap.containsKey(historyEntry.getType())) {
-        continue;
+    HistoryEventSummary summary =
+        ofy().load().key(HistoryEventSummary.createKey(Key.create(resource))).now();
+    if (summary != null) {
+      for (HistoryEventSummary.Event event : summary.getEvents()) {
+        addEvent(eventsBuilder, event.getType(), event.getClientId(), event.getModificationTime());
+      }
+    } else {
+      for (HistoryEntry historyEntry : ofy().load()
+          .type(HistoryEntry.class)
+          .ancestor(resource)
+          .order("modificationTime")) {
+        addEvent(
+            eventsBuilder,
+            historyEntry.getType(),
+            historyEntry.getClientId(),
+            historyEntry.getModificationTime());
       }
-      RdapEventAction eventAction =
-          historyEntryTypeToRdapEventActionMap.get(historyEntry.getType());
-      eventsBuilder.add(makeEvent(
-          eventAction, historyEntry.getClientId(), historyEntry.getModificationTime()));
     }
     if (resource instanceof DomainResource) {
       DateTime expirationTime = ((DomainResource) resource).getRegistrationExpirationTime();
@@ -1039,6 +1049,18 @@ public class RdapJsonFormatter {
     return eventsBuilder.build();
   }
 
+  /** Adds an event for a history entry, if it is of a type we care about. */
+  private static void addEvent(
+      ImmutableList.Builder<Object> eventsBuilder,
+      HistoryEntry.Type type,
+      String clientId,
+      DateTime modificationTime) {
+    RdapEventAction eventAction = historyEntryTypeToRdapEventActionMap.get(type);
+    if (eventAction != null) {
+      eventsBuilder.add(makeEvent(eventAction, clientId, modificationTime));
+    }
+  }
+
   /**
    * Creates an event list for a {@link Registrar}.
    */
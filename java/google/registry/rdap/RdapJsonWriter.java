@@ -0,0 +1,131 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.CharacterEscapes;
+import com.fasterxml.jackson.core.io.SerializedString;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * Serializes the JSON objects built by {@link RdapJsonFormatter} directly to a {@link Writer}.
+ *
+ * <p>Responses used to be rendered to a string first, which for search results meant holding a
+ * second copy of the whole response (plus the intermediate buffers of the serializer) in memory
+ * before any of it was written out. This writes the tokens to the response as they are generated
+ * instead.
+ *
+ * <p>The output is identical to what we produced before: pretty-printed output matches {@code
+ * JacksonFactory.toPrettyString()}, and unformatted output matches {@code
+ * JSONValue.toJSONString()}, including json-simple's escaping of slashes and of some non-ASCII
+ * control and punctuation characters.
+ */
+final class RdapJsonWriter {
+
+  private static final JsonFactory JSON_FACTORY =
+      new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+  private RdapJsonWriter() {}
+
+  /**
+   * Writes a JSON object to the writer, which is flushed but not closed.
+   *
+   * <p>Values may be maps with string keys, iterables, strings, numbers, booleans or null. Any
+   * other value is written as the string returned by its {@code toString()} method.
+   */
+  static void write(Map<String, ?> json, boolean prettyPrint, Writer writer) throws IOException {
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+      if (prettyPrint) {
+        generator.useDefaultPrettyPrinter();
+      } else {
+        generator.setCharacterEscapes(JsonSimpleEscapes.INSTANCE);
+      }
+      writeValue(generator, json);
+    }
+  }
+
+  private static void writeValue(JsonGenerator generator, Object value) throws IOException {
+    if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Map) {
+      generator.writeStartObject();
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        generator.writeFieldName(String.valueOf(entry.getKey()));
+        writeValue(generator, entry.getValue());
+      }
+      generator.writeEndObject();
+    } else if (value instanceof Iterable) {
+      generator.writeStartArray();
+      for (Object element : (Iterable<?>) value) {
+        writeValue(generator, element);
+      }
+      generator.writeEndArray();
+    } else if (value instanceof Long
+        || value instanceof Integer
+        || value instanceof Short
+        || value instanceof Byte) {
+      generator.writeNumber(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      generator.writeNumber(value.toString());
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else {
+      generator.writeString(value.toString());
+    }
+  }
+
+  /**
+   * The escaping done by json-simple's {@code JSONValue.escape()}, on top of the escaping that
+   * JSON requires.
+   */
+  private static final class JsonSimpleEscapes extends CharacterEscapes {
+
+    private static final long serialVersionUID = -6526383547232396627L;
+
+    static final JsonSimpleEscapes INSTANCE = new JsonSimpleEscapes();
+
+    private static final SerializedString ESCAPED_SLASH = new SerializedString("\\/");
+
+    private final int[] asciiEscapes;
+
+    private JsonSimpleEscapes() {
+      asciiEscapes = standardAsciiEscapesForJSON();
+      asciiEscapes['/'] = ESCAPE_CUSTOM;
+      asciiEscapes[0x7f] = ESCAPE_STANDARD;
+    }
+
+    @Override
+    public int[] getEscapeCodesForAscii() {
+      return asciiEscapes;
+    }
+
+    @Override
+    public SerializableString getEscapeSequence(int ch) {
+      if (ch == '/') {
+        return ESCAPED_SLASH;
+      }
+      if ((ch >= 0x80 && ch <= 0x9f) || (ch >= 0x2000 && ch <= 0x20ff)) {
+        return new SerializedString(String.format("\\u%04X", ch));
+      }
+      return null;
+    }
+  }
+}
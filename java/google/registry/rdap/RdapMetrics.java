@@ -146,6 +146,16 @@ public class RdapMetrics {
               LABEL_DESCRIPTORS_FOR_RETRIEVAL_COUNTS,
               FIBONACCI_FITTER);
 
+  @VisibleForTesting
+  static final IncrementableMetric responseCacheLookups =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/rdap/response_cache_lookups",
+              "Count of RDAP response cache lookups",
+              "count",
+              ImmutableSet.of(
+                  LabelDescriptor.create("result", "Whether the response was cached.")));
+
   @Inject
   public RdapMetrics() {}
 
@@ -206,6 +216,11 @@ public class RdapMetrics {
     }
   }
 
+  /** Records a lookup in the {@link RdapResponseCache}, as a hit or a miss. */
+  public void recordResponseCacheLookup(boolean hit) {
+    responseCacheLookups.increment(hit ? "hit" : "miss");
+  }
+
   @AutoValue
   abstract static class RdapMetricInformation {
 
@@ -0,0 +1,72 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableMap;
+import google.registry.config.RegistryConfig.Config;
+import google.registry.rdap.RdapResponseCache.Query;
+import google.registry.util.ResponseCache;
+import java.util.Optional;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.Duration;
+
+/**
+ * Short-lived cache of the JSON objects returned by RDAP domain lookups.
+ *
+ * <p>Only found domains are cached; errors (e.g. for names that aren't registered) are computed
+ * anew every time.
+ *
+ * @see RdapDomainAction
+ */
+@Singleton
+public class RdapResponseCache extends ResponseCache<Query, ImmutableMap<String, Object>> {
+
+  @Inject
+  public RdapResponseCache(
+      @Config("lookupResponseCachingDuration") Duration expiry,
+      @Config("lookupResponseMaxCachedEntries") int maximumSize,
+      RdapMetrics rdapMetrics) {
+    super(expiry, maximumSize, rdapMetrics::recordResponseCacheLookup);
+  }
+
+  /** A normalized lookup, including everything that the response depends on. */
+  @AutoValue
+  abstract static class Query {
+
+    /** The canonicalized name of the object that is looked up. */
+    abstract String name();
+
+    /** The servlet path that links in the response are relative to. */
+    abstract String fullServletPath();
+
+    abstract RdapAuthorization authorization();
+
+    abstract boolean includeDeleted();
+
+    abstract Optional<String> registrar();
+
+    static Query create(
+        String name,
+        String fullServletPath,
+        RdapAuthorization authorization,
+        boolean includeDeleted,
+        Optional<String> registrar) {
+      return new AutoValue_RdapResponseCache_Query(
+          name, fullServletPath, authorization, includeDeleted, registrar);
+    }
+  }
+}
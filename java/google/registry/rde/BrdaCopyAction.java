@@ -24,6 +24,7 @@ import google.registry.config.RegistryConfig.Config;
 import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.KeyModule.Key;
 import google.registry.model.rde.RdeNamingUtils;
+import google.registry.model.rde.RdeRevision;
 import google.registry.request.Action;
 import google.registry.request.Parameter;
 import google.registry.request.RequestParameters;
@@ -49,6 +50,8 @@ import org.joda.time.DateTime;
  * This bucket is special because a separate script will rsync it to the third party escrow provider
  * SFTP server. This is why the internal staging files are stored in the separate RDE bucket.
  *
+ * <p>If the deposit is split into several parts, each of them is copied as a RyDE file of its own.
+ *
  * @see <a href="http://newgtlds.icann.org/en/applicants/agb/agreement-approved-09jan14-en.htm">Registry Agreement</a>
  */
 @Action(
@@ -83,7 +86,14 @@ public final class BrdaCopyAction implements Runnable {
   }
 
   private void copyAsRyde() throws IOException, PGPException {
-    String prefix = RdeNamingUtils.makeRydeFilename(tld, watermark, THIN, 1, 0);
+    int parts = RdeRevision.getParts(tld, watermark, THIN);
+    for (int part = 1; part <= parts; part++) {
+      copyAsRyde(RdeNamingUtils.makeRydeFilename(tld, watermark, THIN, part, 0));
+    }
+  }
+
+  /** Re-encrypts a single part of the deposit. */
+  private void copyAsRyde(String prefix) throws IOException, PGPException {
     GcsFilename xmlFilename = new GcsFilename(stagingBucket, prefix + ".xml.ghostryde");
     GcsFilename xmlLengthFilename = new GcsFilename(stagingBucket, prefix + ".xml.length");
     GcsFilename rydeFile = new GcsFilename(brdaBucket, prefix + ".ryde");
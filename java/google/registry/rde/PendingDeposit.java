@@ -14,10 +14,15 @@
 
 package google.registry.rde;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import google.registry.model.common.Cursor.CursorType;
 import google.registry.model.rde.RdeMode;
 import java.io.Serializable;
+import java.util.stream.IntStream;
 import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -69,6 +74,39 @@ public abstract class PendingDeposit implements Serializable {
   @Nullable
   public abstract Integer revision();
 
+  /**
+   * Which part of the deposit to generate, which is also the sequence number in its filenames.
+   *
+   * <p>Parts are numbered from {@code 1} to {@link #parts}.
+   */
+  public abstract int part();
+
+  /** Number of parts the deposit is split into, each of which is generated separately. */
+  public abstract int parts();
+
+  /**
+   * Returns the pending deposits for each part of this deposit, if it is split into the given
+   * number of parts.
+   */
+  ImmutableList<PendingDeposit> split(int parts) {
+    checkArgument(parts >= 1, "Non-positive number of parts: %s", parts);
+    return IntStream.rangeClosed(1, parts)
+        .mapToObj(
+            part ->
+                new AutoValue_PendingDeposit(
+                    manual(),
+                    tld(),
+                    watermark(),
+                    mode(),
+                    cursor(),
+                    interval(),
+                    directoryWithTrailingSlash(),
+                    revision(),
+                    part,
+                    parts))
+        .collect(toImmutableList());
+  }
+
   static PendingDeposit create(
       String tld, DateTime watermark, RdeMode mode, CursorType cursor, Duration interval) {
     return new AutoValue_PendingDeposit(
@@ -79,7 +117,9 @@ public abstract class PendingDeposit implements Serializable {
         cursor,
         interval,
         null,
-        null);
+        null,
+        1,
+        1);
   }
 
   static PendingDeposit createInManualOperation(
@@ -96,7 +136,9 @@ public abstract class PendingDeposit implements Serializable {
         null,
         null,
         directoryWithTrailingSlash,
-        revision);
+        revision,
+        1,
+        1);
   }
 
   PendingDeposit() {}
@@ -14,6 +14,10 @@
 
 package google.registry.rde;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.joining;
+
+import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
 import google.registry.model.rde.RdeMode;
@@ -24,6 +28,7 @@ import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
 import google.registry.xjc.rdereport.XjcRdeReport;
 import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.concurrent.NotThreadSafe;
 import javax.inject.Inject;
@@ -49,6 +54,29 @@ public final class RdeCounter {
     counts.get(type).incrementAndGet();
   }
 
+  /**
+   * Returns the counts as text, with a {@code <type> <count>} line for each resource type.
+   *
+   * <p>This is how the parts of a split deposit pass on their counts to the part that writes the
+   * report.
+   */
+  public String serializeCounts() {
+    return counts.entrySet().stream()
+        .map(entry -> String.format("%s %d\n", entry.getKey(), entry.getValue().get()))
+        .collect(joining());
+  }
+
+  /** Adds counts returned by {@link #serializeCounts} to this counter. */
+  public void addSerializedCounts(String serializedCounts) {
+    for (String line : Splitter.on('\n').omitEmptyStrings().split(serializedCounts)) {
+      List<String> fields = Splitter.on(' ').splitToList(line);
+      checkArgument(fields.size() == 2, "Malformed count: %s", line);
+      RdeResourceType type = RdeResourceType.valueOf(fields.get(0));
+      checkArgument(counts.containsKey(type), "Unexpected resource type: %s", type);
+      counts.get(type).addAndGet(Long.parseLong(fields.get(1)));
+    }
+  }
+
   /** Constructs a header containing the sum of {@link #increment(RdeResourceType)} calls. */
   public XjcRdeHeader makeHeader(String tld, RdeMode mode) {
     XjcRdeHeader header = new XjcRdeHeader();
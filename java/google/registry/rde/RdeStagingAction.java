@@ -14,6 +14,7 @@
 
 package google.registry.rde;
 
+import static com.google.common.collect.ImmutableSetMultimap.flatteningToImmutableSetMultimap;
 import static google.registry.request.Action.Method.GET;
 import static google.registry.request.Action.Method.POST;
 import static google.registry.util.PipelineUtils.createJobPath;
@@ -46,6 +47,7 @@ import google.registry.request.RequestParameters;
 import google.registry.request.Response;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
+import java.util.Map;
 import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
@@ -64,7 +66,7 @@ import org.joda.time.Duration;
  * representation of each entity to the escrow XML files in which it should appear.
  *
  * <p>There is one map worker for each {@code EppResourceIndexBucket} entity group shard. There is
- * one reduce worker for each deposit being generated.
+ * one reduce worker for each deposit being generated, or for each part of it if deposits are split.
  *
  * <p>{@link ContactResource} and {@link HostResource} are emitted on all TLDs, even when the
  * domains on a TLD don't reference them. BRDA {@link RdeMode#THIN thin} deposits exclude contacts
@@ -82,6 +84,19 @@ import org.joda.time.Duration;
  * <p>To generate escrow deposits manually and locally, use the {@code nomulus} tool command
  * {@code GenerateEscrowDepositCommand}.
  *
+ * <h3>Split Deposits</h3>
+ *
+ * <p>If {@code rdeDepositParts} is configured to more than one, each deposit is split into that
+ * many parts, which are generated in parallel by separate reduce workers. Each resource is
+ * assigned to a single part by a hash of its ROID. Registrars and IDN tables go in the first part.
+ * The parts have consecutive sequence numbers in their filenames, starting at {@code S1}.
+ *
+ * <p>Every part is a complete deposit XML document, with the same id, watermark and resend number.
+ * The header of each part counts the objects in that part. Once all the parts are generated, the
+ * reduce worker that finishes last writes the report, named after the first part, whose header
+ * counts the objects in the whole deposit. It then rolls the cursor forward, and deletes the
+ * {@code .counts} files in which the parts left their counts for each other.
+ *
  * <h3>Logging</h3>
  *
  * <p>To identify the reduce worker request for a deposit in App Engine's log viewer, you can use
@@ -202,6 +217,7 @@ public final class RdeStagingAction implements Runnable {
   @Inject Response response;
   @Inject MapreduceRunner mrRunner;
   @Inject @Config("transactionCooldown") Duration transactionCooldown;
+  @Inject @Config("rdeDepositParts") int depositParts;
   @Inject @Parameter(RdeModule.PARAM_MANUAL) boolean manual;
   @Inject @Parameter(RdeModule.PARAM_DIRECTORY) Optional<String> directory;
   @Inject @Parameter(RdeModule.PARAM_MODE) ImmutableSet<String> modeStrings;
@@ -226,6 +242,12 @@ public final class RdeStagingAction implements Runnable {
     for (PendingDeposit pending : pendings.values()) {
       logger.atInfo().log("Pending deposit: %s", pending);
     }
+    // Each part of each deposit is generated by a reducer of its own.
+    pendings =
+        pendings.entries().stream()
+            .collect(
+                flatteningToImmutableSetMultimap(
+                    Map.Entry::getKey, entry -> entry.getValue().split(depositParts).stream()));
     RdeStagingMapper mapper = new RdeStagingMapper(lenient ? LENIENT : STRICT, pendings);
 
     response.sendJavaScriptRedirect(createJobPath(mrRunner
@@ -25,8 +25,10 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.hash.Hashing;
 import com.googlecode.objectify.Result;
 import google.registry.model.EppResource;
+import google.registry.model.PointInTimeCache;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainResource;
 import google.registry.model.host.HostResource;
@@ -43,15 +45,42 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
 
   private static final long serialVersionUID = -1518185703789372524L;
 
+  /** Maximum number of superordinate domains kept in a slice's {@link PointInTimeCache}. */
+  private static final int POINT_IN_TIME_CACHE_SIZE = 10_000;
+
+  /**
+   * Fragment emitted to the parts of a split deposit that don't contain the registrars, so that
+   * their reducers run even if they don't get any resources.
+   */
+  private static final DepositFragment EMPTY_FRAGMENT =
+      DepositFragment.create(RdeResourceType.REGISTRAR, "", "");
+
   private final RdeMarshaller marshaller;
   private final ImmutableSetMultimap<String, PendingDeposit> pendings;
 
+  /**
+   * Cache of the superordinate domains of subordinate hosts, which are often shared by several
+   * hosts and are needed at every watermark.
+   */
+  private transient PointInTimeCache pointInTimeCache;
+
   RdeStagingMapper(
       ValidationMode validationMode, ImmutableSetMultimap<String, PendingDeposit> pendings) {
     this.marshaller = new RdeMarshaller(validationMode);
     this.pendings = pendings;
   }
 
+  @Override
+  public void beginSlice() {
+    pointInTimeCache = new PointInTimeCache(POINT_IN_TIME_CACHE_SIZE);
+  }
+
+  @Override
+  public void endSlice() {
+    getContext().incrementCounter("point-in-time cache hits", pointInTimeCache.getHitCount());
+    getContext().incrementCounter("point-in-time cache misses", pointInTimeCache.getMissCount());
+  }
+
   @Override
   public final void map(final EppResource resource) {
     // The mapreduce has one special input that provides a null resource. This is used as a sentinel
@@ -65,8 +94,16 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
       for (Registrar registrar : Registrar.loadAllCached()) {
         DepositFragment fragment = marshaller.marshalRegistrar(registrar);
         for (PendingDeposit pending : pendings.values()) {
-          emit(pending, fragment);
-          registrarsEmitted++;
+          // Registrars only go in the first part of a split deposit.
+          if (pending.part() == 1) {
+            emit(pending, fragment);
+            registrarsEmitted++;
+          }
+        }
+      }
+      for (PendingDeposit pending : pendings.values()) {
+        if (pending.part() != 1) {
+          emit(pending, EMPTY_FRAGMENT);
         }
       }
       getContext().incrementCounter("registrars emitted", registrarsEmitted);
@@ -130,6 +167,10 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
                 || resource instanceof HostResource)) {
           continue;
         }
+        // Each resource goes in a single part of a split deposit.
+        if (pending.part() != getPart(resource, pending.parts())) {
+          continue;
+        }
         Optional<DepositFragment> fragment =
             fragmenter.marshal(pending.watermark(), pending.mode());
         if (fragment.isPresent()) {
@@ -147,6 +188,16 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
     ofy().clearSessionCache();
   }
 
+  /**
+   * Returns the part of a deposit split into the given number of parts that a resource goes in.
+   *
+   * <p>This is a deterministic function of the resource's ROID, so that a resend of a deposit has
+   * the same resources in each part.
+   */
+  private static int getPart(EppResource resource, int parts) {
+    return Hashing.consistentHash(resource.getRepoId().hashCode(), parts) + 1;
+  }
+
   /** Loading cache that turns a resource into XML for the various points in time and modes. */
   private class Fragmenter {
     private final Map<WatermarkModePair, Optional<DepositFragment>> cache = new HashMap<>();
@@ -189,9 +240,8 @@ public final class RdeStagingMapper extends Mapper<EppResource, PendingDeposit,
         result = Optional.of(host.isSubordinate()
             ? marshaller.marshalSubordinateHost(
                 host,
-                // Note that loadAtPointInTime() does cloneProjectedAtTime(watermark) for us.
-                loadAtPointInTime(
-                    ofy().load().key(host.getSuperordinateDomain()).now(), watermark).now())
+                // Note that the cache does cloneProjectedAtTime(watermark) for us.
+                pointInTimeCache.load(host.getSuperordinateDomain(), watermark))
             : marshaller.marshalExternalHost(host));
         cache.put(WatermarkModePair.create(watermark, RdeMode.FULL), result);
         cache.put(WatermarkModePair.create(watermark, RdeMode.THIN), result);
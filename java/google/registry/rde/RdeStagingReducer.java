@@ -19,6 +19,7 @@ import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 import static com.google.appengine.tools.cloudstorage.GcsServiceFactory.createGcsService;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Verify.verify;
+import static com.google.common.io.ByteStreams.toByteArray;
 import static google.registry.model.common.Cursor.getCursorTimeOrStartOfTime;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.xml.ValidationMode.LENIENT;
@@ -29,6 +30,7 @@ import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.RetryParams;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
+import com.google.common.base.Splitter;
 import com.google.common.flogger.FluentLogger;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.gcs.GcsUtils;
@@ -48,11 +50,13 @@ import google.registry.xjc.rdeheader.XjcRdeHeader;
 import google.registry.xjc.rdeheader.XjcRdeHeaderElement;
 import google.registry.xml.XmlException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.security.Security;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import javax.inject.Inject;
@@ -101,7 +105,10 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
           reduceWithLock(key, fragments);
           return null;
         };
-    String lockName = String.format("RdeStaging %s", key.mode());
+    String lockName =
+        (key.parts() == 1)
+            ? String.format("RdeStaging %s", key.mode())
+            : String.format("RdeStaging %s S%d", key.mode(), key.part());
     if (!lockHandler.executeWithLocks(lockRunner, key.tld(), lockTimeout, lockName)) {
       logger.atWarning().log("Lock in use: %s", lockName);
     }
@@ -127,11 +134,7 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
         Optional.ofNullable(key.revision())
             .orElse(RdeRevision.getNextRevision(tld, watermark, mode));
     String id = RdeUtil.timestampToId(watermark);
-    String prefix = RdeNamingUtils.makeRydeFilename(tld, watermark, mode, 1, revision);
-    if (key.manual()) {
-      checkState(key.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
-      prefix = "manual/" + key.directoryWithTrailingSlash() + prefix;
-    }
+    String prefix = makePrefix(key, key.part(), revision);
     GcsFilename xmlFilename = new GcsFilename(bucket, prefix + ".xml.ghostryde");
     // This file will contain the byte length (ASCII) of the raw unencrypted XML.
     //
@@ -139,7 +142,9 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
     // be outputted. We don't want to have to decrypt the entire ghostryde file to determine the
     // length, so we just save it separately.
     GcsFilename xmlLengthFilename = new GcsFilename(bucket, prefix + ".xml.length");
-    GcsFilename reportFilename = new GcsFilename(bucket, prefix + "-report.xml.ghostryde");
+    // The report covers the whole deposit, so it's named after its first part.
+    GcsFilename reportFilename =
+        new GcsFilename(bucket, makePrefix(key, 1, revision) + "-report.xml.ghostryde");
 
     // These variables will be populated as we write the deposit XML and used for other files.
     boolean failed = false;
@@ -168,9 +173,12 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
           logger.atSevere().log("Fragment error: %s", fragment.error());
         }
       }
-      for (IdnTableEnum idn : IdnTableEnum.values()) {
-        output.write(marshaller.marshalIdn(idn.getTable()));
-        counter.increment(RdeResourceType.IDN);
+      // IDN tables only go in the first part of a split deposit.
+      if (key.part() == 1) {
+        for (IdnTableEnum idn : IdnTableEnum.values()) {
+          output.write(marshaller.marshalIdn(idn.getTable()));
+          counter.increment(RdeResourceType.IDN);
+        }
       }
 
       // Output XML that says how many resources were emitted.
@@ -187,6 +195,27 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
     // If an entity was broken, abort after writing as much logs/deposit data as possible.
     verify(!failed, "RDE staging failed for TLD %s", tld);
 
+    // A split deposit is complete once all of its parts are written. Each part saves its counts,
+    // and the one that finds the counts of all the other parts of this job finishes the deposit.
+    if (key.parts() > 1) {
+      String jobId = getContext().getJobId();
+      GcsFilename countsFilename = new GcsFilename(bucket, prefix + ".counts");
+      logger.atInfo().log("Writing %s", countsFilename);
+      try {
+        cloudStorage.createFromBytes(
+            countsFilename, (jobId + "\n" + counter.serializeCounts()).getBytes(UTF_8));
+        Optional<RdeCounter> total = sumPartCounts(cloudStorage, key, revision, jobId);
+        if (!total.isPresent()) {
+          logger.atInfo().log("Waiting on the other parts of %s", key);
+          return;
+        }
+        counter = total.get();
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      header = counter.makeHeader(tld, mode);
+    }
+
     // Write a tiny XML file to GCS containing some information about the deposit.
     //
     // This will be sent to ICANN once we're done uploading the big XML to the escrow provider.
@@ -203,6 +232,7 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
     // Now that we're done, kick off RdeUploadAction and roll forward the cursor transactionally.
     if (key.manual()) {
       logger.atInfo().log("Manual operation; not advancing cursor or enqueuing upload task");
+      deletePartCounts(cloudStorage, key, revision);
       return;
     }
     ofy()
@@ -226,7 +256,7 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
               ofy().save().entity(Cursor.create(key.cursor(), newPosition, registry)).now();
               logger.atInfo().log(
                   "Rolled forward %s on %s cursor to %s", key.cursor(), tld, newPosition);
-              RdeRevision.saveRevision(tld, watermark, mode, revision);
+              RdeRevision.saveRevision(tld, watermark, mode, revision, key.parts());
               if (mode == RdeMode.FULL) {
                 taskQueueUtils.enqueue(
                     getQueue("rde-upload"),
@@ -239,5 +269,64 @@ public final class RdeStagingReducer extends Reducer<PendingDeposit, DepositFrag
                         .param(RdeModule.PARAM_WATERMARK, watermark.toString()));
               }
             });
+    deletePartCounts(cloudStorage, key, revision);
+  }
+
+  /** Returns the prefix of the filenames of the given part of a deposit. */
+  private String makePrefix(PendingDeposit key, int part, int revision) {
+    String prefix =
+        RdeNamingUtils.makeRydeFilename(key.tld(), key.watermark(), key.mode(), part, revision);
+    if (key.manual()) {
+      checkState(key.directoryWithTrailingSlash() != null, "Manual subdirectory not specified");
+      prefix = "manual/" + key.directoryWithTrailingSlash() + prefix;
+    }
+    return prefix;
+  }
+
+  /**
+   * Returns the sum of the counts of all the parts of a split deposit, or empty if some part
+   * hasn't been written by the given mapreduce job yet.
+   */
+  private Optional<RdeCounter> sumPartCounts(
+      GcsUtils cloudStorage, PendingDeposit key, int revision, String jobId) throws IOException {
+    RdeCounter total = new RdeCounter();
+    for (int part = 1; part <= key.parts(); part++) {
+      GcsFilename countsFilename =
+          new GcsFilename(bucket, makePrefix(key, part, revision) + ".counts");
+      if (!cloudStorage.existsAndNotEmpty(countsFilename)) {
+        return Optional.empty();
+      }
+      List<String> lines;
+      try (InputStream input = cloudStorage.openInputStream(countsFilename)) {
+        lines = Splitter.on('\n').limit(2).splitToList(new String(toByteArray(input), UTF_8));
+      }
+      // Counts left behind by an earlier job don't necessarily match the current parts.
+      if (lines.size() != 2 || !lines.get(0).equals(jobId)) {
+        return Optional.empty();
+      }
+      total.addSerializedCounts(lines.get(1));
+    }
+    return Optional.of(total);
+  }
+
+  /**
+   * Deletes the counts of the parts of a finished split deposit.
+   *
+   * <p>This is only done once the cursor has been rolled forward, because a retry of the finishing
+   * part needs the counts of the other parts to finish the deposit again.
+   */
+  private void deletePartCounts(GcsUtils cloudStorage, PendingDeposit key, int revision) {
+    if (key.parts() == 1) {
+      return;
+    }
+    for (int part = 1; part <= key.parts(); part++) {
+      GcsFilename countsFilename =
+          new GcsFilename(bucket, makePrefix(key, part, revision) + ".counts");
+      try {
+        cloudStorage.delete(countsFilename);
+      } catch (IOException e) {
+        logger.atWarning().withCause(e).log("Failed to delete %s", countsFilename);
+      }
+    }
   }
 }
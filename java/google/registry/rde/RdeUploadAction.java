@@ -14,6 +14,7 @@
 
 package google.registry.rde;
 
+import static com.google.appengine.api.ThreadManager.currentRequestThreadFactory;
 import static com.google.appengine.api.taskqueue.TaskOptions.Builder.withUrl;
 import static com.google.common.base.Verify.verify;
 import static com.google.common.net.MediaType.PLAIN_TEXT_UTF_8;
@@ -76,6 +77,9 @@ import org.joda.time.Duration;
  * <p>This action is invoked by {@link RdeStagingAction} once it's created the files we need. The
  * date is calculated from {@link CursorType#RDE_UPLOAD}.
  *
+ * <p>If the deposit is split into several parts, they are uploaded one after the other, each as
+ * a RyDE file and signature of its own.
+ *
  * <p>Once this action completes, it rolls the cursor forward a day and triggers
  * {@link RdeReportAction}.
  */
@@ -112,6 +116,7 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
   @Inject @Config("rdeInterval") Duration interval;
   @Inject @Config("rdeUploadLockTimeout") Duration timeout;
   @Inject @Config("rdeUploadSftpCooldown") Duration sftpCooldown;
+  @Inject @Config("rdePipelinedUpload") boolean pipelined;
   @Inject @Config("rdeUploadUrl") URI uploadUrl;
   @Inject @Key("rdeReceiverKey") PGPPublicKey receiverKey;
   @Inject @Key("rdeSigningKey") PGPKeyPair signingKey;
@@ -156,17 +161,24 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
     }
     int revision = RdeRevision.getNextRevision(tld, watermark, FULL) - 1;
     verify(revision >= 0, "RdeRevision was not set on generated deposit");
-    final String name = RdeNamingUtils.makeRydeFilename(tld, watermark, FULL, 1, revision);
-    final GcsFilename xmlFilename = new GcsFilename(bucket, name + ".xml.ghostryde");
-    final GcsFilename xmlLengthFilename = new GcsFilename(bucket, name + ".xml.length");
-    GcsFilename reportFilename = new GcsFilename(bucket, name + "-report.xml.ghostryde");
-    verifyFileExists(xmlFilename);
-    verifyFileExists(xmlLengthFilename);
-    verifyFileExists(reportFilename);
-    logger.atInfo().log("Commencing RDE upload for TLD '%s' to '%s'.", tld, uploadUrl);
-    final long xmlLength = readXmlLength(xmlLengthFilename);
-    retrier.callWithRetry(
-        () -> upload(xmlFilename, xmlLength, watermark, name), JSchException.class);
+    int parts = RdeRevision.getParts(tld, watermark, FULL);
+    // The report covers the whole deposit, so it's named after its first part.
+    String reportName = makeRydeFilename(watermark, 1, revision) + "-report.xml.ghostryde";
+    verifyFileExists(new GcsFilename(bucket, reportName));
+    for (int part = 1; part <= parts; part++) {
+      String name = makeRydeFilename(watermark, part, revision);
+      verifyFileExists(new GcsFilename(bucket, name + ".xml.ghostryde"));
+      verifyFileExists(new GcsFilename(bucket, name + ".xml.length"));
+    }
+    logger.atInfo().log(
+        "Commencing RDE upload of %d part(s) for TLD '%s' to '%s'.", parts, tld, uploadUrl);
+    for (int part = 1; part <= parts; part++) {
+      final String name = makeRydeFilename(watermark, part, revision);
+      final GcsFilename xmlFilename = new GcsFilename(bucket, name + ".xml.ghostryde");
+      final long xmlLength = readXmlLength(new GcsFilename(bucket, name + ".xml.length"));
+      retrier.callWithRetry(
+          () -> upload(xmlFilename, xmlLength, watermark, name), JSchException.class);
+    }
     logger.atInfo().log(
         "Updating RDE cursor '%s' for TLD '%s' following successful upload.", RDE_UPLOAD_SFTP, tld);
     ofy()
@@ -201,6 +213,10 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
    *    && sftp put $dstUrl/$rydeFilename.sig </tmp/sig \    # Upload detached signature.
    *    && cat /tmp/sig > gs://bucket/$rydeFilename.sig      # Save a copy of signature to GCS.
    *   }</pre>
+   *
+   * <p>If {@code rdePipelinedUpload} is configured, the compress, encrypt and sign stages (the
+   * last of which also writes to SFTP and GCS) each run in a thread of their own, concurrently
+   * with the decrypt stage in the request thread.
    */
   @VisibleForTesting
   protected void upload(GcsFilename xmlFile, long xmlLength, DateTime watermark, String name)
@@ -218,11 +234,7 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
             OutputStream gcsOutput = gcsUtils.openOutputStream(rydeGcsFilename);
             TeeOutputStream teeOutput = new TeeOutputStream(asList(ftpOutput, gcsOutput));
             RydeEncoder rydeEncoder =
-                new RydeEncoder.Builder()
-                    .setRydeOutput(teeOutput, receiverKey)
-                    .setSignatureOutput(sigOut, signingKey)
-                    .setFileMetadata(name, xmlLength, watermark)
-                    .build()) {
+                createRydeEncoder(teeOutput, sigOut, name, xmlLength, watermark)) {
             long bytesCopied = ByteStreams.copy(ghostrydeDecoder, rydeEncoder);
             logger.atInfo().log("uploaded %,d bytes: %s", bytesCopied, rydeFilename);
           }
@@ -235,6 +247,28 @@ public final class RdeUploadAction implements Runnable, EscrowTask {
     }
   }
 
+  /** Returns the extensionless filename of a part of the deposit. */
+  private String makeRydeFilename(DateTime watermark, int part, int revision) {
+    return RdeNamingUtils.makeRydeFilename(tld, watermark, FULL, part, revision);
+  }
+
+  private RydeEncoder createRydeEncoder(
+      OutputStream rydeOutput,
+      OutputStream sigOutput,
+      String name,
+      long xmlLength,
+      DateTime watermark) {
+    RydeEncoder.Builder builder =
+        new RydeEncoder.Builder()
+            .setRydeOutput(rydeOutput, receiverKey)
+            .setSignatureOutput(sigOutput, signingKey)
+            .setFileMetadata(name, xmlLength, watermark);
+    if (pipelined) {
+      builder.setPipelineThreadFactory(currentRequestThreadFactory());
+    }
+    return builder.build();
+  }
+
   /** Reads the contents of a file from Cloud Storage that contains nothing but an integer. */
   private long readXmlLength(GcsFilename xmlLengthFilename) throws IOException {
     try (InputStream input = gcsUtils.openInputStream(xmlLengthFilename)) {
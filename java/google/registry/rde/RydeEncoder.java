@@ -23,10 +23,13 @@ import static google.registry.rde.RydeTar.openTarWriter;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Closer;
+import google.registry.util.AsyncOutputStream;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.NotThreadSafe;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPKeyPair;
@@ -48,10 +51,18 @@ import org.joda.time.DateTime;
  *
  * <p>Because of the external tar file encoding - the encoder must know the total length of the data
  * from the start. This is a bit annoying, but necessary.
+ *
+ * <p>By default all the layers run in the thread that writes to the encoder. In pipelined mode, the
+ * compression, encryption and signing layers each run in a thread of their own, connected by
+ * bounded queues, so that encoding a large deposit isn't limited to a single core. Every layer
+ * still receives exactly the same sequence of writes, so the output is the same in both modes.
  */
 @NotThreadSafe
 public final class RydeEncoder extends FilterOutputStream {
 
+  /** Maximum number of writes queued between two pipelined layers. */
+  private static final int MAX_QUEUED_WRITES = 16;
+
   private final OutputStream sigOutput;
   private final RydePgpSigningOutputStream signer;
   private final OutputStream encryptLayer;
@@ -69,18 +80,54 @@ public final class RydeEncoder extends FilterOutputStream {
       String filenamePrefix,
       DateTime modified,
       PGPKeyPair signingKey,
-      Collection<PGPPublicKey> receiverKeys) {
+      Collection<PGPPublicKey> receiverKeys,
+      @Nullable ThreadFactory pipelineThreadFactory) {
     super(null);
     this.sigOutput = sigOutput;
-    signer = closer.register(new RydePgpSigningOutputStream(checkNotNull(rydeOutput), signingKey));
-    encryptLayer = closer.register(openEncryptor(signer, RYDE_USE_INTEGRITY_PACKET, receiverKeys));
-    kompressor = closer.register(openCompressor(encryptLayer));
-    fileLayer = closer.register(openPgpFileWriter(kompressor, filenamePrefix + ".tar", modified));
-    tarLayer =
-        closer.register(openTarWriter(fileLayer, dataLength, filenamePrefix + ".xml", modified));
+    try {
+      // The Closer closes the streams in the reverse order of their registration, so each pipeline
+      // stage is drained before the layer it feeds is closed.
+      signer =
+          closer.register(new RydePgpSigningOutputStream(checkNotNull(rydeOutput), signingKey));
+      encryptLayer =
+          closer.register(
+              openEncryptor(
+                  pipelineStage(signer, pipelineThreadFactory),
+                  RYDE_USE_INTEGRITY_PACKET,
+                  receiverKeys));
+      kompressor =
+          closer.register(openCompressor(pipelineStage(encryptLayer, pipelineThreadFactory)));
+      fileLayer =
+          closer.register(
+              openPgpFileWriter(
+                  pipelineStage(kompressor, pipelineThreadFactory),
+                  filenamePrefix + ".tar",
+                  modified));
+      tarLayer =
+          closer.register(openTarWriter(fileLayer, dataLength, filenamePrefix + ".xml", modified));
+    } catch (RuntimeException e) {
+      // Don't leave any pipeline threads behind.
+      try {
+        closer.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
     this.out = tarLayer;
   }
 
+  /**
+   * Returns a stream that performs its writes to {@code os} in a new thread, or {@code os} itself
+   * if not pipelining.
+   */
+  private OutputStream pipelineStage(
+      OutputStream os, @Nullable ThreadFactory pipelineThreadFactory) {
+    return (pipelineThreadFactory == null)
+        ? os
+        : closer.register(new AsyncOutputStream(os, MAX_QUEUED_WRITES, pipelineThreadFactory));
+  }
+
   /**
    * Call the underlying 3 input write.
    *
@@ -116,6 +163,7 @@ public final class RydeEncoder extends FilterOutputStream {
     DateTime modified;
     PGPKeyPair signingKey;
     ImmutableList<PGPPublicKey> receiverKeys;
+    ThreadFactory pipelineThreadFactory;
 
     /** Sets the OutputStream for the Ryde-encoded data, and the keys used for the encryption. */
     public Builder setRydeOutput(
@@ -141,6 +189,15 @@ public final class RydeEncoder extends FilterOutputStream {
       return this;
     }
 
+    /**
+     * Runs the compression, encryption and signing layers in separate threads created by the
+     * given factory.
+     */
+    public Builder setPipelineThreadFactory(ThreadFactory pipelineThreadFactory) {
+      this.pipelineThreadFactory = checkNotNull(pipelineThreadFactory);
+      return this;
+    }
+
     /** Returns the built {@link RydeEncoder}. */
     public RydeEncoder build() {
       return new RydeEncoder(
@@ -150,7 +207,8 @@ public final class RydeEncoder extends FilterOutputStream {
           checkNotNull(filenamePrefix, "Must call 'setFileMetadata'"),
           checkNotNull(modified, "Must call 'setFileMetadata'"),
           checkNotNull(signingKey, "Must call 'setSignatureOutput'"),
-          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"));
+          checkNotNull(receiverKeys, "Must call 'setRydeOutput'"),
+          pipelineThreadFactory);
     }
   }
 }
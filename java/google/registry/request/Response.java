@@ -15,6 +15,7 @@
 package google.registry.request;
 
 import com.google.common.net.MediaType;
+import java.io.Writer;
 import javax.servlet.http.HttpServletResponse;
 import org.joda.time.DateTime;
 
@@ -38,6 +39,15 @@ public interface Response {
    */
   void setPayload(String payload);
 
+  /**
+   * Returns a writer for the HTTP payload, for payloads that are serialized directly to the
+   * response rather than built up as a string first.
+   *
+   * <p>This is an alternative to {@link #setPayload}, and the two must not be mixed. The writer is
+   * not closed by the caller.
+   */
+  Writer getPayloadWriter();
+
   /**
    * Writes an HTTP header to the response.
    *
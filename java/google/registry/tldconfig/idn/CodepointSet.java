@@ -0,0 +1,68 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable set of Unicode codepoints, stored as a two-level bitmap for fast lookups.
+ *
+ * <p>The codepoint space is split into pages of 256 codepoints, each of which is a bitmap of four
+ * longs. Pages without any codepoints in the set all share a single empty bitmap, so a lookup is
+ * two array reads and a mask, without boxing, branching on ranges or null checks.
+ */
+final class CodepointSet {
+
+  private static final int PAGE_SHIFT = 8;
+  private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+  private static final long[] EMPTY_PAGE = new long[(1 << PAGE_SHIFT) / Long.SIZE];
+
+  private final long[][] pages;
+
+  private CodepointSet(long[][] pages) {
+    this.pages = pages;
+  }
+
+  /** Returns whether the given codepoint is in the set. */
+  boolean contains(int codepoint) {
+    int page = codepoint >>> PAGE_SHIFT;
+    // Shifting a long by an int only uses the low six bits of the shift distance.
+    return page < pages.length
+        && (pages[page][(codepoint & PAGE_MASK) >>> 6] & (1L << codepoint)) != 0;
+  }
+
+  /** Returns a set of the codepoints whose bits are set in the given {@link BitSet}. */
+  static CodepointSet copyOf(BitSet codepoints) {
+    checkArgument(
+        codepoints.length() <= Character.MAX_CODE_POINT + 1,
+        "Not a codepoint: %s",
+        codepoints.length() - 1);
+    long[][] pages = new long[(codepoints.length() + PAGE_MASK) >>> PAGE_SHIFT][];
+    Arrays.fill(pages, EMPTY_PAGE);
+    for (int codepoint = codepoints.nextSetBit(0);
+        codepoint >= 0;
+        codepoint = codepoints.nextSetBit(codepoint + 1)) {
+      int page = codepoint >>> PAGE_SHIFT;
+      if (pages[page] == EMPTY_PAGE) {
+        pages[page] = new long[EMPTY_PAGE.length];
+      }
+      pages[page][(codepoint & PAGE_MASK) >>> 6] |= 1L << codepoint;
+    }
+    return new CodepointSet(pages);
+  }
+}
@@ -14,6 +14,7 @@
 
 package google.registry.tldconfig.idn;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static google.registry.tldconfig.idn.IdnTableEnum.EXTENDED_LATIN;
 import static google.registry.tldconfig.idn.IdnTableEnum.JA;
 
@@ -37,6 +38,10 @@ public final class IdnLabelValidator {
   private ImmutableMap<String, ImmutableList<IdnTableEnum>> idnTableListsPerTld;
 
   IdnLabelValidator(ImmutableMap<String, ImmutableList<IdnTableEnum>> indTableListsPerTld) {
+    checkArgument(
+        indTableListsPerTld.values().stream().allMatch(tables -> tables.size() < Long.SIZE),
+        "At most %s IDN tables can be configured per TLD",
+        Long.SIZE - 1);
     this.idnTableListsPerTld = indTableListsPerTld;
   }
 
@@ -49,13 +54,32 @@ public final class IdnLabelValidator {
    *
    * <p>A label is valid if it is considered valid by at least one configured IDN table for that
    * TLD. If no match is found, an absent value is returned.
+   *
+   * <p>All of the TLD's tables are checked in a single pass over the codepoints of the label, which
+   * stops as soon as none of them contains the codepoint at hand. The language rules of the tables
+   * that contain all the codepoints are then checked in order.
    */
   public Optional<String> findValidIdnTableForTld(String label, String tld) {
     String unicodeString = Idn.toUnicode(label);
-    for (IdnTableEnum idnTable :
-        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES)) {
-      if (idnTable.getTable().isValidLabel(unicodeString)) {
-        return Optional.of(idnTable.getTable().getName());
+    ImmutableList<IdnTableEnum> idnTables =
+        Optional.ofNullable(idnTableListsPerTld.get(tld)).orElse(DEFAULT_IDN_TABLES);
+    // Bit i is set while the i-th table contains all of the codepoints seen so far.
+    long candidates = (1L << idnTables.size()) - 1;
+    final int length = unicodeString.length();
+    for (int i = 0; i < length && candidates != 0; ) {
+      int codepoint = unicodeString.codePointAt(i);
+      for (int t = 0; t < idnTables.size(); t++) {
+        if ((candidates & (1L << t)) != 0
+            && !idnTables.get(t).getTable().isValidCodepoint(codepoint)) {
+          candidates &= ~(1L << t);
+        }
+      }
+      i += Character.charCount(codepoint);
+    }
+    for (int t = 0; t < idnTables.size(); t++) {
+      IdnTable idnTable = idnTables.get(t).getTable();
+      if ((candidates & (1L << t)) != 0 && idnTable.isValidLabelForLanguage(unicodeString)) {
+        return Optional.of(idnTable.getName());
       }
     }
     return Optional.empty();
@@ -17,12 +17,10 @@ package google.registry.tldconfig.idn;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.ImmutableRangeSet;
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeSet;
 import com.google.re2j.Matcher;
 import com.google.re2j.Pattern;
 import java.net.URI;
+import java.util.BitSet;
 import java.util.Optional;
 
 /** An IDN table for a particular TLD. */
@@ -48,8 +46,8 @@ public final class IdnTable {
   /** Public URL of policy for this IDN table, which is needed by RDE. */
   private final URI policy;
 
-  /** {@link RangeSet} containing the valid codepoints in this table. */
-  private final RangeSet<Integer> validCodepoints;
+  /** {@link CodepointSet} containing the valid codepoints in this table. */
+  private final CodepointSet validCodepoints;
 
   /** Validates the language rules associated with this IDN table. */
   private final Optional<LanguageValidator> languageValidator;
@@ -58,7 +56,7 @@ public final class IdnTable {
       String name,
       URI url,
       URI policy,
-      RangeSet<Integer> validCodepoints,
+      CodepointSet validCodepoints,
       Optional<LanguageValidator> languageValidator) {
     this.name = name;
     this.url = checkNotNull(url, "%s missing '# URL: http://foo.example/page' line", name);
@@ -87,7 +85,7 @@ public final class IdnTable {
     final int length = label.length();
     for (int i = 0; i < length; ) {
       int codepoint = label.codePointAt(i);
-      if (!validCodepoints.contains(codepoint)) {
+      if (!isValidCodepoint(codepoint)) {
         return false;
       }
 
@@ -95,6 +93,19 @@ public final class IdnTable {
       // surrogates).
       i += Character.charCount(codepoint);
     }
+    return isValidLabelForLanguage(label);
+  }
+
+  /** Returns true if the given codepoint is in the IDN table. */
+  boolean isValidCodepoint(int codepoint) {
+    return validCodepoints.contains(codepoint);
+  }
+
+  /**
+   * Returns true if the given label, all of whose codepoints are in the IDN table, satisfies the
+   * language rules associated with the table, if any.
+   */
+  boolean isValidLabelForLanguage(String label) {
     return !(languageValidator.isPresent()
         && !languageValidator.get().isValidLabelForLanguage(label));
   }
@@ -102,7 +113,7 @@ public final class IdnTable {
   /** Creates an IDN table given the lines from text file. */
   static IdnTable createFrom(
       String language, Iterable<String> data, Optional<LanguageValidator> languageValidator) {
-    ImmutableRangeSet.Builder<Integer> rangeSet = new ImmutableRangeSet.Builder<>();
+    BitSet codepoints = new BitSet();
     URI url = null;
     URI policy = null;
     for (String line : data) {
@@ -122,9 +133,10 @@ public final class IdnTable {
       }
 
       int codepoint = readCodepoint(line);
-      rangeSet.add(Range.singleton(codepoint));
+      codepoints.set(codepoint);
     }
-    return new IdnTable(language, url, policy, rangeSet.build(), languageValidator);
+    return new IdnTable(
+        language, url, policy, CodepointSet.copyOf(codepoints), languageValidator);
   }
 
   /**
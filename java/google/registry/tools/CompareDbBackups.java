@@ -14,33 +14,85 @@
 
 package google.registry.tools;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
-import com.google.common.collect.Sets.SetView;
-import java.io.File;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-/** Compare two database backups. */
+/**
+ * Compare two database backups.
+ *
+ * <p>Backups are usually too big to be held in memory, so the records of each backup are first
+ * partitioned to temporary files by a hash of their entity key. Since an entity always lands in
+ * the same partition of both backups, the partitions can then be compared independently, and in
+ * parallel, holding only one pair of partitions per thread in memory.
+ */
 class CompareDbBackups {
 
-  public static void main(String[] args) {
+  /** Approximate size of the records of each partition, which bounds the memory of the diff. */
+  private static final long TARGET_PARTITION_BYTES = 64L * 1024 * 1024;
+
+  /** Maximum number of partitions, which are all open for writing at once. */
+  private static final int MAX_PARTITIONS = 1024;
+
+  public static void main(String[] args) throws IOException {
     if (args.length != 2) {
       System.err.println("Usage: compare_db_backups <directory1> <directory2>");
       return;
     }
 
-    ImmutableSet<ComparableEntity> entities1 =
-        new RecordAccumulator().readDirectory(new File(args[0])).getComparableEntitySet();
-    ImmutableSet<ComparableEntity> entities2 =
-        new RecordAccumulator().readDirectory(new File(args[1])).getComparableEntitySet();
-
-    // Calculate the entities added and removed.
-    SetView<ComparableEntity> added = Sets.difference(entities2, entities1);
-    SetView<ComparableEntity> removed = Sets.difference(entities1, entities2);
+    ImmutableList<Path> files1 = listFiles(Paths.get(args[0]));
+    ImmutableList<Path> files2 = listFiles(Paths.get(args[1]));
+    int numPartitions =
+        (int)
+            Math.min(
+                MAX_PARTITIONS,
+                Math.max(
+                    Runtime.getRuntime().availableProcessors(),
+                    Math.max(totalSize(files1), totalSize(files2)) / TARGET_PARTITION_BYTES + 1));
+    Path tempDir = Files.createTempDirectory("compare_db_backups");
+    ImmutableList<PartitionDiff> diffs;
+    try {
+      Path partitions1 = partition(files1, tempDir.resolve("1"), numPartitions);
+      Path partitions2 = partition(files2, tempDir.resolve("2"), numPartitions);
+      // Parallel streams run on the common fork/join pool, which has a thread per core.
+      diffs =
+          IntStream.range(0, numPartitions)
+              .parallel()
+              .mapToObj(
+                  i ->
+                      PartitionDiff.compare(
+                          partitions1.resolve(Integer.toString(i)),
+                          partitions2.resolve(Integer.toString(i))))
+              .collect(toImmutableList());
+    } finally {
+      MoreFiles.deleteRecursively(tempDir, RecursiveDeleteOption.ALLOW_INSECURE);
+    }
 
     printHeader(
-        String.format("First backup: %d records", entities1.size()),
-        String.format("Second backup: %d records", entities2.size()));
+        String.format("First backup: %d records", diffs.stream().mapToInt(d -> d.size1).sum()),
+        String.format("Second backup: %d records", diffs.stream().mapToInt(d -> d.size2).sum()));
 
+    ImmutableList<ComparableEntity> removed =
+        diffs.stream().flatMap(d -> d.removed.stream()).collect(toImmutableList());
     if (!removed.isEmpty()) {
       printHeader(removed.size() + " records were removed:");
       for (ComparableEntity entity : removed) {
@@ -48,6 +100,8 @@ class CompareDbBackups {
       }
     }
 
+    ImmutableList<ComparableEntity> added =
+        diffs.stream().flatMap(d -> d.added.stream()).collect(toImmutableList());
     if (!added.isEmpty()) {
       printHeader(added.size() + " records were added:");
       for (ComparableEntity entity : added) {
@@ -56,6 +110,45 @@ class CompareDbBackups {
     }
   }
 
+  /** Recursively lists all the files in a directory. */
+  private static ImmutableList<Path> listFiles(Path dir) throws IOException {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      return paths.filter(Files::isRegularFile).collect(toImmutableList());
+    }
+  }
+
+  private static long totalSize(ImmutableList<Path> files) throws IOException {
+    long size = 0;
+    for (Path file : files) {
+      size += Files.size(file);
+    }
+    return size;
+  }
+
+  /**
+   * Partitions the records of the given files into files in a directory, named after the index
+   * of the partition.
+   *
+   * <p>The files are read in parallel.
+   */
+  private static Path partition(ImmutableList<Path> files, Path dir, int numPartitions)
+      throws IOException {
+    Files.createDirectory(dir);
+    try (PartitionWriter writer = new PartitionWriter(dir, numPartitions)) {
+      files
+          .parallelStream()
+          .forEach(
+              file -> {
+                try {
+                  LevelDbLogReader.readRecords(file).forEachRemaining(writer::write);
+                } catch (IOException e) {
+                  throw new UncheckedIOException("IOException reading from file: " + file, e);
+                }
+              });
+    }
+    return dir;
+  }
+
   /** Print out multi-line text in a pretty ASCII header frame. */
   private static void printHeader(String... headerLines) {
     System.out.println("========================================================================");
@@ -64,4 +157,98 @@ class CompareDbBackups {
     }
     System.out.println("========================================================================");
   }
+
+  /**
+   * Writes raw records to partition files, chosen by a hash of the record's entity key.
+   *
+   * <p>Each record is written as its length followed by its bytes. Records may be written from
+   * several threads at once.
+   */
+  private static class PartitionWriter implements Closeable {
+
+    private final ImmutableList<DataOutputStream> partitions;
+
+    PartitionWriter(Path dir, int numPartitions) throws IOException {
+      ImmutableList.Builder<DataOutputStream> partitions = new ImmutableList.Builder<>();
+      for (int i = 0; i < numPartitions; i++) {
+        partitions.add(
+            new DataOutputStream(
+                new BufferedOutputStream(
+                    Files.newOutputStream(dir.resolve(Integer.toString(i))))));
+      }
+      this.partitions = partitions.build();
+    }
+
+    void write(byte[] rawRecord) {
+      EntityProto proto = new EntityProto();
+      proto.parseFrom(rawRecord);
+      int hash = Hashing.murmur3_32().hashBytes(proto.getKey().toByteArray()).asInt();
+      DataOutputStream partition = partitions.get(Math.floorMod(hash, partitions.size()));
+      synchronized (partition) {
+        try {
+          partition.writeInt(rawRecord.length);
+          partition.write(rawRecord);
+        } catch (IOException e) {
+          throw new UncheckedIOException("IOException writing partition", e);
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (DataOutputStream partition : partitions) {
+        partition.close();
+      }
+    }
+  }
+
+  /** The differences between the same partition of the two backups. */
+  private static class PartitionDiff {
+    final int size1;
+    final int size2;
+    final ImmutableList<ComparableEntity> removed;
+    final ImmutableList<ComparableEntity> added;
+
+    private PartitionDiff(
+        int size1,
+        int size2,
+        ImmutableList<ComparableEntity> removed,
+        ImmutableList<ComparableEntity> added) {
+      this.size1 = size1;
+      this.size2 = size2;
+      this.removed = removed;
+      this.added = added;
+    }
+
+    static PartitionDiff compare(Path partition1, Path partition2) {
+      ImmutableSet<ComparableEntity> entities1 = readPartition(partition1);
+      ImmutableSet<ComparableEntity> entities2 = readPartition(partition2);
+      return new PartitionDiff(
+          entities1.size(),
+          entities2.size(),
+          ImmutableList.copyOf(Sets.difference(entities1, entities2)),
+          ImmutableList.copyOf(Sets.difference(entities2, entities1)));
+    }
+
+    private static ImmutableSet<ComparableEntity> readPartition(Path partition) {
+      ImmutableSet.Builder<ComparableEntity> entities = new ImmutableSet.Builder<>();
+      try (DataInputStream in =
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(partition)))) {
+        while (true) {
+          int length;
+          try {
+            length = in.readInt();
+          } catch (EOFException e) {
+            break;
+          }
+          byte[] rawRecord = new byte[length];
+          in.readFully(rawRecord);
+          entities.add(RecordAccumulator.parseEntity(rawRecord));
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException("IOException reading partition: " + partition, e);
+      }
+      return entities.build();
+    }
+  }
 }
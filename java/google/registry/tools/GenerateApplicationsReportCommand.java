@@ -155,7 +155,7 @@ final class GenerateApplicationsReportCommand implements CommandWithRemoteApi {
         && (domainApplication.getLaunchNotice() == null
             || domainApplication.getLaunchNotice().getNoticeId() == null
             || isNullOrEmpty(domainApplication.getLaunchNotice().getNoticeId().getTcnId()))
-        && ClaimsListShard.get().getClaimKey(label).isPresent()) {
+        && ClaimsListShard.get().isClaimed(label)) {
       return Optional.of(makeLine(domainApplication, "Missing claims notice"));
     }
 
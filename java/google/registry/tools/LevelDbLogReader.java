@@ -14,21 +14,37 @@
 
 package google.registry.tools;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hashing;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.function.Consumer;
 
 /**
- * Reads records from a set of LevelDB files and builds a gigantic ImmutableList from them.
+ * Reads records from a set of LevelDB files, either into a gigantic ImmutableList or one at a time
+ * from a memory-mapped file.
  *
  * <p>See <a
  * href="https://github.com/google/leveldb/blob/master/doc/log_format.md">log_format.md</a> for the
- * leveldb log format specification.</a>
+ * leveldb log format specification.</a> The checksum of every chunk is verified.
  *
  * <p>There are several other implementations of this, none of which appeared suitable for our use
  * case: <a href="https://github.com/google/leveldb">The original C++ implementation</a>. <a
@@ -43,27 +59,57 @@ public final class LevelDbLogReader {
   @VisibleForTesting static final int BLOCK_SIZE = 32 * 1024;
   @VisibleForTesting static final int HEADER_SIZE = 7;
 
+  /**
+   * Number of bytes of a file that are mapped into memory at once.
+   *
+   * <p>This is a multiple of {@link #BLOCK_SIZE}, and is well below the 2GB limit of a single
+   * mapping.
+   */
+  private static final int MAPPED_REGION_SIZE = 2048 * BLOCK_SIZE;
+
   private final ByteArrayOutputStream recordContents = new ByteArrayOutputStream();
   private final ImmutableList.Builder<byte[]> recordListBuilder = new ImmutableList.Builder<>();
 
-  /** Read a complete block, which must be exactly 32 KB. */
-  private void processBlock(byte[] block) {
+  /**
+   * Reads a complete block, which must be exactly 32 KB unless it's the last one of the file.
+   *
+   * <p>Each record completed in the block is passed to the consumer.
+   */
+  private void processBlock(ByteBuffer block, Consumer<byte[]> recordConsumer) {
     // Read records from the block until there is no longer enough space for a record (i.e. until
     // we're at HEADER_SIZE - 1 bytes from the end of the block).
     int i = 0;
-    while (i < BLOCK_SIZE - (HEADER_SIZE - 1)) {
+    while (i < block.limit() - (HEADER_SIZE - 1)) {
       RecordHeader recordHeader = readRecordHeader(block, i);
       if (recordHeader.type == ChunkType.END) {
         // A type of zero indicates that we've reached the padding zeroes at the end of the block.
         break;
       }
+      checkState(
+          i + HEADER_SIZE + recordHeader.size <= block.limit(),
+          "Corrupt LevelDB chunk: size %s overflows the block",
+          recordHeader.size);
+      // The checksum covers the type byte at the end of the header as well as the data.
+      checkState(
+          recordHeader.checksum
+              == maskedChecksum(block, i + HEADER_SIZE - 1, recordHeader.size + 1),
+          "Corrupt LevelDB chunk: checksum mismatch");
 
       // Copy the contents of the record into recordContents.
-      recordContents.write(block, i + HEADER_SIZE, recordHeader.size);
+      if (block.hasArray()) {
+        recordContents.write(
+            block.array(), block.arrayOffset() + i + HEADER_SIZE, recordHeader.size);
+      } else {
+        byte[] chunk = new byte[recordHeader.size];
+        ByteBuffer chunkBuffer = block.duplicate();
+        chunkBuffer.position(i + HEADER_SIZE);
+        chunkBuffer.get(chunk);
+        recordContents.write(chunk, 0, chunk.length);
+      }
 
-      // If this is the last (or only) chunk in the record, store the full contents into the List.
+      // If this is the last (or only) chunk in the record, pass the full contents on.
       if (recordHeader.type == ChunkType.FULL || recordHeader.type == ChunkType.LAST) {
-        recordListBuilder.add(recordContents.toByteArray());
+        recordConsumer.accept(recordContents.toByteArray());
         recordContents.reset();
       }
 
@@ -71,27 +117,25 @@ public final class LevelDbLogReader {
     }
   }
 
-  /**
-   * Gets a byte from "block" as an unsigned value.
-   *
-   * <p>Java bytes are signed, which doesn't work very well for our bit-shifting operations.
-   */
-  private int getUnsignedByte(byte[] block, int pos) {
-    return block[pos] & 0xFF;
+  /** Computes the masked CRC-32C checksum of a range of bytes, as stored in chunk headers. */
+  @VisibleForTesting
+  static int maskedChecksum(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer covered = buffer.duplicate();
+    covered.position(offset);
+    covered.limit(offset + length);
+    int crc = Hashing.crc32c().hashBytes(covered).asInt();
+    return ((crc >>> 15) | (crc << 17)) + 0xa282ead8;
   }
 
   /** Reads the 7 byte record header. */
-  private RecordHeader readRecordHeader(byte[] block, int pos) {
+  private RecordHeader readRecordHeader(ByteBuffer block, int pos) {
+    ByteBuffer header = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
     // Read checksum (4 bytes, LE).
-    int checksum =
-        getUnsignedByte(block, pos)
-            | (getUnsignedByte(block, pos + 1) << 8)
-            | (getUnsignedByte(block, pos + 2) << 16)
-            | (getUnsignedByte(block, pos + 3) << 24);
+    int checksum = header.getInt(pos);
     // Read size (2 bytes, LE).
-    int size = getUnsignedByte(block, pos + 4) | (getUnsignedByte(block, pos + 5) << 8);
+    int size = header.getShort(pos + 4) & 0xFFFF;
     // Read type (1 byte).
-    int type = getUnsignedByte(block, pos + 6);
+    int type = header.get(pos + 6) & 0xFF;
 
     return new RecordHeader(checksum, size, ChunkType.fromCode(type));
   }
@@ -108,13 +152,15 @@ public final class LevelDbLogReader {
       }
       assert amountRead == BLOCK_SIZE;
 
-      processBlock(block);
+      processBlock(ByteBuffer.wrap(block), recordListBuilder::add);
     }
   }
 
   /** Reads all records from the file specified by "path" into the record set. */
   public void readFrom(Path path) throws IOException {
-    readFrom(Files.newInputStream(path));
+    try (InputStream source = Files.newInputStream(path)) {
+      readFrom(source);
+    }
   }
 
   /** Reads all records from the specified file into the record set. */
@@ -132,6 +178,78 @@ public final class LevelDbLogReader {
     return recordListBuilder.build();
   }
 
+  /**
+   * Returns an iterator over the records of a file, which reads the file as it goes rather than
+   * holding all its records in memory.
+   *
+   * <p>The file is memory-mapped a region at a time, so only the records of the current block (and
+   * the record being assembled from several blocks) are copied to the heap.
+   */
+  public static Iterator<byte[]> readRecords(Path path) throws IOException {
+    return readRecords(path, MAPPED_REGION_SIZE);
+  }
+
+  @VisibleForTesting
+  static Iterator<byte[]> readRecords(Path path, int regionSize) throws IOException {
+    checkArgument(regionSize % BLOCK_SIZE == 0, "Region size must be a multiple of the block size");
+    return new LevelDbLogReader().new RecordIterator(path, Files.size(path), regionSize);
+  }
+
+  /** Iterator over the records of a memory-mapped file. */
+  private class RecordIterator extends AbstractIterator<byte[]> {
+
+    private final Path path;
+    private final long fileSize;
+    private final int regionSize;
+    private final Deque<byte[]> blockRecords = new ArrayDeque<>();
+    private long regionStart = 0;
+    private MappedByteBuffer region;
+
+    RecordIterator(Path path, long fileSize, int regionSize) {
+      this.path = path;
+      this.fileSize = fileSize;
+      this.regionSize = regionSize;
+    }
+
+    @Override
+    protected byte[] computeNext() {
+      while (blockRecords.isEmpty()) {
+        ByteBuffer block = nextBlock();
+        if (block == null) {
+          return endOfData();
+        }
+        processBlock(block, blockRecords::add);
+      }
+      return blockRecords.poll();
+    }
+
+    /** Returns the next block of the file, or null at the end of the file. */
+    private ByteBuffer nextBlock() {
+      if (region == null || !region.hasRemaining()) {
+        if (region != null) {
+          regionStart += region.capacity();
+        }
+        if (regionStart >= fileSize) {
+          return null;
+        }
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          region =
+              channel.map(
+                  MapMode.READ_ONLY,
+                  regionStart,
+                  Math.min(regionSize, fileSize - regionStart));
+        } catch (IOException e) {
+          throw new RuntimeException("IOException mapping file: " + path, e);
+        }
+      }
+      ByteBuffer block = region.slice();
+      block.limit(Math.min(BLOCK_SIZE, block.remaining()));
+      region.position(region.position() + block.limit());
+      return block;
+    }
+  }
+
   /** Aggregates the fields in a record header. */
   private static final class RecordHeader {
     final int checksum;
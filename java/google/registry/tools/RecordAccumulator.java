@@ -18,12 +18,11 @@ import com.google.appengine.api.datastore.EntityTranslator;
 import com.google.common.collect.ImmutableSet;
 import com.google.storage.onestore.v3.OnestoreEntity.EntityProto;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 
 /** Utility class that accumulates Entity records from level db files. */
 class RecordAccumulator {
-  private final LevelDbLogReader reader = new LevelDbLogReader();
+  private final ImmutableSet.Builder<ComparableEntity> entities = new ImmutableSet.Builder<>();
 
   /** Recursively reads all records in the directory. */
   public final RecordAccumulator readDirectory(File dir) {
@@ -32,7 +31,9 @@ class RecordAccumulator {
         readDirectory(child);
       } else if (child.isFile()) {
         try {
-          reader.readFrom(new FileInputStream(child));
+          // Parse each record as it is read, so that only the entities are held in memory.
+          LevelDbLogReader.readRecords(child.toPath())
+              .forEachRemaining(rawRecord -> entities.add(parseEntity(rawRecord)));
         } catch (IOException e) {
           throw new RuntimeException("IOException reading from file: " + child, e);
         }
@@ -42,18 +43,15 @@ class RecordAccumulator {
     return this;
   }
 
-  /** Creates an entity set from the current set of raw records. */
+  /** Creates an entity set from the records read so far. */
   ImmutableSet<ComparableEntity> getComparableEntitySet() {
-    ImmutableSet.Builder<ComparableEntity> builder = new ImmutableSet.Builder<>();
-    for (byte[] rawRecord : reader.getRecords()) {
-      // Parse the entity proto and create an Entity object from it.
-      EntityProto proto = new EntityProto();
-      proto.parseFrom(rawRecord);
-      ComparableEntity entity = new ComparableEntity(EntityTranslator.createFromPb(proto));
-
-      builder.add(entity);
-    }
+    return entities.build();
+  }
 
-    return builder.build();
+  /** Parses the entity proto in a raw record and creates a comparable Entity object from it. */
+  static ComparableEntity parseEntity(byte[] rawRecord) {
+    EntityProto proto = new EntityProto();
+    proto.parseFrom(rawRecord);
+    return new ComparableEntity(EntityTranslator.createFromPb(proto));
   }
 }
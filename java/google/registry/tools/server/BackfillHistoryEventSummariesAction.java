@@ -0,0 +1,89 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tools.server;
+
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.util.PipelineUtils.createJobPath;
+
+import com.google.appengine.tools.mapreduce.Mapper;
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import google.registry.mapreduce.MapreduceRunner;
+import google.registry.mapreduce.inputs.EppResourceInputs;
+import google.registry.model.EppResource;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
+import google.registry.request.Action;
+import google.registry.request.Response;
+import google.registry.request.auth.Auth;
+import javax.inject.Inject;
+
+/**
+ * A mapreduce that (re)builds the {@link HistoryEventSummary} of every {@link EppResource} from its
+ * {@link HistoryEntry} records.
+ *
+ * <p>This needs to be run once after summaries are introduced, so that resources that haven't had
+ * a summarized event since don't fall back to querying their history entries. It is idempotent,
+ * and safe to run while flows are updating summaries.
+ *
+ * <p>The action uses {@link Auth#AUTH_INTERNAL_OR_ADMIN}, so it can only be started from a task
+ * queue or by an admin user.
+ */
+@Action(
+  path = "/_dr/task/backfillHistoryEventSummaries",
+  auth = Auth.AUTH_INTERNAL_OR_ADMIN
+)
+public class BackfillHistoryEventSummariesAction implements Runnable {
+
+  @Inject MapreduceRunner mrRunner;
+  @Inject Response response;
+  @Inject BackfillHistoryEventSummariesAction() {}
+
+  @Override
+  public void run() {
+    response.sendJavaScriptRedirect(createJobPath(mrRunner
+        .setJobName("Backfill HistoryEventSummary entities")
+        .setModuleName("tools")
+        .runMapOnly(
+            new BackfillHistoryEventSummariesMapper(),
+            ImmutableList.of(EppResourceInputs.createKeyInput(EppResource.class)))));
+  }
+
+  /** Mapper to rebuild the summary of each resource. */
+  public static class BackfillHistoryEventSummariesMapper
+      extends Mapper<Key<EppResource>, Void, Void> {
+
+    private static final long serialVersionUID = -3218713860231754286L;
+
+    @Override
+    public final void map(final Key<EppResource> resourceKey) {
+      HistoryEventSummary summary =
+          ofy()
+              .transact(
+                  () -> {
+                    HistoryEventSummary newSummary =
+                        HistoryEventSummary.create(
+                            resourceKey,
+                            ofy().load().type(HistoryEntry.class).ancestor(resourceKey));
+                    ofy().save().entity(newSummary);
+                    return newSummary;
+                  });
+      getContext()
+          .incrementCounter(
+              String.format("%s summaries backfilled", resourceKey.getKind()));
+      getContext().incrementCounter("events summarized", summary.getEvents().size());
+    }
+  }
+}
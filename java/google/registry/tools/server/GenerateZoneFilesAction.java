@@ -15,11 +15,15 @@
 package google.registry.tools.server;
 
 import static com.google.appengine.tools.cloudstorage.GcsServiceFactory.createGcsService;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Iterators.filter;
+import static com.google.common.collect.Iterators.mergeSorted;
+import static com.google.common.collect.Iterators.peekingIterator;
 import static com.google.common.io.BaseEncoding.base16;
 import static google.registry.mapreduce.inputs.EppResourceInputs.createEntityInput;
 import static google.registry.model.EppResourceUtils.loadAtPointInTime;
+import static google.registry.model.EppResourceUtils.queryForLinkedDomains;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.request.Action.Method.POST;
 import static google.registry.util.PipelineUtils.createJobPath;
@@ -31,33 +35,55 @@ import com.google.appengine.tools.cloudstorage.RetryParams;
 import com.google.appengine.tools.mapreduce.Mapper;
 import com.google.appengine.tools.mapreduce.Reducer;
 import com.google.appengine.tools.mapreduce.ReducerInput;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableCollection;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.flogger.FluentLogger;
+import com.googlecode.objectify.Key;
 import google.registry.config.RegistryConfig.Config;
 import google.registry.gcs.GcsUtils;
 import google.registry.mapreduce.MapreduceRunner;
+import google.registry.mapreduce.inputs.CommitLogManifestInput;
 import google.registry.mapreduce.inputs.NullInput;
 import google.registry.model.EppResource;
+import google.registry.model.PointInTimeCache;
+import google.registry.model.domain.DomainBase;
 import google.registry.model.domain.DomainResource;
 import google.registry.model.domain.secdns.DelegationSignerData;
 import google.registry.model.host.HostResource;
+import google.registry.model.ofy.CommitLogManifest;
+import google.registry.model.ofy.CommitLogMutation;
 import google.registry.request.Action;
 import google.registry.request.HttpException.BadRequestException;
 import google.registry.request.JsonActionRunner;
 import google.registry.request.auth.Auth;
 import google.registry.util.Clock;
+import google.registry.util.NonFinalForTesting;
+import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Serializable;
 import java.io.Writer;
 import java.net.Inet4Address;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
@@ -68,6 +94,21 @@ import org.joda.time.Duration;
  * <p>Zone files for each requested TLD are written to GCS. TLDs without entries produce zone files
  * with only a header. The export time must be at least two minutes in the past and no more than
  * 29 days in the past, and must be at midnight UTC.
+ *
+ * <p>The records of each domain, i.e. its NS and DS records followed by the glue records of its
+ * subordinate nameservers, form a group of stanzas, and the groups are written in the order of the
+ * domains' labels. To keep the memory use of a reducer bounded, the groups are sorted in runs of
+ * at most {@link #maxSortedGroups}, which are spilled to GCS and merged when there is more than
+ * one.
+ *
+ * <p>The sorted output lets a zone file be generated incrementally: if a {@code
+ * previousExportTime} is given, the zone file generated for that time is copied, and only the
+ * groups of the domains that may have changed since then are regenerated. Those are the domains
+ * that have commit logs since the previous export time, the domains linked to hosts that have
+ * commit logs between the two export times, and the domains whose deletion time falls between
+ * them. The result is the same as a full generation, byte for byte. Zone files written in this
+ * format are marked as such in their GCS metadata; if a previous zone file isn't, e.g. because it
+ * was written before the format existed, a full generation is done instead.
  */
 @Action(
   path = GenerateZoneFilesAction.PATH,
@@ -78,6 +119,8 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
 
   public static final String PATH = "/_dr/task/generateZoneFiles";
 
+  private static final FluentLogger logger = FluentLogger.forEnclosingClass();
+
   /** Format for the zone file name. */
   private static final String FILENAME_FORMAT = "%s-%s.zone";
 
@@ -96,8 +139,26 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
   /** Format for A and AAAA records. */
   private static final String A_FORMAT = "%s\t%d\tIN\t%s\t%s\n";
 
+  /** Maximum number of nameservers kept in a {@link PointInTimeCache}. */
+  private static final int POINT_IN_TIME_CACHE_SIZE = 20_000;
+
+  /** Format for the name of a sorted run of groups of stanzas spilled by a reducer. */
+  private static final String RUN_FILENAME_FORMAT = "%s-%s.zone.run-%d";
+
+  /** GCS user metadata that marks zone files whose groups of stanzas are sorted. */
+  private static final ImmutableMap<String, String> SORTED_GROUPS_METADATA =
+      ImmutableMap.of("zoneFileFormat", "sortedGroups");
+
+  /** Orders groups of stanzas by the label of their domain. */
+  private static final Comparator<String> STANZA_GROUP_ORDER =
+      Comparator.comparing(GenerateZoneFilesAction::getDomainLabel);
+
+  /** Maximum number of groups of stanzas that a reducer sorts in memory at once. */
+  @NonFinalForTesting private static int maxSortedGroups = 100_000;
+
   @Inject MapreduceRunner mrRunner;
   @Inject JsonActionRunner jsonActionRunner;
+  @Inject GcsUtils gcsUtils;
   @Inject @Config("zoneFilesBucket") String bucket;
   @Inject @Config("gcsBufferSize") int gcsBufferSize;
   @Inject @Config("commitLogDatastoreRetention") Duration datastoreRetention;
@@ -132,17 +193,34 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
     if (!exportTime.equals(exportTime.toDateTime(UTC).withTimeAtStartOfDay())) {
       throw new BadRequestException("Invalid export time: must be midnight UTC");
     }
-    String jobId = mrRunner
-        .setJobName("Generate bind file stanzas")
-        .setModuleName("tools")
-        .setDefaultReduceShards(tlds.size())
-        .runMapreduce(
-            new GenerateBindFileMapper(
-                tlds, exportTime, dnsDefaultATtl, dnsDefaultNsTtl, dnsDefaultDsTtl),
-            new GenerateBindFileReducer(bucket, exportTime, gcsBufferSize),
-            ImmutableList.of(
-                new NullInput<>(),
-                createEntityInput(DomainResource.class)));
+    ZoneStanzaGenerator generator =
+        new ZoneStanzaGenerator(exportTime, dnsDefaultATtl, dnsDefaultNsTtl, dnsDefaultDsTtl);
+    String jobId;
+    if (json.get("previousExportTime") == null || !previousZoneFilesAreSorted(json, tlds, now)) {
+      jobId = mrRunner
+          .setJobName("Generate bind file stanzas")
+          .setModuleName("tools")
+          .setDefaultReduceShards(tlds.size())
+          .runMapreduce(
+              new GenerateBindFileMapper(tlds, generator),
+              new GenerateBindFileReducer(bucket, exportTime, gcsBufferSize, maxSortedGroups),
+              ImmutableList.of(
+                  new NullInput<>(),
+                  createEntityInput(DomainResource.class)));
+    } else {
+      DateTime previousExportTime = DateTime.parse(json.get("previousExportTime").toString());
+      jobId = mrRunner
+          .setJobName("Generate bind file stanzas incrementally")
+          .setModuleName("tools")
+          .setDefaultReduceShards(tlds.size())
+          .runMapreduce(
+              new GenerateIncrementalBindFileMapper(tlds, exportTime, previousExportTime),
+              new GenerateIncrementalBindFileReducer(
+                  bucket, previousExportTime, gcsBufferSize, generator),
+              ImmutableList.of(
+                  new NullInput<>(),
+                  new CommitLogManifestInput()));
+    }
     ImmutableList<String> filenames =
         tlds.stream()
             .map(
@@ -155,28 +233,56 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
         "filenames", filenames);
   }
 
+  /**
+   * Checks the previous export time of an incremental generation, and returns whether the zone
+   * files generated for it are sorted, so that they can be merged with the regenerated groups.
+   */
+  private boolean previousZoneFilesAreSorted(
+      Map<String, ?> json, ImmutableSet<String> tlds, DateTime now) {
+    DateTime exportTime = DateTime.parse(json.get("exportTime").toString());
+    DateTime previousExportTime = DateTime.parse(json.get("previousExportTime").toString());
+    // The commit logs since the previous export time must still be in Datastore.
+    if (!previousExportTime.isBefore(exportTime)
+        || previousExportTime.isBefore(now.minus(datastoreRetention))) {
+      throw new BadRequestException(String.format(
+          "Invalid previous export time: must be before the export time and < %d days ago",
+          datastoreRetention.getStandardDays()));
+    }
+    boolean sorted = true;
+    for (String tld : tlds) {
+      GcsFilename previousFilename =
+          new GcsFilename(bucket, String.format(FILENAME_FORMAT, tld, previousExportTime));
+      if (!gcsUtils.existsAndNotEmpty(previousFilename)) {
+        throw new BadRequestException("No previous zone file: " + previousFilename);
+      }
+      try {
+        if (!gcsUtils.getUserMetadata(previousFilename).entrySet()
+            .containsAll(SORTED_GROUPS_METADATA.entrySet())) {
+          logger.atWarning().log(
+              "Previous zone file %s isn't sorted, generating all zone files in full",
+              previousFilename);
+          sorted = false;
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return sorted;
+  }
+
   /** Mapper to find domains that were active at a given time. */
   static class GenerateBindFileMapper extends Mapper<EppResource, String, String> {
 
     private static final long serialVersionUID = 4647941823789859913L;
 
     private final ImmutableSet<String> tlds;
-    private final DateTime exportTime;
-    private final Duration dnsDefaultATtl;
-    private final Duration dnsDefaultNsTtl;
-    private final Duration dnsDefaultDsTtl;
+    private final ZoneStanzaGenerator generator;
 
-    GenerateBindFileMapper(
-        ImmutableSet<String> tlds,
-        DateTime exportTime,
-        Duration dnsDefaultATtl,
-        Duration dnsDefaultNsTtl,
-        Duration dnsDefaultDsTtl) {
+    private transient PointInTimeCache pointInTimeCache;
+
+    GenerateBindFileMapper(ImmutableSet<String> tlds, ZoneStanzaGenerator generator) {
       this.tlds = tlds;
-      this.exportTime = exportTime;
-      this.dnsDefaultATtl = dnsDefaultATtl;
-      this.dnsDefaultNsTtl = dnsDefaultNsTtl;
-      this.dnsDefaultDsTtl = dnsDefaultDsTtl;
+      this.generator = generator;
     }
 
     @Override
@@ -190,40 +296,24 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
       }
     }
 
-    // Originally, we mapped over domains and hosts separately, emitting the necessary information
-    // for each. But that doesn't work. All subordinate hosts in the specified TLD(s) would always
-    // be emitted in the final file, which is incorrect. Rather, to match the actual DNS glue
-    // records, we only want to emit host information for in-bailiwick hosts in the specified
-    // TLD(s), meaning those that act as nameservers for their respective superordinate domains.
+    @Override
+    public void beginSlice() {
+      pointInTimeCache = new PointInTimeCache(POINT_IN_TIME_CACHE_SIZE);
+    }
+
+    @Override
+    public void endSlice() {
+      getContext().incrementCounter("point-in-time cache hits", pointInTimeCache.getHitCount());
+      getContext().incrementCounter("point-in-time cache misses", pointInTimeCache.getMissCount());
+    }
+
     private void mapDomain(DomainResource domain) {
       // Domains never change their tld, so we can check if it's from the wrong tld right away.
       if (tlds.contains(domain.getTld())) {
-        domain = loadAtPointInTime(domain, exportTime).now();
-        // A null means the domain was deleted (or not created) at this time.
-        if (domain != null && domain.shouldPublishToDns()) {
-          String stanza = domainStanza(domain, exportTime, dnsDefaultNsTtl, dnsDefaultDsTtl);
-          if (!stanza.isEmpty()) {
-            emit(domain.getTld(), stanza);
-            getContext().incrementCounter(domain.getTld() + " domains");
-          }
-          emitForSubordinateHosts(domain);
-        }
-      }
-    }
-
-    private void emitForSubordinateHosts(DomainResource domain) {
-      ImmutableSet<String> subordinateHosts = domain.getSubordinateHosts();
-      if (!subordinateHosts.isEmpty()) {
-        for (HostResource unprojectedHost : ofy().load().keys(domain.getNameservers()).values()) {
-          HostResource host = loadAtPointInTime(unprojectedHost, exportTime).now();
-          // A null means the host was deleted (or not created) at this time.
-          if ((host != null) && subordinateHosts.contains(host.getFullyQualifiedHostName())) {
-            String stanza = hostStanza(host, dnsDefaultATtl, domain.getTld());
-            if (!stanza.isEmpty()) {
-              emit(domain.getTld(), stanza);
-              getContext().incrementCounter(domain.getTld() + " hosts");
-            }
-          }
+        String stanzas = generator.generate(domain, pointInTimeCache);
+        if (!stanzas.isEmpty()) {
+          emit(domain.getTld(), stanzas);
+          getContext().incrementCounter(domain.getTld() + " domains");
         }
       }
     }
@@ -237,29 +327,253 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
     private final String bucket;
     private final DateTime exportTime;
     private final int gcsBufferSize;
+    private final int maxSortedGroups;
 
-    GenerateBindFileReducer(String bucket, DateTime exportTime, int gcsBufferSize) {
+    GenerateBindFileReducer(
+        String bucket, DateTime exportTime, int gcsBufferSize, int maxSortedGroups) {
       this.bucket = bucket;
       this.exportTime = exportTime;
       this.gcsBufferSize = gcsBufferSize;
+      this.maxSortedGroups = maxSortedGroups;
     }
 
     @Override
     public void reduce(String tld, ReducerInput<String> stanzas) {
       String stanzaCounter = tld + " stanzas";
+      GcsUtils cloudStorage =
+          new GcsUtils(createGcsService(RetryParams.getDefaultInstance()), gcsBufferSize);
+      List<GcsFilename> runFilenames = new ArrayList<>();
+      List<String> groups = new ArrayList<>();
+      try {
+        // Sort the groups in runs that fit in memory, and spill all the runs but the last one.
+        for (Iterator<String> stanzaIter = filter(stanzas, Objects::nonNull);
+            stanzaIter.hasNext(); ) {
+          groups.add(stanzaIter.next());
+          if (groups.size() == maxSortedGroups) {
+            GcsFilename runFilename =
+                new GcsFilename(
+                    bucket,
+                    String.format(RUN_FILENAME_FORMAT, tld, exportTime, runFilenames.size()));
+            writeRun(cloudStorage, runFilename, groups);
+            runFilenames.add(runFilename);
+            groups.clear();
+          }
+        }
+        groups.sort(STANZA_GROUP_ORDER);
+        List<Iterator<String>> runs = new ArrayList<>();
+        List<Closeable> readers = new ArrayList<>();
+        try {
+          for (GcsFilename runFilename : runFilenames) {
+            BufferedReader reader =
+                new BufferedReader(
+                    new InputStreamReader(cloudStorage.openInputStream(runFilename), UTF_8));
+            readers.add(reader);
+            runs.add(new StanzaGroupReader(reader));
+          }
+          runs.add(groups.iterator());
+          GcsFilename filename =
+              new GcsFilename(bucket, String.format(FILENAME_FORMAT, tld, exportTime));
+          try (OutputStream gcsOutput =
+                  cloudStorage.openOutputStream(filename, SORTED_GROUPS_METADATA);
+              Writer osWriter = new OutputStreamWriter(gcsOutput, UTF_8);
+              PrintWriter writer = new PrintWriter(osWriter)) {
+            writer.printf(HEADER_FORMAT, tld);
+            for (Iterator<String> groupIter = mergeSorted(runs, STANZA_GROUP_ORDER);
+                groupIter.hasNext(); ) {
+              writer.print(groupIter.next());
+              getContext().incrementCounter(stanzaCounter);
+            }
+            writer.flush();
+          }
+        } finally {
+          for (Closeable reader : readers) {
+            reader.close();
+          }
+        }
+        for (GcsFilename runFilename : runFilenames) {
+          cloudStorage.delete(runFilename);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Sorts groups of stanzas and writes them to a GCS file. */
+    private static void writeRun(
+        GcsUtils cloudStorage, GcsFilename runFilename, List<String> groups) throws IOException {
+      groups.sort(STANZA_GROUP_ORDER);
+      try (OutputStream gcsOutput = cloudStorage.openOutputStream(runFilename);
+          Writer osWriter = new OutputStreamWriter(gcsOutput, UTF_8);
+          PrintWriter writer = new PrintWriter(osWriter)) {
+        groups.forEach(writer::print);
+        writer.flush();
+      }
+    }
+  }
+
+  /**
+   * Mapper to find domains whose stanzas may have changed since the previous export time.
+   *
+   * <p>Commit logs for domains are considered up to the present, not just up to the export time,
+   * because a domain that was linked to a host at the export time but isn't anymore must have
+   * changed since, and wouldn't be found by querying the domains that are linked to the host now.
+   */
+  static class GenerateIncrementalBindFileMapper
+      extends Mapper<Key<CommitLogManifest>, String, String> {
+
+    private static final long serialVersionUID = -3218632383512372154L;
+
+    private final ImmutableSet<String> tlds;
+    private final DateTime exportTime;
+    private final DateTime previousExportTime;
+
+    GenerateIncrementalBindFileMapper(
+        ImmutableSet<String> tlds, DateTime exportTime, DateTime previousExportTime) {
+      this.tlds = tlds;
+      this.exportTime = exportTime;
+      this.previousExportTime = previousExportTime;
+    }
+
+    @Override
+    public void map(Key<CommitLogManifest> manifestKey) {
+      if (manifestKey == null) {  // Force the reducer to always write a zone file for each tld.
+        for (String tld : tlds) {
+          emit(tld, null);
+        }
+        return;
+      }
+      DateTime commitTime = CommitLogManifest.extractCommitTime(manifestKey);
+      if (!commitTime.isAfter(previousExportTime)) {
+        getContext().incrementCounter("older commit logs skipped");
+        return;
+      }
+      Set<Key<?>> changedKeys = new HashSet<>(ofy().load().key(manifestKey).now().getDeletions());
+      for (Key<CommitLogMutation> mutationKey :
+          ofy().load().type(CommitLogMutation.class).ancestor(manifestKey).keys()) {
+        changedKeys.add(Key.create(mutationKey.getName()));
+      }
+      Set<Key<DomainBase>> domainKeys = new HashSet<>();
+      for (Key<?> key : changedKeys) {
+        if (key.getKind().equals(Key.getKind(DomainBase.class))) {
+          @SuppressWarnings("unchecked")
+          Key<DomainBase> domainKey = (Key<DomainBase>) key;
+          domainKeys.add(domainKey);
+        } else if (key.getKind().equals(Key.getKind(HostResource.class))
+            && !commitTime.isAfter(exportTime)) {
+          @SuppressWarnings("unchecked")
+          Key<HostResource> hostKey = (Key<HostResource>) key;
+          // The NS records (and possibly the glue records) of the domains linked to the host may
+          // have changed.
+          queryForLinkedDomains(hostKey, exportTime).keys().forEach(domainKeys::add);
+        }
+      }
+      for (DomainBase domain : ofy().load().keys(domainKeys).values()) {
+        if (domain instanceof DomainResource && tlds.contains(domain.getTld())) {
+          emit(domain.getTld(), Key.create(domain).getString());
+          getContext().incrementCounter(domain.getTld() + " changed domains");
+        }
+      }
+      // Avoid running out of memory.
+      ofy().clearSessionCache();
+    }
+  }
+
+  /**
+   * Reducer to write zone files to GCS by regenerating the stanzas of the domains that may have
+   * changed, and copying those of the other domains from the previous zone file.
+   */
+  static class GenerateIncrementalBindFileReducer extends Reducer<String, String, Void> {
+
+    private static final long serialVersionUID = 7398447612858287154L;
+
+    private final String bucket;
+    private final DateTime previousExportTime;
+    private final int gcsBufferSize;
+    private final ZoneStanzaGenerator generator;
+
+    GenerateIncrementalBindFileReducer(
+        String bucket,
+        DateTime previousExportTime,
+        int gcsBufferSize,
+        ZoneStanzaGenerator generator) {
+      this.bucket = bucket;
+      this.previousExportTime = previousExportTime;
+      this.gcsBufferSize = gcsBufferSize;
+      this.generator = generator;
+    }
+
+    @Override
+    public void reduce(String tld, ReducerInput<String> domainKeyStrings) {
+      Set<Key<DomainBase>> domainKeys = new HashSet<>();
+      filter(domainKeyStrings, Objects::nonNull)
+          .forEachRemaining(keyString -> domainKeys.add(Key.create(keyString)));
+      // Domains deleted in between the two export times have no commit log at the time they
+      // disappeared from the zone.
+      ofy()
+          .load()
+          .type(DomainResource.class)
+          .filter("tld", tld)
+          .filter("deletionTime >", previousExportTime)
+          .filter("deletionTime <=", generator.exportTime)
+          .keys()
+          .forEach(key -> domainKeys.add(Key.create(key.getRaw())));
+      // The regenerated stanzas of each changed domain, by domain label, with empty stanzas for the
+      // domains that are no longer in the zone. A domain that is deleted and then created again
+      // between the two export times has the same label as its predecessor, so the stanzas of all
+      // the domains with a label are concatenated. At most one of them is in the zone at a time.
+      SortedMap<String, String> changedStanzas = new TreeMap<>();
+      PointInTimeCache pointInTimeCache = new PointInTimeCache(POINT_IN_TIME_CACHE_SIZE);
+      for (DomainBase domain : ofy().load().keys(domainKeys).values()) {
+        changedStanzas.merge(
+            stripTld(domain.getFullyQualifiedDomainName(), tld),
+            generator.generate((DomainResource) domain, pointInTimeCache),
+            String::concat);
+      }
+      getContext().incrementCounter(tld + " regenerated domains", changedStanzas.size());
+      GcsFilename previousFilename =
+          new GcsFilename(bucket, String.format(FILENAME_FORMAT, tld, previousExportTime));
       GcsFilename filename =
-          new GcsFilename(bucket, String.format(FILENAME_FORMAT, tld, exportTime));
+          new GcsFilename(bucket, String.format(FILENAME_FORMAT, tld, generator.exportTime));
       GcsUtils cloudStorage =
           new GcsUtils(createGcsService(RetryParams.getDefaultInstance()), gcsBufferSize);
-      try (OutputStream gcsOutput = cloudStorage.openOutputStream(filename);
+      try (BufferedReader reader =
+              new BufferedReader(
+                  new InputStreamReader(cloudStorage.openInputStream(previousFilename), UTF_8));
+          OutputStream gcsOutput = cloudStorage.openOutputStream(filename, SORTED_GROUPS_METADATA);
           Writer osWriter = new OutputStreamWriter(gcsOutput, UTF_8);
           PrintWriter writer = new PrintWriter(osWriter)) {
-        writer.printf(HEADER_FORMAT, tld);
-        for (Iterator<String> stanzaIter = filter(stanzas, Objects::nonNull);
-            stanzaIter.hasNext(); ) {
-          writer.println(stanzaIter.next());
-          getContext().incrementCounter(stanzaCounter);
+        String header = String.format(HEADER_FORMAT, tld);
+        checkState(
+            header.equals(reader.readLine() + "\n" + reader.readLine() + "\n"),
+            "Unexpected header in %s",
+            previousFilename);
+        writer.print(header);
+        PeekingIterator<Entry<String, String>> changes =
+            peekingIterator(changedStanzas.entrySet().iterator());
+        // Stream the previous zone file a group of stanzas at a time, replacing the groups of the
+        // changed domains and inserting those of the new ones at their place.
+        String previousLabel = null;
+        for (Iterator<String> groups = new StanzaGroupReader(reader); groups.hasNext(); ) {
+          String group = groups.next();
+          String label = getDomainLabel(group);
+          // The merge is only correct if each domain has a single group, and the groups are sorted.
+          checkState(
+              previousLabel == null || previousLabel.compareTo(label) < 0,
+              "Groups of stanzas out of order in %s: %s after %s",
+              previousFilename,
+              label,
+              previousLabel);
+          previousLabel = label;
+          while (changes.hasNext() && changes.peek().getKey().compareTo(label) < 0) {
+            writer.print(changes.next().getValue());
+          }
+          if (changes.hasNext() && changes.peek().getKey().equals(label)) {
+            writer.print(changes.next().getValue());
+          } else {
+            writer.print(group);
+          }
         }
+        changes.forEachRemaining(change -> writer.print(change.getValue()));
         writer.flush();
       } catch (IOException e) {
         throw new RuntimeException(e);
@@ -267,6 +581,114 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
     }
   }
 
+  /**
+   * Iterator over the groups of stanzas of a zone file (past its header) or of a sorted run.
+   *
+   * <p>A group is made of consecutive records of the same domain, and of the empty lines that
+   * follow them.
+   */
+  private static class StanzaGroupReader extends AbstractIterator<String> {
+
+    private final BufferedReader reader;
+    private String nextLine;
+
+    StanzaGroupReader(BufferedReader reader) throws IOException {
+      this.reader = reader;
+      this.nextLine = reader.readLine();
+    }
+
+    @Override
+    protected String computeNext() {
+      if (nextLine == null) {
+        return endOfData();
+      }
+      String label = getDomainLabel(nextLine);
+      StringBuilder group = new StringBuilder();
+      try {
+        do {
+          group.append(nextLine).append('\n');
+          nextLine = reader.readLine();
+        } while (nextLine != null
+            && (nextLine.isEmpty() || getDomainLabel(nextLine).equals(label)));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      return group.toString();
+    }
+  }
+
+  /** Generates the group of stanzas of a domain at a given time. */
+  static class ZoneStanzaGenerator implements Serializable {
+
+    private static final long serialVersionUID = -1187635391622563185L;
+
+    private final DateTime exportTime;
+    private final Duration dnsDefaultATtl;
+    private final Duration dnsDefaultNsTtl;
+    private final Duration dnsDefaultDsTtl;
+
+    ZoneStanzaGenerator(
+        DateTime exportTime,
+        Duration dnsDefaultATtl,
+        Duration dnsDefaultNsTtl,
+        Duration dnsDefaultDsTtl) {
+      this.exportTime = exportTime;
+      this.dnsDefaultATtl = dnsDefaultATtl;
+      this.dnsDefaultNsTtl = dnsDefaultNsTtl;
+      this.dnsDefaultDsTtl = dnsDefaultDsTtl;
+    }
+
+    /**
+     * Returns the stanzas of a domain at the export time, each followed by an empty line.
+     *
+     * <p>These are the domain's NS and DS records, followed by the glue records of the nameservers
+     * of the domain that are subordinate to it. Originally, we mapped over domains and hosts
+     * separately, emitting the necessary information for each. But that doesn't work. All
+     * subordinate hosts in the specified TLD(s) would always be emitted in the final file, which is
+     * incorrect. Rather, to match the actual DNS glue records, we only want to emit host
+     * information for in-bailiwick hosts in the specified TLD(s), meaning those that act as
+     * nameservers for their respective superordinate domains.
+     *
+     * @return the stanzas, or an empty string if the domain isn't published at the export time
+     */
+    String generate(DomainResource domain, PointInTimeCache pointInTimeCache) {
+      domain = loadAtPointInTime(domain, exportTime).now();
+      // A null means the domain was deleted (or not created) at this time.
+      if (domain == null || !domain.shouldPublishToDns()) {
+        return "";
+      }
+      // Load the nameservers at the export time in case they've been renamed or deleted.
+      ImmutableCollection<HostResource> nameservers =
+          pointInTimeCache.loadAll(domain.getNameservers(), exportTime).values();
+      StringBuilder result = new StringBuilder();
+      String stanza = domainStanza(domain, nameservers, dnsDefaultNsTtl, dnsDefaultDsTtl);
+      if (!stanza.isEmpty()) {
+        result.append(stanza).append('\n');
+      }
+      ImmutableSet<String> subordinateHosts = domain.getSubordinateHosts();
+      for (HostResource host : nameservers) {
+        if (subordinateHosts.contains(host.getFullyQualifiedHostName())) {
+          stanza = hostStanza(host, dnsDefaultATtl, domain.getTld());
+          if (!stanza.isEmpty()) {
+            result.append(stanza).append('\n');
+          }
+        }
+      }
+      return result.toString();
+    }
+  }
+
+  /**
+   * Returns the label of the domain that a record, or a group of stanzas, belongs to.
+   *
+   * <p>Records are named after the domain, or after one of its subordinate hosts, relative to the
+   * TLD. Either way, the last label of the name is the domain's.
+   */
+  private static String getDomainLabel(String record) {
+    String name = record.substring(0, record.indexOf('\t'));
+    return name.substring(name.lastIndexOf('.') + 1);
+  }
+
   /**
    * Generates DNS records for a domain (NS and DS).
    *
@@ -278,18 +700,17 @@ public class GenerateZoneFilesAction implements Runnable, JsonActionRunner.JsonA
    */
   private static String domainStanza(
       DomainResource domain,
-      DateTime exportTime,
+      Iterable<HostResource> nameservers,
       Duration dnsDefaultNsTtl,
       Duration dnsDefaultDsTtl) {
     StringBuilder result = new StringBuilder();
     String domainLabel = stripTld(domain.getFullyQualifiedDomainName(), domain.getTld());
-    for (HostResource nameserver : ofy().load().keys(domain.getNameservers()).values()) {
+    for (HostResource nameserver : nameservers) {
       result.append(String.format(
           NS_FORMAT,
           domainLabel,
           dnsDefaultNsTtl.getStandardSeconds(),
-          // Load the nameservers at the export time in case they've been renamed or deleted.
-          loadAtPointInTime(nameserver, exportTime).now().getFullyQualifiedHostName()));
+          nameserver.getFullyQualifiedHostName()));
     }
     for (DelegationSignerData dsData : domain.getDsData()) {
       result.append(String.format(
@@ -0,0 +1,125 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.WillNotClose;
+
+/**
+ * {@link OutputStream} delegate that performs the writes on the delegate in a separate thread.
+ *
+ * <p>This lets a stream that does expensive work on the bytes it's given (e.g. compression or
+ * encryption) run in parallel with whatever writes to it. Each write is copied and queued, and
+ * writes block once {@code maxQueuedWrites} of them are waiting to be performed. The delegate
+ * receives exactly the same sequence of writes, with the same boundaries, as this stream.
+ *
+ * <p>Exceptions thrown by the delegate are rethrown by the next call to this stream, wrapped in an
+ * {@link IOException}. This stream must always be closed, since that's what ends its thread.
+ * Closing it waits for all queued writes to be performed, but doesn't close the delegate.
+ */
+public final class AsyncOutputStream extends OutputStream {
+
+  /** Marker for a flush of the delegate, compared by identity. */
+  private static final byte[] FLUSH = new byte[0];
+
+  /** Marker for the end of the stream, compared by identity. */
+  private static final byte[] END = new byte[0];
+
+  private final OutputStream delegate;
+  private final BlockingQueue<byte[]> queue;
+  private final Thread thread;
+  private volatile Throwable failure;
+  private boolean isClosed;
+
+  public AsyncOutputStream(
+      @WillNotClose OutputStream delegate, int maxQueuedWrites, ThreadFactory threadFactory) {
+    checkArgument(maxQueuedWrites > 0, "maxQueuedWrites must be positive: %s", maxQueuedWrites);
+    this.delegate = checkNotNull(delegate);
+    this.queue = new ArrayBlockingQueue<>(maxQueuedWrites);
+    this.thread = threadFactory.newThread(this::performWrites);
+    thread.start();
+  }
+
+  /** Performs the queued writes until the end of the stream, or skips them after a failure. */
+  private void performWrites() {
+    byte[] chunk;
+    while ((chunk = Uninterruptibles.takeUninterruptibly(queue)) != END) {
+      if (failure != null) {
+        continue;
+      }
+      try {
+        if (chunk == FLUSH) {
+          delegate.flush();
+        } else {
+          delegate.write(chunk, 0, chunk.length);
+        }
+      } catch (Throwable t) {
+        failure = t;
+      }
+    }
+  }
+
+  /** @see java.io.OutputStream#write(int) */
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] {(byte) b}, 0, 1);
+  }
+
+  /** @see java.io.OutputStream#write(byte[], int, int) */
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    checkState(!isClosed, "outputstream closed");
+    checkNoFailure();
+    if (len > 0) {
+      Uninterruptibles.putUninterruptibly(queue, Arrays.copyOfRange(b, off, off + len));
+    }
+  }
+
+  /** Queues a flush of the delegate, without waiting for it. */
+  @Override
+  public void flush() throws IOException {
+    checkState(!isClosed, "outputstream closed");
+    checkNoFailure();
+    Uninterruptibles.putUninterruptibly(queue, FLUSH);
+  }
+
+  /** Waits for all queued writes to be performed, and ends the thread performing them. */
+  @Override
+  public void close() throws IOException {
+    if (isClosed) {
+      return;
+    }
+    isClosed = true;
+    Uninterruptibles.putUninterruptibly(queue, END);
+    Uninterruptibles.joinUninterruptibly(thread);
+    checkNoFailure();
+  }
+
+  private void checkNoFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Asynchronous write failed", failure);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.joda.time.Duration;
+
+/**
+ * A bounded in-memory cache of responses to public lookups, which are kept for a few seconds only.
+ *
+ * <p>This is meant for lookups whose traffic is heavily skewed towards a few keys at times (e.g.
+ * WHOIS queries during abuse events or drops), where even a very short expiry saves most of the
+ * work. Concurrent lookups of a key that isn't cached share a single computation: the first one
+ * computes the response, and the others wait for it. Exceptions thrown by the computation are
+ * rethrown to all of them, and aren't cached.
+ *
+ * <p>A cache with an expiry of zero caches nothing, and doesn't record lookups.
+ *
+ * @param <K> the type of the normalized query, which must implement {@code equals()}
+ * @param <V> the type of the response
+ */
+public class ResponseCache<K, V> {
+
+  /** Receives the outcome of every lookup, e.g. to record the hit rate of the cache. */
+  public interface LookupRecorder {
+    void recordLookup(boolean hit);
+  }
+
+  @Nullable private final Cache<K, V> cache;
+  private final LookupRecorder lookupRecorder;
+
+  public ResponseCache(Duration expiry, long maximumSize, LookupRecorder lookupRecorder) {
+    checkArgument(!expiry.isShorterThan(Duration.ZERO), "Negative expiry: %s", expiry);
+    this.cache =
+        expiry.equals(Duration.ZERO)
+            ? null
+            : CacheBuilder.newBuilder()
+                .expireAfterWrite(expiry.getMillis(), MILLISECONDS)
+                .maximumSize(maximumSize)
+                .build();
+    this.lookupRecorder = lookupRecorder;
+  }
+
+  /**
+   * Returns the cached response to the given query, computing it with {@code loader} if it isn't
+   * cached.
+   *
+   * <p>Unchecked exceptions thrown by the loader are rethrown as is.
+   */
+  public V get(K query, Supplier<V> loader) {
+    if (cache == null) {
+      return loader.get();
+    }
+    AtomicBoolean loaded = new AtomicBoolean();
+    V response;
+    try {
+      response =
+          cache.get(
+              query,
+              () -> {
+                loaded.set(true);
+                return loader.get();
+              });
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+    lookupRecorder.recordLookup(!loaded.get());
+    return response;
+  }
+}
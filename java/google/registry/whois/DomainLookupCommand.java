@@ -31,6 +31,11 @@ public class DomainLookupCommand extends DomainOrHostLookupCommand {
     this.fullOutput = fullOutput;
   }
 
+  @Override
+  public Optional<String> getResponseCacheKey() {
+    return Optional.of(String.format("domain %s%s", domainOrHostName, fullOutput ? " full" : ""));
+  }
+
   @Override
   protected Optional<WhoisResponse> getResponse(InternetDomainName domainName, DateTime now) {
     return loadByForeignKeyCached(DomainResource.class, domainName.toString(), now)
@@ -32,6 +32,7 @@ import google.registry.whois.WhoisException.UncheckedWhoisException;
 import google.registry.whois.WhoisMetrics.WhoisMetric;
 import google.registry.whois.WhoisResponse.WhoisResponseResults;
 import java.io.Reader;
+import java.util.Optional;
 import javax.inject.Inject;
 import org.joda.time.DateTime;
 
@@ -71,6 +72,7 @@ public class WhoisAction implements Runnable {
   @Inject @Config("whoisDisclaimer") String disclaimer;
   @Inject WhoisMetric.Builder metricBuilder;
   @Inject WhoisMetrics whoisMetrics;
+  @Inject WhoisResponseCache responseCache;
 
   @Inject
   WhoisAction() {}
@@ -82,19 +84,11 @@ public class WhoisAction implements Runnable {
     try {
       final WhoisCommand command = whoisReader.readCommand(input, false, now);
       metricBuilder.setCommand(command);
+      Optional<String> cacheKey = command.getResponseCacheKey();
       WhoisResponseResults results =
-          retrier.callWithRetry(
-              () -> {
-                WhoisResponseResults results1;
-                try {
-                  results1 = command.executeQuery(now).getResponse(PREFER_UNICODE, disclaimer);
-                } catch (WhoisException e) {
-                  throw new UncheckedWhoisException(e);
-                }
-                return results1;
-              },
-              DatastoreTimeoutException.class,
-              DatastoreFailureException.class);
+          cacheKey.isPresent()
+              ? responseCache.get(cacheKey.get(), () -> executeQuery(command, now))
+              : executeQuery(command, now);
       responseText = results.plainTextOutput();
       setWhoisMetrics(metricBuilder, results.numResults(), SC_OK);
     } catch (UncheckedWhoisException u) {
@@ -121,6 +115,24 @@ public class WhoisAction implements Runnable {
     whoisMetrics.recordWhoisMetric(metricBuilder.build());
   }
 
+  /**
+   * Executes a command, retrying on transient Datastore errors.
+   *
+   * @throws UncheckedWhoisException if the command fails
+   */
+  private WhoisResponseResults executeQuery(WhoisCommand command, DateTime now) {
+    return retrier.callWithRetry(
+        () -> {
+          try {
+            return command.executeQuery(now).getResponse(PREFER_UNICODE, disclaimer);
+          } catch (WhoisException e) {
+            throw new UncheckedWhoisException(e);
+          }
+        },
+        DatastoreTimeoutException.class,
+        DatastoreFailureException.class);
+  }
+
   private static void setWhoisMetrics(
       WhoisMetric.Builder metricBuilder, int numResults, int status) {
     metricBuilder.setNumResults(numResults);
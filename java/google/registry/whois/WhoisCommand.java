@@ -14,6 +14,7 @@
 
 package google.registry.whois;
 
+import java.util.Optional;
 import org.joda.time.DateTime;
 
 /** Represents a WHOIS command request from a client. */
@@ -26,4 +27,14 @@ public interface WhoisCommand {
    * @throws WhoisException If some error occured while executing the command.
    */
   WhoisResponse executeQuery(DateTime now) throws WhoisException;
+
+  /**
+   * Returns the normalized query of this command, if its responses may be shared by identical
+   * commands for a few seconds.
+   *
+   * @see WhoisResponseCache
+   */
+  default Optional<String> getResponseCacheKey() {
+    return Optional.empty();
+  }
 }
@@ -56,6 +56,15 @@ public class WhoisMetrics {
               LABEL_DESCRIPTORS,
               DEFAULT_FITTER);
 
+  private static final IncrementableMetric responseCacheLookups =
+      MetricRegistryImpl.getDefault()
+          .newIncrementableMetric(
+              "/whois/response_cache_lookups",
+              "Count of WHOIS response cache lookups",
+              "count",
+              ImmutableSet.of(
+                  LabelDescriptor.create("result", "Whether the response was cached.")));
+
   @Inject
   public WhoisMetrics() {}
 
@@ -72,6 +81,11 @@ public class WhoisMetrics {
         Integer.toString(metric.status()));
   }
 
+  /** Records a lookup in the {@link WhoisResponseCache}, as a hit or a miss. */
+  public void recordResponseCacheLookup(boolean hit) {
+    responseCacheLookups.increment(hit ? "hit" : "miss");
+  }
+
   /** A value class for recording attributes of a WHOIS metric. */
   @AutoValue
   public abstract static class WhoisMetric {
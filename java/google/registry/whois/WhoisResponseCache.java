@@ -0,0 +1,43 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.whois;
+
+import google.registry.config.RegistryConfig.Config;
+import google.registry.util.ResponseCache;
+import google.registry.whois.WhoisResponse.WhoisResponseResults;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.joda.time.Duration;
+
+/**
+ * Short-lived cache of port 43 WHOIS responses, keyed by {@link
+ * WhoisCommand#getResponseCacheKey}.
+ *
+ * <p>Only the responses of successful lookups are cached; errors (e.g. for names that aren't
+ * registered) are computed anew every time.
+ *
+ * @see WhoisAction
+ */
+@Singleton
+public class WhoisResponseCache extends ResponseCache<String, WhoisResponseResults> {
+
+  @Inject
+  public WhoisResponseCache(
+      @Config("lookupResponseCachingDuration") Duration expiry,
+      @Config("lookupResponseMaxCachedEntries") int maximumSize,
+      WhoisMetrics whoisMetrics) {
+    super(expiry, maximumSize, whoisMetrics::recordResponseCacheLookup);
+  }
+}
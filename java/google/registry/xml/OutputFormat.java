@@ -0,0 +1,24 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.xml;
+
+/** Enum that determines whether marshaled xml should be indented for human readers. */
+public enum OutputFormat {
+  /** Indent elements and put each on its own line. */
+  FORMATTED,
+
+  /** Don't add any whitespace between elements, for machine readers. */
+  COMPACT
+}
@@ -16,6 +16,7 @@ package google.registry.xml;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.nullToEmpty;
+import static google.registry.xml.OutputFormat.FORMATTED;
 import static google.registry.xml.ValidationMode.STRICT;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
@@ -34,6 +35,9 @@ import java.nio.charset.Charset;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.UnaryOperator;
 import javax.annotation.Nullable;
 import javax.xml.XMLConstants;
 import javax.xml.bind.JAXBContext;
@@ -45,6 +49,7 @@ import javax.xml.bind.helpers.DefaultValidationEventHandler;
 import javax.xml.stream.FactoryConfigurationError;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Result;
 import javax.xml.transform.Transformer;
@@ -54,6 +59,7 @@ import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import javax.xml.validation.Validator;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 
@@ -75,6 +81,22 @@ public class XmlTransformer {
   /** A {@link Schema} to validate XML. */
   private final Schema schema;
 
+  /**
+   * Maximum number of idle instances to keep in each of the pools below.
+   *
+   * <p>Creating an {@link Unmarshaller}, {@link Marshaller} or {@link Validator} is much more
+   * expensive than the actual work done with it for a typical EPP-sized document, but none of them
+   * are thread-safe, so idle instances are kept in bounded pools and handed to one caller at a
+   * time. Instances are only returned to a pool after a successful call, so that no state from a
+   * failed call can leak into a later one. If a pool is empty a new instance is created, and if it
+   * is full the instance is simply dropped.
+   */
+  private static final int MAX_POOL_SIZE = 32;
+
+  private final BlockingQueue<Unmarshaller> unmarshallers = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+  private final BlockingQueue<Marshaller> marshallers = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+  private final BlockingQueue<Validator> validators = new ArrayBlockingQueue<>(MAX_POOL_SIZE);
+
   /**
    * Create a new XmlTransformer that validates using the given schemas, but uses the given classes
    * (rather than generated ones) for marshaling and unmarshaling.
@@ -126,7 +148,13 @@ public class XmlTransformer {
    */
   public void validate(String xml) throws XmlException {
     try {
-      schema.newValidator().validate(new StreamSource(new StringReader(xml)));
+      Validator validator = validators.poll();
+      if (validator == null) {
+        validator = schema.newValidator();
+      }
+      validator.validate(new StreamSource(new StringReader(xml)));
+      validator.reset();
+      validators.offer(validator);
     } catch (SAXException | IOException e) {
       throw new XmlException(e);
     }
@@ -143,9 +171,34 @@ public class XmlTransformer {
    * @see <a href="https://errorprone.info/bugpattern/TypeParameterUnusedInFormals">TypeParameterUnusedInFormals</a>
    */
   public <T> T unmarshal(Class<T> clazz, InputStream stream) throws XmlException {
+    return unmarshal(clazz, stream, UnaryOperator.identity());
+  }
+
+  /**
+   * Turns XML text into an object like {@link #unmarshal(Class, InputStream)}, while letting the
+   * caller observe the parse.
+   *
+   * <p>The {@link XMLStreamReader} is passed through {@code readerWrapper} before it is handed to
+   * JAXB, so the caller can wrap it (e.g. in a {@link javax.xml.stream.util.StreamReaderDelegate})
+   * to see every event as it is unmarshaled, rather than parsing the same document again.
+   *
+   * @param clazz the XML class you expect to receive as the root element
+   * @param readerWrapper returns the reader JAXB should read from, given the underlying reader
+   * @throws XmlException if failed to read from {@code bytes}, XML input is invalid, or root
+   *         element doesn't match {@code expect}.
+   */
+  public <T> T unmarshal(
+      Class<T> clazz, InputStream stream, UnaryOperator<XMLStreamReader> readerWrapper)
+      throws XmlException {
     try (InputStream autoClosingStream = stream) {
-      return clazz.cast(getUnmarshaller().unmarshal(
-          XML_INPUT_FACTORY.createXMLStreamReader(new StreamSource(autoClosingStream, SYSTEM_ID))));
+      Unmarshaller unmarshaller = getUnmarshaller();
+      Object result =
+          unmarshaller.unmarshal(
+              readerWrapper.apply(
+                  XML_INPUT_FACTORY.createXMLStreamReader(
+                      new StreamSource(autoClosingStream, SYSTEM_ID))));
+      unmarshallers.offer(unmarshaller);
+      return clazz.cast(result);
     } catch (UnmarshalException e) {
       // Plain old parsing exceptions have a SAXParseException with no further cause.
       if (e.getLinkedException() instanceof SAXParseException
@@ -190,10 +243,13 @@ public class XmlTransformer {
   public void marshal(Object root, Writer writer, ValidationMode validation) throws XmlException {
     try {
       // Omit XML declaration because character-oriented output prevents us from knowing.
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_FRAGMENT, true)).marshal(
-              checkNotNull(root, "root"), checkNotNull(writer, "writer"));
+      Marshaller marshaller =
+          getMarshaller(
+              STRICT.equals(validation) ? schema : null,
+              ImmutableMap.of(Marshaller.JAXB_FRAGMENT, true),
+              FORMATTED);
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(writer, "writer"));
+      marshallers.offer(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -216,11 +272,38 @@ public class XmlTransformer {
    */
   public void marshal(Object root, OutputStream out, Charset charset, ValidationMode validation)
       throws XmlException {
+    marshal(root, out, charset, validation, FORMATTED);
+  }
+
+  /**
+   * Validates and streams {@code root} as XML bytes with XML declaration, in the given format.
+   *
+   * <p>This is the same as {@link #marshal(Object, OutputStream, Charset, ValidationMode)}, except
+   * that {@link OutputFormat#COMPACT} can be used to skip indentation when the output is only going
+   * to be read by machines.
+   *
+   * @param root the object to write
+   * @param out byte-oriented output for writing XML. This method won't close it.
+   * @param charset should almost always be set to {@code "utf-8"}.
+   * @param validation whether to validate while marshaling
+   * @param format whether to indent the output
+   * @throws XmlException to rethrow {@link JAXBException}.
+   */
+  public void marshal(
+      Object root,
+      OutputStream out,
+      Charset charset,
+      ValidationMode validation,
+      OutputFormat format)
+      throws XmlException {
     try {
-      getMarshaller(
-          STRICT.equals(validation) ? schema : null,
-          ImmutableMap.of(Marshaller.JAXB_ENCODING, charset.toString())).marshal(
-              checkNotNull(root, "root"), checkNotNull(out, "out"));
+      Marshaller marshaller =
+          getMarshaller(
+              STRICT.equals(validation) ? schema : null,
+              ImmutableMap.of(Marshaller.JAXB_ENCODING, charset.toString()),
+              format);
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(out, "out"));
+      marshallers.offer(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -240,8 +323,9 @@ public class XmlTransformer {
    */
   public void marshalStrict(Object root, Result result) throws XmlException {
     try {
-      getMarshaller(schema, ImmutableMap.of())
-          .marshal(checkNotNull(root, "root"), checkNotNull(result, "result"));
+      Marshaller marshaller = getMarshaller(schema, ImmutableMap.of(), FORMATTED);
+      marshaller.marshal(checkNotNull(root, "root"), checkNotNull(result, "result"));
+      marshallers.offer(marshaller);
     } catch (JAXBException e) {
       throw new XmlException(e);
     }
@@ -274,9 +358,18 @@ public class XmlTransformer {
     return JAXBContext.newInstance(prefix + Joiner.on(':' + prefix).join(schemaNames));
   }
 
-  /** Get a {@link Unmarshaller} instance with the default configuration. */
+  /**
+   * Get a {@link Unmarshaller} instance with the default configuration.
+   *
+   * <p>The instance is taken from the pool if possible. Callers should put it back in the pool once
+   * it has been used successfully.
+   */
   private Unmarshaller getUnmarshaller() throws JAXBException {
-    Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+    Unmarshaller unmarshaller = unmarshallers.poll();
+    if (unmarshaller != null) {
+      return unmarshaller;
+    }
+    unmarshaller = jaxbContext.createUnmarshaller();
     unmarshaller.setSchema(schema);
     // This handler was the default in JAXB 1.0. It fails on any exception thrown while
     // unmarshalling. In JAXB 2.0 some errors are considered recoverable and are ignored, which is
@@ -285,14 +378,26 @@ public class XmlTransformer {
     return unmarshaller;
   }
 
-  /** Get a {@link Marshaller} instance with the given configuration. */
-  private Marshaller getMarshaller(@Nullable Schema schemaParam, Map<String, ?> properties)
+  /**
+   * Get a {@link Marshaller} instance with the given configuration.
+   *
+   * <p>The instance is taken from the pool if possible, so every property that any caller sets is
+   * reset to its default first. Callers should put it back in the pool once it has been used
+   * successfully.
+   */
+  private Marshaller getMarshaller(
+      @Nullable Schema schemaParam, Map<String, ?> properties, OutputFormat format)
       throws JAXBException {
-    Marshaller marshaller = jaxbContext.createMarshaller();
+    Marshaller marshaller = marshallers.poll();
+    if (marshaller == null) {
+      marshaller = jaxbContext.createMarshaller();
+    }
+    marshaller.setProperty(Marshaller.JAXB_FRAGMENT, false);
+    marshaller.setProperty(Marshaller.JAXB_ENCODING, UTF_8.toString());
     for (Map.Entry<String, ?> entry : properties.entrySet()) {
       marshaller.setProperty(entry.getKey(), entry.getValue());
     }
-    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
+    marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, FORMATTED.equals(format));
     marshaller.setSchema(schemaParam);
     return marshaller;
   }
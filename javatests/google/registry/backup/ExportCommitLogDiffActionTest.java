@@ -35,6 +35,7 @@ import google.registry.model.ofy.CommitLogCheckpoint;
 import google.registry.model.ofy.CommitLogManifest;
 import google.registry.model.ofy.CommitLogMutation;
 import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
 import google.registry.testing.GcsTestingUtils;
 import google.registry.testing.TestObject;
 import java.util.List;
@@ -67,6 +68,8 @@ public class ExportCommitLogDiffActionTest {
     task.gcsService = gcsService;
     task.gcsBucket = "gcs bucket";
     task.batchSize = 5;
+    task.parallelism = 3;
+    task.clock = new FakeClock(now);
   }
 
   @Test
@@ -285,6 +288,44 @@ public class ExportCommitLogDiffActionTest {
             .inOrder();
   }
 
+  @Test
+  public void testRun_serial_exportsInOrder() throws Exception {
+    task.batchSize = 2;
+    task.parallelism = 1;
+    task.lowerCheckpointTime = oneMinuteAgo;
+    task.upperCheckpointTime = now;
+
+    persistResource(CommitLogCheckpoint.create(
+        oneMinuteAgo,
+        ImmutableMap.of(1, START_OF_TIME, 2, START_OF_TIME, 3, START_OF_TIME)));
+    CommitLogCheckpoint upperCheckpoint = persistResource(CommitLogCheckpoint.create(
+        now,
+        ImmutableMap.of(1, now, 2, now, 3, now)));
+
+    persistManifestAndMutation(3, oneMinuteAgo);
+    persistManifestAndMutation(1, now);
+    persistManifestAndMutation(2, oneMinuteAgo);
+
+    task.run();
+
+    List<ImmutableObject> exported =
+        deserializeEntities(
+            GcsTestingUtils.readGcsFile(
+                gcsService, new GcsFilename("gcs bucket", "commit_diff_until_" + now)));
+    CommitLogManifest manifest1 = createManifest(2, oneMinuteAgo);
+    CommitLogManifest manifest2 = createManifest(3, oneMinuteAgo);
+    CommitLogManifest manifest3 = createManifest(1, now);
+    assertThat(exported).containsExactly(
+        upperCheckpoint,
+        manifest1,
+        createMutation(manifest1),
+        manifest2,
+        createMutation(manifest2),
+        manifest3,
+        createMutation(manifest3))
+            .inOrder();
+  }
+
   @Test
   public void testRun_checkpointDiffWithNeverTouchedBuckets_exportsCorrectly() throws Exception {
     task.lowerCheckpointTime = oneMinuteAgo;
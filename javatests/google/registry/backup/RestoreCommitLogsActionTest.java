@@ -87,6 +87,8 @@ public class RestoreCommitLogsActionTest {
     action.diffLister.gcsService = gcsService;
     action.diffLister.gcsBucket = GCS_BUCKET;
     action.diffLister.executor = newDirectExecutorService();
+    action.executor = newDirectExecutorService();
+    action.clock = new FakeClock(now);
   }
 
   @Test
@@ -226,6 +228,63 @@ public class RestoreCommitLogsActionTest {
     assertCommitLogBuckets(ImmutableMap.of(1, now));
   }
 
+  @Test
+  public void testRestore_sameKeyInSeveralTransactions_appliedInCommitOrder() throws Exception {
+    // 1: Add {"a" = "1", "b"}
+    // 2: Add {"c"}, Delete {"a"}
+    // 3: Add {"a" = "3"}, Delete {"b"}
+    Key<CommitLogManifest> manifest1Key =
+        CommitLogManifest.createKey(getBucketKey(1), now.minusMinutes(3));
+    Key<CommitLogManifest> manifest2Key =
+        CommitLogManifest.createKey(getBucketKey(2), now.minusMinutes(2));
+    Key<CommitLogManifest> manifest3Key =
+        CommitLogManifest.createKey(getBucketKey(3), now.minusMinutes(1));
+    saveDiffFileNotToRestore(now.minusMinutes(1));
+    Iterable<ImmutableObject> commitLogs = saveDiffFile(
+        createCheckpoint(now),
+        CommitLogManifest.create(getBucketKey(1), now.minusMinutes(3), null),
+        CommitLogMutation.create(manifest1Key, TestObject.create("a", "1")),
+        CommitLogMutation.create(manifest1Key, TestObject.create("b")),
+        CommitLogManifest.create(
+            getBucketKey(2),
+            now.minusMinutes(2),
+            ImmutableSet.of(Key.create(TestObject.create("a")))),
+        CommitLogMutation.create(manifest2Key, TestObject.create("c")),
+        CommitLogManifest.create(
+            getBucketKey(3),
+            now.minusMinutes(1),
+            ImmutableSet.of(Key.create(TestObject.create("b")))),
+        CommitLogMutation.create(manifest3Key, TestObject.create("a", "3")));
+    action.run();
+    ofy().clearSessionCache();
+    assertExpectedIds("a", "c");
+    assertThat(ofy().load().entity(TestObject.create("a")).now().getField()).isEqualTo("3");
+    assertInDatastore(commitLogs);
+    assertInDatastore(asList(CommitLogCheckpointRoot.create(now)));
+    assertCommitLogBuckets(
+        ImmutableMap.of(1, now.minusMinutes(3), 2, now.minusMinutes(2), 3, now.minusMinutes(1)));
+  }
+
+  @Test
+  public void testRestore_dryRun_writesNothing() throws Exception {
+    ofy().saveWithoutBackup().entity(TestObject.create("previous to keep")).now();
+    saveDiffFileNotToRestore(now.minusMinutes(1));
+    Key<CommitLogManifest> manifestKey = CommitLogManifest.createKey(getBucketKey(1), now);
+    saveDiffFile(
+        createCheckpoint(now),
+        CommitLogManifest.create(
+            getBucketKey(1),
+            now,
+            ImmutableSet.of(Key.create(TestObject.create("previous to keep")))),
+        CommitLogMutation.create(manifestKey, TestObject.create("a")));
+    action.dryRun = true;
+    action.run();
+    ofy().clearSessionCache();
+    assertExpectedIds("previous to keep");
+    assertThat(ofy().load().type(CommitLogManifest.class)).isEmpty();
+    assertThat(ofy().load().type(CommitLogCheckpointRoot.class)).isEmpty();
+  }
+
   // This should be harmless; deletes are idempotent.
   @Test
   public void testRestore_deleteMissingEntity() throws Exception {
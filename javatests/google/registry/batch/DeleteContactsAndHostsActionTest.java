@@ -634,6 +634,40 @@ public class DeleteContactsAndHostsActionTest
     verifyNoMoreInteractions(action.asyncFlowMetrics);
   }
 
+  @Test
+  public void testSuccess_host_referencedByActiveDomain_fullScan_doesNotGetDeleted()
+      throws Exception {
+    action.fullScan = true;
+    HostResource host = persistHostPendingDelete("ns1.example.tld");
+    persistUsedDomain("example.tld", persistActiveContact("abc456"), host);
+    DateTime timeEnqueued = clock.nowUtc();
+    enqueuer.enqueueAsyncDelete(
+        host,
+        timeEnqueued,
+        "TheRegistrar",
+        Trid.create("fakeClientTrid", "fakeServerTrid"),
+        false);
+    runMapreduce();
+    HostResource hostAfter =
+        loadByForeignKey(HostResource.class, "ns1.example.tld", clock.nowUtc()).get();
+    assertAboutHosts()
+        .that(hostAfter)
+        .doesNotHaveStatusValue(PENDING_DELETE)
+        .and()
+        .hasDeletionTime(END_OF_TIME);
+    assertNoTasksEnqueued(QUEUE_ASYNC_DELETE);
+    verify(action.asyncFlowMetrics).recordContactHostDeletionBatchSize(1L);
+    verify(action.asyncFlowMetrics)
+        .recordAsyncFlowResult(OperationType.HOST_DELETE, OperationResult.FAILURE, timeEnqueued);
+    verifyNoMoreInteractions(action.asyncFlowMetrics);
+  }
+
+  @Test
+  public void testSuccess_host_notReferenced_fullScan_getsDeleted() throws Exception {
+    action.fullScan = true;
+    runSuccessfulHostDeletionTest(Optional.of("fakeClientTrid"));
+  }
+
   @Test
   public void testSuccess_host_notReferenced_getsDeleted() throws Exception {
     runSuccessfulHostDeletionTest(Optional.of("fakeClientTrid"));
@@ -0,0 +1,122 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.batch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.testing.DatastoreHelper.createHistoryEntryForEppResource;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveDomain;
+import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.DatastoreHelper.persistSimpleResources;
+
+import google.registry.model.domain.DomainResource;
+import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
+import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
+import google.registry.testing.FakeResponse;
+import google.registry.testing.ShardableTestCase;
+import java.util.Collection;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RecountPollMessagesAction}. */
+@RunWith(JUnit4.class)
+public class RecountPollMessagesActionTest extends ShardableTestCase {
+
+  @Rule public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2019-03-01T10:00:00Z"));
+  private final FakeResponse response = new FakeResponse();
+  private final RecountPollMessagesAction action = new RecountPollMessagesAction();
+  private DomainResource domain;
+
+  @Before
+  public void setUp() {
+    createTld("tld");
+    domain = persistActiveDomain("example.tld");
+    action.clock = clock;
+    action.response = response;
+  }
+
+  private void persistPollMessage(String clientId, DateTime eventTime) {
+    persistResource(
+        new PollMessage.OneTime.Builder()
+            .setClientId(clientId)
+            .setEventTime(eventTime)
+            .setMsg("Some poll message.")
+            .setParent(createHistoryEntryForEppResource(domain))
+            .build());
+  }
+
+  private static Collection<PollMessageCounter> loadShards(String clientId) {
+    return ofy().load().keys(PollMessageCounter.createKeys(clientId)).values();
+  }
+
+  private static long getCount(String clientId) {
+    return loadShards(clientId).stream().mapToLong(PollMessageCounter::getCount).sum();
+  }
+
+  @Test
+  public void testSuccess_countsDueMessagesOfEachRegistrar() {
+    persistPollMessage("TheRegistrar", clock.nowUtc().minusDays(2));
+    persistPollMessage("TheRegistrar", clock.nowUtc().minusDays(1));
+    persistPollMessage("TheRegistrar", clock.nowUtc().plusDays(1));
+    persistPollMessage("NewRegistrar", clock.nowUtc().minusHours(1));
+    action.run();
+    assertThat(loadShards("TheRegistrar")).hasSize(PollMessageCounter.NUM_SHARDS);
+    assertThat(getCount("TheRegistrar")).isEqualTo(2);
+    assertThat(loadShards("NewRegistrar")).hasSize(PollMessageCounter.NUM_SHARDS);
+    assertThat(getCount("NewRegistrar")).isEqualTo(1);
+    assertThat(response.getPayload()).isEqualTo("Recounted the poll messages of 2 registrars.");
+  }
+
+  @Test
+  public void testSuccess_overwritesDriftedCounters() {
+    persistSimpleResources(
+        PollMessageCounter.create("TheRegistrar", 10, clock.nowUtc().minusDays(3)));
+    persistPollMessage("TheRegistrar", clock.nowUtc().minusDays(1));
+    action.run();
+    assertThat(getCount("TheRegistrar")).isEqualTo(1);
+    assertThat(
+            loadShards("TheRegistrar").stream()
+                .map(PollMessageCounter::getCountedThrough)
+                .distinct())
+        .containsExactly(clock.nowUtc().minus(PollMessageCounter.RECOUNT_LAG));
+  }
+
+  @Test
+  public void testSuccess_leavesRecentMessagesUncounted() {
+    // Such a message may have been created by a flow that commits after the recount, so it is left
+    // to the query of the poll flows, whether or not it has been committed yet.
+    persistPollMessage("TheRegistrar", clock.nowUtc().minus(PollMessageCounter.RECOUNT_LAG));
+    persistPollMessage("TheRegistrar", clock.nowUtc().minusMinutes(1));
+    action.run();
+    assertThat(getCount("TheRegistrar")).isEqualTo(1);
+  }
+
+  @Test
+  public void testSuccess_noMessages() {
+    action.run();
+    assertThat(loadShards("TheRegistrar")).hasSize(PollMessageCounter.NUM_SHARDS);
+    assertThat(getCount("TheRegistrar")).isEqualTo(0);
+  }
+}
@@ -158,6 +158,40 @@ public class RefreshDnsOnHostRenameActionTest
     verifyNoMoreInteractions(action.asyncFlowMetrics);
   }
 
+  @Test
+  public void testSuccess_fullScan_dnsUpdateEnqueued() throws Exception {
+    action.fullScan = true;
+    HostResource host = persistActiveHost("ns1.example.tld");
+    persistResource(newDomainResource("example.tld", host));
+    persistResource(newDomainResource("otherexample.tld", host));
+    persistResource(newDomainResource("untouched.tld", persistActiveHost("ns2.example.tld")));
+    DateTime timeEnqueued = clock.nowUtc();
+    enqueuer.enqueueAsyncDnsRefresh(host, timeEnqueued);
+    runMapreduce();
+    assertDnsTasksEnqueued("example.tld", "otherexample.tld");
+    assertNoTasksEnqueued(QUEUE_ASYNC_HOST_RENAME);
+    verify(action.asyncFlowMetrics).recordDnsRefreshBatchSize(1L);
+    verify(action.asyncFlowMetrics)
+        .recordAsyncFlowResult(DNS_REFRESH, OperationResult.SUCCESS, timeEnqueued);
+    verifyNoMoreInteractions(action.asyncFlowMetrics);
+  }
+
+  @Test
+  public void testSuccess_deletedDomain_notRefreshed() throws Exception {
+    HostResource host = persistActiveHost("ns1.example.tld");
+    persistResource(newDomainResource("example.tld", host));
+    persistResource(
+        newDomainResource("deleted.tld", host)
+            .asBuilder()
+            .setDeletionTime(clock.nowUtc().minusDays(1))
+            .build());
+    DateTime timeEnqueued = clock.nowUtc();
+    enqueuer.enqueueAsyncDnsRefresh(host, timeEnqueued);
+    runMapreduce();
+    assertDnsTasksEnqueued("example.tld");
+    assertNoTasksEnqueued(QUEUE_ASYNC_HOST_RENAME);
+  }
+
   @Test
   public void testSuccess_multipleHostsProcessedInBatch() throws Exception {
     HostResource host1 = persistActiveHost("ns1.example.tld");
@@ -0,0 +1,186 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.DatastoreHelper.createTld;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Update;
+
+/**
+ * End-to-end tests for {@link DnsMessageTransport} against a {@link FakeDnsServer}.
+ *
+ * <p>The server delays each response, so that the tests can tell how many round trips the
+ * transport waited for.
+ */
+@RunWith(JUnit4.class)
+public class DnsMessageTransportEndToEndTest {
+
+  private static final String UPDATE_HOST = "127.0.0.1";
+  private static final Duration RESPONSE_DELAY = Duration.millis(100);
+
+  @Rule
+  public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
+
+  private final FakeClock clock = new FakeClock(DateTime.parse("2019-01-01T00:00:00Z"));
+  private final DnsConnectionPool connectionPool = new DnsConnectionPool(clock);
+  private FakeDnsServer server;
+
+  @After
+  public void after() throws Exception {
+    if (server != null) {
+      server.close();
+    }
+  }
+
+  private DnsMessageTransport createTransport(Duration responseDelay) throws Exception {
+    server = new FakeDnsServer(responseDelay);
+    return new DnsMessageTransport(
+        server.socketFactory(), connectionPool, UPDATE_HOST, Duration.standardSeconds(10));
+  }
+
+  private static ImmutableList<Update> createUpdates(int count) throws Exception {
+    ImmutableList.Builder<Update> updates = new ImmutableList.Builder<>();
+    for (int i = 0; i < count; i++) {
+      Update update = new Update(Name.fromString("tld."));
+      update.getHeader().setID(i);
+      updates.add(update);
+    }
+    return updates.build();
+  }
+
+  @Test
+  public void testSendAll_pipelinesMessages() throws Exception {
+    DnsMessageTransport transport = createTransport(RESPONSE_DELAY);
+    int messageCount = 4 * DnsMessageTransport.MAX_MESSAGES_IN_FLIGHT;
+    ImmutableList<Update> updates = createUpdates(messageCount);
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    ImmutableList<Message> responses = transport.sendAll(updates);
+    long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    assertThat(responses).hasSize(messageCount);
+    for (int i = 0; i < messageCount; i++) {
+      assertThat(responses.get(i).getHeader().getID()).isEqualTo(i);
+      assertThat(responses.get(i).getRcode()).isEqualTo(Rcode.NOERROR);
+    }
+    assertThat(server.getConnectionCount()).isEqualTo(1);
+    assertThat(server.getMaxMessagesInFlight()).isGreaterThan(1);
+    assertThat(server.getMaxMessagesInFlight())
+        .isAtMost(DnsMessageTransport.MAX_MESSAGES_IN_FLIGHT);
+    // Waiting for each response before sending the next message would take a round trip per
+    // message. Pipelined, it takes a few round trips in all.
+    assertThat(elapsedMillis).isLessThan(messageCount * RESPONSE_DELAY.getMillis() / 4);
+  }
+
+  @Test
+  public void testSend_reusesConnection() throws Exception {
+    DnsMessageTransport transport = createTransport(Duration.ZERO);
+    for (Update update : createUpdates(10)) {
+      assertThat(transport.send(update).getRcode()).isEqualTo(Rcode.NOERROR);
+    }
+    assertThat(server.getReceivedMessages()).hasSize(10);
+    assertThat(server.getConnectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSend_connectionClosedByServer_reconnects() throws Exception {
+    DnsMessageTransport transport = createTransport(Duration.ZERO);
+    ImmutableList<Update> updates = createUpdates(2);
+    transport.send(updates.get(0));
+    server.closeConnections();
+    assertThat(transport.send(updates.get(1)).getRcode()).isEqualTo(Rcode.NOERROR);
+    assertThat(server.getConnectionCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSend_concurrentRequests_shareConnections() throws Exception {
+    DnsMessageTransport transport = createTransport(Duration.millis(10));
+    int threads = 8;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Callable<Void>> requests = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        requests.add(
+            () -> {
+              for (Update update : createUpdates(10)) {
+                assertThat(transport.send(update).getRcode()).isEqualTo(Rcode.NOERROR);
+              }
+              return null;
+            });
+      }
+      for (Future<Void> result : executor.invokeAll(requests)) {
+        result.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(server.getReceivedMessages()).hasSize(threads * 10);
+    assertThat(server.getConnectionCount()).isAtMost(threads);
+  }
+
+  @Test
+  public void testDnsUpdateWriter_largeBatch_splitAndPipelined() throws Exception {
+    createTld("tld");
+    DnsMessageTransport transport = createTransport(RESPONSE_DELAY);
+    DnsUpdateWriter writer =
+        new DnsUpdateWriter("tld", Duration.ZERO, Duration.ZERO, Duration.ZERO, transport, clock);
+    // An empty UPDATE message is 21 bytes, and the delete record of each domain another 21 bytes,
+    // so each message has room for two domains.
+    writer.maxUpdateLength = 70;
+    for (int i = 1; i <= 40; i++) {
+      writer.publishDomain("example" + i + ".tld");
+    }
+
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    writer.commit();
+    long elapsedMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+    ImmutableList<Message> messages = server.getReceivedMessages();
+    assertThat(messages).hasSize(20);
+    for (Message message : messages) {
+      assertThat(message.toWire().length).isAtMost(70);
+    }
+    assertThat(
+            messages.stream()
+                .map(message -> message.getHeader().getID())
+                .distinct()
+                .count())
+        .isEqualTo(20);
+    assertThat(server.getConnectionCount()).isEqualTo(1);
+    assertThat(elapsedMillis).isLessThan(20 * RESPONSE_DELAY.getMillis() / 2);
+  }
+}
@@ -18,10 +18,15 @@ import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.testing.JUnitBackports.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.base.VerifyException;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Bytes;
+import google.registry.testing.FakeClock;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
@@ -32,6 +37,7 @@ import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import javax.net.SocketFactory;
+import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Test;
@@ -56,6 +62,8 @@ public class DnsMessageTransportTest {
 
   private final SocketFactory mockFactory = mock(SocketFactory.class);
   private final Socket mockSocket = mock(Socket.class);
+  private final FakeClock clock = new FakeClock(DateTime.parse("2019-01-01T00:00:00Z"));
+  private final DnsConnectionPool connectionPool = new DnsConnectionPool(clock);
 
   private Message simpleQuery;
   private Message expectedResponse;
@@ -67,7 +75,7 @@ public class DnsMessageTransportTest {
     expectedResponse = responseMessageWithCode(simpleQuery, Rcode.NOERROR);
     when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
         .thenReturn(mockSocket);
-    resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, Duration.ZERO);
+    resolver = new DnsMessageTransport(mockFactory, connectionPool, UPDATE_HOST, Duration.ZERO);
   }
 
   @Test
@@ -119,7 +127,8 @@ public class DnsMessageTransportTest {
     when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
 
     Duration testTimeout = Duration.standardSeconds(1);
-    DnsMessageTransport resolver = new DnsMessageTransport(mockFactory, UPDATE_HOST, testTimeout);
+    DnsMessageTransport resolver =
+        new DnsMessageTransport(mockFactory, connectionPool, UPDATE_HOST, testTimeout);
     Message expectedQuery = new Message();
     assertThrows(SocketTimeoutException.class, () -> resolver.send(expectedQuery));
     verify(mockSocket).setSoTimeout((int) testTimeout.getMillis());
@@ -171,6 +180,112 @@ public class DnsMessageTransportTest {
         .contains("response opcode 'STATUS' does not match query opcode 'QUERY'");
   }
 
+  @Test
+  public void testConnectionIsReused() throws Exception {
+    byte[] responseBytes = messageToBytesWithLength(expectedResponse);
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(Bytes.concat(responseBytes, responseBytes)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+
+    resolver.send(simpleQuery);
+    resolver.send(simpleQuery);
+
+    verify(mockFactory, times(1)).createSocket(InetAddress.getByName(UPDATE_HOST), 53);
+    verify(mockSocket, never()).close();
+  }
+
+  @Test
+  public void testIdleConnectionIsClosed() throws Exception {
+    Socket otherSocket = mock(Socket.class);
+    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+        .thenReturn(mockSocket, otherSocket);
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    when(otherSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(otherSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+
+    resolver.send(simpleQuery);
+    clock.advanceBy(DnsConnectionPool.MAX_IDLE_TIME.plus(1));
+    resolver.send(simpleQuery);
+
+    verify(mockSocket).close();
+    verify(mockFactory, times(2)).createSocket(InetAddress.getByName(UPDATE_HOST), 53);
+  }
+
+  @Test
+  public void testBrokenPooledConnection_retriesOnNewConnection() throws Exception {
+    Socket otherSocket = mock(Socket.class);
+    when(mockFactory.createSocket(InetAddress.getByName(UPDATE_HOST), DnsMessageTransport.DNS_PORT))
+        .thenReturn(mockSocket, otherSocket);
+    // The pooled connection is closed by the server after the first response.
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(mockSocket.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    when(otherSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(messageToBytesWithLength(expectedResponse)));
+    when(otherSocket.getOutputStream()).thenReturn(outputStream);
+
+    resolver.send(simpleQuery);
+    Message actualResponse = resolver.send(simpleQuery);
+
+    verify(mockSocket).close();
+    assertThat(base16().encode(actualResponse.toWire()))
+        .isEqualTo(base16().encode(expectedResponse.toWire()));
+    assertThat(outputStream.toByteArray()).isEqualTo(messageToBytesWithLength(simpleQuery));
+  }
+
+  @Test
+  public void testSendAll_responsesOutOfOrder() throws Exception {
+    ImmutableList.Builder<Message> queries = new ImmutableList.Builder<>();
+    ImmutableList.Builder<Message> expectedResponses = new ImmutableList.Builder<>();
+    ByteArrayOutputStream responseBytes = new ByteArrayOutputStream();
+    ByteArrayOutputStream expectedOutput = new ByteArrayOutputStream();
+    for (int i = 0; i < DnsMessageTransport.MAX_MESSAGES_IN_FLIGHT + 4; i += 2) {
+      Message query = new Update(Name.fromString("tld", Name.root));
+      query.getHeader().setID(i);
+      Message nextQuery = new Update(Name.fromString("tld", Name.root));
+      nextQuery.getHeader().setID(i + 1);
+      Message response = responseMessageWithCode(query, Rcode.NOERROR);
+      Message nextResponse = responseMessageWithCode(nextQuery, Rcode.NOERROR);
+      queries.add(query, nextQuery);
+      expectedResponses.add(response, nextResponse);
+      expectedOutput.write(messageToBytesWithLength(query));
+      expectedOutput.write(messageToBytesWithLength(nextQuery));
+      // The server answers each pair of queries in reverse order.
+      responseBytes.write(messageToBytesWithLength(nextResponse));
+      responseBytes.write(messageToBytesWithLength(response));
+    }
+    when(mockSocket.getInputStream())
+        .thenReturn(new ByteArrayInputStream(responseBytes.toByteArray()));
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    when(mockSocket.getOutputStream()).thenReturn(outputStream);
+
+    ImmutableList<Message> actualResponses = resolver.sendAll(queries.build());
+
+    assertThat(outputStream.toByteArray()).isEqualTo(expectedOutput.toByteArray());
+    assertThat(actualResponses).hasSize(expectedResponses.build().size());
+    for (int i = 0; i < actualResponses.size(); i++) {
+      assertThat(base16().encode(actualResponses.get(i).toWire()))
+          .isEqualTo(base16().encode(expectedResponses.build().get(i).toWire()));
+    }
+    verify(mockFactory, times(1)).createSocket(InetAddress.getByName(UPDATE_HOST), 53);
+  }
+
+  @Test
+  public void testSendAll_duplicateIdsThrowsException() throws Exception {
+    Message otherQuery = new Message(simpleQuery.getHeader().getID());
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> resolver.sendAll(ImmutableList.of(simpleQuery, otherQuery)));
+    assertThat(thrown)
+        .hasMessageThat()
+        .contains("Duplicate DNS message ID " + simpleQuery.getHeader().getID());
+  }
+
   private Message responseMessageWithCode(Message query, int responseCode) {
     Message message = new Message(query.getHeader().getID());
     message.getHeader().setOpcode(query.getHeader().getOpcode());
@@ -14,6 +14,7 @@
 
 package google.registry.dns.writer.dnsupdate;
 
+import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static com.google.common.io.BaseEncoding.base16;
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assert_;
@@ -49,6 +50,7 @@ import google.registry.testing.MockitoJUnitRule;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import org.joda.time.DateTime;
 import org.joda.time.Duration;
 import org.junit.Before;
@@ -82,6 +84,7 @@ public class DnsUpdateWriterTest {
 
   @Mock private DnsMessageTransport mockResolver;
   @Captor private ArgumentCaptor<Update> updateCaptor;
+  @Captor private ArgumentCaptor<List<Update>> updatesCaptor;
 
   private final FakeClock clock = new FakeClock(DateTime.parse("1971-01-01TZ"));
 
@@ -176,6 +179,58 @@ public class DnsUpdateWriterTest {
     assertThatTotalUpdateSetsIs(update, 4); // The delete and NS sets for each TLD
   }
 
+  @Test
+  public void testPublishLargeBatch_splitsUpdates() throws Exception {
+    // An empty UPDATE message is 21 bytes, and the delete record of each domain another 21 bytes,
+    // so each message has room for two domains.
+    writer.maxUpdateLength = 70;
+    when(mockResolver.sendAll(any()))
+        .thenReturn(
+            ImmutableList.of(
+                messageWithResponseCode(Rcode.NOERROR),
+                messageWithResponseCode(Rcode.NOERROR),
+                messageWithResponseCode(Rcode.NOERROR)));
+
+    for (int i = 1; i <= 5; i++) {
+      writer.publishDomain("example" + i + ".tld");
+    }
+    writer.commit();
+
+    verify(mockResolver).sendAll(updatesCaptor.capture());
+    List<Update> updates = updatesCaptor.getValue();
+    assertThat(updates).hasSize(3);
+    assertThatUpdateDeletes(updates.get(0), "example1.tld.", Type.ANY);
+    assertThatUpdateDeletes(updates.get(0), "example2.tld.", Type.ANY);
+    assertThatTotalUpdateSetsIs(updates.get(0), 2);
+    assertThatUpdateDeletes(updates.get(1), "example3.tld.", Type.ANY);
+    assertThatUpdateDeletes(updates.get(1), "example4.tld.", Type.ANY);
+    assertThatTotalUpdateSetsIs(updates.get(1), 2);
+    assertThatUpdateDeletes(updates.get(2), "example5.tld.", Type.ANY);
+    assertThatTotalUpdateSetsIs(updates.get(2), 1);
+    for (Update update : updates) {
+      assertThatUpdatedZoneIs(update, "tld.");
+      assertThat(update.toWire().length).isAtMost(70);
+    }
+    assertThat(
+            updates.stream().map(update -> update.getHeader().getID()).collect(toImmutableSet()))
+        .hasSize(3);
+  }
+
+  @Test
+  public void testPublishLargeBatch_failsIfAnyUpdateFails() throws Exception {
+    writer.maxUpdateLength = 70;
+    when(mockResolver.sendAll(any()))
+        .thenReturn(
+            ImmutableList.of(
+                messageWithResponseCode(Rcode.NOERROR), messageWithResponseCode(Rcode.SERVFAIL)));
+
+    writer.publishDomain("example1.tld");
+    writer.publishDomain("example2.tld");
+    writer.publishDomain("example3.tld");
+    VerifyException thrown = assertThrows(VerifyException.class, writer::commit);
+    assertThat(thrown).hasMessageThat().contains("SERVFAIL");
+  }
+
   @Test
   public void testPublishDomainCreate_publishesDelegationSigner() throws Exception {
     DomainResource domain =
@@ -0,0 +1,187 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.dns.writer.dnsupdate;
+
+import com.google.common.collect.ImmutableList;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.SocketFactory;
+import org.joda.time.Duration;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+
+/**
+ * An in-process DNS server, on the loopback interface, that answers every message with NOERROR.
+ *
+ * <p>Each response is sent a fixed delay after its query is received, whether or not the responses
+ * to earlier queries have been sent, the way the round trip to a remote server delays them. So a
+ * client that pipelines its queries gets their responses sooner than one that waits for each
+ * response before sending the next query.
+ *
+ * <p>The server keeps track of the connections, the messages it receives, and the largest number
+ * of messages it has received but not answered yet on a connection.
+ */
+final class FakeDnsServer implements AutoCloseable {
+
+  private final Duration responseDelay;
+  private final ServerSocket serverSocket;
+  private final ExecutorService connectionExecutor = Executors.newCachedThreadPool();
+  private final ScheduledExecutorService responseExecutor = Executors.newScheduledThreadPool(4);
+  private final List<Socket> connections = new ArrayList<>();
+  private final List<Message> receivedMessages = new ArrayList<>();
+  private final AtomicInteger maxMessagesInFlight = new AtomicInteger();
+
+  FakeDnsServer(Duration responseDelay) throws IOException {
+    this.responseDelay = responseDelay;
+    this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    connectionExecutor.execute(this::acceptConnections);
+  }
+
+  /**
+   * Returns a factory for sockets connected to this server.
+   *
+   * <p>The port that sockets are created for is ignored, since the server doesn't listen on the
+   * standard DNS port.
+   */
+  SocketFactory socketFactory() {
+    return new SocketFactory() {
+      @Override
+      public Socket createSocket(String host, int port) throws IOException {
+        return new Socket(host, serverSocket.getLocalPort());
+      }
+
+      @Override
+      public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+          throws IOException {
+        return new Socket(host, serverSocket.getLocalPort(), localHost, localPort);
+      }
+
+      @Override
+      public Socket createSocket(InetAddress host, int port) throws IOException {
+        return new Socket(host, serverSocket.getLocalPort());
+      }
+
+      @Override
+      public Socket createSocket(
+          InetAddress address, int port, InetAddress localAddress, int localPort)
+          throws IOException {
+        return new Socket(address, serverSocket.getLocalPort(), localAddress, localPort);
+      }
+    };
+  }
+
+  /** Returns the number of connections accepted so far. */
+  synchronized int getConnectionCount() {
+    return connections.size();
+  }
+
+  /** Returns the messages received so far, in the order they were received. */
+  synchronized ImmutableList<Message> getReceivedMessages() {
+    return ImmutableList.copyOf(receivedMessages);
+  }
+
+  /** Returns the largest number of messages received but not yet answered on a connection. */
+  int getMaxMessagesInFlight() {
+    return maxMessagesInFlight.get();
+  }
+
+  /** Closes all the connections, as a server dropping idle connections would. */
+  synchronized void closeConnections() throws IOException {
+    for (Socket connection : connections) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    serverSocket.close();
+    closeConnections();
+    connectionExecutor.shutdownNow();
+    responseExecutor.shutdownNow();
+  }
+
+  private void acceptConnections() {
+    try {
+      while (true) {
+        Socket connection = serverSocket.accept();
+        synchronized (this) {
+          connections.add(connection);
+        }
+        connectionExecutor.execute(() -> serve(connection));
+      }
+    } catch (IOException e) {
+      // The server socket was closed.
+    }
+  }
+
+  /** Reads the messages of a connection, and schedules a response to each one. */
+  private void serve(Socket connection) {
+    AtomicInteger messagesInFlight = new AtomicInteger();
+    try {
+      DataInputStream input = new DataInputStream(connection.getInputStream());
+      DataOutputStream output = new DataOutputStream(connection.getOutputStream());
+      while (true) {
+        byte[] messageData = new byte[input.readUnsignedShort()];
+        input.readFully(messageData);
+        Message query = new Message(messageData);
+        synchronized (this) {
+          receivedMessages.add(query);
+        }
+        maxMessagesInFlight.accumulateAndGet(messagesInFlight.incrementAndGet(), Math::max);
+        ScheduledFuture<?> unusedFuture =
+            responseExecutor.schedule(
+                () -> respond(query, output, messagesInFlight),
+                responseDelay.getMillis(),
+                TimeUnit.MILLISECONDS);
+      }
+    } catch (IOException e) {
+      // The client closed the connection, or the server did.
+    }
+  }
+
+  private void respond(Message query, DataOutputStream output, AtomicInteger messagesInFlight) {
+    Message response = new Message(query.getHeader().getID());
+    response.getHeader().setOpcode(query.getHeader().getOpcode());
+    response.getHeader().setFlag(Flags.QR);
+    response.getHeader().setRcode(Rcode.NOERROR);
+    byte[] responseData = response.toWire();
+    try {
+      synchronized (output) {
+        messagesInFlight.decrementAndGet();
+        output.writeShort(responseData.length);
+        output.write(responseData);
+        output.flush();
+      }
+    } catch (SocketException e) {
+      // The connection was closed before the response could be sent.
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
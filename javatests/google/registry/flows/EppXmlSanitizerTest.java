@@ -16,12 +16,17 @@ package google.registry.flows;
 
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.flows.EppXmlSanitizer.sanitizeEppXml;
+import static google.registry.model.eppcommon.EppXmlTransformer.unmarshal;
+import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.testing.TestDataHelper.loadBytes;
 import static java.nio.charset.StandardCharsets.UTF_16LE;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.common.collect.ImmutableMap;
+import google.registry.flows.EppXmlSanitizer.SanitizedXmlCapture;
+import google.registry.model.eppinput.EppInput;
 import google.registry.testing.EppLoader;
+import google.registry.xml.XmlException;
 import java.util.Base64;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -138,4 +143,48 @@ public class EppXmlSanitizerTest {
     String sanitizedXml = sanitizeEppXml(inputXml.getBytes(UTF_16LE));
     assertThat(sanitizedXml).isEqualTo(inputXml);
   }
+
+  @Test
+  public void testCapture_loginPasswords_sanitizedWhileUnmarshaling() throws Exception {
+    byte[] inputXmlBytes =
+        new EppLoader(
+                this,
+                "login_update_password.xml",
+                ImmutableMap.of("PW", "oldpass", "NEWPW", "newPassword"))
+            .getEppXml()
+            .getBytes(UTF_8);
+    SanitizedXmlCapture capture = new SanitizedXmlCapture(inputXmlBytes);
+    EppInput eppInput = unmarshal(EppInput.class, inputXmlBytes, capture);
+    assertThat(eppInput.getCommandType()).isEqualTo("login");
+    assertThat(capture.getSanitizedXml()).isEqualTo(sanitizeEppXml(inputXmlBytes));
+    assertThat(capture.getSanitizedXml()).doesNotContain("oldpass");
+  }
+
+  @Test
+  public void testCapture_contactAuthInfo_sanitizedWhileUnmarshaling() throws Exception {
+    byte[] inputXmlBytes = loadBytes(getClass(), "contact_info.xml").read();
+    SanitizedXmlCapture capture = new SanitizedXmlCapture(inputXmlBytes);
+    unmarshal(EppInput.class, inputXmlBytes, capture);
+    assertThat(capture.getSanitizedXml())
+        .isEqualTo(
+            UTF8_HEADER
+                + new EppLoader(this, "contact_info_sanitized.xml", ImmutableMap.of())
+                    .getEppXml());
+  }
+
+  @Test
+  public void testCapture_unmarshalingFailed_fallsBackToSanitizer() {
+    byte[] inputXmlBytes = "<pw>".getBytes(UTF_8);
+    SanitizedXmlCapture capture = new SanitizedXmlCapture(inputXmlBytes);
+    assertThrows(XmlException.class, () -> unmarshal(EppInput.class, inputXmlBytes, capture));
+    assertThat(capture.getSanitizedXml())
+        .isEqualTo(Base64.getMimeEncoder().encodeToString(inputXmlBytes));
+  }
+
+  @Test
+  public void testCapture_notUsed_fallsBackToSanitizer() {
+    byte[] inputXmlBytes = "<pw>\u007F\u4E43x</pw>".getBytes(UTF_8);
+    assertThat(new SanitizedXmlCapture(inputXmlBytes).getSanitizedXml())
+        .isEqualTo(UTF8_HEADER + "<pw>C**</pw>\n");
+  }
 }
@@ -74,7 +74,7 @@ public class FlowRunnerTest extends ShardableTestCase {
     flowRunner.eppRequestSource = EppRequestSource.UNIT_TEST;
     flowRunner.flowProvider = TestCommandFlow::new;
     flowRunner.flowClass = TestCommandFlow.class;
-    flowRunner.inputXmlBytes = "<xml/>".getBytes(UTF_8);
+    flowRunner.sanitizedInputXml = () -> EppXmlSanitizer.sanitizeEppXml("<xml/>".getBytes(UTF_8));
     flowRunner.isDryRun = false;
     flowRunner.isSuperuser = false;
     flowRunner.isTransactional = false;
@@ -178,7 +178,8 @@ public class FlowRunnerTest extends ShardableTestCase {
   public void testRun_loggingStatement_complexEppInput() throws Exception {
     String domainCreateXml = loadFile(getClass(), "domain_create_prettyprinted.xml");
     String sanitizedDomainCreateXml = domainCreateXml.replace("2fooBAR", "*******");
-    flowRunner.inputXmlBytes = domainCreateXml.getBytes(UTF_8);
+    flowRunner.sanitizedInputXml =
+        () -> EppXmlSanitizer.sanitizeEppXml(domainCreateXml.getBytes(UTF_8));
     flowRunner.run(eppMetricBuilder);
     String logMessage = findFirstLogMessageByPrefix(handler, "EPP Command\n\t");
     List<String> lines = Splitter.on("\n\t").splitToList(logMessage);
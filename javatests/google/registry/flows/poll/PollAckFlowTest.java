@@ -15,11 +15,13 @@
 package google.registry.flows.poll;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.testing.DatastoreHelper.createHistoryEntryForEppResource;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.newDomainResource;
 import static google.registry.testing.DatastoreHelper.persistActiveContact;
 import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.DatastoreHelper.persistSimpleResources;
 import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.util.DateTimeUtils.END_OF_TIME;
 
@@ -32,6 +34,7 @@ import google.registry.flows.poll.PollAckFlow.NotAuthorizedToAckMessageException
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainResource;
 import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
 import org.joda.time.DateTime;
 import org.junit.Before;
 import org.junit.Test;
@@ -170,6 +173,49 @@ public class PollAckFlowTest extends FlowTestCase<PollAckFlow> {
             ImmutableMap.of("MSGID", "1-3-EXAMPLE-4-3-2011", "COUNT", "4")));
   }
 
+  @Test
+  public void testSuccess_moreMessages_countedByPollMessageCounter() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      persistOneTimePollMessage(MESSAGE_ID + i);
+    }
+    // The counters are stale, which shows that the response count is taken from them.
+    persistSimpleResources(
+        PollMessageCounter.create(getClientIdForFlow(), 8, clock.nowUtc().minusHours(1)));
+    assertTransactionalFlow(true);
+    runFlowAssertResponse(
+        loadFile(
+            "poll_ack_response.xml",
+            ImmutableMap.of("MSGID", "1-3-EXAMPLE-4-3-2011", "COUNT", "7")));
+    assertThat(getPollMessageCount()).isEqualTo(7);
+  }
+
+  @Test
+  public void testSuccess_messageAfterCount_doesNotChangePollMessageCounter() throws Exception {
+    persistOneTimePollMessage(MESSAGE_ID);
+    persistSimpleResources(
+        PollMessageCounter.create(getClientIdForFlow(), 0, clock.nowUtc().minusDays(2)));
+    assertTransactionalFlow(true);
+    runFlowAssertResponse(loadFile("poll_ack_response_empty.xml"));
+    assertThat(getPollMessageCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void testSuccess_autorenewRescheduled_decrementsPollMessageCounter() throws Exception {
+    setEppInput("poll_ack.xml", ImmutableMap.of("MSGID", "1-3-EXAMPLE-4-3-2010"));
+    persistAutorenewPollMessage(clock.nowUtc().minusMonths(6), END_OF_TIME);
+    persistSimpleResources(
+        PollMessageCounter.create(getClientIdForFlow(), 1, clock.nowUtc().minusDays(1)));
+    assertTransactionalFlow(true);
+    runFlowAssertResponse(loadFile("poll_ack_response_empty.xml"));
+    assertThat(getPollMessageCount()).isEqualTo(0);
+  }
+
+  private long getPollMessageCount() {
+    return ofy().load().keys(PollMessageCounter.createKeys(getClientIdForFlow())).values().stream()
+        .mapToLong(PollMessageCounter::getCount)
+        .sum();
+  }
+
   @Test
   public void testFailure_noSuchMessage() throws Exception {
     assertTransactionalFlow(true);
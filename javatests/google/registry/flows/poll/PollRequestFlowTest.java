@@ -20,6 +20,7 @@ import static google.registry.testing.DatastoreHelper.newDomainResource;
 import static google.registry.testing.DatastoreHelper.persistActiveContact;
 import static google.registry.testing.DatastoreHelper.persistActiveHost;
 import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.DatastoreHelper.persistSimpleResources;
 import static google.registry.testing.EppExceptionSubject.assertAboutEppExceptions;
 import static google.registry.testing.JUnitBackports.assertThrows;
 
@@ -33,6 +34,7 @@ import google.registry.model.eppcommon.Trid;
 import google.registry.model.host.HostResource;
 import google.registry.model.poll.PendingActionNotificationResponse.DomainPendingActionNotificationResponse;
 import google.registry.model.poll.PollMessage;
+import google.registry.model.poll.PollMessageCounter;
 import google.registry.model.reporting.HistoryEntry;
 import google.registry.model.transfer.TransferResponse.ContactTransferResponse;
 import google.registry.model.transfer.TransferResponse.DomainTransferResponse;
@@ -87,6 +89,37 @@ public class PollRequestFlowTest extends FlowTestCase<PollRequestFlow> {
     runFlowAssertResponse(loadFile("poll_response_domain_transfer.xml"));
   }
 
+  @Test
+  public void testSuccess_messageCountedByPollMessageCounter() throws Exception {
+    persistPendingTransferPollMessage();
+    persistSimpleResources(
+        PollMessageCounter.create(getClientIdForFlow(), 1, clock.nowUtc().minusHours(1)));
+    assertTransactionalFlow(false);
+    runFlowAssertResponse(loadFile("poll_response_domain_transfer.xml"));
+  }
+
+  @Test
+  public void testSuccess_messageAfterPollMessageCounter() throws Exception {
+    persistPendingTransferPollMessage();
+    persistSimpleResources(
+        PollMessageCounter.create(getClientIdForFlow(), 0, clock.nowUtc().minusDays(2)));
+    assertTransactionalFlow(false);
+    runFlowAssertResponse(loadFile("poll_response_domain_transfer.xml"));
+  }
+
+  @Test
+  public void testSuccess_messageCommittedAfterRecount() throws Exception {
+    // The message is due as soon as it is created, but the flow creating it commits only after a
+    // recount that started a minute later, and that therefore didn't count the message.
+    DateTime recountTime = clock.nowUtc().minusDays(1).plusMinutes(1);
+    persistSimpleResources(
+        PollMessageCounter.create(
+            getClientIdForFlow(), 0, recountTime.minus(PollMessageCounter.RECOUNT_LAG)));
+    persistPendingTransferPollMessage();
+    assertTransactionalFlow(false);
+    runFlowAssertResponse(loadFile("poll_response_domain_transfer.xml"));
+  }
+
   @Test
   public void testSuccess_clTridNotSpecified() throws Exception {
     setEppInput("poll_no_cltrid.xml");
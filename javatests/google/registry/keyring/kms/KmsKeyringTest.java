@@ -24,9 +24,12 @@ import google.registry.model.server.KmsSecretRevision;
 import google.registry.model.server.KmsSecretRevision.Builder;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.BouncyCastleProviderRule;
+import google.registry.testing.FakeClock;
 import org.bouncycastle.openpgp.PGPKeyPair;
 import org.bouncycastle.openpgp.PGPPrivateKey;
 import org.bouncycastle.openpgp.PGPPublicKey;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -40,11 +43,23 @@ public class KmsKeyringTest {
 
   @Rule public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
 
+  private final FakeClock clock = new FakeClock(DateTime.parse("2019-03-01T00:00:00Z"));
+  private int decryptCalls;
+
+  private final KmsConnection kmsConnection =
+      new FakeKmsConnection() {
+        @Override
+        public byte[] decrypt(String cryptoKeyName, String encodedCiphertext) {
+          decryptCalls++;
+          return super.decrypt(cryptoKeyName, encodedCiphertext);
+        }
+      };
+
   private KmsKeyring keyring;
 
   @Before
   public void setUp() {
-    keyring = new KmsKeyring(new FakeKmsConnection());
+    keyring = new KmsKeyring(kmsConnection, Duration.standardHours(1), clock);
   }
 
   @Test
@@ -174,6 +189,62 @@ public class KmsKeyringTest {
     assertThat(jsonCredential).isEqualTo("json-credential-stringmoo");
   }
 
+  @Test
+  public void test_cachedSecret_notDecryptedAgain() {
+    saveCleartextSecret("marksdb-dnl-login-string");
+
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+    clock.advanceBy(Duration.standardMinutes(59));
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+
+    assertThat(decryptCalls).isEqualTo(1);
+  }
+
+  @Test
+  public void test_cachedSecret_decryptedAgainOnceExpired() {
+    saveCleartextSecret("marksdb-dnl-login-string");
+
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+    clock.advanceBy(Duration.standardHours(1));
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+
+    assertThat(decryptCalls).isEqualTo(2);
+  }
+
+  @Test
+  public void test_cachedSecret_decryptedAgainWhenUpdated() {
+    saveCleartextSecret("marksdb-dnl-login-string");
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+
+    persistSecret("marksdb-dnl-login-string", KeySerializer.serializeString("new-login"));
+
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("new-login");
+    assertThat(decryptCalls).isEqualTo(2);
+  }
+
+  @Test
+  public void test_cachedKeyPair_parsedFromUnmodifiedCopy() throws Exception {
+    saveKeyPairSecret("rde-signing-public", "rde-signing-private");
+
+    keyring.getRdeSigningKey();
+    PGPKeyPair rdeSigningKey = keyring.getRdeSigningKey();
+
+    assertThat(KeySerializer.serializeKeyPair(rdeSigningKey))
+        .isEqualTo(KeySerializer.serializeKeyPair(KmsTestHelper.getKeyPair()));
+    assertThat(decryptCalls).isEqualTo(1);
+  }
+
+  @Test
+  public void test_noCaching() {
+    keyring = new KmsKeyring(kmsConnection, Duration.ZERO, clock);
+    saveCleartextSecret("marksdb-dnl-login-string");
+
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+    assertThat(keyring.getMarksdbDnlLogin()).isEqualTo("marksdb-dnl-login-stringmoo");
+
+    assertThat(decryptCalls).isEqualTo(2);
+  }
+
   private static void persistSecret(String secretName, byte[] secretValue) {
     KmsConnection kmsConnection = new FakeKmsConnection();
 
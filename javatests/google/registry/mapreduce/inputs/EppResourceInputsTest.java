@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assert_;
 import static google.registry.mapreduce.inputs.EppResourceInputs.createEntityInput;
 import static google.registry.mapreduce.inputs.EppResourceInputs.createKeyInput;
+import static google.registry.mapreduce.inputs.EppResourceInputs.createLinkedDomainInput;
 import static google.registry.model.index.EppResourceIndexBucket.getBucketKey;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.newContactResource;
@@ -25,12 +26,16 @@ import static google.registry.testing.DatastoreHelper.newDomainApplication;
 import static google.registry.testing.DatastoreHelper.newDomainResource;
 import static google.registry.testing.DatastoreHelper.newHostResource;
 import static google.registry.testing.DatastoreHelper.persistActiveContact;
+import static google.registry.testing.DatastoreHelper.persistActiveHost;
 import static google.registry.testing.DatastoreHelper.persistEppResourceInFirstBucket;
 import static google.registry.testing.DatastoreHelper.persistResource;
 import static google.registry.testing.DatastoreHelper.persistSimpleResource;
 import static google.registry.testing.JUnitBackports.assertThrows;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
 
 import com.google.appengine.tools.mapreduce.InputReader;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
 import google.registry.model.EppResource;
 import google.registry.model.contact.ContactResource;
@@ -47,6 +52,7 @@ import java.io.ObjectOutputStream;
 import java.util.HashSet;
 import java.util.NoSuchElementException;
 import java.util.Set;
+import org.joda.time.DateTime;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -223,6 +229,71 @@ public class EppResourceInputsTest {
     assertThrows(NoSuchElementException.class, deserializedReader::next);
   }
 
+  @Test
+  public void testSuccess_entityReader_readsAcrossPages() throws Exception {
+    createTld("tld");
+    Set<DomainResource> domains = new HashSet<>();
+    for (int i = 1; i <= 5; i++) {
+      domains.add(persistEppResourceInFirstBucket(newDomainResource(i + ".tld")));
+    }
+    Set<DomainResource> seen = new HashSet<>();
+    InputReader<DomainResource> reader =
+        new EppResourceEntityReader<>(getBucketKey(1), ImmutableSet.of(DomainResource.class), 2);
+    reader.beginShard();
+    reader.beginSlice();
+    for (int i = 1; i <= 5; i++) {
+      seen.add(reader.next());
+      assertThat(reader.getProgress()).isWithin(EPSILON).of(i / 5.0);
+    }
+    assertThat(seen).containsExactlyElementsIn(domains);
+    assertThrows(NoSuchElementException.class, reader::next);
+  }
+
+  @Test
+  public void testSuccess_entityReader_survivesAcrossSerializationMidPage() throws Exception {
+    createTld("tld");
+    Set<DomainResource> domains = new HashSet<>();
+    for (int i = 1; i <= 5; i++) {
+      domains.add(persistEppResourceInFirstBucket(newDomainResource(i + ".tld")));
+    }
+    Set<DomainResource> seen = new HashSet<>();
+    InputReader<DomainResource> reader =
+        new EppResourceEntityReader<>(getBucketKey(1), ImmutableSet.of(DomainResource.class), 2);
+    reader.beginShard();
+    reader.beginSlice();
+    seen.add(reader.next());
+    seen.add(reader.next());
+    seen.add(reader.next());
+    assertThat(reader.getProgress()).isWithin(EPSILON).of(0.6);
+    // The resources that were read ahead are read again in the next slice.
+    reader.endSlice();
+    InputReader<DomainResource> deserializedReader = serializeAndDeserialize(reader);
+    deserializedReader.beginSlice();
+    assertThat(deserializedReader.getProgress()).isWithin(EPSILON).of(0.6);
+    seen.add(deserializedReader.next());
+    seen.add(deserializedReader.next());
+    assertThat(deserializedReader.getProgress()).isWithin(EPSILON).of(1);
+    deserializedReader.endSlice();
+    deserializedReader.endShard();
+    assertThat(seen).containsExactlyElementsIn(domains);
+    assertThrows(NoSuchElementException.class, deserializedReader::next);
+  }
+
+  @Test
+  public void testSuccess_entityReader_skipsMissingResources() throws Exception {
+    createTld("tld");
+    DomainResource domain = persistEppResourceInFirstBucket(newDomainResource("a.tld"));
+    persistResource(
+        EppResourceIndex.create(
+            getBucketKey(1), Key.create(DomainResource.class, "missing-ROID")));
+    InputReader<DomainResource> reader =
+        new EppResourceEntityReader<>(getBucketKey(1), ImmutableSet.of(DomainResource.class), 2);
+    reader.beginShard();
+    reader.beginSlice();
+    assertThat(reader.next()).isEqualTo(domain);
+    assertThrows(NoSuchElementException.class, reader::next);
+  }
+
   @Test
   public void testSuccess_entityReader_allowsPolymorphicMatches() throws Exception {
     createTld("tld");
@@ -304,4 +375,93 @@ public class EppResourceInputsTest {
     assertThat(seen).containsExactly(domain, host, application, contact);
     assertThrows(NoSuchElementException.class, reader::next);
   }
+
+  @Test
+  public void testLinkedDomainInput_oneReaderPerReferent() throws Exception {
+    createTld("tld");
+    HostResource host = persistActiveHost("ns1.example.com");
+    ContactResource contact = persistActiveContact("contact");
+    assertThat(
+            createLinkedDomainInput(
+                    ImmutableMap.of(
+                        Key.create(host), START_OF_TIME, Key.create(contact), START_OF_TIME),
+                    DomainBase.class)
+                .createReaders())
+        .hasSize(2);
+  }
+
+  @Test
+  public void testFailure_linkedDomainInput_noReferents() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> createLinkedDomainInput(ImmutableMap.of(), DomainBase.class));
+  }
+
+  @Test
+  public void testSuccess_linkedDomainReader_returnsOnlyLinkedDomains() throws Exception {
+    createTld("tld");
+    HostResource host = persistActiveHost("ns1.example.com");
+    DomainResource domainA = persistResource(newDomainResource("a.tld", host));
+    DomainResource domainB = persistResource(newDomainResource("b.tld", host));
+    persistResource(newDomainResource("c.tld", persistActiveHost("ns2.example.com")));
+    Set<DomainResource> seen = new HashSet<>();
+    InputReader<DomainResource> reader =
+        createLinkedDomainInput(
+                ImmutableMap.of(Key.create(host), START_OF_TIME), DomainResource.class)
+            .createReaders()
+            .get(0);
+    reader.beginShard();
+    reader.beginSlice();
+    assertThat(reader.getProgress()).isWithin(EPSILON).of(0);
+    seen.add(reader.next());
+    assertThat(reader.getProgress()).isWithin(EPSILON).of(0.5);
+    reader.endSlice();
+    InputReader<DomainResource> deserializedReader = serializeAndDeserialize(reader);
+    deserializedReader.beginSlice();
+    seen.add(deserializedReader.next());
+    assertThat(deserializedReader.getProgress()).isWithin(EPSILON).of(1);
+    deserializedReader.endSlice();
+    deserializedReader.endShard();
+    assertThat(seen).containsExactly(domainA, domainB);
+    assertThrows(NoSuchElementException.class, deserializedReader::next);
+  }
+
+  @Test
+  public void testSuccess_linkedDomainReader_skipsDomainsDeletedBeforeTime() throws Exception {
+    createTld("tld");
+    ContactResource contact = persistActiveContact("contact");
+    DateTime now = DateTime.parse("2019-01-01T00:00:00Z");
+    DomainResource domain = persistResource(newDomainResource("a.tld", contact));
+    persistResource(
+        newDomainResource("b.tld", contact).asBuilder().setDeletionTime(now.minusDays(1)).build());
+    InputReader<DomainBase> reader =
+        createLinkedDomainInput(ImmutableMap.of(Key.create(contact), now), DomainBase.class)
+            .createReaders()
+            .get(0);
+    reader.beginShard();
+    reader.beginSlice();
+    assertThat(reader.next()).isEqualTo(domain);
+    assertThrows(NoSuchElementException.class, reader::next);
+  }
+
+  @Test
+  public void testSuccess_linkedDomainReader_skipsPolymorphicMismatches() throws Exception {
+    createTld("tld");
+    HostResource host = persistActiveHost("ns1.example.com");
+    DomainResource domain = persistResource(newDomainResource("a.tld", host));
+    persistResource(
+        newDomainApplication("b.tld")
+            .asBuilder()
+            .setNameservers(ImmutableSet.of(Key.create(host)))
+            .build());
+    InputReader<DomainResource> reader =
+        createLinkedDomainInput(
+                ImmutableMap.of(Key.create(host), START_OF_TIME), DomainResource.class)
+            .createReaders()
+            .get(0);
+    reader.beginShard();
+    reader.beginSlice();
+    assertThat(reader.next()).isEqualTo(domain);
+    assertThrows(NoSuchElementException.class, reader::next);
+  }
 }
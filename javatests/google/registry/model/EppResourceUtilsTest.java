@@ -15,6 +15,7 @@
 package google.registry.model;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.EppResourceUtils.loadAllAtPointInTime;
 import static google.registry.model.EppResourceUtils.loadAtPointInTime;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.newHostResource;
@@ -23,6 +24,8 @@ import static google.registry.testing.DatastoreHelper.persistResourceWithCommitL
 import static google.registry.util.DateTimeUtils.START_OF_TIME;
 import static org.joda.time.DateTimeZone.UTC;
 
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
 import google.registry.model.host.HostResource;
 import google.registry.model.ofy.Ofy;
 import google.registry.testing.AppEngineRule;
@@ -175,4 +178,36 @@ public class EppResourceUtilsTest {
           .now().getUpdateAutoTimestamp().getTimestamp())
               .isEqualTo(host.getRevisions().firstKey());
   }
+
+  @Test
+  public void testLoadAllAtPointInTime_rewindsEachResource() {
+    clock.advanceOneMilli();
+    HostResource oldHost = persistResourceWithCommitLog(
+        newHostResource("ns1.cat.tld").asBuilder()
+            .setCreationTimeForTest(START_OF_TIME)
+            .setPersistedCurrentSponsorClientId("OLD")
+            .build());
+    clock.advanceOneMilli();
+    HostResource unchangedHost = persistResourceWithCommitLog(
+        newHostResource("ns2.cat.tld").asBuilder()
+            .setCreationTimeForTest(START_OF_TIME)
+            .build());
+    // Advance a day so that the next created revision entry doesn't overwrite the existing one.
+    clock.advanceBy(Duration.standardDays(1));
+    HostResource currentHost = persistResource(oldHost.asBuilder()
+        .setPersistedCurrentSponsorClientId("NEW")
+        .build());
+    HostResource newHost = persistResource(
+        newHostResource("ns3.cat.tld").asBuilder()
+            .setCreationTimeForTest(clock.nowUtc())
+            .build());
+    assertThat(
+            loadAllAtPointInTime(
+                ImmutableList.of(newHost, unchangedHost, currentHost),
+                clock.nowUtc().minusMillis(1)))
+        .containsExactly(
+            Key.create(unchangedHost), unchangedHost,
+            Key.create(currentHost), oldHost)
+        .inOrder();
+  }
 }
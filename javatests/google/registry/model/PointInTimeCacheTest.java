@@ -0,0 +1,109 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.newHostResource;
+import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.DatastoreHelper.persistResourceWithCommitLog;
+import static google.registry.util.DateTimeUtils.START_OF_TIME;
+import static org.joda.time.DateTimeZone.UTC;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import google.registry.model.host.HostResource;
+import google.registry.model.ofy.Ofy;
+import google.registry.testing.AppEngineRule;
+import google.registry.testing.FakeClock;
+import google.registry.testing.InjectRule;
+import org.joda.time.DateTime;
+import org.joda.time.Duration;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Tests for {@link PointInTimeCache}. */
+@RunWith(JUnit4.class)
+public class PointInTimeCacheTest {
+
+  @Rule
+  public final AppEngineRule appEngine = AppEngineRule.builder()
+      .withDatastore()
+      .withTaskQueue()
+      .build();
+
+  @Rule
+  public final InjectRule inject = new InjectRule();
+
+  private final FakeClock clock = new FakeClock(DateTime.now(UTC));
+  private final PointInTimeCache cache = new PointInTimeCache(10);
+
+  private HostResource oldHost;
+  private HostResource currentHost;
+
+  @Before
+  public void init() {
+    createTld("tld");
+    inject.setStaticField(Ofy.class, "clock", clock);
+    clock.advanceOneMilli();
+    oldHost = persistResourceWithCommitLog(
+        newHostResource("ns1.cat.tld").asBuilder()
+            .setCreationTimeForTest(START_OF_TIME)
+            .setPersistedCurrentSponsorClientId("OLD")
+            .build());
+    // Advance a day so that the next created revision entry doesn't overwrite the existing one.
+    clock.advanceBy(Duration.standardDays(1));
+    currentHost = persistResource(oldHost.asBuilder()
+        .setPersistedCurrentSponsorClientId("NEW")
+        .build());
+  }
+
+  @Test
+  public void testLoad_rewindsResource() {
+    assertThat(cache.load(Key.create(currentHost), clock.nowUtc().minusMillis(1)))
+        .isEqualTo(oldHost);
+    assertThat(cache.load(Key.create(currentHost), clock.nowUtc())).isEqualTo(currentHost);
+    assertThat(cache.getHitCount()).isEqualTo(0);
+    assertThat(cache.getMissCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void testLoad_cachesResult() {
+    DateTime timestamp = clock.nowUtc().minusMillis(1);
+    cache.load(Key.create(currentHost), timestamp);
+    assertThat(cache.load(Key.create(currentHost), timestamp)).isEqualTo(oldHost);
+    assertThat(cache.getHitCount()).isEqualTo(1);
+    assertThat(cache.getMissCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void testLoadAll_omitsMissingResources() {
+    HostResource newHost = persistResource(
+        newHostResource("ns2.cat.tld").asBuilder()
+            .setCreationTimeForTest(clock.nowUtc())
+            .build());
+    Key<HostResource> missingKey = Key.create(HostResource.class, "missing");
+    DateTime timestamp = clock.nowUtc().minusMillis(1);
+    ImmutableList<Key<HostResource>> keys =
+        ImmutableList.of(Key.create(newHost), missingKey, Key.create(currentHost));
+    assertThat(cache.loadAll(keys, timestamp)).containsExactly(Key.create(currentHost), oldHost);
+    assertThat(cache.loadAll(keys, timestamp)).containsExactly(Key.create(currentHost), oldHost);
+    assertThat(cache.getHitCount()).isEqualTo(3);
+    assertThat(cache.getMissCount()).isEqualTo(3);
+  }
+}
@@ -0,0 +1,224 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.eppcommon;
+
+import static google.registry.model.eppcommon.EppXmlTransformer.marshal;
+import static google.registry.model.eppcommon.EppXmlTransformer.unmarshal;
+import static google.registry.testing.TestDataHelper.loadBytes;
+import static google.registry.xml.OutputFormat.FORMATTED;
+import static google.registry.xml.ValidationMode.STRICT;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import google.registry.model.eppinput.EppInput;
+import google.registry.model.eppoutput.EppOutput;
+import google.registry.model.eppoutput.Greeting;
+import google.registry.xml.OutputFormat;
+import google.registry.xml.XmlTransformer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.bind.helpers.DefaultValidationEventHandler;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+/**
+ * Command-line benchmark for {@link EppXmlTransformer}.
+ *
+ * <p>Unmarshals an EPP command and marshals an EPP response over and over from several threads at
+ * once, the way concurrent EPP requests do, and prints the throughput of each. Both go through the
+ * shared transformers, so this measures the pooling of their marshallers and unmarshallers as
+ * well as the cost of the output format.
+ *
+ * <p>As a baseline, the same documents are also transformed the way {@link XmlTransformer} did
+ * before it pooled them, with a new marshaller or unmarshaller for every document.
+ *
+ * <p>JMH isn't available to the build, so each measurement is a timed loop that follows a few
+ * untimed warm-up rounds of the same loop. The numbers are only comparable between modes of a
+ * single run.
+ */
+@Parameters(separators = " =", commandDescription = "Measures EPP XML throughput.")
+public final class EppXmlTransformerBenchmark {
+
+  @Parameter(
+      names = "--threads",
+      description = "Number of threads transforming documents at the same time.")
+  private int threads = 8;
+
+  @Parameter(
+      names = "--iterations",
+      description = "Number of documents each thread transforms in each round.")
+  private int iterations = 10_000;
+
+  @Parameter(
+      names = "--warmup_rounds",
+      description = "Number of untimed rounds run before each timed one, to warm up the JIT.")
+  private int warmupRounds = 3;
+
+  @Parameter(
+      names = "--format",
+      description = "Format of the marshalled responses.")
+  private OutputFormat format = OutputFormat.FORMATTED;
+
+  @Parameter(
+      names = {"-h", "--help"},
+      description = "Display help and list flags for this command.",
+      help = true)
+  private boolean help;
+
+  public static void main(String[] args) throws Exception {
+    EppXmlTransformerBenchmark benchmark = new EppXmlTransformerBenchmark();
+    JCommander jCommander = new JCommander(benchmark);
+    jCommander.setProgramName("epp_xml_transformer_benchmark");
+    jCommander.parse(args);
+    if (benchmark.help) {
+      jCommander.usage();
+      return;
+    }
+    benchmark.run();
+  }
+
+  private void run() throws Exception {
+    byte[] input = loadBytes(getClass(), "contact_info.xml").read();
+    EppOutput output =
+        EppOutput.create(Greeting.create(new DateTime(2019, 1, 1, 0, 0, DateTimeZone.UTC), "svid"));
+    System.out.printf(
+        "%d threads, %d iterations per thread, %s output of %d bytes%n",
+        threads, iterations, format, marshal(output, STRICT, format).length);
+    UnpooledTransformer unpooledInput = new UnpooledTransformer(EppInput.class);
+    UnpooledTransformer unpooledOutput = new UnpooledTransformer(EppOutput.class);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      measure(
+          executor,
+          "unmarshal (unpooled)",
+          () -> {
+            for (int i = 0; i < iterations; i++) {
+              unpooledInput.unmarshal(input);
+            }
+            return null;
+          });
+      measure(
+          executor,
+          "unmarshal (pooled)",
+          () -> {
+            for (int i = 0; i < iterations; i++) {
+              unmarshal(EppInput.class, input);
+            }
+            return null;
+          });
+      measure(
+          executor,
+          "marshal (unpooled)",
+          () -> {
+            for (int i = 0; i < iterations; i++) {
+              unpooledOutput.marshal(output, format);
+            }
+            return null;
+          });
+      measure(
+          executor,
+          "marshal (pooled)",
+          () -> {
+            for (int i = 0; i < iterations; i++) {
+              marshal(output, STRICT, format);
+            }
+            return null;
+          });
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Runs the warm-up rounds and a timed round of a task, and prints its throughput. */
+  private void measure(ExecutorService executor, String mode, Callable<Void> task)
+      throws Exception {
+    for (int round = 0; round < warmupRounds; round++) {
+      runOnAllThreads(executor, task);
+    }
+    long nanos = runOnAllThreads(executor, task);
+    long documents = (long) threads * iterations;
+    System.out.printf("%-22s %,12.0f documents/s%n", mode, documents * 1e9 / nanos);
+  }
+
+  /** Runs a task on each thread at once, and returns the time it took them all in nanoseconds. */
+  private long runOnAllThreads(ExecutorService executor, Callable<Void> task) throws Exception {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      tasks.add(task);
+    }
+    long startTime = System.nanoTime();
+    for (Future<Void> result : executor.invokeAll(tasks)) {
+      result.get();
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  /**
+   * Transforms documents the way {@link XmlTransformer} did before pooling.
+   *
+   * <p>Every call creates and configures a new marshaller or unmarshaller from the shared context,
+   * as the old transformer did. The output format is honored, so that only the pooling differs from
+   * the shared transformers.
+   */
+  private static final class UnpooledTransformer {
+
+    private final JAXBContext jaxbContext;
+    private final Schema schema = XmlTransformer.loadXmlSchemas(EppXmlTransformer.SCHEMAS);
+    private final XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+
+    UnpooledTransformer(Class<?> recognizedClass) throws JAXBException {
+      jaxbContext = JAXBContext.newInstance(recognizedClass);
+      inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+      inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    Object unmarshal(byte[] bytes) throws JAXBException, XMLStreamException {
+      Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
+      unmarshaller.setSchema(schema);
+      unmarshaller.setEventHandler(new DefaultValidationEventHandler());
+      return unmarshaller.unmarshal(
+          inputFactory.createXMLStreamReader(
+              new StreamSource(new ByteArrayInputStream(bytes), "<default system id>")));
+    }
+
+    byte[] marshal(Object root, OutputFormat format) throws JAXBException {
+      Marshaller marshaller = jaxbContext.createMarshaller();
+      marshaller.setProperty(Marshaller.JAXB_ENCODING, UTF_8.toString());
+      marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, FORMATTED.equals(format));
+      marshaller.setSchema(schema);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      marshaller.marshal(root, out);
+      return out.toByteArray();
+    }
+  }
+
+  private EppXmlTransformerBenchmark() {}
+}
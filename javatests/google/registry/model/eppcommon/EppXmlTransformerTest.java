@@ -15,13 +15,28 @@
 package google.registry.model.eppcommon;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.eppcommon.EppXmlTransformer.marshal;
 import static google.registry.model.eppcommon.EppXmlTransformer.unmarshal;
 import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.testing.TestDataHelper.loadBytes;
+import static google.registry.xml.ValidationMode.STRICT;
+import static google.registry.xml.XmlTestUtils.assertXmlEquals;
+import static java.nio.charset.StandardCharsets.UTF_8;
 
+import com.google.common.collect.ImmutableList;
 import google.registry.model.eppinput.EppInput;
 import google.registry.model.eppoutput.EppOutput;
+import google.registry.model.eppoutput.Greeting;
 import google.registry.testing.ShardableTestCase;
+import google.registry.xml.OutputFormat;
+import google.registry.xml.XmlException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -42,4 +57,41 @@ public class EppXmlTransformerTest extends ShardableTestCase {
         ClassCastException.class,
         () -> unmarshal(EppOutput.class, loadBytes(getClass(), "contact_info.xml").read()));
   }
+
+  @Test
+  public void testUnmarshalingAfterFailure_succeeds() throws Exception {
+    byte[] bytes = loadBytes(getClass(), "contact_info.xml").read();
+    assertThrows(XmlException.class, () -> unmarshal(EppInput.class, "<epp>".getBytes(UTF_8)));
+    assertThat(unmarshal(EppInput.class, bytes).getCommandType()).isEqualTo("info");
+    assertThat(unmarshal(EppInput.class, bytes).getCommandType()).isEqualTo("info");
+  }
+
+  @Test
+  public void testUnmarshalingConcurrently_succeeds() throws Exception {
+    byte[] bytes = loadBytes(getClass(), "contact_info.xml").read();
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      Callable<String> task = () -> unmarshal(EppInput.class, bytes).getCommandType();
+      List<Future<String>> results = executor.invokeAll(ImmutableList.of(
+          task, task, task, task, task, task, task, task, task, task, task, task, task, task));
+      for (Future<String> result : results) {
+        assertThat(result.get()).isEqualTo("info");
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testMarshalingCompact_matchesFormatted() throws Exception {
+    EppOutput output =
+        EppOutput.create(Greeting.create(new DateTime(2019, 1, 1, 0, 0, DateTimeZone.UTC), "svid"));
+    String formatted = new String(marshal(output, STRICT, OutputFormat.FORMATTED), UTF_8);
+    String compact = new String(marshal(output, STRICT, OutputFormat.COMPACT), UTF_8);
+    assertThat(formatted).contains(">\n  <");
+    assertThat(compact.substring(compact.indexOf("<epp"))).doesNotContain("\n");
+    assertXmlEquals(formatted, compact);
+    // Pooled marshallers must not carry the format over into later calls.
+    assertThat(new String(marshal(output, STRICT), UTF_8)).isEqualTo(formatted);
+  }
 }
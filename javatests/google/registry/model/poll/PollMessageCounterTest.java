@@ -0,0 +1,83 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.poll;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.testing.DatastoreHelper.persistSimpleResources;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import google.registry.model.EntityTestCase;
+import org.junit.Test;
+
+/** Unit tests for {@link PollMessageCounter}. */
+public class PollMessageCounterTest extends EntityTestCase {
+
+  @Test
+  public void testPersistence() {
+    ImmutableList<PollMessageCounter> shards =
+        persistSimpleResources(PollMessageCounter.create("TheRegistrar", 5, clock.nowUtc()));
+    assertThat(ofy().load().keys(PollMessageCounter.createKeys("TheRegistrar")).values())
+        .containsExactlyElementsIn(shards);
+  }
+
+  @Test
+  public void testIndexing() throws Exception {
+    verifyIndexing(PollMessageCounter.create("TheRegistrar", 5, clock.nowUtc()).get(0));
+  }
+
+  @Test
+  public void testCreate() {
+    ImmutableList<PollMessageCounter> shards =
+        PollMessageCounter.create("TheRegistrar", 5, clock.nowUtc());
+    assertThat(shards).hasSize(PollMessageCounter.NUM_SHARDS);
+    assertThat(shards.stream().mapToLong(PollMessageCounter::getCount).sum()).isEqualTo(5);
+    assertThat(shards.stream().map(PollMessageCounter::getCountedThrough).distinct())
+        .containsExactly(clock.nowUtc());
+    assertThat(shards.stream().map(Key::create).collect(toImmutableList()))
+        .containsExactlyElementsIn(PollMessageCounter.createKeys("TheRegistrar"))
+        .inOrder();
+  }
+
+  @Test
+  public void testFailure_create_negativeCount() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> PollMessageCounter.create("TheRegistrar", -1, clock.nowUtc()));
+    assertThat(thrown).hasMessageThat().contains("Negative poll message count: -1");
+  }
+
+  @Test
+  public void testKeys_differentRegistrars() {
+    assertThat(PollMessageCounter.createKeys("TheRegistrar"))
+        .containsNoneIn(PollMessageCounter.createKeys("NewRegistrar"));
+    assertThat(PollMessageCounter.createKeys("TheRegistrar"))
+        .contains(PollMessageCounter.createRandomShardKey("TheRegistrar"));
+  }
+
+  @Test
+  public void testWithCountAdjustedBy() {
+    PollMessageCounter shard = PollMessageCounter.create("TheRegistrar", 0, clock.nowUtc()).get(1);
+    PollMessageCounter adjusted = shard.withCountAdjustedBy(-1);
+    assertThat(adjusted.getCount()).isEqualTo(-1);
+    assertThat(adjusted.getCountedThrough()).isEqualTo(shard.getCountedThrough());
+    assertThat(shard.getCount()).isEqualTo(0);
+  }
+}
@@ -18,6 +18,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.model.rde.RdeMode.FULL;
 import static google.registry.model.rde.RdeRevision.getNextRevision;
+import static google.registry.model.rde.RdeRevision.getParts;
 import static google.registry.model.rde.RdeRevision.saveRevision;
 import static google.registry.testing.JUnitBackports.assertThrows;
 
@@ -130,6 +131,39 @@ public class RdeRevisionTest {
     assertThat(thrown).hasMessageThat().contains("transaction");
   }
 
+  @Test
+  public void testGetParts_objectDoesntExist_returnsOne() {
+    assertThat(getParts("torment", DateTime.parse("1984-12-18TZ"), FULL)).isEqualTo(1);
+  }
+
+  @Test
+  public void testGetParts_objectPredatesParts_returnsOne() {
+    save("sorrow", DateTime.parse("1984-12-18TZ"), FULL, 0);
+    assertThat(getParts("sorrow", DateTime.parse("1984-12-18TZ"), FULL)).isEqualTo(1);
+  }
+
+  @Test
+  public void testSaveRevision_withParts_savesParts() {
+    ofy().transact(() -> saveRevision("despondency", DateTime.parse("1984-12-18TZ"), FULL, 0, 4));
+    assertThat(getParts("despondency", DateTime.parse("1984-12-18TZ"), FULL)).isEqualTo(4);
+    ofy().transact(() -> saveRevision("despondency", DateTime.parse("1984-12-18TZ"), FULL, 1));
+    assertThat(getParts("despondency", DateTime.parse("1984-12-18TZ"), FULL)).isEqualTo(1);
+  }
+
+  @Test
+  public void testSaveRevision_noParts_throwsIae() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () ->
+                ofy()
+                    .transact(
+                        () ->
+                            saveRevision(
+                                "melancholy", DateTime.parse("1984-12-18TZ"), FULL, 0, 0)));
+    assertThat(thrown).hasMessageThat().contains("Non-positive number of parts");
+  }
+
   public static void save(String tld, DateTime date, RdeMode mode, int revision) {
     String triplet = RdeNamingUtils.makePartialName(tld, date, mode);
     RdeRevision object = new RdeRevision();
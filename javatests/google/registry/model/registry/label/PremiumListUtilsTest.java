@@ -30,6 +30,7 @@ import static google.registry.model.registry.label.PremiumList.createCachePremiu
 import static google.registry.model.registry.label.PremiumListUtils.deletePremiumList;
 import static google.registry.model.registry.label.PremiumListUtils.doesPremiumListExist;
 import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrice;
+import static google.registry.model.registry.label.PremiumListUtils.getPremiumPrices;
 import static google.registry.model.registry.label.PremiumListUtils.savePremiumListAndEntries;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.loadPremiumListEntries;
@@ -255,6 +256,64 @@ public class PremiumListUtilsTest {
         .hasNoOtherValues();
   }
 
+  @Test
+  public void testGetPremiumPrices_matchesIndividualLookups() {
+    assertThat(getPremiumPrices(ImmutableList.of("rich", "blah", "icann"), Registry.get("tld")))
+        .containsExactly("rich", Money.parse("USD 1999"), "icann", Money.parse("JPY 100"));
+    assertThat(premiumListChecks)
+        .hasValueForLabels(2, "tld", "tld", UNCACHED_POSITIVE.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "tld", BLOOM_FILTER_NEGATIVE.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGetPremiumPrices_usesCachedEntries() {
+    assertThat(getPremiumPrice("rich", Registry.get("tld"))).hasValue(Money.parse("USD 1999"));
+    assertThat(getPremiumPrices(ImmutableList.of("rich", "lol"), Registry.get("tld")))
+        .containsExactly("rich", Money.parse("USD 1999"), "lol", Money.parse("USD 999"));
+    assertThat(premiumListChecks)
+        .hasValueForLabels(2, "tld", "tld", UNCACHED_POSITIVE.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "tld", CACHED_POSITIVE.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGetPremiumPrices_bloomFilterFalsePositive() {
+    ofy()
+        .transactNew(
+            () ->
+                ofy()
+                    .delete()
+                    .keys(
+                        Key.create(
+                            PremiumList.getCached("tld").get().getRevisionKey(),
+                            PremiumListEntry.class,
+                            "rich")));
+    ofy().clearSessionCache();
+    assertThat(getPremiumPrices(ImmutableList.of("rich", "lol"), Registry.get("tld")))
+        .containsExactly("lol", Money.parse("USD 999"));
+    assertThat(getPremiumPrice("rich", Registry.get("tld"))).isEmpty();
+    assertThat(premiumListChecks)
+        .hasValueForLabels(1, "tld", "tld", UNCACHED_POSITIVE.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "tld", UNCACHED_NEGATIVE.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "tld", CACHED_NEGATIVE.toString())
+        .and()
+        .hasNoOtherValues();
+  }
+
+  @Test
+  public void testGetPremiumPrices_returnsNoPricesWhenNoPremiumListConfigured() {
+    persistResource(Registry.get("tld").asBuilder().setPremiumList(null).build());
+    assertThat(getPremiumPrices(ImmutableList.of("rich", "lol"), Registry.get("tld"))).isEmpty();
+    assertThat(premiumListChecks).hasNoOtherValues();
+  }
+
   @Test
   public void testGetPremiumPrice_allLabelsAreNonPremium_whenNotInList() {
     assertThat(getPremiumPrice("blah", Registry.get("tld"))).isEmpty();
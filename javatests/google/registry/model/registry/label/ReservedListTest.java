@@ -204,6 +204,33 @@ public class ReservedListTest {
     assertThat(getReservationTypes("snowcrash", "tld")).containsExactly(FULLY_BLOCKED);
   }
 
+  @Test
+  public void testGetReservationTypes_multipleLabels_matchesIndividualLookups() {
+    ReservedList rl1 =
+        persistReservedList("reserved1", "lol,NAME_COLLISION # yup", "cat,FULLY_BLOCKED");
+    ReservedList rl2 =
+        persistReservedList("reserved2", "lol,ALLOWED_IN_SUNRISE", "snowcrash,FULLY_BLOCKED");
+    createTld("tld");
+    persistResource(Registry.get("tld").asBuilder().setReservedLists(rl1, rl2).build());
+
+    assertThat(getReservationTypes(ImmutableList.of("lol", "cat", "doge", "snowcrash"), "tld"))
+        .containsExactly(
+            "lol", ImmutableSet.of(NAME_COLLISION, ALLOWED_IN_SUNRISE),
+            "cat", ImmutableSet.of(FULLY_BLOCKED),
+            "doge", ImmutableSet.of(),
+            "snowcrash", ImmutableSet.of(FULLY_BLOCKED))
+        .inOrder();
+    assertThat(reservedListChecks)
+        .hasValueForLabels(1, "tld", "0", "(none)", "(none)")
+        .and()
+        .hasValueForLabels(1, "tld", "1", "reserved1", FULLY_BLOCKED.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "1", "reserved2", FULLY_BLOCKED.toString())
+        .and()
+        .hasValueForLabels(1, "tld", "2", "reserved1", NAME_COLLISION.toString())
+        .and()
+        .hasNoOtherValues();
+  }
 
   @Test
   public void testGetReservationTypes_worksAfterReservedListRemovedUsingSet() {
@@ -0,0 +1,132 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.reporting;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveDomain;
+import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import google.registry.model.EntityTestCase;
+import google.registry.model.domain.DomainResource;
+import google.registry.model.reporting.HistoryEntry.Type;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Unit tests for {@link HistoryEventSummary}. */
+public class HistoryEventSummaryTest extends EntityTestCase {
+
+  DomainResource domain;
+
+  @Before
+  public void setUp() {
+    createTld("foobar");
+    domain = persistActiveDomain("foo.foobar");
+  }
+
+  private HistoryEntry makeHistoryEntry(Type type, String clientId, DateTime modificationTime) {
+    return new HistoryEntry.Builder()
+        .setParent(domain)
+        .setType(type)
+        .setClientId(clientId)
+        .setModificationTime(modificationTime)
+        .build();
+  }
+
+  private static ImmutableList<Type> getTypes(HistoryEventSummary summary) {
+    return summary
+        .getEvents()
+        .stream()
+        .map(HistoryEventSummary.Event::getType)
+        .collect(toImmutableList());
+  }
+
+  @Test
+  public void testPersistence() {
+    HistoryEventSummary summary =
+        HistoryEventSummary.create(
+            Key.create(domain),
+            ImmutableList.of(makeHistoryEntry(Type.DOMAIN_CREATE, "foo", clock.nowUtc())));
+    persistResource(summary);
+    assertThat(ofy().load().key(HistoryEventSummary.createKey(Key.create(domain))).now())
+        .isEqualTo(summary);
+  }
+
+  @Test
+  public void testCreate_keepsSummarizedTypesInTimeOrder() {
+    DateTime now = clock.nowUtc();
+    HistoryEventSummary summary =
+        HistoryEventSummary.create(
+            Key.create(domain),
+            ImmutableList.of(
+                makeHistoryEntry(Type.DOMAIN_RENEW, "foo", now.plusDays(2)),
+                makeHistoryEntry(Type.DOMAIN_UPDATE, "foo", now.plusDays(1)),
+                makeHistoryEntry(Type.DOMAIN_CREATE, "foo", now)));
+    assertThat(getTypes(summary))
+        .containsExactly(Type.DOMAIN_CREATE, Type.DOMAIN_RENEW)
+        .inOrder();
+    assertThat(summary.getEvents().get(1).getModificationTime()).isEqualTo(now.plusDays(2));
+    assertThat(summary.getEvents().get(1).getClientId()).isEqualTo("foo");
+  }
+
+  @Test
+  public void testUpdatedWith_noSummary_includesExistingHistory() {
+    persistResource(makeHistoryEntry(Type.DOMAIN_CREATE, "foo", clock.nowUtc()));
+    persistResource(makeHistoryEntry(Type.DOMAIN_UPDATE, "foo", clock.nowUtc().plusDays(1)));
+    HistoryEntry renew = makeHistoryEntry(Type.DOMAIN_RENEW, "bar", clock.nowUtc().plusDays(2));
+    HistoryEventSummary summary = ofy().transact(() -> HistoryEventSummary.updatedWith(renew));
+    assertThat(getTypes(summary)).containsExactly(Type.DOMAIN_CREATE, Type.DOMAIN_RENEW).inOrder();
+  }
+
+  @Test
+  public void testUpdatedWith_existingSummary_appendsEvents() {
+    persistResource(
+        HistoryEventSummary.create(
+            Key.create(domain),
+            ImmutableList.of(makeHistoryEntry(Type.DOMAIN_CREATE, "foo", clock.nowUtc()))));
+    // Not in the summary, so it must not be queried for.
+    persistResource(makeHistoryEntry(Type.DOMAIN_RENEW, "foo", clock.nowUtc().plusDays(1)));
+    HistoryEventSummary summary =
+        ofy()
+            .transact(
+                () ->
+                    HistoryEventSummary.updatedWith(
+                        ImmutableList.of(
+                            makeHistoryEntry(
+                                Type.DOMAIN_AUTORENEW, "foo", clock.nowUtc().plusYears(1)),
+                            makeHistoryEntry(
+                                Type.DOMAIN_AUTORENEW, "foo", clock.nowUtc().plusYears(2)))));
+    assertThat(getTypes(summary))
+        .containsExactly(Type.DOMAIN_CREATE, Type.DOMAIN_AUTORENEW, Type.DOMAIN_AUTORENEW)
+        .inOrder();
+    assertThat(summary.getParent()).isEqualTo(Key.create(domain));
+  }
+
+  @Test
+  public void testFailure_updatedWith_unsummarizedType() {
+    HistoryEntry update = makeHistoryEntry(Type.DOMAIN_UPDATE, "foo", clock.nowUtc());
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> ofy().transact(() -> HistoryEventSummary.updatedWith(update)));
+    assertThat(thrown).hasMessageThat().contains("DOMAIN_UPDATE are not summarized");
+  }
+}
@@ -97,6 +97,29 @@ public class SignedMarkRevocationListTest {
     assertThat(ofy().load().type(SignedMarkRevocationList.class).count()).isEqualTo(4);
   }
 
+  @Test
+  public void testSave_unchangedList_isNotRewritten() {
+    ImmutableMap<String, DateTime> revokes = ImmutableMap.of("0", clock.nowUtc());
+    SignedMarkRevocationList.create(clock.nowUtc(), revokes).save();
+    SignedMarkRevocationList savedShard =
+        ofy().load().type(SignedMarkRevocationList.class).first().now();
+    SignedMarkRevocationList.create(clock.nowUtc(), revokes).save();
+    ofy().clearSessionCache();
+    assertThat(ofy().load().type(SignedMarkRevocationList.class).list())
+        .containsExactly(savedShard);
+  }
+
+  @Test
+  public void testSave_newCreationTime_isRewritten() {
+    ImmutableMap<String, DateTime> revokes = ImmutableMap.of("0", clock.nowUtc());
+    SignedMarkRevocationList.create(clock.nowUtc(), revokes).save();
+    SignedMarkRevocationList newList =
+        SignedMarkRevocationList.create(clock.nowUtc().plusDays(1), revokes).save();
+    ofy().clearSessionCache();
+    assertThat(SignedMarkRevocationList.get()).isEqualTo(newList);
+    assertThat(ofy().load().type(SignedMarkRevocationList.class).count()).isEqualTo(1);
+  }
+
   private SignedMarkRevocationList createSaveGetHelper(int rows) {
     ImmutableMap.Builder<String, DateTime> revokes = new ImmutableMap.Builder<>();
     for (int i = 0; i < rows; i++) {
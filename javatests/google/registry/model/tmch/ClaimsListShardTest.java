@@ -24,6 +24,7 @@ import static org.joda.time.DateTimeZone.UTC;
 import com.google.common.collect.ImmutableMap;
 import com.googlecode.objectify.Key;
 import google.registry.model.tmch.ClaimsListShard.ClaimsListRevision;
+import google.registry.model.tmch.ClaimsListShard.ClaimsListSingleton;
 import google.registry.model.tmch.ClaimsListShard.UnshardedSaveException;
 import google.registry.testing.AppEngineRule;
 import java.util.HashMap;
@@ -65,7 +66,7 @@ public class ClaimsListShardTest {
 
   @Test
   public void testGet_safelyLoadsEmptyClaimsList_whenNoShardsExist() {
-    assertThat(ClaimsListShard.get().labelsToKeys).isEmpty();
+    assertThat(ClaimsListShard.get().getLabelsToKeys()).isEmpty();
     assertThat(ClaimsListShard.get().creationTime).isEqualTo(START_OF_TIME);
   }
 
@@ -80,7 +81,7 @@ public class ClaimsListShardTest {
     // Save it with sharding, and make sure that reloading it works.
     ClaimsListShard unsharded = ClaimsListShard.create(now, ImmutableMap.copyOf(labelsToKeys));
     unsharded.save(shardSize);
-    assertThat(ClaimsListShard.get().labelsToKeys).isEqualTo(unsharded.labelsToKeys);
+    assertThat(ClaimsListShard.get().getLabelsToKeys()).isEqualTo(unsharded.labelsToKeys);
     List<ClaimsListShard> shards1 = ofy().load().type(ClaimsListShard.class).list();
     assertThat(shards1).hasSize(4);
     assertThat(ClaimsListShard.get().getClaimKey("1")).hasValue("1");
@@ -95,8 +96,8 @@ public class ClaimsListShardTest {
     unsharded = ClaimsListShard.create(now.plusDays(1), ImmutableMap.copyOf(labelsToKeys));
     unsharded.save(shardSize);
     ofy().clearSessionCache();
-    assertThat(ClaimsListShard.get().labelsToKeys).hasSize(unsharded.labelsToKeys.size());
-    assertThat(ClaimsListShard.get().labelsToKeys).isEqualTo(unsharded.labelsToKeys);
+    assertThat(ClaimsListShard.get().getLabelsToKeys()).hasSize(unsharded.labelsToKeys.size());
+    assertThat(ClaimsListShard.get().getLabelsToKeys()).isEqualTo(unsharded.labelsToKeys);
     List<ClaimsListShard> shards2 = ofy().load().type(ClaimsListShard.class).list();
     assertThat(shards2).hasSize(2);
 
@@ -104,6 +105,80 @@ public class ClaimsListShardTest {
     assertThat(ClaimsListShard.getCurrentRevision()).isEqualTo(shards2.get(0).parent);
   }
 
+  @Test
+  public void testSave_onlyWritesChangedShards() {
+    Map<String, String> labelsToKeys = new HashMap<>();
+    for (int i = 0; i < shardSize * 4; i++) {
+      labelsToKeys.put(Integer.toString(i), Integer.toString(i));
+    }
+    DateTime now = DateTime.now(UTC);
+    ClaimsListShard.create(now, ImmutableMap.copyOf(labelsToKeys)).save(shardSize);
+    ClaimsListSingleton oldSingleton = ofy().load().entity(new ClaimsListSingleton()).now();
+    assertThat(oldSingleton.shardKeys).hasSize(4);
+
+    // Change the key of a single label, which only affects the shard that holds it.
+    labelsToKeys.put("7", "changed");
+    int changedIndex = ClaimsListShard.getShardIndex("7", 4);
+    ClaimsListShard.create(now.plusDays(1), ImmutableMap.copyOf(labelsToKeys)).save(shardSize);
+    ofy().clearSessionCache();
+    ClaimsListSingleton newSingleton = ofy().load().entity(new ClaimsListSingleton()).now();
+    assertThat(newSingleton.activeRevision).isNotEqualTo(oldSingleton.activeRevision);
+    assertThat(newSingleton.creationTime).isEqualTo(now.plusDays(1));
+    for (int i = 0; i < 4; i++) {
+      if (i == changedIndex) {
+        assertThat(newSingleton.shardKeys.get(i)).isNotEqualTo(oldSingleton.shardKeys.get(i));
+        assertThat(newSingleton.shardKeys.get(i).getParent())
+            .isEqualTo(newSingleton.activeRevision);
+      } else {
+        assertThat(newSingleton.shardKeys.get(i)).isEqualTo(oldSingleton.shardKeys.get(i));
+      }
+    }
+    // The replaced shard is deleted, and the others are still there.
+    assertThat(ofy().load().type(ClaimsListShard.class).keys().list())
+        .containsExactlyElementsIn(newSingleton.shardKeys);
+    ClaimsListShard claimsList = ClaimsListShard.get();
+    assertThat(claimsList.getCreationTime()).isEqualTo(now.plusDays(1));
+    assertThat(claimsList.getClaimKey("7")).hasValue("changed");
+    assertThat(claimsList.getLabelsToKeys()).isEqualTo(labelsToKeys);
+  }
+
+  @Test
+  public void testSave_unchangedList_isNotRewritten() {
+    DateTime now = DateTime.now(UTC);
+    ClaimsListShard.create(now, ImmutableMap.of("a", "1", "b", "2")).save(shardSize);
+    Key<ClaimsListRevision> revision = ClaimsListShard.getCurrentRevision();
+    ClaimsListShard.create(now, ImmutableMap.of("b", "2", "a", "1")).save(shardSize);
+    ofy().clearSessionCache();
+    assertThat(ClaimsListShard.getCurrentRevision()).isEqualTo(revision);
+  }
+
+  @Test
+  public void testGet_legacyRevision() {
+    ClaimsListSingleton singleton = new ClaimsListSingleton();
+    Key<ClaimsListRevision> revision = ClaimsListRevision.createKey(singleton);
+    singleton.setActiveRevision(revision);
+    DateTime now = DateTime.now(UTC);
+    ofy()
+        .saveWithoutBackup()
+        .entities(
+            singleton,
+            createTestClaimsListShard(now, ImmutableMap.of("a", "1"), revision),
+            createTestClaimsListShard(now, ImmutableMap.of("b", "2"), revision))
+        .now();
+    ClaimsListShard claimsList = ClaimsListShard.get();
+    assertThat(claimsList.getCreationTime()).isEqualTo(now);
+    assertThat(claimsList.size()).isEqualTo(2);
+    assertThat(claimsList.getClaimKey("a")).hasValue("1");
+    assertThat(claimsList.isClaimed("b")).isTrue();
+    assertThat(claimsList.isClaimed("c")).isFalse();
+
+    // Saving over a legacy revision replaces all of its shards.
+    ClaimsListShard.create(now.plusDays(1), ImmutableMap.of("c", "3")).save(shardSize);
+    ofy().clearSessionCache();
+    assertThat(ofy().load().type(ClaimsListShard.class).ancestor(revision).keys().list()).isEmpty();
+    assertThat(ClaimsListShard.get().getLabelsToKeys()).containsExactly("c", "3");
+  }
+
   /**
    * Returns a created claims list shard with the specified parent key for testing purposes only.
    */
@@ -0,0 +1,100 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.model.tmch;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ClaimsListTable}. */
+@RunWith(JUnit4.class)
+public class ClaimsListTableTest {
+
+  @Test
+  public void testEmpty() {
+    ClaimsListTable table = ClaimsListTable.copyOf(ImmutableMap.of());
+    assertThat(table.size()).isEqualTo(0);
+    assertThat(table.containsLabel("")).isFalse();
+    assertThat(table.getClaimKey("example")).isEmpty();
+    assertThat(table.toMap()).isEmpty();
+  }
+
+  @Test
+  public void testLookups() {
+    ClaimsListTable table =
+        ClaimsListTable.copyOf(
+            ImmutableMap.of(
+                "example", "key-1",
+                "another-example", "key-2",
+                "anotherexample", "key-3",
+                "xn----7sbejwbn3axu3d", "key-4"));
+    assertThat(table.size()).isEqualTo(4);
+    assertThat(table.getClaimKey("example")).hasValue("key-1");
+    assertThat(table.getClaimKey("another-example")).hasValue("key-2");
+    assertThat(table.getClaimKey("anotherexample")).hasValue("key-3");
+    assertThat(table.getClaimKey("xn----7sbejwbn3axu3d")).hasValue("key-4");
+    assertThat(table.containsLabel("anotherexample")).isTrue();
+    // Prefixes and extensions of labels in the table must not match.
+    assertThat(table.containsLabel("exampl")).isFalse();
+    assertThat(table.containsLabel("examples")).isFalse();
+    assertThat(table.containsLabel("")).isFalse();
+    assertThat(table.getClaimKey("lolcat")).isEmpty();
+  }
+
+  @Test
+  public void testLookups_largeTable() {
+    Map<String, String> labelsToKeys = new HashMap<>();
+    for (int i = 0; i < 5000; i++) {
+      labelsToKeys.put("label" + i, "key" + i);
+    }
+    ClaimsListTable table = ClaimsListTable.copyOf(labelsToKeys);
+    assertThat(table.size()).isEqualTo(5000);
+    for (int i = 0; i < 5000; i++) {
+      assertThat(table.getClaimKey("label" + i)).hasValue("key" + i);
+    }
+    assertThat(table.containsLabel("label5000")).isFalse();
+    assertThat(table.toMap()).isEqualTo(labelsToKeys);
+  }
+
+  @Test
+  public void testToMap_isSortedByLabel() {
+    ClaimsListTable table = ClaimsListTable.copyOf(ImmutableMap.of("c", "3", "a", "1", "b", "2"));
+    assertThat(table.toMap().keySet()).containsExactly("a", "b", "c").inOrder();
+  }
+
+  @Test
+  public void testFailure_duplicateLabels() {
+    ArrayList<Entry<String, String>> entries =
+        new ArrayList<>(
+            ImmutableList.of(
+                Maps.immutableEntry("a", "1"),
+                Maps.immutableEntry("b", "2"),
+                Maps.immutableEntry("a", "3")));
+    IllegalArgumentException thrown =
+        assertThrows(IllegalArgumentException.class, () -> ClaimsListTable.copyOf(entries));
+    assertThat(thrown).hasMessageThat().contains("Duplicate claims list label: a");
+  }
+}
@@ -0,0 +1,228 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.proxy.Protocol.PROTOCOL_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_BUFFER_KEY;
+import static google.registry.proxy.handler.RelayHandler.RELAY_CHANNEL_KEY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.metric.BackendMetrics;
+import google.registry.testing.FakeClock;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolMap;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BackendChannelPool}. */
+@RunWith(JUnit4.class)
+public class BackendChannelPoolTest {
+
+  private static final String HOST = "host.tld";
+
+  private final BackendProtocol backendProtocol =
+      Protocol.backendBuilder()
+          .name("BACKEND")
+          .host(HOST)
+          .port(1)
+          .handlerProviders(ImmutableList.of())
+          .build();
+
+  private final FrontendProtocol frontendProtocol =
+      Protocol.frontendBuilder()
+          .name("FRONTEND")
+          .port(2)
+          .relayProtocol(backendProtocol)
+          .handlerProviders(ImmutableList.of())
+          .build();
+
+  private final FakeChannelPool channelPool = new FakeChannelPool();
+  private final BackendMetrics metrics = mock(BackendMetrics.class);
+  private final BackendChannelPool backendChannelPool =
+      new BackendChannelPool(
+          backendProtocol,
+          new ChannelPoolMap<EventLoop, FakeChannelPool>() {
+            @Override
+            public FakeChannelPool get(EventLoop eventLoop) {
+              return channelPool;
+            }
+
+            @Override
+            public boolean contains(EventLoop eventLoop) {
+              return true;
+            }
+          },
+          metrics,
+          new FakeClock());
+
+  private final EmbeddedChannel frontendChannel = new EmbeddedChannel();
+
+  @Before
+  public void setUp() {
+    frontendChannel.attr(PROTOCOL_KEY).set(frontendProtocol);
+    frontendChannel.attr(RELAY_BUFFER_KEY).set(new ArrayDeque<>());
+    backendChannelPool.addFrontendChannel(frontendChannel);
+  }
+
+  private EmbeddedChannel newBackendChannel() {
+    EmbeddedChannel backendChannel = new EmbeddedChannel();
+    backendChannel.attr(PROTOCOL_KEY).set(backendProtocol);
+    return backendChannel;
+  }
+
+  private static ByteBuf newMessage(String content) {
+    return Unpooled.copiedBuffer(content, UTF_8);
+  }
+
+  @Test
+  public void testSuccess_requestsRelayedOneAtATime() {
+    ByteBuf request1 = newMessage("request 1");
+    ByteBuf request2 = newMessage("request 2");
+    backendChannelPool.relayRequest(frontendChannel, request1);
+    backendChannelPool.relayRequest(frontendChannel, request2);
+    // Only the first request leases a channel, the second one waits for it to be answered.
+    assertThat(channelPool.pendingAcquires).hasSize(1);
+
+    EmbeddedChannel backendChannel = newBackendChannel();
+    channelPool.pendingAcquires.poll().trySuccess(backendChannel);
+    ByteBuf relayedRequest = backendChannel.readOutbound();
+    assertThat(relayedRequest).isSameAs(request1);
+    relayedRequest = backendChannel.readOutbound();
+    assertThat(relayedRequest).isNull();
+    assertThat(channelPool.pendingAcquires).isEmpty();
+    assertThat(frontendChannel.attr(RELAY_CHANNEL_KEY).get()).isSameAs(backendChannel);
+    assertThat(backendChannel.attr(RELAY_CHANNEL_KEY).get()).isSameAs(frontendChannel);
+    assertThat(request2.refCnt()).isEqualTo(1);
+    verify(metrics).connectionAcquired(eq(HOST), anyLong(), eq(1));
+    verifyNoMoreInteractions(metrics);
+  }
+
+  @Test
+  public void testSuccess_releaseRelaysNextRequest() {
+    ByteBuf request1 = newMessage("request 1");
+    ByteBuf request2 = newMessage("request 2");
+    backendChannelPool.relayRequest(frontendChannel, request1);
+    backendChannelPool.relayRequest(frontendChannel, request2);
+    EmbeddedChannel backendChannel1 = newBackendChannel();
+    channelPool.pendingAcquires.poll().trySuccess(backendChannel1);
+    ByteBuf relayedRequest = backendChannel1.readOutbound();
+    assertThat(relayedRequest).isSameAs(request1);
+
+    // The response to the first request is relayed back.
+    backendChannelPool.releaseBackendChannel(backendChannel1);
+    assertThat(channelPool.releasedChannels).containsExactly(backendChannel1);
+    assertThat(backendChannel1.attr(RELAY_CHANNEL_KEY).get()).isNull();
+    assertThat(channelPool.pendingAcquires).hasSize(1);
+
+    EmbeddedChannel backendChannel2 = newBackendChannel();
+    channelPool.pendingAcquires.poll().trySuccess(backendChannel2);
+    relayedRequest = backendChannel2.readOutbound();
+    assertThat(relayedRequest).isSameAs(request2);
+    assertThat(frontendChannel.attr(RELAY_CHANNEL_KEY).get()).isSameAs(backendChannel2);
+
+    // Releasing a channel that isn't leased anymore does nothing.
+    backendChannelPool.releaseBackendChannel(backendChannel1);
+    assertThat(channelPool.releasedChannels).containsExactly(backendChannel1);
+    assertThat(channelPool.pendingAcquires).isEmpty();
+  }
+
+  @Test
+  public void testFailure_acquireFailed_closesFrontendChannel() {
+    ByteBuf request = newMessage("request");
+    backendChannelPool.relayRequest(frontendChannel, request);
+    channelPool.pendingAcquires.poll().tryFailure(new Exception("Cannot connect"));
+    assertThat(frontendChannel.isActive()).isFalse();
+    assertThat(request.refCnt()).isEqualTo(0);
+    verify(metrics).connectionAcquireFailed(HOST);
+    verifyNoMoreInteractions(metrics);
+  }
+
+  @Test
+  public void testSuccess_frontendChannelClosedWhileAcquiring() {
+    ByteBuf request1 = newMessage("request 1");
+    ByteBuf request2 = newMessage("request 2");
+    backendChannelPool.relayRequest(frontendChannel, request1);
+    backendChannelPool.relayRequest(frontendChannel, request2);
+    ChannelFuture unusedFuture = frontendChannel.close();
+    // The request that is still waiting is released when the frontend channel is closed.
+    assertThat(request2.refCnt()).isEqualTo(0);
+
+    EmbeddedChannel backendChannel = newBackendChannel();
+    channelPool.pendingAcquires.poll().trySuccess(backendChannel);
+    // The request is never sent, and the channel goes straight back to the pool.
+    ByteBuf relayedRequest = backendChannel.readOutbound();
+    assertThat(relayedRequest).isNull();
+    assertThat(request1.refCnt()).isEqualTo(0);
+    assertThat(channelPool.releasedChannels).containsExactly(backendChannel);
+    assertThat(backendChannel.attr(RELAY_CHANNEL_KEY).get()).isNull();
+    assertThat(channelPool.pendingAcquires).isEmpty();
+  }
+
+  /** A {@link ChannelPool} whose acquisitions are completed by the test. */
+  private static class FakeChannelPool implements ChannelPool {
+
+    final Deque<Promise<Channel>> pendingAcquires = new ArrayDeque<>();
+    final List<Channel> releasedChannels = new ArrayList<>();
+
+    @Override
+    public Future<Channel> acquire() {
+      return acquire(ImmediateEventExecutor.INSTANCE.newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+      pendingAcquires.add(promise);
+      return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+      return release(channel, ImmediateEventExecutor.INSTANCE.newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+      releasedChannels.add(channel);
+      return promise.setSuccess(null);
+    }
+
+    @Override
+    public void close() {}
+  }
+}
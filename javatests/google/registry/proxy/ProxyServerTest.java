@@ -0,0 +1,247 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import google.registry.proxy.Protocol.BackendProtocol;
+import google.registry.proxy.Protocol.FrontendProtocol;
+import google.registry.proxy.ProxyModule.ProxyComponent;
+import google.registry.proxy.handler.RelayHandler;
+import google.registry.proxy.metric.BackendMetrics;
+import google.registry.testing.FakeClock;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Load test for {@link ProxyServer} on the NIO transport.
+ *
+ * <p>Many clients relay messages at once through the proxy to a local stand-in backend that echoes
+ * them back, so that the event loop topology set in {@link ProxyConfig.Server} is exercised end to
+ * end.
+ */
+@RunWith(JUnit4.class)
+public class ProxyServerTest {
+
+  private static final String LOCALHOST = "127.0.0.1";
+  private static final int CLIENTS = 16;
+  private static final int MESSAGES_PER_CLIENT = 50;
+
+  private final AtomicInteger backendConnections = new AtomicInteger();
+  private final EventLoopGroup backendEventLoopGroup = ProxyTransport.NIO.newEventLoopGroup(1);
+  private final ExecutorService clientExecutor = Executors.newFixedThreadPool(CLIENTS);
+  private Thread serverThread;
+  private int backendPort;
+
+  @Before
+  public void setUp() throws Exception {
+    Channel backendChannel =
+        new ServerBootstrap()
+            .group(backendEventLoopGroup)
+            .channel(ProxyTransport.NIO.serverChannelClass())
+            .childHandler(
+                new ChannelInitializer<SocketChannel>() {
+                  @Override
+                  protected void initChannel(SocketChannel channel) {
+                    channel.pipeline().addLast(new EchoHandler(backendConnections));
+                  }
+                })
+            .bind(0)
+            .sync()
+            .channel();
+    backendPort = ((InetSocketAddress) backendChannel.localAddress()).getPort();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    clientExecutor.shutdownNow();
+    if (serverThread != null) {
+      // Interrupting the server stops it from waiting for its listening channel to close, and it
+      // then shuts its event loop groups down.
+      serverThread.interrupt();
+      serverThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+    Future<?> unusedFuture = backendEventLoopGroup.shutdownGracefully();
+  }
+
+  @Test
+  public void testSuccess_nio_singleWorkerThread() throws Exception {
+    runLoadTest(1, 1, 1);
+  }
+
+  @Test
+  public void testSuccess_nio_severalWorkerThreads() throws Exception {
+    runLoadTest(1, 4, 1);
+  }
+
+  @Test
+  public void testSuccess_nio_severalAcceptors_fallsBackToOneAcceptor() throws Exception {
+    // NIO doesn't support SO_REUSEPORT, so a second acceptor would fail to bind the port.
+    runLoadTest(2, 4, 4);
+  }
+
+  /**
+   * Starts the proxy with the given event loop topology, runs the clients, and checks that every
+   * message is echoed back intact, each client through its own backend connection.
+   */
+  private void runLoadTest(int bossThreads, int workerThreads, int acceptorsPerPort)
+      throws Exception {
+    int frontendPort = findFreePort();
+    startProxyServer(frontendPort, bossThreads, workerThreads, acceptorsPerPort);
+    awaitListening(frontendPort);
+
+    List<Callable<Void>> clients = new ArrayList<>();
+    for (int i = 0; i < CLIENTS; i++) {
+      String clientName = "client" + i;
+      clients.add(() -> runClient(frontendPort, clientName));
+    }
+    for (Future<Void> result : clientExecutor.invokeAll(clients, 60, TimeUnit.SECONDS)) {
+      result.get();
+    }
+    assertThat(backendConnections.get()).isEqualTo(CLIENTS);
+  }
+
+  private void startProxyServer(
+      int frontendPort, int bossThreads, int workerThreads, int acceptorsPerPort) {
+    BackendProtocol backendProtocol =
+        Protocol.backendBuilder()
+            .name("BACKEND")
+            .host(LOCALHOST)
+            .port(backendPort)
+            .handlerProviders(ImmutableList.of(() -> new RelayHandler<>(ByteBuf.class)))
+            .build();
+    FrontendProtocol frontendProtocol =
+        Protocol.frontendBuilder()
+            .name("FRONTEND")
+            .port(frontendPort)
+            .relayProtocol(backendProtocol)
+            .handlerProviders(ImmutableList.of(() -> new RelayHandler<>(ByteBuf.class)))
+            .build();
+    ProxyConfig config = new ProxyConfig();
+    config.httpsRelay = new ProxyConfig.HttpsRelay();
+    config.server = new ProxyConfig.Server();
+    config.server.bossThreads = bossThreads;
+    config.server.workerThreads = workerThreads;
+    config.server.acceptorsPerPort = acceptorsPerPort;
+    ProxyComponent proxyComponent = mock(ProxyComponent.class);
+    when(proxyComponent.portToProtocolMap())
+        .thenReturn(ImmutableMap.of(frontendPort, frontendProtocol));
+    when(proxyComponent.proxyConfig()).thenReturn(config);
+    when(proxyComponent.proxyTransport()).thenReturn(ProxyTransport.NIO);
+    when(proxyComponent.backendChannelPoolFactory())
+        .thenReturn(
+            new BackendChannelPool.Factory(
+                config, ProxyTransport.NIO, mock(BackendMetrics.class), new FakeClock()));
+    serverThread = new Thread(new ProxyServer(proxyComponent));
+    serverThread.start();
+  }
+
+  /** Sends messages through the proxy one at a time, and checks that each one comes back. */
+  private static Void runClient(int frontendPort, String clientName) throws IOException {
+    try (Socket socket = new Socket(LOCALHOST, frontendPort)) {
+      OutputStream output = socket.getOutputStream();
+      DataInputStream input = new DataInputStream(socket.getInputStream());
+      for (int i = 0; i < MESSAGES_PER_CLIENT; i++) {
+        byte[] message =
+            Strings.padEnd(String.format("%s message %d ", clientName, i), 1024, '.')
+                .getBytes(UTF_8);
+        output.write(message);
+        output.flush();
+        byte[] echo = new byte[message.length];
+        input.readFully(echo);
+        assertThat(new String(echo, UTF_8)).isEqualTo(new String(message, UTF_8));
+      }
+    }
+    return null;
+  }
+
+  private static int findFreePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+
+  /** Waits for the proxy to listen on its port, since it binds it on its own thread. */
+  private static void awaitListening(int port) throws Exception {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (true) {
+      try (Socket socket = new Socket(LOCALHOST, port)) {
+        return;
+      } catch (IOException e) {
+        if (System.nanoTime() > deadline) {
+          throw e;
+        }
+        Thread.sleep(50);
+      }
+    }
+  }
+
+  /**
+   * Stand-in backend that echoes everything it reads.
+   *
+   * <p>Connections are counted once they carry data, so that those the proxy opens for the
+   * connections that only check whether it is listening don't count.
+   */
+  private static class EchoHandler extends ChannelInboundHandlerAdapter {
+
+    private final AtomicInteger connections;
+    private boolean counted = false;
+
+    EchoHandler(AtomicInteger connections) {
+      this.connections = connections;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      if (!counted) {
+        connections.incrementAndGet();
+        counted = true;
+      }
+      ChannelFuture unusedFuture = ctx.writeAndFlush(msg);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.truth.Truth8.assertThat;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ProxyTransport}. */
+@RunWith(JUnit4.class)
+public class ProxyTransportTest {
+
+  @Test
+  public void testSuccess_nio() {
+    ProxyTransport transport = ProxyTransport.NIO;
+    assertThat(transport.name()).isEqualTo("NIO");
+    assertThat(transport.serverChannelClass()).isEqualTo(NioServerSocketChannel.class);
+    assertThat(transport.channelClass()).isEqualTo(NioSocketChannel.class);
+    assertThat(transport.reusePortOption()).isEmpty();
+  }
+
+  @Test
+  public void testSuccess_nio_eventLoopGroup() {
+    EventLoopGroup eventLoopGroup = ProxyTransport.NIO.newEventLoopGroup(2);
+    try {
+      assertThat(eventLoopGroup).isInstanceOf(NioEventLoopGroup.class);
+      assertThat(((NioEventLoopGroup) eventLoopGroup).executorCount()).isEqualTo(2);
+    } finally {
+      Future<?> unusedFuture = eventLoopGroup.shutdownGracefully();
+    }
+  }
+
+  @Test
+  public void testSuccess_nativeOrNio_fallsBackToNio() {
+    // The native epoll transport is not on the test classpath.
+    assertThat(ProxyTransport.nativeOrNio()).isSameAs(ProxyTransport.NIO);
+  }
+}
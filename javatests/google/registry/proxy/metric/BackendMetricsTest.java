@@ -170,4 +170,32 @@ public class BackendMetricsTest {
         .and()
         .hasNoOtherValues();
   }
+
+  @Test
+  public void testSuccess_connectionsAcquired() {
+    metrics.connectionAcquired(host, 0, 1);
+    metrics.connectionAcquired(host, 7, 2);
+
+    assertThat(BackendMetrics.connectionAcquireLatencyMs)
+        .hasDataSetForLabels(ImmutableSet.of(0, 7), host)
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.leasedConnections)
+        .hasDataSetForLabels(ImmutableSet.of(1, 2), host)
+        .and()
+        .hasNoOtherValues();
+    assertThat(BackendMetrics.connectionAcquireFailuresCounter).hasNoOtherValues();
+  }
+
+  @Test
+  public void testSuccess_connectionAcquireFailed() {
+    metrics.connectionAcquireFailed(host);
+
+    assertThat(BackendMetrics.connectionAcquireLatencyMs).hasNoOtherValues();
+    assertThat(BackendMetrics.leasedConnections).hasNoOtherValues();
+    assertThat(BackendMetrics.connectionAcquireFailuresCounter)
+        .hasValueForLabels(1, host)
+        .and()
+        .hasNoOtherValues();
+  }
 }
@@ -89,4 +89,21 @@ public class QuotaConfigTest {
             IllegalArgumentException.class, () -> loadQuotaConfig("quota_config_duplicate.yaml"));
     assertThat(e).hasMessageThat().contains("Multiple entries with same key");
   }
+
+  @Test
+  public void testSuccess_maxTokenAmount() {
+    quotaConfig = loadQuotaConfig("quota_config_max_tokens.yaml");
+    validateQuota("abc", QuotaConfig.MAX_TOKEN_AMOUNT, 60);
+  }
+
+  @Test
+  public void testFailure_tokenAmountTooLarge() {
+    IllegalArgumentException e =
+        assertThrows(
+            IllegalArgumentException.class,
+            () -> loadQuotaConfig("quota_config_too_many_tokens.yaml"));
+    assertThat(e)
+        .hasMessageThat()
+        .contains("Token amount 4194303 for theProtocol is out of range");
+  }
 }
@@ -25,7 +25,6 @@ import com.google.common.util.concurrent.MoreExecutors;
 import google.registry.proxy.quota.QuotaManager.QuotaRebate;
 import google.registry.proxy.quota.QuotaManager.QuotaRequest;
 import google.registry.proxy.quota.QuotaManager.QuotaResponse;
-import google.registry.proxy.quota.TokenStore.TimestampedInteger;
 import google.registry.testing.FakeClock;
 import java.util.concurrent.Future;
 import org.joda.time.DateTime;
@@ -49,7 +48,8 @@ public class QuotaManagerTest {
 
   @Test
   public void testSuccess_requestApproved() {
-    when(tokenStore.take(anyString())).thenReturn(TimestampedInteger.create(1, clock.nowUtc()));
+    when(tokenStore.take(anyString()))
+        .thenReturn(TokenStore.grant(1, clock.nowUtc().getMillis()));
 
     request = QuotaRequest.create(USER_ID);
     response = quotaManager.acquireQuota(request);
@@ -60,7 +60,8 @@ public class QuotaManagerTest {
 
   @Test
   public void testSuccess_requestDenied() {
-    when(tokenStore.take(anyString())).thenReturn(TimestampedInteger.create(0, clock.nowUtc()));
+    when(tokenStore.take(anyString()))
+        .thenReturn(TokenStore.grant(0, clock.nowUtc().getMillis()));
 
     request = QuotaRequest.create(USER_ID);
     response = quotaManager.acquireQuota(request);
@@ -76,7 +77,7 @@ public class QuotaManagerTest {
     QuotaRebate rebate = QuotaRebate.create(response);
     Future<?> unusedFuture = quotaManager.releaseQuota(rebate);
     verify(tokenStore).scheduleRefresh();
-    verify(tokenStore).put(USER_ID, grantedTokenRefillTime);
+    verify(tokenStore).put(USER_ID, grantedTokenRefillTime.getMillis());
     verifyNoMoreInteractions(tokenStore);
   }
 }
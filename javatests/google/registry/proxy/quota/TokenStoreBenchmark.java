@@ -0,0 +1,135 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.proxy.quota;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.google.common.collect.ImmutableList;
+import google.registry.proxy.ProxyConfig.Quota;
+import google.registry.proxy.ProxyConfig.Quota.QuotaGroup;
+import google.registry.util.SystemClock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Command-line benchmark for {@link TokenStore}.
+ *
+ * <p>Each thread takes a token and puts it back over and over, the way the quota handlers do for
+ * every connection, spread over a given number of users. With a single user, all the threads
+ * contend for the same entry. The throughput is printed for each number of threads.
+ */
+@Parameters(separators = " =", commandDescription = "Measures token store throughput.")
+public final class TokenStoreBenchmark {
+
+  @Parameter(
+      names = "--threads",
+      description = "Numbers of threads taking and putting tokens at the same time.")
+  private List<Integer> threadCounts = ImmutableList.of(1, 8, 64);
+
+  @Parameter(
+      names = "--users",
+      description = "Number of users the threads take tokens for.")
+  private int users = 1;
+
+  @Parameter(
+      names = "--iterations",
+      description = "Number of tokens each thread takes and puts back in each round.")
+  private int iterations = 1_000_000;
+
+  @Parameter(
+      names = "--warmup_rounds",
+      description = "Number of rounds run before the timed one, to warm up the JIT.")
+  private int warmupRounds = 3;
+
+  @Parameter(
+      names = {"-h", "--help"},
+      description = "Display help and list flags for this command.",
+      help = true)
+  private boolean help;
+
+  public static void main(String[] args) throws Exception {
+    TokenStoreBenchmark benchmark = new TokenStoreBenchmark();
+    JCommander jCommander = new JCommander(benchmark);
+    jCommander.setProgramName("token_store_benchmark");
+    jCommander.parse(args);
+    if (benchmark.help) {
+      jCommander.usage();
+      return;
+    }
+    benchmark.run();
+  }
+
+  private void run() throws Exception {
+    QuotaGroup quotaGroup = new QuotaGroup();
+    quotaGroup.userId = ImmutableList.of();
+    quotaGroup.tokenAmount = QuotaConfig.MAX_TOKEN_AMOUNT;
+    quotaGroup.refillSeconds = 0;
+    Quota quota = new Quota();
+    quota.refreshSeconds = 0;
+    quota.defaultQuota = quotaGroup;
+    quota.customQuota = ImmutableList.of();
+    QuotaConfig config = new QuotaConfig(quota, "benchmark");
+    ScheduledExecutorService refreshExecutor = Executors.newSingleThreadScheduledExecutor();
+    try {
+      for (int threads : threadCounts) {
+        TokenStore tokenStore = new TokenStore(config, refreshExecutor, new SystemClock());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+          for (int round = 0; round < warmupRounds; round++) {
+            runOnAllThreads(executor, tokenStore, threads);
+          }
+          long nanos = runOnAllThreads(executor, tokenStore, threads);
+          System.out.printf(
+              "%3d threads, %d users: %,14.0f take/put pairs/s%n",
+              threads, users, (double) threads * iterations * 1e9 / nanos);
+        } finally {
+          executor.shutdownNow();
+        }
+      }
+    } finally {
+      refreshExecutor.shutdownNow();
+    }
+  }
+
+  /** Runs the take/put loop on each thread at once, and returns the time it took in nanoseconds. */
+  private long runOnAllThreads(ExecutorService executor, TokenStore tokenStore, int threads)
+      throws Exception {
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int i = 0; i < threads; i++) {
+      String userId = "user" + i % users;
+      tasks.add(
+          () -> {
+            for (int j = 0; j < iterations; j++) {
+              long grant = tokenStore.take(userId);
+              tokenStore.put(userId, TokenStore.grantRefillTimeMillis(grant));
+            }
+            return null;
+          });
+    }
+    long startTime = System.nanoTime();
+    for (Future<Void> result : executor.invokeAll(tasks)) {
+      result.get();
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  private TokenStoreBenchmark() {}
+}
@@ -16,6 +16,7 @@ package google.registry.proxy.quota;
 
 import static com.google.common.truth.Truth.assertThat;
 import static google.registry.proxy.quota.QuotaConfig.SENTINEL_UNLIMITED_TOKENS;
+import static org.joda.time.DateTimeZone.UTC;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.spy;
@@ -55,11 +56,12 @@ public class TokenStoreTest {
   }
 
   private DateTime assertTake(String user, int grantAmount, int amountLeft, DateTime timestamp) {
-    TimestampedInteger grantedToken = tokenStore.take(user);
-    assertThat(grantedToken).isEqualTo(TimestampedInteger.create(grantAmount, timestamp));
+    long grant = tokenStore.take(user);
+    assertThat(TokenStore.grantedTokenCount(grant)).isEqualTo(grantAmount);
+    assertThat(TokenStore.grantRefillTimeMillis(grant)).isEqualTo(timestamp.getMillis());
     assertThat(tokenStore.getTokenForTests(user))
         .isEqualTo(TimestampedInteger.create(amountLeft, timestamp));
-    return grantedToken.timestamp();
+    return new DateTime(TokenStore.grantRefillTimeMillis(grant), UTC);
   }
 
   private void assertPut(
@@ -69,7 +71,7 @@ public class TokenStoreTest {
 
   private void assertPut(
       String user, DateTime returnedTokenRefillTime, int amountAfterReturn, DateTime refillTime) {
-    tokenStore.put(user, returnedTokenRefillTime);
+    tokenStore.put(user, returnedTokenRefillTime.getMillis());
     assertThat(tokenStore.getTokenForTests(user))
         .isEqualTo(TimestampedInteger.create(amountAfterReturn, refillTime));
   }
@@ -117,9 +119,18 @@ public class TokenStoreTest {
     assertTake(1, 2, refillTime);
   }
 
+  @Test
+  public void testSuccess_take_maxTokenAmount() {
+    when(quotaConfig.getTokenAmount(user)).thenReturn(QuotaConfig.MAX_TOKEN_AMOUNT);
+    DateTime refillTime = clock.nowUtc();
+    assertTake(1, QuotaConfig.MAX_TOKEN_AMOUNT - 1, refillTime);
+    assertPut(refillTime, QuotaConfig.MAX_TOKEN_AMOUNT, refillTime);
+    assertPut(refillTime, QuotaConfig.MAX_TOKEN_AMOUNT, refillTime);
+  }
+
   @Test
   public void testSuccess_put_entryDoesNotExist() {
-    tokenStore.put(user, clock.nowUtc());
+    tokenStore.put(user, clock.nowUtc().getMillis());
     assertThat(tokenStore.getTokenForTests(user)).isNull();
   }
 
@@ -262,7 +273,7 @@ public class TokenStoreTest {
     // No refill.
     clock.advanceBy(Duration.standardSeconds(5));
     submitAndWaitForTasks(
-        executor, () -> tokenStore.take(user), () -> tokenStore.put(otherUser, time1));
+        executor, () -> tokenStore.take(user), () -> tokenStore.put(otherUser, time1.getMillis()));
     assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(0, time1));
     assertThat(tokenStore.getTokenForTests(otherUser))
         .isEqualTo(TimestampedInteger.create(4, time1));
@@ -273,7 +284,7 @@ public class TokenStoreTest {
     submitAndWaitForTasks(
         executor,
         () -> {
-          tokenStore.put(user, time1);
+          tokenStore.put(user, time1.getMillis());
           tokenStore.take(user);
         },
         () -> tokenStore.take(otherUser));
@@ -288,7 +299,7 @@ public class TokenStoreTest {
         executor,
         () -> tokenStore.take(user),
         () -> {
-          tokenStore.put(otherUser, time1);
+          tokenStore.put(otherUser, time1.getMillis());
           tokenStore.take(otherUser);
         });
     assertThat(tokenStore.getTokenForTests(user)).isEqualTo(TimestampedInteger.create(1, time2));
@@ -296,6 +307,46 @@ public class TokenStoreTest {
         .isEqualTo(TimestampedInteger.create(4, time3));
   }
 
+  @Test
+  public void testSuccess_concurrency_contendedTake() throws Exception {
+    when(quotaConfig.getTokenAmount(user)).thenReturn(1000);
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Integer>> futures = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      futures.add(
+          executor.submit(
+              () -> {
+                int granted = 0;
+                for (int j = 0; j < 200; j++) {
+                  granted += TokenStore.grantedTokenCount(tokenStore.take(user));
+                }
+                return granted;
+              }));
+    }
+    int totalGranted = 0;
+    for (Future<Integer> future : futures) {
+      totalGranted += future.get();
+    }
+    executor.shutdown();
+    // 1600 tokens are requested, but only the 1000 allotted ones are granted.
+    assertThat(totalGranted).isEqualTo(1000);
+    assertThat(tokenStore.getTokenForTests(user))
+        .isEqualTo(TimestampedInteger.create(0, clock.nowUtc()));
+  }
+
+  @Test
+  public void testSuccess_refresh_thenTake() {
+    DateTime refillTime1 = clock.nowUtc();
+    assertTake(1, 2, refillTime1);
+
+    clock.advanceBy(Duration.standardSeconds(60));
+    tokenStore.refresh();
+    assertThat(tokenStore.getTokenForTests(user)).isNull();
+
+    // A purged entry is recreated with a full pool of tokens.
+    assertTake(1, 2, clock.nowUtc());
+  }
+
   @Test
   public void testSuccess_scheduleRefresh() throws Exception {
     when(quotaConfig.getRefreshPeriod()).thenReturn(Duration.standardSeconds(5));
@@ -15,6 +15,7 @@
 package google.registry.rdap;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.EppResourceUtils.loadByForeignKey;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.persistResource;
 import static google.registry.testing.DatastoreHelper.persistSimpleResources;
@@ -25,6 +26,7 @@ import static google.registry.testing.FullFieldsTestEntityHelper.makeHistoryEntr
 import static google.registry.testing.FullFieldsTestEntityHelper.makeRegistrar;
 import static google.registry.testing.FullFieldsTestEntityHelper.makeRegistrarContacts;
 import static google.registry.testing.TestDataHelper.loadFile;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 import com.google.common.collect.ImmutableList;
@@ -32,6 +34,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import google.registry.model.contact.ContactResource;
 import google.registry.model.domain.DomainBase;
+import google.registry.model.domain.DomainResource;
 import google.registry.model.domain.Period;
 import google.registry.model.host.HostResource;
 import google.registry.model.registrar.Registrar;
@@ -46,6 +49,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
+import org.joda.time.Duration;
 import org.json.simple.JSONObject;
 import org.json.simple.JSONValue;
 import org.junit.Before;
@@ -64,6 +68,7 @@ public class RdapDomainActionTest extends RdapActionBaseTestCase<RdapDomainActio
 
   @Before
   public void setUp() {
+    action.responseCache = new RdapResponseCache(Duration.ZERO, 0, rdapMetrics);
     // lol
     createTld("lol");
     Registrar registrarLol = persistResource(makeRegistrar(
@@ -409,6 +414,27 @@ public class RdapDomainActionTest extends RdapActionBaseTestCase<RdapDomainActio
     assertProperResponseForCatLol("cat.lol", "rdap_domain.json");
   }
 
+  @Test
+  public void testValidDomain_usesResponseCache() {
+    action.responseCache = new RdapResponseCache(Duration.standardMinutes(1), 10, rdapMetrics);
+    ImmutableMap<String, Object> json = action.getJsonObjectForResource("cat.lol", false);
+    DomainResource domain =
+        loadByForeignKey(DomainResource.class, "cat.lol", clock.nowUtc()).get();
+    persistResource(domain.asBuilder().setDeletionTime(clock.nowUtc().minusDays(1)).build());
+    assertThat(action.getJsonObjectForResource("CAT.LOL", false)).isSameAs(json);
+    verify(rdapMetrics).recordResponseCacheLookup(false);
+    verify(rdapMetrics).recordResponseCacheLookup(true);
+  }
+
+  @Test
+  public void testValidDomain_responseCacheIsPerAuthorization() {
+    action.responseCache = new RdapResponseCache(Duration.standardMinutes(1), 10, rdapMetrics);
+    action.getJsonObjectForResource("cat.lol", false);
+    login("evilregistrar");
+    action.getJsonObjectForResource("cat.lol", false);
+    verify(rdapMetrics, times(2)).recordResponseCacheLookup(false);
+  }
+
   @Test
   public void testValidDomain_notFound_differentRegistrarRequested() {
     action.registrarParam = Optional.of("idnregistrar");
@@ -605,4 +631,27 @@ public class RdapDomainActionTest extends RdapActionBaseTestCase<RdapDomainActio
                 .setIncompletenessWarningType(IncompletenessWarningType.COMPLETE)
                 .build());
   }
+
+  @Test
+  public void testMetrics_responseCacheHit() {
+    action.responseCache = new RdapResponseCache(Duration.standardMinutes(1), 10, rdapMetrics);
+    generateActualJson("cat.lol");
+    generateActualJson("cat.lol");
+    verify(rdapMetrics).recordResponseCacheLookup(false);
+    verify(rdapMetrics).recordResponseCacheLookup(true);
+    verify(rdapMetrics, times(2))
+        .updateMetrics(
+            RdapMetrics.RdapMetricInformation.builder()
+                .setEndpointType(EndpointType.DOMAIN)
+                .setSearchType(SearchType.NONE)
+                .setWildcardType(WildcardType.INVALID)
+                .setPrefixLength(0)
+                .setIncludeDeleted(false)
+                .setRegistrarSpecified(false)
+                .setRole(RdapAuthorization.Role.PUBLIC)
+                .setRequestMethod(Action.Method.GET)
+                .setStatusCode(200)
+                .setIncompletenessWarningType(IncompletenessWarningType.COMPLETE)
+                .build());
+  }
 }
@@ -1760,7 +1760,58 @@ public class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDom
         "rdap_domains_four_truncated.json");
     verifyMetrics(
         SearchType.BY_NAMESERVER_NAME,
-        Optional.of(9L),
+        Optional.of(5L),
+        Optional.of(1L),
+        IncompletenessWarningType.TRUNCATED);
+  }
+
+  @Test
+  public void testNameserverMatch_manyDeletedDomains_truncatedResultsSet() {
+    // Only one domain in four is active, so the active domains are spread over several pages of
+    // the domains that use the nameserver; deleted domains are skipped.
+    createManyDomainsAndHosts(5, 4, 1);
+    rememberWildcardType("ns1.domain4.lol");
+    Object obj = generateActualJson(RequestType.NS_LDH_NAME, "ns1.domain4.lol");
+    assertThat(response.getStatus()).isEqualTo(200);
+    checkNumberOfDomainsInResult(obj, 4);
+    verifyMetrics(
+        SearchType.BY_NAMESERVER_NAME,
+        Optional.of(5L),
+        Optional.of(1L),
+        IncompletenessWarningType.TRUNCATED);
+  }
+
+  @Test
+  public void testNameserverMatch_scanLimitReached_truncatedWithCursor() {
+    // The third active domain sorts after more deleted domains than a single search may fetch, so
+    // the search stops after 150 domains, and the cursor lets the client carry on from the last
+    // one, domain233.lol, which is deleted.
+    createManyDomainsAndHosts(3, 100, 1);
+    rememberWildcardType("ns1.domain100.lol");
+    Object obj = generateActualJson(RequestType.NS_LDH_NAME, "ns1.domain100.lol");
+    assertThat(response.getStatus()).isEqualTo(200);
+    checkNumberOfDomainsInResult(obj, 2);
+    assertThat(RdapTestHelper.getLinkToNext(obj)).endsWith("cursor=ZG9tYWluMjMzLmxvbA%3D%3D");
+    verifyMetrics(
+        SearchType.BY_NAMESERVER_NAME,
+        Optional.of(2L),
+        Optional.of(1L),
+        IncompletenessWarningType.TRUNCATED);
+  }
+
+  @Test
+  public void testNameserverMatch_scanLimitReachedWithoutActiveDomain_cursorToLastScanned() {
+    // The only active domain sorts after more deleted domains than a single search may fetch, so
+    // no domain is found, but the cursor still lets the client carry on from the last one scanned.
+    createManyDomainsAndHosts(1, 600, 1);
+    rememberWildcardType("ns1.domain600.lol");
+    Object obj = generateActualJson(RequestType.NS_LDH_NAME, "ns1.domain600.lol");
+    assertThat(response.getStatus()).isEqualTo(200);
+    checkNumberOfDomainsInResult(obj, 0);
+    assertThat(RdapTestHelper.getLinkToNext(obj)).endsWith("cursor=ZG9tYWluMjMzLmxvbA%3D%3D");
+    verifyMetrics(
+        SearchType.BY_NAMESERVER_NAME,
+        Optional.of(0L),
         Optional.of(1L),
         IncompletenessWarningType.TRUNCATED);
   }
@@ -2003,7 +2054,7 @@ public class RdapDomainSearchActionTest extends RdapSearchActionTestCase<RdapDom
         "rdap_domains_four_truncated.json");
     verifyMetrics(
         SearchType.BY_NAMESERVER_ADDRESS,
-        Optional.of(9L),
+        Optional.of(5L),
         Optional.of(1L),
         IncompletenessWarningType.TRUNCATED);
   }
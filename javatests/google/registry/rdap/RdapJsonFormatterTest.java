@@ -15,6 +15,7 @@
 package google.registry.rdap;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
 import static google.registry.testing.DatastoreHelper.createTld;
 import static google.registry.testing.DatastoreHelper.persistResource;
 import static google.registry.testing.DatastoreHelper.persistSimpleResources;
@@ -42,6 +43,7 @@ import google.registry.model.registrar.Registrar;
 import google.registry.model.registrar.RegistrarContact;
 import google.registry.model.registry.Registry.TldState;
 import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
 import google.registry.model.transfer.TransferData;
 import google.registry.model.transfer.TransferStatus;
 import google.registry.rdap.RdapJsonFormatter.OutputDataType;
@@ -527,6 +529,31 @@ public class RdapJsonFormatterTest {
         .isEqualTo(loadJson("rdapjson_domain_full.json"));
   }
 
+  @Test
+  public void testDomain_full_eventsFromHistoryEventSummary() {
+    persistResource(
+        HistoryEventSummary.create(
+            Key.create(domainResourceFull),
+            ofy().load().type(HistoryEntry.class).ancestor(domainResourceFull).list()));
+    // Events are read from the summary, so a history entry that isn't in it doesn't show up.
+    persistResource(
+        makeHistoryEntry(
+            domainResourceFull,
+            HistoryEntry.Type.DOMAIN_RENEW,
+            Period.create(1, Period.Unit.YEARS),
+            "renewed",
+            clock.nowUtc()));
+    assertThat(rdapJsonFormatter.makeRdapJsonForDomain(
+            domainResourceFull,
+            false,
+            LINK_BASE,
+            WHOIS_SERVER,
+            clock.nowUtc(),
+            OutputDataType.FULL,
+            RdapAuthorization.create(RdapAuthorization.Role.REGISTRAR, "unicoderegistrar")))
+        .isEqualTo(loadJson("rdapjson_domain_full.json"));
+  }
+
   @Test
   public void testDomain_summary() {
     assertThat(rdapJsonFormatter.makeRdapJsonForDomain(
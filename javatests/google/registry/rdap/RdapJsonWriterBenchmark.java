@@ -0,0 +1,158 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static google.registry.testing.TestDataHelper.loadFile;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Streams;
+import com.google.common.io.CharStreams;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.Map;
+import org.json.simple.JSONValue;
+
+/**
+ * Command-line benchmark for {@link RdapJsonWriter}.
+ *
+ * <p>Serializes a domain search response, the way {@link RdapActionBase} does, and prints the
+ * bytes allocated and the time taken per search result. The response is made of copies of a
+ * summary domain, so that it looks like what {@link RdapJsonFormatter} builds for a search.
+ *
+ * <p>For comparison, the response is also serialized the way it was before, by rendering it to a
+ * string with json-simple (or with {@code JacksonFactory} for formatted output) and writing the
+ * string out. The allocation of building the map trees of the results, which both ways have in
+ * common, is measured separately, by copying the summary domain into new immutable maps.
+ *
+ * <p>This is a plain timing loop rather than a JMH benchmark, since JMH isn't a dependency of the
+ * project. Warm-up rounds are run before measuring, and the allocated bytes are read from the
+ * JVM's per-thread allocation counter, which doesn't depend on the JIT.
+ */
+@Parameters(separators = " =", commandDescription = "Measures RDAP JSON serialization.")
+public final class RdapJsonWriterBenchmark {
+
+  @Parameter(
+      names = "--results",
+      description = "Number of domains in the search response.")
+  private int results = 100;
+
+  @Parameter(
+      names = "--iterations",
+      description = "Number of times the response is serialized in each measured round.")
+  private int iterations = 1_000;
+
+  @Parameter(
+      names = "--warmup_rounds",
+      description = "Number of rounds run before measuring, to warm up the JIT.")
+  private int warmupRounds = 5;
+
+  @Parameter(
+      names = {"-h", "--help"},
+      description = "Display help and list flags for this command.",
+      help = true)
+  private boolean help;
+
+  public static void main(String[] args) throws Exception {
+    RdapJsonWriterBenchmark benchmark = new RdapJsonWriterBenchmark();
+    JCommander jCommander = new JCommander(benchmark);
+    jCommander.setProgramName("rdap_json_writer_benchmark");
+    jCommander.parse(args);
+    if (benchmark.help) {
+      jCommander.usage();
+      return;
+    }
+    benchmark.run();
+  }
+
+  /** A way of producing a search response, run once per iteration. */
+  private interface Task {
+    void run() throws IOException;
+  }
+
+  private void run() throws Exception {
+    Object domain = JSONValue.parse(loadFile(getClass(), "rdapjson_domain_summary.json"));
+    ImmutableMap<String, Object> response =
+        ImmutableMap.of(
+            "domainSearchResults", Collections.nCopies(results, toImmutableTree(domain)));
+    Writer writer = CharStreams.nullWriter();
+    measure(
+        "map trees",
+        () -> {
+          for (int i = 0; i < results; i++) {
+            toImmutableTree(domain);
+          }
+        });
+    measure("json-simple", () -> writer.write(JSONValue.toJSONString(response)));
+    measure("streaming", () -> RdapJsonWriter.write(response, false, writer));
+    measure(
+        "JacksonFactory (formatted)",
+        () -> writer.write(new JacksonFactory().toPrettyString(response)));
+    measure("streaming (formatted)", () -> RdapJsonWriter.write(response, true, writer));
+  }
+
+  /** Runs the warm-up rounds and a measured round of a task, and prints the cost per result. */
+  private void measure(String name, Task task) throws IOException {
+    for (int round = 0; round < warmupRounds; round++) {
+      runRound(task);
+    }
+    com.sun.management.ThreadMXBean threadMxBean =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    long startBytes = threadMxBean.getThreadAllocatedBytes(threadId);
+    long startTime = System.nanoTime();
+    runRound(task);
+    long nanos = System.nanoTime() - startTime;
+    long bytes = threadMxBean.getThreadAllocatedBytes(threadId) - startBytes;
+    double resultCount = (double) iterations * results;
+    System.out.printf(
+        "%-28s %,10.0f bytes/result %,10.0f ns/result%n",
+        name, bytes / resultCount, nanos / resultCount);
+  }
+
+  private void runRound(Task task) throws IOException {
+    for (int i = 0; i < iterations; i++) {
+      task.run();
+    }
+  }
+
+  /** Copies parsed JSON into immutable maps and lists, like those the formatter builds. */
+  private static Object toImmutableTree(Object json) {
+    if (json instanceof Map) {
+      return ((Map<?, ?>) json)
+          .entrySet()
+          .stream()
+          .collect(
+              toImmutableMap(
+                  entry -> String.valueOf(entry.getKey()),
+                  entry -> toImmutableTree(entry.getValue())));
+    }
+    if (json instanceof Iterable) {
+      return Streams.stream((Iterable<?>) json)
+          .map(RdapJsonWriterBenchmark::toImmutableTree)
+          .collect(toImmutableList());
+    }
+    return json;
+  }
+
+  private RdapJsonWriterBenchmark() {}
+}
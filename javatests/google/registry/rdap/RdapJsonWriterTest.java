@@ -0,0 +1,91 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rdap;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.api.client.json.jackson2.JacksonFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.io.StringWriter;
+import org.json.simple.JSONValue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link RdapJsonWriter}. */
+@RunWith(JUnit4.class)
+public class RdapJsonWriterTest {
+
+  private static final ImmutableMap<String, Object> JSON =
+      ImmutableMap.<String, Object>builder()
+          .put("rdapConformance", ImmutableList.of("icann_rdap_response_profile_0"))
+          .put("objectClassName", "domain")
+          .put("ldhName", "xn--q9jyb4c.example")
+          .put("unicodeName", "みんな.example")
+          .put("errorCode", 404L)
+          .put("count", 3)
+          .put("truncated", true)
+          .put(
+              "links",
+              ImmutableList.of(
+                  ImmutableMap.of(
+                      "href", "https://example.tld/rdap/domain/cat.lol",
+                      "type", "application/rdap+json")))
+          .put("escapes", "quote\" backslash\\ slash/ tab\t newline\n nul\u0000 del\u007f")
+          .put("nonAsciiEscapes", "c1\u0085 nbsp\u00a0 lineSeparator\u2028 euro\u20ac")
+          .put("emptyList", ImmutableList.of())
+          .put("emptyMap", ImmutableMap.of())
+          .put(
+              "vcardArray",
+              ImmutableList.of(
+                  "vcard",
+                  ImmutableList.of(
+                      ImmutableList.of("version", ImmutableMap.of(), "text", "4.0"),
+                      ImmutableList.of("fn", ImmutableMap.of(), "text", "John Doe"))))
+          .build();
+
+  private static String write(boolean prettyPrint) throws Exception {
+    StringWriter writer = new StringWriter();
+    RdapJsonWriter.write(JSON, prettyPrint, writer);
+    return writer.toString();
+  }
+
+  @Test
+  public void testUnformatted_matchesJsonSimple() throws Exception {
+    assertThat(write(false)).isEqualTo(JSONValue.toJSONString(JSON));
+  }
+
+  @Test
+  public void testUnformatted_escapes() throws Exception {
+    assertThat(write(false))
+        .contains(
+            "\"escapes\":"
+                + "\"quote\\\" backslash\\\\ slash\\/ tab\\t newline\\n nul\\u0000 del\\u007F\"");
+    assertThat(write(false))
+        .contains(
+            "\"nonAsciiEscapes\":\"c1\\u0085 nbsp\u00a0 lineSeparator\\u2028 euro\\u20AC\"");
+  }
+
+  @Test
+  public void testFormatted_matchesJacksonFactory() throws Exception {
+    assertThat(write(true)).isEqualTo(new JacksonFactory().toPrettyString(JSON));
+  }
+
+  @Test
+  public void testFormatted_doesNotEscapeSlashes() throws Exception {
+    assertThat(write(true)).contains("\"href\" : \"https://example.tld/rdap/domain/cat.lol\"");
+  }
+}
@@ -16,6 +16,8 @@ package google.registry.rde;
 
 import static com.google.common.truth.Truth.assertThat;
 import static com.google.common.truth.Truth.assertWithMessage;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.model.rde.RdeMode.THIN;
 import static google.registry.testing.GcsTestingUtils.readGcsFile;
 import static google.registry.testing.SystemInfo.hasCommand;
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -29,6 +31,7 @@ import com.google.common.io.CharStreams;
 import com.google.common.io.Files;
 import google.registry.gcs.GcsUtils;
 import google.registry.keyring.api.Keyring;
+import google.registry.model.rde.RdeRevision;
 import google.registry.testing.AppEngineRule;
 import google.registry.testing.BouncyCastleProviderRule;
 import google.registry.testing.FakeKeyringModule;
@@ -122,6 +125,31 @@ public class BrdaCopyActionTest extends ShardableTestCase {
     assertThat(gcsUtils.existsAndNotEmpty(SIG_FILE)).isTrue();
   }
 
+  @Test
+  public void testRun_splitDeposit_copiesAllParts() throws Exception {
+    ofy()
+        .transact(
+            () -> RdeRevision.saveRevision("lol", DateTime.parse("2010-10-17TZ"), THIN, 0, 2));
+    byte[] xml = DEPOSIT_XML.read();
+    GcsTestingUtils.writeGcsFile(
+        gcsService,
+        new GcsFilename("keg", "lol_2010-10-17_thin_S2_R0.xml.ghostryde"),
+        Ghostryde.encode(xml, encryptKey));
+    GcsTestingUtils.writeGcsFile(
+        gcsService,
+        new GcsFilename("keg", "lol_2010-10-17_thin_S2_R0.xml.length"),
+        Long.toString(xml.length).getBytes(UTF_8));
+    action.run();
+    assertThat(gcsUtils.existsAndNotEmpty(RYDE_FILE)).isTrue();
+    assertThat(gcsUtils.existsAndNotEmpty(SIG_FILE)).isTrue();
+    assertThat(
+            gcsUtils.existsAndNotEmpty(new GcsFilename("tub", "lol_2010-10-17_thin_S2_R0.ryde")))
+        .isTrue();
+    assertThat(
+            gcsUtils.existsAndNotEmpty(new GcsFilename("tub", "lol_2010-10-17_thin_S2_R0.sig")))
+        .isTrue();
+  }
+
   @Test
   public void testRun_rydeFormat() throws Exception {
     assumeTrue(hasCommand("gpg --version"));
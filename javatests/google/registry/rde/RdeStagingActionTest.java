@@ -19,6 +19,7 @@ import static com.google.common.truth.Truth.assertThat;
 import static google.registry.model.common.Cursor.CursorType.BRDA;
 import static google.registry.model.common.Cursor.CursorType.RDE_STAGING;
 import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.model.rde.RdeMode.FULL;
 import static google.registry.rde.RdeFixtures.makeContactResource;
 import static google.registry.rde.RdeFixtures.makeDomainResource;
 import static google.registry.rde.RdeFixtures.makeHostResource;
@@ -51,6 +52,7 @@ import google.registry.model.common.Cursor;
 import google.registry.model.common.Cursor.CursorType;
 import google.registry.model.host.HostResource;
 import google.registry.model.ofy.Ofy;
+import google.registry.model.rde.RdeRevision;
 import google.registry.model.registry.Registry;
 import google.registry.request.HttpException.BadRequestException;
 import google.registry.request.RequestParameters;
@@ -82,6 +84,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 import javax.xml.bind.JAXBElement;
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPPrivateKey;
@@ -146,6 +149,7 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     action.pendingDepositChecker.rdeInterval = Duration.standardDays(1);
     action.response = response;
     action.transactionCooldown = Duration.ZERO;
+    action.depositParts = 1;
     action.directory = Optional.empty();
     action.modeStrings = ImmutableSet.of();
     action.tlds = ImmutableSet.of();
@@ -587,6 +591,91 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
         "deposit.contents.registrar.upDate");
   }
 
+  @Test
+  public void testMapReduce_splitDeposit_partsAddUpToWholeDeposit() throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("lol");
+    makeDomainResource(clock, "lol");
+
+    clock.setTo(DateTime.parse("2000-01-01TZ"));
+    action.depositParts = 2;
+    action.run();
+    executeTasksUntilEmpty("mapreduce", clock);
+
+    XjcRdeDeposit part1 =
+        unmarshal(
+            XjcRdeDeposit.class, Ghostryde.decode(readGcsFile(gcsService, XML_FILE), decryptKey));
+    XjcRdeDeposit part2 =
+        unmarshal(
+            XjcRdeDeposit.class,
+            Ghostryde.decode(
+                readGcsFile(
+                    gcsService,
+                    new GcsFilename("rde-bucket", "lol_2000-01-01_full_S2_R0.xml.ghostryde")),
+                decryptKey));
+    assertThat(part2.getId()).isEqualTo(part1.getId());
+    assertThat(part2.getWatermark()).isEqualTo(part1.getWatermark());
+    assertThat(part2.getResend()).isEqualTo(part1.getResend());
+    ImmutableMap<String, Long> counts1 =
+        mapifyCounts(extractAndRemoveContentWithType(XjcRdeHeader.class, part1));
+    ImmutableMap<String, Long> counts2 =
+        mapifyCounts(extractAndRemoveContentWithType(XjcRdeHeader.class, part2));
+    // Registrars and IDN tables only go in the first part.
+    assertThat(counts2).containsEntry(RdeResourceType.REGISTRAR.getUri(), 0L);
+    assertThat(counts2).containsEntry(RdeResourceType.IDN.getUri(), 0L);
+    assertThat(sumCounts(RdeResourceType.CONTACT, counts1, counts2)).isEqualTo(3L);
+    assertThat(sumCounts(RdeResourceType.DOMAIN, counts1, counts2)).isEqualTo(1L);
+    assertThat(sumCounts(RdeResourceType.HOST, counts1, counts2)).isEqualTo(2L);
+    assertThat(sumCounts(RdeResourceType.REGISTRAR, counts1, counts2)).isEqualTo(2L);
+
+    // The report counts the whole deposit, just like an unsplit one.
+    XmlTestUtils.assertXmlEquals(
+        loadFile(getClass(), "testMapReduce_withDomain_producesReportXml.xml"),
+        readXml("lol_2000-01-01_full_S1_R0-report.xml.ghostryde"),
+        "deposit.contents.registrar.crDate",
+        "deposit.contents.registrar.upDate");
+    // The counts that the parts leave for each other are deleted once the deposit is finished.
+    GcsFilename counts1File = new GcsFilename("rde-bucket", "lol_2000-01-01_full_S1_R0.counts");
+    GcsFilename counts2File = new GcsFilename("rde-bucket", "lol_2000-01-01_full_S2_R0.counts");
+    assertThat(gcsService.getMetadata(counts1File)).isNull();
+    assertThat(gcsService.getMetadata(counts2File)).isNull();
+  }
+
+  @Test
+  public void testMapReduce_splitDeposit_advancesCursorAndSavesParts() throws Exception {
+    clock.setTo(DateTime.parse("1999-12-31TZ"));
+    createTldWithEscrowEnabled("lol");
+    makeDomainResource(clock, "lol");
+    setCursor(Registry.get("lol"), RDE_STAGING, DateTime.parse("2000-01-01TZ"));
+    setCursor(Registry.get("lol"), BRDA, DateTime.parse("2000-01-04TZ"));
+
+    clock.setTo(DateTime.parse("2000-01-01TZ"));
+    action.depositParts = 3;
+    action.run();
+    executeTasksUntilEmpty("mapreduce", clock);
+
+    assertThat(
+            ofy()
+                .load()
+                .key(Cursor.createKey(RDE_STAGING, Registry.get("lol")))
+                .now()
+                .getCursorTime())
+        .isEqualTo(DateTime.parse("2000-01-02TZ"));
+    assertThat(RdeRevision.getNextRevision("lol", DateTime.parse("2000-01-01TZ"), FULL))
+        .isEqualTo(1);
+    assertThat(RdeRevision.getParts("lol", DateTime.parse("2000-01-01TZ"), FULL)).isEqualTo(3);
+    assertTasksEnqueued(
+        "rde-upload",
+        new TaskMatcher().url(RdeUploadAction.PATH).param(RequestParameters.PARAM_TLD, "lol"));
+    for (int part = 1; part <= 3; part++) {
+      String prefix = "lol_2000-01-01_full_S" + part + "_R0";
+      assertThat(gcsService.getMetadata(new GcsFilename("rde-bucket", prefix + ".xml.ghostryde")))
+          .isNotNull();
+      assertThat(gcsService.getMetadata(new GcsFilename("rde-bucket", prefix + ".xml.length")))
+          .isNotNull();
+    }
+  }
+
   @Test
   public void testMapReduce_twoDomainsDifferentTlds_isolatesDomains() throws Exception {
     clock.setTo(DateTime.parse("1999-12-31TZ"));
@@ -845,6 +934,11 @@ public class RdeStagingActionTest extends MapreduceTestCase<RdeStagingAction> {
     return builder.build();
   }
 
+  @SafeVarargs
+  private static long sumCounts(RdeResourceType type, ImmutableMap<String, Long>... counts) {
+    return Stream.of(counts).mapToLong(partCounts -> partCounts.get(type.getUri())).sum();
+  }
+
   private void setCursor(
       final Registry registry, final CursorType cursorType, final DateTime value) {
     clock.advanceOneMilli();
@@ -0,0 +1,156 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.rde;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.google.common.io.ByteStreams;
+import google.registry.keyring.api.Keyring;
+import google.registry.testing.FakeKeyringModule;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.Security;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.annotation.Nullable;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.joda.time.DateTime;
+
+/**
+ * Command-line benchmark for {@link RydeEncoder}.
+ *
+ * <p>Encodes a synthetic deposit, first with all the layers in the writing thread and then with
+ * the layers pipelined across threads, and prints the throughput of each. The encoded deposit and
+ * its signature are discarded, so that neither GCS nor SFTP gets in the way of the measurement.
+ */
+@Parameters(separators = " =", commandDescription = "Measures RyDE encoding throughput.")
+public final class RydeEncoderBenchmark {
+
+  /** Size of the chunks the deposit is written in. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  @Parameter(
+      names = "--megabytes",
+      description = "Size of the synthetic deposit, in MiB.")
+  private int megabytes = 256;
+
+  @Parameter(
+      names = "--warmup_rounds",
+      description = "Number of times each mode encodes the deposit before the timed run.")
+  private int warmupRounds = 2;
+
+  @Parameter(
+      names = {"-h", "--help"},
+      description = "Display help and list flags for this command.",
+      help = true)
+  private boolean help;
+
+  public static void main(String[] args) throws Exception {
+    RydeEncoderBenchmark benchmark = new RydeEncoderBenchmark();
+    JCommander jCommander = new JCommander(benchmark);
+    jCommander.setProgramName("ryde_encoder_benchmark");
+    jCommander.parse(args);
+    if (benchmark.help) {
+      jCommander.usage();
+      return;
+    }
+    Security.addProvider(new BouncyCastleProvider());
+    benchmark.run();
+  }
+
+  private void run() throws Exception {
+    Keyring keyring = new FakeKeyringModule().get();
+    byte[] chunk = createDepositChunk();
+    long dataLength = (long) megabytes * 1024 * 1024 / CHUNK_SIZE * CHUNK_SIZE;
+    measure("sequential", keyring, chunk, dataLength, null);
+    measure("pipelined", keyring, chunk, dataLength, Executors.defaultThreadFactory());
+  }
+
+  /** Runs the warm-up rounds and a timed run of one mode, and prints its throughput. */
+  private void measure(
+      String mode,
+      Keyring keyring,
+      byte[] chunk,
+      long dataLength,
+      @Nullable ThreadFactory pipelineThreadFactory) throws IOException {
+    for (int round = 0; round < warmupRounds; round++) {
+      encode(keyring, chunk, dataLength, pipelineThreadFactory);
+    }
+    long nanos = encode(keyring, chunk, dataLength, pipelineThreadFactory);
+    System.out.printf("%-10s %,8.1f MiB/s%n", mode, dataLength * 1e9 / nanos / (1024 * 1024));
+  }
+
+  /**
+   * Returns a chunk of XML that looks like the domains of a deposit.
+   *
+   * <p>The names and dates are random, so that the chunk doesn't compress much better than a real
+   * deposit would.
+   */
+  private static byte[] createDepositChunk() {
+    Random random = new Random(0);
+    ByteArrayOutputStream output = new ByteArrayOutputStream(CHUNK_SIZE);
+    while (output.size() < CHUNK_SIZE) {
+      String name = Long.toString(random.nextLong() & Long.MAX_VALUE, 36);
+      String domain =
+          String.format(
+              "<rdeDomain:domain><rdeDomain:name>%s.example</rdeDomain:name>"
+                  + "<rdeDomain:roid>%X-EXAMPLE</rdeDomain:roid>"
+                  + "<rdeDomain:status s=\"ok\"/>"
+                  + "<rdeDomain:registrant>%s</rdeDomain:registrant>"
+                  + "<rdeDomain:ns><domain:hostObj>ns1.%s.example</domain:hostObj></rdeDomain:ns>"
+                  + "<rdeDomain:clID>registrar%d</rdeDomain:clID>"
+                  + "<rdeDomain:crDate>%s</rdeDomain:crDate></rdeDomain:domain>\n",
+              name,
+              random.nextInt(),
+              name,
+              name,
+              random.nextInt(1000),
+              new DateTime(random.nextInt() * 1000L));
+      byte[] bytes = domain.getBytes(UTF_8);
+      output.write(bytes, 0, bytes.length);
+    }
+    return Arrays.copyOf(output.toByteArray(), CHUNK_SIZE);
+  }
+
+  /** Encodes the deposit, and returns the time it took in nanoseconds. */
+  private static long encode(
+      Keyring keyring,
+      byte[] chunk,
+      long dataLength,
+      @Nullable ThreadFactory pipelineThreadFactory) throws IOException {
+    long startTime = System.nanoTime();
+    RydeEncoder.Builder builder =
+        new RydeEncoder.Builder()
+            .setRydeOutput(ByteStreams.nullOutputStream(), keyring.getRdeReceiverKey())
+            .setSignatureOutput(ByteStreams.nullOutputStream(), keyring.getRdeSigningKey())
+            .setFileMetadata("benchmark", dataLength, DateTime.parse("2019-01-01T00:00:00Z"));
+    if (pipelineThreadFactory != null) {
+      builder.setPipelineThreadFactory(pipelineThreadFactory);
+    }
+    try (RydeEncoder encoder = builder.build()) {
+      for (long written = 0; written < dataLength; written += chunk.length) {
+        encoder.write(chunk);
+      }
+    }
+    return System.nanoTime() - startTime;
+  }
+
+  private RydeEncoderBenchmark() {}
+}
@@ -0,0 +1,73 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import java.util.BitSet;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link CodepointSet}. */
+@RunWith(JUnit4.class)
+public class CodepointSetTest {
+
+  private static CodepointSet createSet(int... codepoints) {
+    BitSet bitSet = new BitSet();
+    for (int codepoint : codepoints) {
+      bitSet.set(codepoint);
+    }
+    return CodepointSet.copyOf(bitSet);
+  }
+
+  @Test
+  public void testContains() {
+    CodepointSet set = createSet('a', 0xe9, 0x3042, 0x2070e, Character.MAX_CODE_POINT);
+    assertThat(set.contains('a')).isTrue();
+    assertThat(set.contains(0xe9)).isTrue();
+    assertThat(set.contains(0x3042)).isTrue();
+    assertThat(set.contains(0x2070e)).isTrue();
+    assertThat(set.contains(Character.MAX_CODE_POINT)).isTrue();
+    assertThat(set.contains('b')).isFalse();
+    assertThat(set.contains('a' + 64)).isFalse();
+    assertThat(set.contains(0xe9 + 256)).isFalse();
+    assertThat(set.contains(0x3043)).isFalse();
+    assertThat(set.contains(0x2070f)).isFalse();
+  }
+
+  @Test
+  public void testContains_beyondHighestPage() {
+    CodepointSet set = createSet('0', '9');
+    assertThat(set.contains('9')).isTrue();
+    assertThat(set.contains(0x3042)).isFalse();
+    assertThat(set.contains(Character.MAX_CODE_POINT)).isFalse();
+  }
+
+  @Test
+  public void testContains_emptySet() {
+    assertThat(createSet().contains(0)).isFalse();
+    assertThat(createSet().contains('a')).isFalse();
+  }
+
+  @Test
+  public void testFailure_notACodepoint() {
+    IllegalArgumentException thrown =
+        assertThrows(
+            IllegalArgumentException.class, () -> createSet(Character.MAX_CODE_POINT + 1));
+    assertThat(thrown).hasMessageThat().contains("Not a codepoint");
+  }
+}
@@ -0,0 +1,179 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tldconfig.idn;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableRangeSet;
+import com.google.common.collect.Range;
+import com.google.common.collect.RangeSet;
+import google.registry.util.Idn;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Command-line benchmark for {@link IdnLabelValidator}.
+ *
+ * <p>Validates a few kinds of labels against the default tables, extended Latin and Japanese, and
+ * prints the throughput for each kind. The invalid labels show how early validation gives up.
+ *
+ * <p>Each label is also validated the way it was before the tables were bitmaps, as a baseline:
+ * every table in turn scans the whole label, looking each codepoint up in a {@link RangeSet}.
+ */
+@Parameters(separators = " =", commandDescription = "Measures IDN label validation throughput.")
+public final class IdnLabelValidatorBenchmark {
+
+  /** TLD without tables of its own, so that the labels are validated against the default ones. */
+  private static final String TLD = "tld";
+
+  /** Tables that the default validator checks, in the order it checks them. */
+  private static final ImmutableList<IdnTableEnum> DEFAULT_IDN_TABLES =
+      ImmutableList.of(IdnTableEnum.EXTENDED_LATIN, IdnTableEnum.JA);
+
+  /** Sample labels, by the kind of label they stand for. */
+  private static final ImmutableMap<String, String> LABELS =
+      new ImmutableMap.Builder<String, String>()
+          .put("ASCII", "ite-love-you")
+          .put("extended Latin", "abcdefghæ")
+          .put("Japanese", "みんなアシヨわみけabc")
+          .put("Japanese with kanji", "日々の生活")
+          .put("mixed tables (invalid)", "みんなアシヨわみけæ")
+          .put("Cyrillic (invalid)", "aЖЗ")
+          .build();
+
+  @Parameter(
+      names = "--iterations",
+      description = "Number of times each label is validated in each round.")
+  private int iterations = 1_000_000;
+
+  @Parameter(
+      names = "--warmup_rounds",
+      description = "Number of rounds run before the measured one, to warm up the JIT.")
+  private int warmupRounds = 5;
+
+  @Parameter(
+      names = {"-h", "--help"},
+      description = "Display help and list flags for this command.",
+      help = true)
+  private boolean help;
+
+  public static void main(String[] args) {
+    IdnLabelValidatorBenchmark benchmark = new IdnLabelValidatorBenchmark();
+    JCommander jCommander = new JCommander(benchmark);
+    jCommander.setProgramName("idn_label_validator_benchmark");
+    jCommander.parse(args);
+    if (benchmark.help) {
+      jCommander.usage();
+      return;
+    }
+    benchmark.run();
+  }
+
+  private void run() {
+    IdnLabelValidator validator = IdnLabelValidator.createDefaultIdnLabelValidator();
+    RangeSetValidator baseline = new RangeSetValidator(DEFAULT_IDN_TABLES);
+    for (Map.Entry<String, String> label : LABELS.entrySet()) {
+      measure(label.getKey(), "RangeSet", baseline::isValid, label.getValue());
+      measure(
+          label.getKey(),
+          "bitmap",
+          candidate -> validator.findValidIdnTableForTld(candidate, TLD).isPresent(),
+          label.getValue());
+    }
+  }
+
+  /** Runs the warm-up rounds and a measured round for a label, and prints the throughput. */
+  private void measure(String kind, String mode, Predicate<String> isValid, String label) {
+    for (int round = 0; round < warmupRounds; round++) {
+      validate(isValid, label);
+    }
+    long nanos = validate(isValid, label);
+    System.out.printf(
+        "%-24s %-10s %,14.0f labels/s%n", kind, mode, (double) iterations * 1e9 / nanos);
+  }
+
+  /** Validates a label over and over, and returns the time it took in nanoseconds. */
+  private long validate(Predicate<String> isValid, String label) {
+    // Count the results so that the JIT cannot skip the validation.
+    int validCount = 0;
+    long startTime = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      if (isValid.test(label)) {
+        validCount++;
+      }
+    }
+    long nanos = System.nanoTime() - startTime;
+    if (validCount != 0 && validCount != iterations) {
+      throw new IllegalStateException("Inconsistent results for label " + label);
+    }
+    return nanos;
+  }
+
+  /**
+   * Validates labels the way {@link IdnLabelValidator} did with {@link RangeSet} tables.
+   *
+   * <p>The range sets are built the way the tables used to be, from a singleton range for each
+   * codepoint, and the language rules are those of the tables themselves.
+   */
+  private static final class RangeSetValidator {
+
+    private final ImmutableList<IdnTable> tables;
+    private final ImmutableList<RangeSet<Integer>> validCodepoints;
+
+    RangeSetValidator(ImmutableList<IdnTableEnum> idnTables) {
+      ImmutableList.Builder<IdnTable> tables = new ImmutableList.Builder<>();
+      ImmutableList.Builder<RangeSet<Integer>> validCodepoints = new ImmutableList.Builder<>();
+      for (IdnTableEnum idnTable : idnTables) {
+        ImmutableRangeSet.Builder<Integer> rangeSet = new ImmutableRangeSet.Builder<>();
+        for (int codepoint = 0; codepoint <= Character.MAX_CODE_POINT; codepoint++) {
+          if (idnTable.getTable().isValidCodepoint(codepoint)) {
+            rangeSet.add(Range.singleton(codepoint));
+          }
+        }
+        tables.add(idnTable.getTable());
+        validCodepoints.add(rangeSet.build());
+      }
+      this.tables = tables.build();
+      this.validCodepoints = validCodepoints.build();
+    }
+
+    boolean isValid(String label) {
+      String unicodeString = Idn.toUnicode(label);
+      for (int t = 0; t < tables.size(); t++) {
+        if (isValidLabel(unicodeString, t)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private boolean isValidLabel(String label, int table) {
+      final int length = label.length();
+      for (int i = 0; i < length; ) {
+        int codepoint = label.codePointAt(i);
+        if (!validCodepoints.get(table).contains(codepoint)) {
+          return false;
+        }
+        i += Character.charCount(codepoint);
+      }
+      return tables.get(table).isValidLabelForLanguage(label);
+    }
+  }
+
+  private IdnLabelValidatorBenchmark() {}
+}
@@ -77,4 +77,29 @@ public class CompareDbBackupsTest {
     assertThat(output)
         .containsMatch("(?s)1 records were removed.*eeny.*1 records were added.*blutzy");
   }
+
+  @Test
+  public void testCommand_changedEntityAcrossFiles() throws Exception {
+    File dump1 = tempFs.newFolder("dump1");
+    LevelDbFileBuilder builder = new LevelDbFileBuilder(new File(dump1, "data1"));
+    builder.addEntityProto(BASE_ID, Property.create("eeny", 100L));
+    builder.build();
+    builder = new LevelDbFileBuilder(new File(dump1, "data2"));
+    builder.addEntityProto(BASE_ID + 1, Property.create("meeny", 200L));
+    builder.build();
+
+    File dump2 = tempFs.newFolder("dump2");
+    builder = new LevelDbFileBuilder(new File(dump2, "data1"));
+    builder.addEntityProto(BASE_ID + 1, Property.create("meeny", 200L));
+    builder.addEntityProto(BASE_ID, Property.create("eeny", 101L));
+    builder.build();
+
+    System.setOut(new PrintStream(stdout));
+    CompareDbBackups.main(new String[] {dump1.getCanonicalPath(), dump2.getCanonicalPath()});
+    String output = new String(stdout.toByteArray(), UTF_8);
+    assertThat(output)
+        .containsMatch(
+            "(?s)First backup: 2 records.*Second backup: 2 records"
+                + ".*1 records were removed.*eeny = 100.*1 records were added.*eeny = 101");
+  }
 }
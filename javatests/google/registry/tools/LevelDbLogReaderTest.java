@@ -15,6 +15,7 @@
 package google.registry.tools;
 
 import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.tools.LevelDbUtil.MAX_RECORD;
 import static google.registry.tools.LevelDbUtil.addRecord;
 
@@ -23,8 +24,13 @@ import com.google.common.primitives.Bytes;
 import google.registry.tools.LevelDbLogReader.ChunkType;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.List;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
@@ -32,6 +38,8 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public final class LevelDbLogReaderTest {
 
+  @Rule public final TemporaryFolder tempFs = new TemporaryFolder();
+
   // Size of the test record.  Any value < 256 will do.
   private static final int TEST_RECORD_SIZE = 231;
 
@@ -102,6 +110,52 @@ public final class LevelDbLogReaderTest {
     assertThat(reader.getRecords()).hasSize(block0.recordCount + block1.recordCount);
   }
 
+  @Test
+  public void testReadRecords_acrossMappedRegions() throws IOException {
+    TestBlock block0 = makeBlockOfRepeatingBytes(0);
+    TestBlock block1 = makeBlockOfRepeatingBytes(138);
+    byte[] block2 = new byte[LevelDbLogReader.BLOCK_SIZE];
+    addRecord(block2, 0, ChunkType.FIRST, MAX_RECORD, (byte) 1);
+    byte[] block3 = new byte[LevelDbLogReader.BLOCK_SIZE];
+    int end = addRecord(block3, 0, ChunkType.LAST, TEST_RECORD_SIZE, (byte) 2);
+    byte[] data = Bytes.concat(block0.data, block1.data, block2, Arrays.copyOf(block3, end));
+    Path file = tempFs.newFile().toPath();
+    Files.write(file, data);
+
+    LevelDbLogReader reader = new LevelDbLogReader();
+    reader.readFrom(
+        new ByteArrayInputStream(Bytes.concat(block0.data, block1.data, block2, block3)));
+    ImmutableList<byte[]> expected = reader.getRecords();
+    ImmutableList<byte[]> records =
+        ImmutableList.copyOf(LevelDbLogReader.readRecords(file, LevelDbLogReader.BLOCK_SIZE));
+
+    assertThat(records).hasSize(block0.recordCount + block1.recordCount + 1);
+    assertThat(records).hasSize(expected.size());
+    for (int i = 0; i < records.size(); i++) {
+      assertThat(records.get(i)).isEqualTo(expected.get(i));
+    }
+    assertThat(records.get(records.size() - 1)).hasLength(MAX_RECORD + TEST_RECORD_SIZE);
+  }
+
+  @Test
+  public void testChecksumMismatch() throws IOException {
+    TestBlock block = makeBlockOfRepeatingBytes(0);
+    // Corrupt a byte of the data of the first record.
+    block.data[LevelDbLogReader.HEADER_SIZE]++;
+    Path file = tempFs.newFile().toPath();
+    Files.write(file, block.data);
+
+    IllegalStateException thrown =
+        assertThrows(
+            IllegalStateException.class,
+            () -> ImmutableList.copyOf(LevelDbLogReader.readRecords(file)));
+    assertThat(thrown).hasMessageThat().contains("checksum mismatch");
+    LevelDbLogReader reader = new LevelDbLogReader();
+    assertThrows(
+        IllegalStateException.class,
+        () -> reader.readFrom(new ByteArrayInputStream(block.data)));
+  }
+
   @Test
   public void testChunkTypesToCode() {
     // Verify that we're translating chunk types to code values correctly.z
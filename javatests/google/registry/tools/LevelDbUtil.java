@@ -17,17 +17,21 @@ package google.registry.tools;
 import static com.google.common.base.Preconditions.checkArgument;
 
 import google.registry.tools.LevelDbLogReader.ChunkType;
+import java.nio.ByteBuffer;
 
 class LevelDbUtil {
 
   public static final int MAX_RECORD = LevelDbLogReader.BLOCK_SIZE - LevelDbLogReader.HEADER_SIZE;
 
-  /** Adds a new record header to "bytes" at "pos", returns the new position. */
+  /**
+   * Adds a new record header to "bytes" at "pos", returns the new position.
+   *
+   * <p>The checksum is left out, since it also covers the record data. Write it with {@link
+   * #addChecksum} once the data is in place.
+   */
   private static int addRecordHeader(byte[] bytes, int pos, ChunkType type, int size) {
-    // Write a bogus checksum.
-    for (int i = 0; i < 4; ++i) {
-      bytes[pos++] = -1;
-    }
+    // Skip the checksum.
+    pos += 4;
 
     // Write size and type.
     bytes[pos++] = (byte) size;
@@ -37,6 +41,16 @@ class LevelDbUtil {
     return pos;
   }
 
+  /** Writes the checksum of the record whose header starts at "headerPos" and data has "size". */
+  private static void addChecksum(byte[] bytes, int headerPos, int size) {
+    int checksum =
+        LevelDbLogReader.maskedChecksum(
+            ByteBuffer.wrap(bytes), headerPos + LevelDbLogReader.HEADER_SIZE - 1, size + 1);
+    for (int i = 0; i < 4; ++i) {
+      bytes[headerPos + i] = (byte) (checksum >> (8 * i));
+    }
+  }
+
   /**
    * Adds a record of repeating bytes of 'val' of the given size to bytes at pos.
    *
@@ -44,12 +58,10 @@ class LevelDbUtil {
    * value of 'val' is 0x1234, writes 0x12 0x34 0x34 0x12 0x12 ... If the value is greater than
    * 0xffff, it will be truncated to 16 bits.
    *
-   * <p>This currently doesn't write a real checksum since we're not doing anything with that in the
-   * leveldb reader.
-   *
    * <p>Returns the new offset for the next block.
    */
   static int addRecord(byte[] bytes, int pos, ChunkType type, int size, int val) {
+    int headerPos = pos;
     pos = addRecordHeader(bytes, pos, type, size);
 
     // Write "size" bytes of data.
@@ -60,6 +72,7 @@ class LevelDbUtil {
       // records.
       val = ((val >> 8) & 0xff) | ((val & 0xff) << 8);
     }
+    addChecksum(bytes, headerPos, size);
 
     return pos + size;
   }
@@ -67,9 +80,6 @@ class LevelDbUtil {
   /**
    * Adds a record containing "data" to "bytes".
    *
-   * <p>This currently doesn't write a real checksum since we're not doing anything with that in the
-   * leveldb reader.
-   *
    * <p>Returns the new offset for the next block.
    */
   static int addRecord(byte[] bytes, int pos, ChunkType type, byte[] data) {
@@ -78,10 +88,12 @@ class LevelDbUtil {
         "Record length (%s) > max record size (%s)",
         data.length,
         MAX_RECORD);
+    int headerPos = pos;
     pos = addRecordHeader(bytes, pos, type, data.length);
 
     // Write the contents of "data".
     System.arraycopy(data, 0, bytes, pos, data.length);
+    addChecksum(bytes, headerPos, data.length);
 
     return pos + data.length;
   }
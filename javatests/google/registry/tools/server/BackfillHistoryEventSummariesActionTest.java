@@ -0,0 +1,107 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.tools.server;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.model.ofy.ObjectifyService.ofy;
+import static google.registry.testing.DatastoreHelper.createTld;
+import static google.registry.testing.DatastoreHelper.persistActiveContact;
+import static google.registry.testing.DatastoreHelper.persistActiveDomain;
+import static google.registry.testing.DatastoreHelper.persistResource;
+
+import com.google.common.collect.ImmutableList;
+import com.googlecode.objectify.Key;
+import google.registry.model.EppResource;
+import google.registry.model.contact.ContactResource;
+import google.registry.model.domain.DomainResource;
+import google.registry.model.reporting.HistoryEntry;
+import google.registry.model.reporting.HistoryEventSummary;
+import google.registry.testing.FakeResponse;
+import google.registry.testing.mapreduce.MapreduceTestCase;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link BackfillHistoryEventSummariesAction}. */
+@RunWith(JUnit4.class)
+public class BackfillHistoryEventSummariesActionTest
+    extends MapreduceTestCase<BackfillHistoryEventSummariesAction> {
+
+  @Before
+  public void init() {
+    action = new BackfillHistoryEventSummariesAction();
+    action.mrRunner = makeDefaultRunner();
+    action.response = new FakeResponse();
+  }
+
+  private void runMapreduce() throws Exception {
+    action.run();
+    executeTasksUntilEmpty("mapreduce");
+  }
+
+  private static void persistHistoryEntry(
+      EppResource parent, HistoryEntry.Type type, DateTime modificationTime) {
+    persistResource(
+        new HistoryEntry.Builder()
+            .setParent(parent)
+            .setType(type)
+            .setClientId("TheRegistrar")
+            .setModificationTime(modificationTime)
+            .build());
+  }
+
+  private static HistoryEventSummary loadSummary(EppResource resource) {
+    return ofy().load().key(HistoryEventSummary.createKey(Key.create(resource))).now();
+  }
+
+  @Test
+  public void test_mapreduceBackfillsSummaries() throws Exception {
+    createTld("tld");
+    DateTime now = DateTime.parse("2000-01-01TZ");
+    DomainResource domain = persistActiveDomain("test.tld");
+    ContactResource contact = persistActiveContact("humanBeing");
+    persistHistoryEntry(domain, HistoryEntry.Type.DOMAIN_CREATE, now);
+    persistHistoryEntry(domain, HistoryEntry.Type.DOMAIN_UPDATE, now.plusDays(1));
+    persistHistoryEntry(domain, HistoryEntry.Type.DOMAIN_RENEW, now.plusDays(2));
+    persistHistoryEntry(contact, HistoryEntry.Type.CONTACT_UPDATE, now);
+    runMapreduce();
+
+    ofy().clearSessionCache();
+    HistoryEventSummary domainSummary = loadSummary(domain);
+    assertThat(domainSummary.getEvents()).hasSize(2);
+    assertThat(domainSummary.getEvents().get(0).getType())
+        .isEqualTo(HistoryEntry.Type.DOMAIN_CREATE);
+    assertThat(domainSummary.getEvents().get(1).getType())
+        .isEqualTo(HistoryEntry.Type.DOMAIN_RENEW);
+    assertThat(domainSummary.getEvents().get(1).getModificationTime())
+        .isEqualTo(now.plusDays(2));
+    assertThat(loadSummary(contact).getEvents()).isEmpty();
+  }
+
+  @Test
+  public void test_mapreduceReplacesStaleSummaries() throws Exception {
+    createTld("tld");
+    DateTime now = DateTime.parse("2000-01-01TZ");
+    DomainResource domain = persistActiveDomain("test.tld");
+    persistResource(HistoryEventSummary.create(Key.create(domain), ImmutableList.of()));
+    persistHistoryEntry(domain, HistoryEntry.Type.DOMAIN_CREATE, now);
+    runMapreduce();
+
+    ofy().clearSessionCache();
+    assertThat(loadSummary(domain).getEvents()).hasSize(1);
+  }
+}
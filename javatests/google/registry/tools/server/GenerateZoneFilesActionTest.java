@@ -24,7 +24,9 @@ import static google.registry.testing.DatastoreHelper.persistActiveDomain;
 import static google.registry.testing.DatastoreHelper.persistActiveDomainApplication;
 import static google.registry.testing.DatastoreHelper.persistActiveHost;
 import static google.registry.testing.DatastoreHelper.persistResource;
+import static google.registry.testing.DatastoreHelper.persistResourceWithCommitLog;
 import static google.registry.testing.GcsTestingUtils.readGcsFile;
+import static google.registry.testing.JUnitBackports.assertThrows;
 import static google.registry.testing.TestDataHelper.loadFile;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.joda.time.Duration.standardDays;
@@ -36,16 +38,24 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.googlecode.objectify.Key;
+import google.registry.gcs.GcsUtils;
+import google.registry.model.domain.DomainResource;
 import google.registry.model.domain.secdns.DelegationSignerData;
 import google.registry.model.eppcommon.StatusValue;
 import google.registry.model.host.HostResource;
+import google.registry.model.ofy.Ofy;
+import google.registry.request.HttpException.BadRequestException;
 import google.registry.testing.FakeClock;
+import google.registry.testing.InjectRule;
 import google.registry.testing.mapreduce.MapreduceTestCase;
 import java.net.InetAddress;
+import java.util.HashMap;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.Duration;
+import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
@@ -54,6 +64,8 @@ import org.junit.runners.JUnit4;
 @RunWith(JUnit4.class)
 public class GenerateZoneFilesActionTest extends MapreduceTestCase<GenerateZoneFilesAction> {
 
+  @Rule public final InjectRule inject = new InjectRule();
+
   private final GcsService gcsService = createGcsService();
 
   @Test
@@ -150,4 +162,221 @@ public class GenerateZoneFilesActionTest extends MapreduceTestCase<GenerateZoneF
     // The remaining lines can be in any order.
     assertThat(generatedFileLines).containsExactlyElementsIn(goldenFileLines);
   }
+
+  @Test
+  public void testGenerate_incremental_matchesFullGeneration() throws Exception {
+    DateTime exportTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
+    DateTime previousExportTime = exportTime.minusDays(1);
+    FakeClock clock = new FakeClock(previousExportTime.minusHours(1));
+    inject.setStaticField(Ofy.class, "clock", clock);
+    createTld("tld");
+
+    ImmutableSet<InetAddress> ips =
+        ImmutableSet.of(InetAddress.getByName("127.0.0.1"), InetAddress.getByName("::1"));
+    HostResource host1 = persistWithCommitLog(
+        clock, newHostResource("ns.foo.tld").asBuilder().addInetAddresses(ips).build());
+    HostResource host2 = persistWithCommitLog(
+        clock, newHostResource("ns.bar.tld").asBuilder().addInetAddresses(ips).build());
+    persistWithCommitLog(clock, newDomainResource("bar.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1), Key.create(host2)))
+        .addSubordinateHost("ns.bar.tld")
+        .build());
+    persistWithCommitLog(clock, newDomainResource("unchanged.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    DomainResource toChange = persistWithCommitLog(clock, newDomainResource("changed.tld")
+        .asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    DomainResource toDelete = persistWithCommitLog(clock, newDomainResource("deleted.tld")
+        .asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host2)))
+        .build());
+    // This domain drops out of the zone without being written in between the two export times.
+    persistWithCommitLog(clock, newDomainResource("expired.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .setDeletionTime(previousExportTime.plusHours(12))
+        .build());
+    clock.setTo(previousExportTime.plusMinutes(2));
+    runAction(clock, previousExportTime, null);
+    String previousFile = readZoneFile(previousExportTime);
+
+    clock.setTo(previousExportTime.plusHours(1));
+    persistWithCommitLog(clock, host2.asBuilder()
+        .addInetAddresses(ImmutableSet.of(InetAddress.getByName("127.0.0.2")))
+        .build());
+    persistWithCommitLog(clock, toChange.asBuilder()
+        .setDsData(ImmutableSet.of(DelegationSignerData.create(1, 2, 3, new byte[] {0, 1, 2})))
+        .build());
+    persistWithCommitLog(clock, toDelete.asBuilder().setDeletionTime(clock.nowUtc()).build());
+    persistWithCommitLog(clock, newDomainResource("added.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    clock.setTo(exportTime.plusMinutes(2));
+    runAction(clock, exportTime, null);
+    String fullFile = readZoneFile(exportTime);
+    gcsService.delete(getZoneFilename(exportTime));
+    runAction(clock, exportTime, previousExportTime);
+    String incrementalFile = readZoneFile(exportTime);
+
+    assertThat(fullFile).isNotEqualTo(previousFile);
+    assertThat(fullFile).contains("127.0.0.2");
+    assertThat(fullFile).contains("added\t");
+    assertThat(fullFile).doesNotContain("deleted\t");
+    assertThat(fullFile).doesNotContain("expired\t");
+    assertThat(incrementalFile).isEqualTo(fullFile);
+  }
+
+  @Test
+  public void testGenerate_incremental_deletedAndRecreatedDomain() throws Exception {
+    DateTime exportTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
+    DateTime previousExportTime = exportTime.minusDays(1);
+    FakeClock clock = new FakeClock(previousExportTime.minusHours(1));
+    inject.setStaticField(Ofy.class, "clock", clock);
+    createTld("tld");
+
+    HostResource host1 = persistWithCommitLog(clock, newHostResource("ns1.example.com"));
+    HostResource host2 = persistWithCommitLog(clock, newHostResource("ns2.example.com"));
+    persistWithCommitLog(clock, newDomainResource("before.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    DomainResource toRecreate = persistWithCommitLog(clock, newDomainResource("recreated.tld")
+        .asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    persistWithCommitLog(clock, newDomainResource("recreated-not.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host1)))
+        .build());
+    clock.setTo(previousExportTime.plusMinutes(2));
+    runAction(clock, previousExportTime, null);
+
+    // The domain is deleted, and a new domain with the same name but other nameservers is created.
+    clock.setTo(previousExportTime.plusHours(1));
+    persistWithCommitLog(clock, toRecreate.asBuilder().setDeletionTime(clock.nowUtc()).build());
+    persistWithCommitLog(clock, newDomainResource("recreated.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host2)))
+        .build());
+    clock.setTo(exportTime.plusMinutes(2));
+    runAction(clock, exportTime, null);
+    String fullFile = readZoneFile(exportTime);
+    gcsService.delete(getZoneFilename(exportTime));
+    runAction(clock, exportTime, previousExportTime);
+    String incrementalFile = readZoneFile(exportTime);
+
+    assertThat(fullFile).contains("recreated\t222\tIN\tNS\tns2.example.com.");
+    assertThat(fullFile).doesNotContain("recreated\t222\tIN\tNS\tns1.example.com.");
+    assertThat(incrementalFile).isEqualTo(fullFile);
+  }
+
+  @Test
+  public void testGenerate_incremental_previousZoneFileNotSorted_generatesInFull()
+      throws Exception {
+    DateTime exportTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
+    DateTime previousExportTime = exportTime.minusDays(1);
+    FakeClock clock = new FakeClock(previousExportTime.minusHours(1));
+    inject.setStaticField(Ofy.class, "clock", clock);
+    createTld("tld");
+
+    HostResource host = persistWithCommitLog(clock, newHostResource("ns.example.com"));
+    persistWithCommitLog(clock, newDomainResource("example.tld").asBuilder()
+        .addNameservers(ImmutableSet.of(Key.create(host)))
+        .build());
+    // A zone file written before the groups of stanzas were sorted has no format metadata.
+    new GcsUtils(gcsService, 123)
+        .createFromBytes(
+            getZoneFilename(previousExportTime),
+            "$ORIGIN\ttld.\n\nstale\t222\tIN\tNS\tns.example.com.\n\n".getBytes(UTF_8));
+    clock.setTo(exportTime.plusMinutes(2));
+    runAction(clock, exportTime, previousExportTime);
+    String incrementalFile = readZoneFile(exportTime);
+    gcsService.delete(getZoneFilename(exportTime));
+    runAction(clock, exportTime, null);
+    String fullFile = readZoneFile(exportTime);
+
+    assertThat(incrementalFile).doesNotContain("stale\t");
+    assertThat(incrementalFile).isEqualTo(fullFile);
+  }
+
+  @Test
+  public void testGenerate_sortedInSeveralRuns() throws Exception {
+    DateTime exportTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
+    FakeClock clock = new FakeClock(exportTime.plusMinutes(2));
+    createTld("tld");
+    HostResource host = persistResource(newHostResource("ns.example.com"));
+    for (String label : ImmutableList.of("e", "b", "d-d", "a", "d", "c")) {
+      persistResource(newDomainResource(label + ".tld").asBuilder()
+          .addNameservers(ImmutableSet.of(Key.create(host)))
+          .build());
+    }
+    runAction(clock, exportTime, null);
+    String singleRunFile = readZoneFile(exportTime);
+    gcsService.delete(getZoneFilename(exportTime));
+    inject.setStaticField(GenerateZoneFilesAction.class, "maxSortedGroups", 2);
+    runAction(clock, exportTime, null);
+    String severalRunsFile = readZoneFile(exportTime);
+
+    assertThat(singleRunFile)
+        .isEqualTo(
+            "$ORIGIN\ttld.\n\n"
+                + "a\t222\tIN\tNS\tns.example.com.\n\n"
+                + "b\t222\tIN\tNS\tns.example.com.\n\n"
+                + "c\t222\tIN\tNS\tns.example.com.\n\n"
+                + "d\t222\tIN\tNS\tns.example.com.\n\n"
+                + "d-d\t222\tIN\tNS\tns.example.com.\n\n"
+                + "e\t222\tIN\tNS\tns.example.com.\n\n");
+    assertThat(severalRunsFile).isEqualTo(singleRunFile);
+    // The spilled runs are deleted once they are merged.
+    assertThat(new GcsUtils(gcsService, 123).listFolderObjects("zonefiles-bucket", ""))
+        .containsExactly(getZoneFilename(exportTime).getObjectName());
+  }
+
+  @Test
+  public void testGenerate_incremental_failsWithoutPreviousZoneFile() {
+    DateTime exportTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
+    createTld("tld");
+    BadRequestException thrown =
+        assertThrows(
+            BadRequestException.class,
+            () ->
+                runAction(
+                    new FakeClock(exportTime.plusMinutes(2)),
+                    exportTime,
+                    exportTime.minusDays(1)));
+    assertThat(thrown).hasMessageThat().contains("No previous zone file");
+  }
+
+  private void runAction(
+      FakeClock clock, DateTime exportTime, @Nullable DateTime previousExportTime)
+      throws Exception {
+    GenerateZoneFilesAction action = new GenerateZoneFilesAction();
+    action.mrRunner = makeDefaultRunner();
+    action.gcsUtils = new GcsUtils(gcsService, 123);
+    action.bucket = "zonefiles-bucket";
+    action.gcsBufferSize = 123;
+    action.datastoreRetention = standardDays(29);
+    action.dnsDefaultATtl = Duration.standardSeconds(11);
+    action.dnsDefaultNsTtl = Duration.standardSeconds(222);
+    action.dnsDefaultDsTtl = Duration.standardSeconds(3333);
+    action.clock = clock;
+    Map<String, Object> json = new HashMap<>();
+    json.put("tlds", ImmutableList.of("tld"));
+    json.put("exportTime", exportTime);
+    json.put("previousExportTime", previousExportTime);
+    action.handleJsonRequest(json);
+    executeTasksUntilEmpty("mapreduce");
+  }
+
+  private String readZoneFile(DateTime exportTime) throws Exception {
+    return new String(readGcsFile(gcsService, getZoneFilename(exportTime)), UTF_8);
+  }
+
+  private static GcsFilename getZoneFilename(DateTime exportTime) {
+    return new GcsFilename("zonefiles-bucket", String.format("tld-%s.zone", exportTime));
+  }
+
+  private static <R> R persistWithCommitLog(FakeClock clock, R resource) {
+    // Commit logs in the same bucket need distinct timestamps.
+    clock.advanceOneMilli();
+    return persistResourceWithCommitLog(resource);
+  }
 }
@@ -0,0 +1,168 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static google.registry.testing.JUnitBackports.assertThrows;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link AsyncOutputStream}. */
+@RunWith(JUnit4.class)
+public class AsyncOutputStreamTest {
+
+  private final ThreadFactory threadFactory = Executors.defaultThreadFactory();
+
+  /** Output stream that records the writes it receives, and whether it was closed. */
+  private static class RecordingOutputStream extends ByteArrayOutputStream {
+    final List<String> writes = new ArrayList<>();
+    int flushes;
+    boolean closed;
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) {
+      writes.add(new String(b, off, len, UTF_8));
+      super.write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+    }
+  }
+
+  @Test
+  public void testWrite_preservesWriteBoundaries() throws Exception {
+    RecordingOutputStream delegate = new RecordingOutputStream();
+    try (OutputStream output = new AsyncOutputStream(delegate, 2, threadFactory)) {
+      output.write("hello ".getBytes(UTF_8));
+      output.write("hello world!".getBytes(UTF_8), 6, 5);
+      output.write('!');
+      output.write(new byte[0]);
+    }
+    assertThat(delegate.writes).containsExactly("hello ", "world", "!").inOrder();
+    assertThat(delegate.toString("UTF-8")).isEqualTo("hello world!");
+  }
+
+  @Test
+  public void testWrite_copiesBuffer() throws Exception {
+    RecordingOutputStream delegate = new RecordingOutputStream();
+    byte[] buffer = "aaa".getBytes(UTF_8);
+    try (OutputStream output = new AsyncOutputStream(delegate, 4, threadFactory)) {
+      output.write(buffer);
+      Arrays.fill(buffer, (byte) 'b');
+      output.write(buffer);
+    }
+    assertThat(delegate.writes).containsExactly("aaa", "bbb").inOrder();
+  }
+
+  @Test
+  public void testWrite_manyWrites_blocksUntilQueueHasRoom() throws Exception {
+    RecordingOutputStream delegate = new RecordingOutputStream();
+    ImmutableList.Builder<String> expected = new ImmutableList.Builder<>();
+    try (OutputStream output = new AsyncOutputStream(delegate, 1, threadFactory)) {
+      for (int i = 0; i < 1000; i++) {
+        output.write(Integer.toString(i).getBytes(UTF_8));
+        expected.add(Integer.toString(i));
+      }
+    }
+    assertThat(delegate.writes).containsExactlyElementsIn(expected.build()).inOrder();
+  }
+
+  @Test
+  public void testFlush_flushesDelegate() throws Exception {
+    RecordingOutputStream delegate = new RecordingOutputStream();
+    try (OutputStream output = new AsyncOutputStream(delegate, 2, threadFactory)) {
+      output.write('a');
+      output.flush();
+    }
+    assertThat(delegate.flushes).isEqualTo(1);
+  }
+
+  @Test
+  public void testClose_waitsForQueuedWrites() throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    ByteArrayOutputStream delegate =
+        new ByteArrayOutputStream() {
+          @Override
+          public synchronized void write(byte[] b, int off, int len) {
+            try {
+              latch.await();
+            } catch (InterruptedException e) {
+              throw new AssertionError(e);
+            }
+            super.write(b, off, len);
+          }
+        };
+    OutputStream output = new AsyncOutputStream(delegate, 4, threadFactory);
+    output.write("hello".getBytes(UTF_8));
+    output.write("world".getBytes(UTF_8));
+    assertThat(delegate.size()).isEqualTo(0);
+    latch.countDown();
+    output.close();
+    assertThat(delegate.toString("UTF-8")).isEqualTo("helloworld");
+  }
+
+  @Test
+  public void testClose_doesNotCloseDelegate() throws Exception {
+    RecordingOutputStream delegate = new RecordingOutputStream();
+    OutputStream output = new AsyncOutputStream(delegate, 2, threadFactory);
+    output.close();
+    output.close();
+    assertThat(delegate.closed).isFalse();
+  }
+
+  @Test
+  public void testWrite_failsAfterClose() throws Exception {
+    OutputStream output = new AsyncOutputStream(new RecordingOutputStream(), 2, threadFactory);
+    output.close();
+    IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> output.write(1));
+    assertThat(thrown).hasMessageThat().contains("outputstream closed");
+  }
+
+  @Test
+  public void testClose_rethrowsDelegateFailure() throws Exception {
+    IOException failure = new IOException("disk full");
+    OutputStream delegate =
+        new OutputStream() {
+          @Override
+          public void write(int b) throws IOException {
+            throw failure;
+          }
+        };
+    OutputStream output = new AsyncOutputStream(delegate, 2, threadFactory);
+    output.write('a');
+    IOException thrown = assertThrows(IOException.class, output::close);
+    assertThat(thrown).hasCauseThat().isSameAs(failure);
+  }
+}
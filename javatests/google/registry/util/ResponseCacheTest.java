@@ -0,0 +1,110 @@
+// Copyright 2019 The Nomulus Authors. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//     http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package google.registry.util;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.google.common.util.concurrent.Uninterruptibles.awaitUninterruptibly;
+import static google.registry.testing.JUnitBackports.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.joda.time.Duration;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/** Unit tests for {@link ResponseCache}. */
+@RunWith(JUnit4.class)
+public class ResponseCacheTest {
+
+  private final List<Boolean> lookups = Collections.synchronizedList(new ArrayList<>());
+  private final AtomicInteger loads = new AtomicInteger();
+
+  private final ResponseCache<String, String> cache =
+      new ResponseCache<>(Duration.standardMinutes(1), 10, lookups::add);
+
+  private String load(String response) {
+    loads.incrementAndGet();
+    return response;
+  }
+
+  @Test
+  public void testGet_cachesResponse() {
+    assertThat(cache.get("query", () -> load("first"))).isEqualTo("first");
+    assertThat(cache.get("query", () -> load("second"))).isEqualTo("first");
+    assertThat(cache.get("other query", () -> load("third"))).isEqualTo("third");
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(lookups).containsExactly(false, true, false).inOrder();
+  }
+
+  @Test
+  public void testGet_zeroExpiry_cachesNothing() {
+    ResponseCache<String, String> disabledCache =
+        new ResponseCache<>(Duration.ZERO, 10, lookups::add);
+    assertThat(disabledCache.get("query", () -> load("first"))).isEqualTo("first");
+    assertThat(disabledCache.get("query", () -> load("second"))).isEqualTo("second");
+    assertThat(loads.get()).isEqualTo(2);
+    assertThat(lookups).isEmpty();
+  }
+
+  @Test
+  public void testGet_exceptionIsRethrownAndNotCached() {
+    IllegalStateException thrown =
+        assertThrows(
+            IllegalStateException.class,
+            () ->
+                cache.get(
+                    "query",
+                    () -> {
+                      throw new IllegalStateException("oops");
+                    }));
+    assertThat(thrown).hasMessageThat().isEqualTo("oops");
+    assertThat(cache.get("query", () -> load("response"))).isEqualTo("response");
+    assertThat(loads.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testGet_concurrentLookupsShareOneComputation() throws Exception {
+    CountDownLatch loading = new CountDownLatch(1);
+    CountDownLatch canFinishLoading = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> first =
+          executor.submit(
+              () ->
+                  cache.get(
+                      "query",
+                      () -> {
+                        loading.countDown();
+                        awaitUninterruptibly(canFinishLoading);
+                        return load("first");
+                      }));
+      loading.await();
+      Future<String> second = executor.submit(() -> cache.get("query", () -> load("second")));
+      canFinishLoading.countDown();
+      assertThat(first.get()).isEqualTo("first");
+      assertThat(second.get()).isEqualTo("first");
+      assertThat(loads.get()).isEqualTo(1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
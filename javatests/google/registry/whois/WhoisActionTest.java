@@ -68,6 +68,7 @@ import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import org.joda.time.DateTime;
+import org.joda.time.Duration;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Rule;
@@ -82,7 +83,9 @@ public class WhoisActionTest {
   @Rule public final AppEngineRule appEngine = AppEngineRule.builder().withDatastore().build();
   @Rule public final InjectRule inject = new InjectRule();
 
-  private final FakeResponse response = new FakeResponse();
+  private FakeResponse response = new FakeResponse();
+  private WhoisResponseCache responseCache =
+      new WhoisResponseCache(Duration.ZERO, 0, new WhoisMetrics());
   private FakeClock clock;
 
   private WhoisAction newWhoisAction(String input) {
@@ -96,6 +99,7 @@ public class WhoisActionTest {
     whoisAction.disclaimer =
         "Doodle Disclaimer\nI exist so that carriage return\nin disclaimer can be tested.";
     whoisAction.retrier = new Retrier(new FakeSleeper(clock), 3);
+    whoisAction.responseCache = responseCache;
     return whoisAction;
   }
 
@@ -167,6 +171,22 @@ public class WhoisActionTest {
     assertThat(response.getPayload()).isEqualTo(loadFile("whois_action_domain.txt"));
   }
 
+  @Test
+  public void testRun_domainQuery_usesResponseCache() {
+    responseCache = new WhoisResponseCache(Duration.standardMinutes(1), 10, new WhoisMetrics());
+    Registrar registrar =
+        persistResource(makeRegistrar("evilregistrar", "Yes Virginia", ACTIVE));
+    persistResource(makeDomainResourceWithRegistrar(registrar));
+    persistSimpleResources(makeRegistrarContacts(registrar));
+    newWhoisAction("domain cat.lol\r\n").run();
+    // The cached response is served as is, including its "Last update of WHOIS database" time.
+    clock.advanceBy(Duration.standardSeconds(1));
+    response = new FakeResponse();
+    newWhoisAction("DOMAIN CAT.LOL\r\n").run();
+    assertThat(response.getStatus()).isEqualTo(200);
+    assertThat(response.getPayload()).isEqualTo(loadFile("whois_action_domain.txt"));
+  }
+
   @Test
   public void testRun_domainAfterTransfer_hasUpdatedEppTimeAndClientId() {
     Registrar registrar = persistResource(makeRegistrar("TheRegistrar", "Yes Virginia", ACTIVE));